@@ -41,6 +41,7 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
@@ -214,13 +215,14 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     if(relation.size() == 0) {
       throw new IllegalArgumentException("database empty: must contain elements");
     }
+    final Logging log = getLogger();
     // initial models
     List<? extends EMClusterModel<M>> models = mfactory.buildInitialModels(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
-    WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
-    double loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
-    DoubleStatistic likestat = LOG.isStatistics() ? new DoubleStatistic(this.getClass().getName() + ".loglikelihood") : null;
-    if(LOG.isStatistics()) {
-      LOG.statistics(likestat.setDouble(loglikelihood));
+    WritableDataStore<double[]> probClusterIGivenX = makeProbabilityStorage(relation.getDBIDs(), k);
+    double loglikelihood = expectationStep(relation, models, probClusterIGivenX);
+    DoubleStatistic likestat = log.isStatistics() ? new DoubleStatistic(this.getClass().getName() + ".loglikelihood") : null;
+    if(log.isStatistics()) {
+      log.statistics(likestat.setDouble(loglikelihood));
     }
 
     // iteration unless no change
@@ -228,12 +230,12 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     double bestloglikelihood = loglikelihood; // For detecting instabilities.
     for(++it; it < maxiter || maxiter < 0; it++) {
       final double oldloglikelihood = loglikelihood;
-      recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+      maximizationStep(relation, probClusterIGivenX, models, prior);
       // reassign probabilities
-      loglikelihood = assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+      loglikelihood = expectationStep(relation, models, probClusterIGivenX);
 
-      if(LOG.isStatistics()) {
-        LOG.statistics(likestat.setDouble(loglikelihood));
+      if(log.isStatistics()) {
+        log.statistics(likestat.setDouble(loglikelihood));
       }
       if(loglikelihood - bestloglikelihood > delta) {
         lastimprovement = it;
@@ -243,8 +245,8 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
         break;
       }
     }
-    if(LOG.isStatistics()) {
-      LOG.statistics(new LongStatistic(KEY + ".iterations", it));
+    if(log.isStatistics()) {
+      log.statistics(new LongStatistic(KEY + ".iterations", it));
     }
 
     // fill result with clusters and models
@@ -271,6 +273,41 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     return result;
   }
 
+  /**
+   * Allocate the storage for the cluster probabilities of each object.
+   *
+   * @param ids Object IDs
+   * @param k Number of clusters
+   * @return Storage
+   */
+  protected WritableDataStore<double[]> makeProbabilityStorage(DBIDs ids, int k) {
+    return DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
+  }
+
+  /**
+   * Assign the cluster probabilities to all objects, i.e. the expectation step.
+   *
+   * @param relation Vector data
+   * @param models Cluster models
+   * @param probClusterIGivenX Output storage for cluster probabilities
+   * @return Average log likelihood
+   */
+  protected double expectationStep(Relation<V> relation, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    return assignProbabilitiesToInstances(relation, models, probClusterIGivenX);
+  }
+
+  /**
+   * Re-estimate the cluster models, i.e. the maximization step.
+   *
+   * @param relation Vector data
+   * @param probClusterIGivenX Object probabilities
+   * @param models Cluster models to update
+   * @param prior MAP prior (use 0 for MLE)
+   */
+  protected void maximizationStep(Relation<V> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<M>> models, double prior) {
+    recomputeCovarianceMatrices(relation, probClusterIGivenX, models, prior);
+  }
+
   /**
    * Recompute the covariance matrixes.
    * 
@@ -338,22 +375,34 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     double emSum = 0.;
 
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      NumberVector vec = relation.get(iditer);
       double[] probs = new double[k];
-      for(int i = 0; i < k; i++) {
-        double v = models.get(i).estimateLogDensity(vec);
-        probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
-      }
-      final double logP = logSumExp(probs);
-      for(int i = 0; i < k; i++) {
-        probs[i] = FastMath.exp(probs[i] - logP);
-      }
+      emSum += computeProbabilities(relation.get(iditer), models, probs);
       probClusterIGivenX.put(iditer, probs);
-      emSum += logP;
     }
     return emSum / relation.size();
   }
 
+  /**
+   * Compute the cluster probabilities of a single object.
+   * 
+   * @param vec Object to assign
+   * @param models Cluster models
+   * @param probs Output array for the cluster probabilities
+   * @return log likelihood of the object
+   */
+  protected static double computeProbabilities(NumberVector vec, List<? extends EMClusterModel<?>> models, double[] probs) {
+    final int k = models.size();
+    for(int i = 0; i < k; i++) {
+      double v = models.get(i).estimateLogDensity(vec);
+      probs[i] = v > MIN_LOGLIKELIHOOD ? v : MIN_LOGLIKELIHOOD;
+    }
+    final double logP = logSumExp(probs);
+    for(int i = 0; i < k; i++) {
+      probs[i] = FastMath.exp(probs[i] - logP);
+    }
+    return logP;
+  }
+
   /**
    * Compute log(sum(exp(x_i)), with attention to numerical issues.
    * 
@@ -458,7 +507,7 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     /**
      * Prior to enable MAP estimation (use 0 for MLE)
      */
-    double prior = 0.;
+    protected double prior = 0.;
 
     @Override
     protected void makeOptions(Parameterization config) {
@@ -47,7 +47,7 @@ public interface EMClusterModel<M extends MeanModel> {
   /**
    * First run in the E step.
    *
-   * By default, this is not used (c.f. {@link #needsTwoPass()}.
+   * By default, this is not used (c.f. {@link #needsTwoPass()}).
    *
    * @param vec Vector to process
    * @param weight Weight of point ("responsibility" of the cluster)
@@ -59,7 +59,7 @@ public interface EMClusterModel<M extends MeanModel> {
   /**
    * Finalize the first pass of the E step.
    *
-   * By default, this is not used (c.f. {@link #needsTwoPass()}.
+   * By default, this is not used (c.f. {@link #needsTwoPass()}).
    */
   default void finalizeFirstPassE() {
     // empty.
@@ -73,6 +73,40 @@ public interface EMClusterModel<M extends MeanModel> {
    */
   void updateE(NumberVector vec, double weight);
 
+  /**
+   * Create a new, empty accumulator for the E step, for use by a different
+   * thread. The accumulator is updated using {@link #firstPassE} and
+   * {@link #updateE}, then merged back using {@link #mergeFirstPassE} and
+   * {@link #mergeE}, respectively. It must be created after
+   * {@link #beginEStep()}, and for the second pass after
+   * {@link #finalizeFirstPassE()}.
+   *
+   * @return Accumulator, or {@code null} if not supported by this model.
+   */
+  default EMClusterModel<M> newAccumulator() {
+    return null;
+  }
+
+  /**
+   * Merge the first pass of a thread-local accumulator into this model.
+   *
+   * By default, this is not used (c.f. {@link #needsTwoPass()}).
+   *
+   * @param other Accumulator obtained from {@link #newAccumulator()}
+   */
+  default void mergeFirstPassE(EMClusterModel<M> other) {
+    // empty.
+  }
+
+  /**
+   * Merge a thread-local accumulator into this model.
+   *
+   * @param other Accumulator obtained from {@link #newAccumulator()}
+   */
+  default void mergeE(EMClusterModel<M> other) {
+    throw new UnsupportedOperationException("This model does not support parallel aggregation.");
+  }
+
   /**
    * Finalize the E step.
    * 
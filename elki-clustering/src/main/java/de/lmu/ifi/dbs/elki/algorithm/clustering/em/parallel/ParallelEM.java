@@ -0,0 +1,356 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em.parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.em.EM;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.em.EMClusterModel;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.em.EMClusterModelFactory;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Parallel version of clustering by expectation maximization (EM-Algorithm),
+ * also known as Gaussian Mixture Modeling (GMM).
+ * <p>
+ * Both the assignment of probabilities and the re-estimation of the models are
+ * parallelized. The models are estimated using thread-local accumulators (c.f.
+ * {@link EMClusterModel#newAccumulator()}) that are merged afterwards. Models
+ * that do not support this are updated sequentially. The probability arrays
+ * are allocated once, and updated in place in each iteration.
+ * <p>
+ * Because the partial aggregates are merged in an arbitrary order, results may
+ * differ from the sequential implementation in the last digits.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has EStepProcessor
+ * @apiviz.has MStepProcessor
+ * @apiviz.has MStepInstance
+ *
+ * @param <V> vector type to analyze
+ * @param <M> model type to produce
+ */
+public class ParallelEM<V extends NumberVector, M extends MeanModel> extends EM<V, M> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param prior MAP prior
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, double prior, boolean soft) {
+    super(k, delta, mfactory, maxiter, prior, soft);
+  }
+
+  @Override
+  protected WritableDataStore<double[]> makeProbabilityStorage(DBIDs ids, int k) {
+    WritableDataStore<double[]> probClusterIGivenX = super.makeProbabilityStorage(ids, k);
+    // Preallocate, so that the worker threads only modify existing arrays.
+    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      probClusterIGivenX.put(iditer, new double[k]);
+    }
+    return probClusterIGivenX;
+  }
+
+  @Override
+  protected double expectationStep(Relation<V> relation, List<? extends EMClusterModel<M>> models, WritableDataStore<double[]> probClusterIGivenX) {
+    EStepProcessor proc = new EStepProcessor(relation, models, probClusterIGivenX);
+    ParallelExecutor.run(relation.getDBIDs(), proc);
+    return proc.loglikelihood / relation.size();
+  }
+
+  @Override
+  protected void maximizationStep(Relation<V> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<M>> models, double prior) {
+    final int k = models.size();
+    boolean needsTwoPass = false, parallel = true;
+    for(EMClusterModel<M> m : models) {
+      m.beginEStep();
+      needsTwoPass |= m.needsTwoPass();
+      parallel &= m.newAccumulator() != null;
+    }
+    if(!parallel) {
+      super.maximizationStep(relation, probClusterIGivenX, models, prior);
+      return;
+    }
+    final DBIDs ids = relation.getDBIDs();
+    MStepProcessor<M> proc = new MStepProcessor<>(relation, probClusterIGivenX, models);
+    // First pass, only for two-pass models.
+    if(needsTwoPass) {
+      proc.firstPass = true;
+      ParallelExecutor.run(ids, proc);
+      for(EMClusterModel<M> m : models) {
+        m.finalizeFirstPassE();
+      }
+      proc.firstPass = false;
+    }
+    ParallelExecutor.run(ids, proc);
+    final double[] wsum = proc.wsum;
+    for(int i = 0; i < k; i++) {
+      // MLE / MAP
+      final double weight = prior <= 0. ? wsum[i] / relation.size() : (wsum[i] + prior - 1) / (relation.size() + prior * k - k);
+      models.get(i).finalizeEStep(weight, prior);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Processor to assign the cluster probabilities.
+   *
+   * @author Erich Schubert
+   */
+  private static class EStepProcessor implements Processor {
+    /**
+     * Data relation.
+     */
+    private Relation<? extends NumberVector> relation;
+
+    /**
+     * Cluster models.
+     */
+    private List<? extends EMClusterModel<?>> models;
+
+    /**
+     * Output storage for cluster probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Sum of log likelihoods.
+     */
+    private double loglikelihood = 0.;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param models Cluster models
+     * @param probClusterIGivenX Output storage for cluster probabilities
+     */
+    public EStepProcessor(Relation<? extends NumberVector> relation, List<? extends EMClusterModel<?>> models, WritableDataStore<double[]> probClusterIGivenX) {
+      super();
+      this.relation = relation;
+      this.models = models;
+      this.probClusterIGivenX = probClusterIGivenX;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      loglikelihood += ((Instance) inst).loglikelihood;
+    }
+
+    /**
+     * Thread-local instance.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Partial sum of log likelihoods.
+       */
+      private double loglikelihood = 0.;
+
+      @Override
+      public void map(DBIDRef id) {
+        loglikelihood += computeProbabilities(relation.get(id), models, probClusterIGivenX.get(id));
+      }
+    }
+  }
+
+  /**
+   * Processor to update the cluster models.
+   *
+   * @author Erich Schubert
+   *
+   * @param <M> Model type
+   */
+  private static class MStepProcessor<M extends MeanModel> implements Processor {
+    /**
+     * Data relation.
+     */
+    private Relation<? extends NumberVector> relation;
+
+    /**
+     * Cluster probabilities.
+     */
+    private WritableDataStore<double[]> probClusterIGivenX;
+
+    /**
+     * Cluster models.
+     */
+    private List<? extends EMClusterModel<M>> models;
+
+    /**
+     * Flag for the first pass of two-pass models.
+     */
+    private boolean firstPass = false;
+
+    /**
+     * Sum of weights per cluster.
+     */
+    private double[] wsum;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param probClusterIGivenX Cluster probabilities
+     * @param models Cluster models
+     */
+    public MStepProcessor(Relation<? extends NumberVector> relation, WritableDataStore<double[]> probClusterIGivenX, List<? extends EMClusterModel<M>> models) {
+      super();
+      this.relation = relation;
+      this.probClusterIGivenX = probClusterIGivenX;
+      this.models = models;
+      this.wsum = new double[models.size()];
+    }
+
+    @Override
+    public MStepInstance<M> instantiate(Executor executor) {
+      return new MStepInstance<>(this);
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      ((MStepInstance<?>) inst).merge();
+    }
+  }
+
+  /**
+   * Thread-local instance of the model update, using private accumulators.
+   *
+   * @author Erich Schubert
+   *
+   * @param <M> Model type
+   */
+  private static class MStepInstance<M extends MeanModel> implements Processor.Instance {
+    /**
+     * Processor (shared state).
+     */
+    private MStepProcessor<M> proc;
+
+    /**
+     * Thread-local accumulators.
+     */
+    private List<EMClusterModel<M>> accumulators;
+
+    /**
+     * Partial sum of weights.
+     */
+    private double[] wsum;
+
+    /**
+     * Constructor.
+     *
+     * @param proc Processor
+     */
+    public MStepInstance(MStepProcessor<M> proc) {
+      super();
+      this.proc = proc;
+      final int k = proc.models.size();
+      this.accumulators = new ArrayList<>(k);
+      for(int i = 0; i < k; i++) {
+        accumulators.add(proc.models.get(i).newAccumulator());
+      }
+      this.wsum = new double[k];
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final boolean firstPass = proc.firstPass;
+      NumberVector instance = proc.relation.get(id);
+      double[] clusterProbabilities = proc.probClusterIGivenX.get(id);
+      for(int i = 0; i < clusterProbabilities.length; i++) {
+        final double prob = clusterProbabilities[i];
+        if(prob > 1e-10) {
+          if(firstPass) {
+            accumulators.get(i).firstPassE(instance, prob);
+          }
+          else {
+            accumulators.get(i).updateE(instance, prob);
+          }
+        }
+        wsum[i] += prob;
+      }
+    }
+
+    /**
+     * Merge the accumulators into the models of the processor.
+     * <p>
+     * Must be called synchronized on the processor.
+     */
+    protected void merge() {
+      final List<? extends EMClusterModel<M>> models = proc.models;
+      for(int i = 0; i < models.size(); i++) {
+        if(proc.firstPass) {
+          models.get(i).mergeFirstPassE(accumulators.get(i));
+        }
+        else {
+          models.get(i).mergeE(accumulators.get(i));
+          proc.wsum[i] += wsum[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector, M extends MeanModel> extends EM.Parameterizer<V, M> {
+    @Override
+    protected ParallelEM<V, M> makeInstance() {
+      return new ParallelEM<>(k, delta, initializer, maxiter, prior, false);
+    }
+  }
+}
@@ -20,13 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
-import java.util.Arrays;
-
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.DistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.Linkage;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.SingleLinkage;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.linkage.WardLinkage;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.DoubleTriangleStorageFactory;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangleStorage;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangleStorageFactory;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
@@ -39,6 +40,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
@@ -88,6 +90,17 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    */
   Linkage linkage = WardLinkage.STATIC;
 
+  /**
+   * Minimum number of matrix cells to scan per thread when refreshing the
+   * cache in parallel.
+   */
+  private static final int REFRESH_CHUNK = 1 << 16;
+
+  /**
+   * Storage backend of the distance matrix.
+   */
+  TriangleStorageFactory matrixFactory;
+
   /**
    * Constructor.
    *
@@ -95,8 +108,20 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param linkage Linkage method
    */
   public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, Linkage linkage) {
+    this(distanceFunction, linkage, DoubleTriangleStorageFactory.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param matrixFactory Storage backend of the distance matrix
+   */
+  public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, Linkage linkage, TriangleStorageFactory matrixFactory) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.matrixFactory = matrixFactory;
   }
 
   /**
@@ -112,7 +137,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
     DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
     final DBIDs ids = relation.getDBIDs();
-    MatrixParadigm mat = new MatrixParadigm(ids);
+    MatrixParadigm mat = new MatrixParadigm(ids, matrixFactory);
     final int size = ids.size();
 
     // Position counter - must agree with computeOffset!
@@ -122,6 +147,8 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     double[] bestd = new double[size];
     int[] besti = new int[size];
     initializeNNCache(mat.matrix, bestd, besti);
+    // Buffer for cache entries that need a slow refresh:
+    int[] refresh = new int[size];
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids, dq.getDistanceFunction().isSquared());
@@ -131,43 +158,61 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     DBIDArrayIter ix = mat.ix;
     for(int i = 1, end = size; i < size; i++) {
       end = AGNES.shrinkActiveSet(ix, builder, end, //
-          findMerge(end, mat, bestd, besti, builder));
+          findMerge(end, mat, bestd, besti, refresh, builder));
       LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
+    mat.destroy();
 
     return builder.complete();
   }
 
   /**
-   * Initialize the NN cache.
+   * Initialize the NN cache, in parallel.
    *
    * @param scratch Scratch space
    * @param bestd Best distance
    * @param besti Best index
    */
-  private static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  private static void initializeNNCache(TriangleStorage scratch, double[] bestd, int[] besti) {
     final int size = bestd.length;
-    Arrays.fill(bestd, Double.POSITIVE_INFINITY);
-    Arrays.fill(besti, -1);
-    for(int x = 0, p = 0; x < size; x++) {
-      assert (p == MatrixParadigm.triangleSize(x));
-      double bestdx = Double.POSITIVE_INFINITY;
-      int bestix = -1;
-      for(int y = 0; y < x; y++, p++) {
-        final double v = scratch[p];
-        if(v < bestd[y]) {
-          bestd[y] = v;
-          besti[y] = x;
+    ParallelExecutor.run(size, refreshChunksize(size), (start, end) -> {
+      for(int j = start; j < end; j++) {
+        double bestdj = Double.POSITIVE_INFINITY;
+        int bestij = -1;
+        // Row j, i.e. (j, i) with i < j
+        long o = MatrixParadigm.triangleSize(j);
+        for(int i = 0; i < j; i++, o++) {
+          final double v = scratch.get(o);
+          if(v < bestdj) {
+            bestdj = v;
+            bestij = i;
+          }
         }
-        if(v < bestdx) {
-          bestdx = v;
-          bestix = y;
+        // Column j, i.e. (i, j) with j < i
+        o += j; // Skip (j, j), continue with (j + 1, j)
+        for(int i = j + 1; i < size; o += i, i++) {
+          final double v = scratch.get(o);
+          if(v < bestdj) {
+            bestdj = v;
+            bestij = i;
+          }
         }
+        bestd[j] = bestdj;
+        besti[j] = bestij;
       }
-      bestd[x] = bestdx;
-      besti[x] = bestix;
-    }
+    });
+  }
+
+  /**
+   * Number of cache entries to refresh at once, each of which needs a scan of
+   * up to size entries.
+   *
+   * @param size Data set size
+   * @return Chunk size
+   */
+  private static int refreshChunksize(int size) {
+    return Math.max(1, REFRESH_CHUNK / Math.max(size, 1));
   }
 
   /**
@@ -179,10 +224,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param mat Matrix paradigm
    * @param bestd Best distance
    * @param besti Index of best distance
+   * @param refresh Buffer for cache entries to refresh
    * @param builder Hierarchy builder
    * @return x, for shrinking the working set.
    */
-  protected int findMerge(int size, MatrixParadigm mat, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
+  protected int findMerge(int size, MatrixParadigm mat, double[] bestd, int[] besti, int[] refresh, PointerHierarchyRepresentationBuilder builder) {
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
@@ -201,7 +247,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
     assert (x >= 0 && y >= 0);
     assert (y < x); // We could swap otherwise, but this shouldn't arise.
-    merge(size, mat, bestd, besti, builder, mindist, x, y);
+    merge(size, mat, bestd, besti, refresh, builder, mindist, x, y);
     return x;
   }
 
@@ -212,12 +258,13 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param mat Matrix paradigm
    * @param bestd Best distance
    * @param besti Index of best distance
+   * @param refresh Buffer for cache entries to refresh
    * @param builder Hierarchy builder
    * @param mindist Distance that was used for merging
    * @param x First matrix position
    * @param y Second matrix position
    */
-  protected void merge(int size, MatrixParadigm mat, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+  protected void merge(int size, MatrixParadigm mat, double[] bestd, int[] besti, int[] refresh, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
     // Avoid allocating memory, by reusing existing iterators:
     final DBIDArrayIter ix = mat.ix.seek(x), iy = mat.iy.seek(y);
     if(LOG.isDebuggingFine()) {
@@ -235,10 +282,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     besti[x] = -1;
 
     // Note: this changes iy.
-    updateMatrix(size, mat.matrix, iy, bestd, besti, builder, mindist, x, y, sizex, sizey);
+    int n = updateMatrix(size, mat.matrix, iy, bestd, besti, refresh, builder, mindist, x, y, sizex, sizey);
     if(besti[y] == x) {
-      findBest(size, mat.matrix, bestd, besti, y);
+      refresh[n++] = y;
     }
+    refreshBest(size, mat.matrix, bestd, besti, refresh, n);
   }
 
   /**
@@ -249,18 +297,21 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param ij Iterator to reuse
    * @param bestd Best distance
    * @param besti Index of best distance
+   * @param refresh Output buffer for cache entries to refresh
    * @param builder Hierarchy builder
    * @param mindist Distance that was used for merging
    * @param x First matrix position
    * @param y Second matrix position
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
+   * @return Number of cache entries to refresh
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected int updateMatrix(int size, TriangleStorage scratch, DBIDArrayIter ij, double[] bestd, int[] besti, int[] refresh, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
-    final int xbase = MatrixParadigm.triangleSize(x);
-    final int ybase = MatrixParadigm.triangleSize(y);
+    final long xbase = MatrixParadigm.triangleSize(x);
+    final long ybase = MatrixParadigm.triangleSize(y);
 
+    int n = 0;
     // Write to (y, j), with j < y
     int j = 0;
     for(; j < y; j++) {
@@ -268,21 +319,27 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
-      updateCache(size, scratch, bestd, besti, x, y, j, d);
+      final long yb = ybase + j;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist);
+      scratch.set(yb, d);
+      if(updateCache(bestd, besti, x, y, j, d)) {
+        refresh[n++] = j;
+      }
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
-    int jbase = MatrixParadigm.triangleSize(j);
+    long jbase = MatrixParadigm.triangleSize(j);
     for(; j < x; jbase += j++) {
       if(builder.isLinked(ij.seek(j))) {
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
-      updateCache(size, scratch, bestd, besti, x, y, j, d);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
+      if(updateCache(bestd, besti, x, y, j, d)) {
+        refresh[n++] = j;
+      }
     }
     jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
@@ -291,58 +348,90 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jb], sizej, mindist);
-      updateCache(size, scratch, bestd, besti, x, y, j, d);
+      final long jb = jbase + y;
+      final double d = linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
+      if(updateCache(bestd, besti, x, y, j, d)) {
+        refresh[n++] = j;
+      }
     }
+    return n;
   }
 
   /**
    * Update the cache.
    *
-   * @param size Working set size
-   * @param scratch Scratch matrix
    * @param bestd Best distance
    * @param besti Best index
    * @param x First cluster
    * @param y Second cluster, {@code y < x}
    * @param j Updated value d(y, j)
    * @param d New distance
+   * @return {@code true} if the cache entry of j needs a slow refresh.
    */
-  private void updateCache(int size, double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  private static boolean updateCache(double[] bestd, int[] besti, int x, int y, int j, double d) {
     // New best
     if(d <= bestd[j]) {
       bestd[j] = d;
       besti[j] = y;
-      return;
+      return false;
     }
     // Needs slow update.
-    if(besti[j] == x || besti[j] == y) {
-      findBest(size, scratch, bestd, besti, j);
-    }
+    return besti[j] == x || besti[j] == y;
+  }
+
+  /**
+   * Refresh the cache entries, in parallel if worthwhile.
+   * <p>
+   * Each refresh only depends on the row and column of the refreshed object,
+   * so deferring them to after the matrix update does not change the result.
+   *
+   * @param size Working set size
+   * @param scratch Scratch matrix
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param refresh Cache entries to refresh
+   * @param n Number of entries to refresh
+   */
+  private static void refreshBest(int size, TriangleStorage scratch, double[] bestd, int[] besti, int[] refresh, int n) {
+    ParallelExecutor.run(n, refreshChunksize(size), (start, end) -> {
+      for(int i = start; i < end; i++) {
+        findBest(size, scratch, bestd, besti, refresh[i]);
+      }
+    });
   }
 
-  protected void findBest(int size, double[] scratch, double[] bestd, int[] besti, int j) {
-    final int jbase = MatrixParadigm.triangleSize(j);
+  /**
+   * Find the best merge partner of an object, by scanning its row and column.
+   *
+   * @param size Working set size
+   * @param scratch Scratch matrix
+   * @param bestd Best distance
+   * @param besti Best index
+   * @param j Object to update
+   */
+  protected static void findBest(int size, TriangleStorage scratch, double[] bestd, int[] besti, int j) {
+    long o = MatrixParadigm.triangleSize(j);
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
     int bestij = -1;
-    for(int i = 0, o = jbase; i < j; i++, o++) {
+    for(int i = 0; i < j; i++, o++) {
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = scratch.get(o);
       if(dist <= bestdj) {
         bestdj = dist;
         bestij = i;
       }
     }
-    for(int i = j + 1, o = jbase + j + j; i < size; o += i, i++) {
+    o += j; // Skip (j, j), continue with (j + 1, j)
+    for(int i = j + 1; i < size; o += i, i++) {
       // assert(o == MatrixParadigm.triangleSize(i) + j);
       if(besti[i] < 0) {
         continue;
       }
-      final double dist = scratch[o];
+      final double dist = scratch.get(o);
       if(dist <= bestdj) {
         bestdj = dist;
         bestij = i;
@@ -378,6 +467,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
      */
     protected Linkage linkage;
 
+    /**
+     * Storage backend of the distance matrix.
+     */
+    protected TriangleStorageFactory matrixFactory;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -391,11 +485,16 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      ObjectParameter<TriangleStorageFactory> matrixP = new ObjectParameter<>(AGNES.Parameterizer.MATRIX_ID, TriangleStorageFactory.class, DoubleTriangleStorageFactory.class);
+      if(config.grab(matrixP)) {
+        matrixFactory = matrixP.instantiateClass(config);
+      }
     }
 
     @Override
     protected AnderbergHierarchicalClustering<O> makeInstance() {
-      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage);
+      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage, matrixFactory);
     }
   }
 }
@@ -20,17 +20,27 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
+import java.util.function.DoubleUnaryOperator;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.DoubleTriangleStorageFactory;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangleStorage;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix.TriangleStorageFactory;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 
 /**
  * Shared code for algorithms that work on a strict matrix paradigm.
  *
  * Note that this requires \(O(n^2)\) memory (and often \(O(n^3)\) runtime).
+ * The storage backend is pluggable, to reduce the memory requirements (e.g.,
+ * using float precision) or to use a memory-mapped file.
  *
  * This class bridges the gap from the relational (indexed by identifiers) and
  * the matrix view (indexed by integers 0...n-1).
@@ -49,7 +59,7 @@ public class MatrixParadigm {
   /**
    * Distance matrix (<b>modifiable</b>).
    */
-  public final double[] matrix;
+  public final TriangleStorage matrix;
 
   /**
    * Number of rows/columns.
@@ -57,21 +67,36 @@ public class MatrixParadigm {
   public final int size;
 
   /**
-   * Constructor.
+   * Object ids, for creating additional iterators.
+   */
+  private final ArrayDBIDs ids;
+
+  /**
+   * Number of columns per tile when computing the distance matrix.
+   */
+  private static final int TILE_SIZE = 256;
+
+  /**
+   * Constructor, using double precision storage on the heap.
    *
    * @param ids Database ids.
    */
   public MatrixParadigm(DBIDs ids) {
+    this(ids, DoubleTriangleStorageFactory.STATIC);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param ids Database ids.
+   * @param factory Storage factory
+   */
+  public MatrixParadigm(DBIDs ids, TriangleStorageFactory factory) {
     size = ids.size();
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-          0x10000 // = 65535
-          + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
-    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    ArrayDBIDs aids = this.ids = DBIDUtil.ensureArray(ids);
     ix = aids.iter();
     iy = aids.iter();
-    matrix = new double[triangleSize(size)];
+    matrix = factory.newStorage(triangleSize(size));
   }
 
   /**
@@ -80,8 +105,15 @@ public class MatrixParadigm {
    * @param x Offset
    * @return Size of complete triangle
    */
-  public static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  public static long triangleSize(int x) {
+    return ((long) x * (x - 1)) >>> 1;
+  }
+
+  /**
+   * Release the matrix storage.
+   */
+  public void destroy() {
+    matrix.destroy();
   }
 
   /**
@@ -96,8 +128,8 @@ public class MatrixParadigm {
    */
   public double get(int x, int y) {
     return (x == y) ? 0 : (x < y) //
-        ? matrix[MatrixParadigm.triangleSize(y) + x] //
-        : matrix[MatrixParadigm.triangleSize(x) + y];
+        ? matrix.get(MatrixParadigm.triangleSize(y) + x) //
+        : matrix.get(MatrixParadigm.triangleSize(x) + y);
   }
 
   /**
@@ -107,16 +139,53 @@ public class MatrixParadigm {
    * @return this
    */
   public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq) {
-    final DBIDArrayIter ix = this.ix, iy = this.iy;
-    final double[] matrix = this.matrix;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      final int x = ix.getOffset();
-      assert (pos == triangleSize(x));
-      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
-        matrix[pos++] = dq.distance(ix, iy);
+    return initializeWithDistances(dq, null, null, null);
+  }
+
+  /**
+   * Initialize a distance matrix, using all threads of the current
+   * {@link ParallelCore}.
+   * <p>
+   * Rows are distributed to the worker threads, and each block of rows is
+   * filled in tiles of {@link #TILE_SIZE} columns, to improve cache locality.
+   *
+   * @param dq Distance query
+   * @param transform Transformation of the distances, may be {@code null}
+   * @param prog Progress, counting rows, may be {@code null}
+   * @param log Logger for progress
+   * @return this
+   */
+  public MatrixParadigm initializeWithDistances(DistanceQuery<?> dq, DoubleUnaryOperator transform, FiniteProgress prog, Logging log) {
+    final ArrayDBIDs ids = this.ids;
+    final TriangleStorage matrix = this.matrix;
+    // Rows are expensive, at least size/2 distances on average:
+    final int chunksize = Math.max(1, Math.min(64, size / (ParallelCore.getCore().getParallelism() << 4)));
+    ParallelExecutor.run(size, chunksize, (start, end) -> {
+      final DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      for(int c0 = 0; c0 < end - 1; c0 += TILE_SIZE) {
+        final int c1 = c0 + TILE_SIZE;
+        for(int x = Math.max(start, c0 + 1); x < end; x++) {
+          ix.seek(x);
+          final int cend = x < c1 ? x : c1;
+          long pos = triangleSize(x) + c0;
+          if(transform == null) {
+            for(iy.seek(c0); iy.getOffset() < cend; iy.advance()) {
+              matrix.set(pos++, dq.distance(ix, iy));
+            }
+          }
+          else {
+            for(iy.seek(c0); iy.getOffset() < cend; iy.advance()) {
+              matrix.set(pos++, transform.applyAsDouble(dq.distance(ix, iy)));
+            }
+          }
+        }
+      }
+      if(prog != null) {
+        for(int x = start; x < end; x++) {
+          prog.incrementProcessed(log);
+        }
       }
-    }
+    });
     return this;
   }
 }
@@ -0,0 +1,166 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Keep the distance matrix on the Java heap, with double precision.
+ * <p>
+ * Matrixes that do not fit into a single Java array (about 65535 objects) are
+ * split into chunks of {@code 2^27} values.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has DoubleArrayStorage oneway - - «create»
+ * @apiviz.has ChunkedDoubleStorage oneway - - «create»
+ */
+public class DoubleTriangleStorageFactory implements TriangleStorageFactory {
+  /**
+   * Static instance.
+   */
+  public static final DoubleTriangleStorageFactory STATIC = new DoubleTriangleStorageFactory();
+
+  /**
+   * Maximum size of a Java array (some JVMs reserve a few header words).
+   */
+  protected static final long MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Default number of bits used for the position within a chunk.
+   */
+  protected static final int CHUNK_SHIFT = 27;
+
+  @Override
+  public TriangleStorage newStorage(long size) {
+    return size <= MAX_ARRAY_SIZE ? new DoubleArrayStorage((int) size) : new ChunkedDoubleStorage(size, CHUNK_SHIFT);
+  }
+
+  /**
+   * Storage in a single double array.
+   *
+   * @author Erich Schubert
+   */
+  public static class DoubleArrayStorage implements TriangleStorage {
+    /**
+     * Data array.
+     */
+    private final double[] data;
+
+    /**
+     * Constructor.
+     *
+     * @param size Size
+     */
+    public DoubleArrayStorage(int size) {
+      this.data = new double[size];
+    }
+
+    @Override
+    public double get(long pos) {
+      return data[(int) pos];
+    }
+
+    @Override
+    public void set(long pos, double v) {
+      data[(int) pos] = v;
+    }
+
+    @Override
+    public long size() {
+      return data.length;
+    }
+  }
+
+  /**
+   * Storage in chunks of double arrays.
+   *
+   * @author Erich Schubert
+   */
+  public static class ChunkedDoubleStorage implements TriangleStorage {
+    /**
+     * Number of bits used for the position within a chunk.
+     */
+    private final int shift;
+
+    /**
+     * Mask for the position within a chunk.
+     */
+    private final long mask;
+
+    /**
+     * Data chunks.
+     */
+    private final double[][] chunks;
+
+    /**
+     * Size.
+     */
+    private final long size;
+
+    /**
+     * Constructor.
+     *
+     * @param size Size
+     * @param shift Number of bits used for the position within a chunk
+     */
+    public ChunkedDoubleStorage(long size, int shift) {
+      this.size = size;
+      this.shift = shift;
+      this.mask = (1L << shift) - 1;
+      final int nchunks = (int) ((size + mask) >>> shift);
+      this.chunks = new double[nchunks][];
+      for(int i = 0; i < nchunks; i++) {
+        chunks[i] = new double[(int) Math.min(size - ((long) i << shift), 1L << shift)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> shift)][(int) (pos & mask)];
+    }
+
+    @Override
+    public void set(long pos, double v) {
+      chunks[(int) (pos >>> shift)][(int) (pos & mask)] = v;
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected DoubleTriangleStorageFactory makeInstance() {
+      return STATIC;
+    }
+  }
+}
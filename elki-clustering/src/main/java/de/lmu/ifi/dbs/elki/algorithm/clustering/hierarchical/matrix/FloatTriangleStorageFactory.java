@@ -0,0 +1,125 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Keep the distance matrix on the Java heap, with single (float) precision.
+ * <p>
+ * This halves the memory requirements, at the cost of rounding all distances
+ * (and merge distances) to float precision. Large matrixes are split into
+ * chunks of {@code 2^28} values.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has FloatStorage oneway - - «create»
+ */
+public class FloatTriangleStorageFactory implements TriangleStorageFactory {
+  /**
+   * Static instance.
+   */
+  public static final FloatTriangleStorageFactory STATIC = new FloatTriangleStorageFactory();
+
+  /**
+   * Default number of bits used for the position within a chunk.
+   */
+  protected static final int CHUNK_SHIFT = 28;
+
+  @Override
+  public TriangleStorage newStorage(long size) {
+    return new FloatStorage(size, CHUNK_SHIFT);
+  }
+
+  /**
+   * Storage in chunks of float arrays.
+   *
+   * @author Erich Schubert
+   */
+  public static class FloatStorage implements TriangleStorage {
+    /**
+     * Number of bits used for the position within a chunk.
+     */
+    private final int shift;
+
+    /**
+     * Mask for the position within a chunk.
+     */
+    private final long mask;
+
+    /**
+     * Data chunks.
+     */
+    private final float[][] chunks;
+
+    /**
+     * Size.
+     */
+    private final long size;
+
+    /**
+     * Constructor.
+     *
+     * @param size Size
+     * @param shift Number of bits used for the position within a chunk
+     */
+    public FloatStorage(long size, int shift) {
+      this.size = size;
+      this.shift = shift;
+      this.mask = (1L << shift) - 1;
+      final int nchunks = (int) ((size + mask) >>> shift);
+      this.chunks = new float[nchunks][];
+      for(int i = 0; i < nchunks; i++) {
+        chunks[i] = new float[(int) Math.min(size - ((long) i << shift), 1L << shift)];
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> shift)][(int) (pos & mask)];
+    }
+
+    @Override
+    public void set(long pos, double v) {
+      chunks[(int) (pos >>> shift)][(int) (pos & mask)] = (float) v;
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected FloatTriangleStorageFactory makeInstance() {
+      return STATIC;
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.WrongParameterValueException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Keep the distance matrix in a memory-mapped temporary file, so that the
+ * operating system can page it out. This allows clustering data sets whose
+ * matrix does not fit into main memory, but performance will degrade
+ * drastically once the matrix has to be paged.
+ * <p>
+ * Because a single mapping is limited to 2 GB, the file is mapped in segments
+ * of {@code 2^30} bytes. The file is deleted immediately after mapping it.
+ * <p>
+ * The {@code OnDiskUpperTriangleMatrix} of the persistence module is not used,
+ * because it is limited to integer offsets (and hence 65535 objects), and
+ * synchronizes every access.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has MappedStorage oneway - - «create»
+ */
+public class MappedTriangleStorageFactory implements TriangleStorageFactory {
+  /**
+   * Directory for the temporary files, {@code null} for the system default.
+   */
+  private File directory;
+
+  /**
+   * Store single precision values only.
+   */
+  private boolean useFloat;
+
+  /**
+   * Constructor.
+   *
+   * @param directory Directory for temporary files, {@code null} for the
+   *        system default.
+   * @param useFloat Store single precision values only
+   */
+  public MappedTriangleStorageFactory(File directory, boolean useFloat) {
+    super();
+    this.directory = directory;
+    this.useFloat = useFloat;
+  }
+
+  @Override
+  public TriangleStorage newStorage(long size) {
+    return new MappedStorage(size, useFloat, directory);
+  }
+
+  /**
+   * Storage in memory-mapped buffers.
+   *
+   * @author Erich Schubert
+   */
+  public static class MappedStorage implements TriangleStorage {
+    /**
+     * Number of bits used for the byte position within a segment.
+     */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /**
+     * Number of bits used for the element position within a segment.
+     */
+    private final int shift;
+
+    /**
+     * Mask for the element position within a segment.
+     */
+    private final long mask;
+
+    /**
+     * Element size, as shift (3 for double, 2 for float).
+     */
+    private final int eshift;
+
+    /**
+     * Data segments.
+     */
+    private ByteBuffer[] segments;
+
+    /**
+     * Size.
+     */
+    private final long size;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of values
+     * @param useFloat Store single precision values only
+     * @param directory Directory for the temporary file, may be {@code null}
+     */
+    public MappedStorage(long size, boolean useFloat, File directory) {
+      this(size, useFloat, directory, SEGMENT_SHIFT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of values
+     * @param useFloat Store single precision values only
+     * @param directory Directory for the temporary file, may be {@code null}
+     * @param segmentShift Number of bits used for the byte position within a
+     *        segment
+     */
+    public MappedStorage(long size, boolean useFloat, File directory, int segmentShift) {
+      this.size = size;
+      this.eshift = useFloat ? 2 : 3;
+      this.shift = segmentShift - eshift;
+      this.mask = (1L << shift) - 1;
+      final int nseg = (int) ((size + mask) >>> shift);
+      this.segments = new ByteBuffer[nseg];
+      File file = null;
+      try {
+        file = File.createTempFile("elki-", ".matrix", directory);
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+          final FileChannel channel = raf.getChannel();
+          long pos = 0;
+          for(int i = 0; i < nseg; i++) {
+            final long len = Math.min(size - ((long) i << shift), 1L << shift) << eshift;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, pos, len).order(ByteOrder.nativeOrder());
+            pos += len;
+          }
+        }
+      }
+      catch(IOException e) {
+        throw new AbortException("Could not map distance matrix file.", e);
+      }
+      finally {
+        // The mapping remains valid, the data is not needed afterwards.
+        if(file != null) {
+          file.delete();
+        }
+      }
+    }
+
+    @Override
+    public double get(long pos) {
+      final int off = (int) (pos & mask) << eshift;
+      final ByteBuffer seg = segments[(int) (pos >>> shift)];
+      return eshift == 3 ? seg.getDouble(off) : seg.getFloat(off);
+    }
+
+    @Override
+    public void set(long pos, double v) {
+      final int off = (int) (pos & mask) << eshift;
+      final ByteBuffer seg = segments[(int) (pos >>> shift)];
+      if(eshift == 3) {
+        seg.putDouble(off, v);
+      }
+      else {
+        seg.putFloat(off, (float) v);
+      }
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+
+    @Override
+    public void destroy() {
+      // Mappings are released by the garbage collector.
+      segments = null;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Directory for the temporary files.
+     */
+    public static final OptionID DIRECTORY_ID = new OptionID("matrix.directory", "Directory for the memory-mapped distance matrix file. By default, the system temporary directory is used.");
+
+    /**
+     * Flag to use single precision.
+     */
+    public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store the distance matrix with single (float) precision only.");
+
+    /**
+     * Directory for the temporary files.
+     */
+    protected File directory;
+
+    /**
+     * Store single precision values only.
+     */
+    protected boolean useFloat;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter directoryP = new FileParameter(DIRECTORY_ID, FileParameter.FileType.OUTPUT_FILE) //
+          .setOptional(true);
+      if(config.grab(directoryP)) {
+        directory = directoryP.getValue();
+        if(!directory.isDirectory() || !directory.canWrite()) {
+          config.reportError(new WrongParameterValueException(directoryP, directoryP.getValueAsString(), "Not a writable directory."));
+        }
+      }
+      Flag floatF = new Flag(FLOAT_ID);
+      if(config.grab(floatF)) {
+        useFloat = floatF.isTrue();
+      }
+    }
+
+    @Override
+    protected MappedTriangleStorageFactory makeInstance() {
+      return new MappedTriangleStorageFactory(directory, useFloat);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+/**
+ * Storage for the (lower) triangle of a distance matrix, indexed by a linear
+ * position that may exceed the integer range.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public interface TriangleStorage {
+  /**
+   * Get the value at a position.
+   *
+   * @param pos Position
+   * @return Value
+   */
+  double get(long pos);
+
+  /**
+   * Set the value at a position.
+   * <p>
+   * Different positions may be written concurrently by different threads.
+   *
+   * @param pos Position
+   * @param v Value
+   */
+  void set(long pos, double v);
+
+  /**
+   * Number of values stored.
+   *
+   * @return Size
+   */
+  long size();
+
+  /**
+   * Release the storage.
+   */
+  default void destroy() {
+    // Nothing to do by default.
+  }
+}
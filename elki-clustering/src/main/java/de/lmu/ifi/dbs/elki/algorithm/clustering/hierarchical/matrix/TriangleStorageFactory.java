@@ -0,0 +1,40 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+/**
+ * Factory for the storage of a triangular distance matrix.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.stereotype factory
+ * @apiviz.has TriangleStorage oneway - - «create»
+ */
+public interface TriangleStorageFactory {
+  /**
+   * Allocate a new storage.
+   *
+   * @param size Number of values to store
+   * @return Storage
+   */
+  TriangleStorage newStorage(long size);
+}
@@ -115,6 +115,50 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
       cluster.clear();
     }
     final NumberVectorDistanceFunction<?> df = getDistanceFunction();
+    if(TypeUtil.SPARSE_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation())) {
+      return assignToNearestClusterSparse(relation, means, clusters, assignment, varsum);
+    }
+    // Pack the means into a single block, for the block distance API.
+    final int dim = means[0].length;
+    final double[] block = new double[k * dim], buf = new double[dim], dists = new double[k];
+    for(int i = 0; i < k; i++) {
+      System.arraycopy(means[i], 0, block, i * dim, dim);
+    }
+    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+      NumberVector fv = relation.get(iditer);
+      for(int d = 0; d < dim; d++) {
+        buf[d] = fv.doubleValue(d);
+      }
+      df.distances(buf, block, 0, dim, k, dists);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int i = 0; i < k; i++) {
+        if(dists[i] < mindist) {
+          minIndex = i;
+          mindist = dists[i];
+        }
+      }
+      varsum[minIndex] += mindist;
+      clusters.get(minIndex).add(iditer);
+      changed |= assignment.putInt(iditer, minIndex) != minIndex;
+    }
+    return changed;
+  }
+
+  /**
+   * Assign sparse vectors to the nearest cluster, without converting them to
+   * dense vectors.
+   *
+   * @param relation the database to cluster
+   * @param means a list of k means
+   * @param clusters cluster assignment
+   * @param assignment Current cluster assignment
+   * @param varsum Variance sum output
+   * @return true when the object was reassigned
+   */
+  private boolean assignToNearestClusterSparse(Relation<? extends NumberVector> relation, double[][] means, List<? extends ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] varsum) {
+    boolean changed = false;
+    final NumberVectorDistanceFunction<?> df = getDistanceFunction();
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
       double mindist = Double.POSITIVE_INFINITY;
       NumberVector fv = relation.get(iditer);
@@ -264,8 +308,11 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
     if(newsize == 0) {
       return; // Keep old mean
     }
-    // Note: numerically stabilized version:
-    plusTimesEquals(mean, minusEquals(vec.toArray(), mean), op / newsize);
+    // Note: numerically stabilized version, without allocating a copy:
+    final double s = op / newsize;
+    for(int j = 0; j < mean.length; j++) {
+      mean[j] += (vec.doubleValue(j) - mean[j]) * s;
+    }
   }
 
   /**
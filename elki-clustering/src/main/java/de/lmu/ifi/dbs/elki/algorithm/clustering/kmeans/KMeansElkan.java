@@ -88,11 +88,6 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
    */
   private static final Logging LOG = Logging.getLogger(KMeansElkan.class);
 
-  /**
-   * Key for statistics logging.
-   */
-  private static final String KEY = KMeansElkan.class.getName();
-
   /**
    * Flag whether to compute the final variance statistic.
    */
@@ -117,9 +112,12 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
     if(relation.size() <= 0) {
       return new Clustering<>("k-Means Clustering", "kmeans-clustering");
     }
+    // Log with the logger and key of the actual class, for subclasses.
+    final Logging log = getLogger();
+    final String key = getClass().getName();
     // Choose initial means
-    if(LOG.isStatistics()) {
-      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    if(log.isStatistics()) {
+      log.statistics(new StringStatistic(key + ".initialization", initializer.toString()));
     }
     double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
     // Setup cluster assignment store
@@ -143,11 +141,11 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
     // Cluster distances
     double[][] cdist = new double[k][k];
 
-    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
-    LongStatistic rstat = LOG.isStatistics() ? new LongStatistic(this.getClass().getName() + ".reassignments") : null;
+    IndefiniteProgress prog = log.isVerbose() ? new IndefiniteProgress("K-Means iteration", log) : null;
+    LongStatistic rstat = log.isStatistics() ? new LongStatistic(key + ".reassignments") : null;
     int iteration = 0;
     for(; maxiter <= 0 || iteration < maxiter; iteration++) {
-      LOG.incrementProcessed(prog);
+      log.incrementProcessed(prog);
       int changed;
       if(iteration == 0) {
         changed = initialAssignToNearestCluster(relation, means, sums, clusters, assignment, upper, lower);
@@ -158,7 +156,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
       }
       if(rstat != null) {
         rstat.setLong(changed);
-        LOG.statistics(rstat);
+        log.statistics(rstat);
       }
       // Stop if no cluster assignment changed.
       if(changed == 0) {
@@ -178,9 +176,9 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
         timesEquals(sums[i], s > 0 ? s : 1.);
       }
     }
-    LOG.setCompleted(prog);
-    if(LOG.isStatistics()) {
-      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+    log.setCompleted(prog);
+    if(log.isStatistics()) {
+      log.statistics(new LongStatistic(key + ".iterations", iteration));
     }
     upper.destroy();
     lower.destroy();
@@ -205,8 +203,8 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
       KMeansModel model = new KMeansModel(mean, varsum);
       result.addToplevelCluster(new Cluster<>(ids, model));
     }
-    if(LOG.isStatistics() && varstat) {
-      LOG.statistics(new DoubleStatistic(this.getClass().getName() + ".variance-sum", totalvariance));
+    if(log.isStatistics() && varstat) {
+      log.statistics(new DoubleStatistic(key + ".variance-sum", totalvariance));
     }
     return result;
   }
@@ -218,7 +216,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
    * @param sep Output array of separation
    * @param cdist Center-to-Center distances
    */
-  private void recomputeSeperation(double[][] means, double[] sep, double[][] cdist) {
+  protected void recomputeSeperation(double[][] means, double[] sep, double[][] cdist) {
     final int k = means.length;
     assert (sep.length == k);
     boolean issquared = distanceFunction.isSquared();
@@ -250,7 +248,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
    * @param lower Lower bounds
    * @return Number of changes (i.e. relation size)
    */
-  private int initialAssignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower) {
+  protected int initialAssignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower) {
     assert (k == means.length);
     final boolean issquared = distanceFunction.isSquared();
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
@@ -296,7 +294,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
    * @param lower Lower bounds
    * @return true when the object was reassigned
    */
-  private int assignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] sep, double[][] cdist, WritableDoubleDataStore upper, WritableDataStore<double[]> lower) {
+  protected int assignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] sep, double[][] cdist, WritableDoubleDataStore upper, WritableDataStore<double[]> lower) {
     assert (k == means.length);
     final boolean issquared = distanceFunction.isSquared();
     int changed = 0;
@@ -362,7 +360,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
    * @param dists Distances moved
    * @return Maximum distance moved
    */
-  private double maxMoved(double[][] means, double[][] newmeans, double[] dists) {
+  protected double maxMoved(double[][] means, double[][] newmeans, double[] dists) {
     assert (means.length == k);
     assert (newmeans.length == k);
     assert (dists.length == k);
@@ -386,7 +384,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
    * @param lower Lower bounds
    * @param move Movement of centers
    */
-  private void updateBounds(Relation<V> relation, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, double[] move) {
+  protected void updateBounds(Relation<V> relation, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, double[] move) {
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
       upper.increment(it, move[assignment.intValue(it)]);
       double[] l = lower.get(it);
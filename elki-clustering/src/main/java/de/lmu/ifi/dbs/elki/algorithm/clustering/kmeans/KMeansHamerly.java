@@ -83,11 +83,6 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
    */
   private static final Logging LOG = Logging.getLogger(KMeansHamerly.class);
 
-  /**
-   * Key for statistics logging.
-   */
-  private static final String KEY = KMeansHamerly.class.getName();
-
   /**
    * Flag whether to compute the final variance statistic.
    */
@@ -112,9 +107,12 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
     if(relation.size() <= 0) {
       return new Clustering<>("k-Means Clustering", "kmeans-clustering");
     }
+    // Log with the logger and key of the actual class, for subclasses.
+    final Logging log = getLogger();
+    final String key = getClass().getName();
     // Choose initial means
-    if(LOG.isStatistics()) {
-      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    if(log.isStatistics()) {
+      log.statistics(new StringStatistic(key + ".initialization", initializer.toString()));
     }
     double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
     // Setup cluster assignment store
@@ -132,11 +130,11 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
     // Separation of means / distance moved.
     double[] sep = new double[k];
 
-    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
-    LongStatistic rstat = LOG.isStatistics() ? new LongStatistic(KEY + ".reassignments") : null;
+    IndefiniteProgress prog = log.isVerbose() ? new IndefiniteProgress("K-Means iteration", log) : null;
+    LongStatistic rstat = log.isStatistics() ? new LongStatistic(key + ".reassignments") : null;
     int iteration = 0;
     for(; maxiter <= 0 || iteration < maxiter; iteration++) {
-      LOG.incrementProcessed(prog);
+      log.incrementProcessed(prog);
       int changed;
       if(iteration == 0) {
         changed = initialAssignToNearestCluster(relation, means, sums, clusters, assignment, upper, lower);
@@ -147,7 +145,7 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
       }
       if(rstat != null) {
         rstat.setLong(changed);
-        LOG.statistics(rstat);
+        log.statistics(rstat);
       }
       // Stop if no cluster assignment changed.
       if(changed == 0) {
@@ -167,9 +165,9 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
         timesEquals(sums[i], s > 0 ? s : 1.);
       }
     }
-    LOG.setCompleted(prog);
-    if(LOG.isStatistics()) {
-      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+    log.setCompleted(prog);
+    if(log.isStatistics()) {
+      log.statistics(new LongStatistic(key + ".iterations", iteration));
     }
 
     upper.destroy();
@@ -195,8 +193,8 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
       KMeansModel model = new KMeansModel(mean, varsum);
       result.addToplevelCluster(new Cluster<>(ids, model));
     }
-    if(LOG.isStatistics() && varstat) {
-      LOG.statistics(new DoubleStatistic(this.getClass().getName() + ".variance-sum", totalvariance));
+    if(log.isStatistics() && varstat) {
+      log.statistics(new DoubleStatistic(key + ".variance-sum", totalvariance));
     }
     return result;
   }
@@ -207,7 +205,7 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
    * @param means Means
    * @param sep Output array
    */
-  private void recomputeSeperation(double[][] means, double[] sep) {
+  protected void recomputeSeperation(double[][] means, double[] sep) {
     final int k = means.length;
     assert (sep.length == k);
     boolean issquared = distanceFunction.isSquared();
@@ -240,7 +238,7 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
    * @param lower Lower bounds
    * @return true when the object was reassigned
    */
-  private int initialAssignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
+  protected int initialAssignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
     assert (k == means.length);
     boolean issquared = distanceFunction.isSquared();
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
@@ -291,7 +289,7 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
    * @param lower Lower bounds
    * @return true when the object was reassigned
    */
-  private int assignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] sep, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
+  protected int assignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] sep, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
     assert (k == means.length);
     int changed = 0;
     boolean issquared = distanceFunction.isSquared();
@@ -358,7 +356,7 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
    * @param dists Distances moved
    * @return Maximum distance moved
    */
-  private double maxMoved(double[][] means, double[][] newmeans, double[] dists) {
+  protected double maxMoved(double[][] means, double[][] newmeans, double[] dists) {
     assert (means.length == k);
     assert (newmeans.length == k);
     assert (dists.length == k);
@@ -383,7 +381,7 @@ public class KMeansHamerly<V extends NumberVector> extends AbstractKMeans<V, KMe
    * @param move Movement of centers
    * @param delta Maximum center movement.
    */
-  private void updateBounds(Relation<V> relation, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, double[] move, double delta) {
+  protected void updateBounds(Relation<V> relation, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, double[] move, double delta) {
     delta = -delta;
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
       upper.increment(it, move[assignment.intValue(it)]);
@@ -0,0 +1,443 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import net.jafama.FastMath;
+
+/**
+ * Parallel variant of Elkan's fast k-means by exploiting the triangle
+ * inequality.
+ * <p>
+ * This only replaces the assignment and bound update steps of
+ * {@link KMeansElkan}: the bound checks and distance computations are
+ * distributed over all cores
+ * of the current {@link de.lmu.ifi.dbs.elki.parallel.ParallelCore}; each worker
+ * only touches the bounds of its own objects. The new assignments are then
+ * applied to the cluster sums in the order of the relation, so the results are
+ * bit-identical to {@link KMeansElkan} with the same initialization.
+ * <p>
+ * Reference:
+ * <p>
+ * C. Elkan<br>
+ * Using the triangle inequality to accelerate k-means<br>
+ * Proc. 20th International Conference on Machine Learning, ICML 2003
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "C. Elkan", //
+    title = "Using the triangle inequality to accelerate k-means", //
+    booktitle = "Proc. 20th International Conference on Machine Learning, ICML 2003", //
+    url = "http://www.aaai.org/Library/ICML/2003/icml03-022.php", //
+    bibkey = "DBLP:conf/icml/Elkan03")
+public class ParallelKMeansElkan<V extends NumberVector> extends KMeansElkan<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansElkan.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansElkan(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected int initialAssignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower) {
+    assert (k == means.length);
+    return parallelAssign(relation, new AssignProcessor<>(relation, distanceFunction, means, null, null, assignment, upper, lower, true), sums, clusters, assignment);
+  }
+
+  @Override
+  protected int assignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] sep, double[][] cdist, WritableDoubleDataStore upper, WritableDataStore<double[]> lower) {
+    assert (k == means.length);
+    return parallelAssign(relation, new AssignProcessor<>(relation, distanceFunction, means, sep, cdist, assignment, upper, lower, false), sums, clusters, assignment);
+  }
+
+  /**
+   * Run the assignment processor, then apply the changes.
+   *
+   * @param relation Data
+   * @param assign Assignment processor
+   * @param sums Running sums of the new means
+   * @param clusters Current clusters
+   * @param assignment Cluster assignment
+   * @return Number of changes
+   */
+  private int parallelAssign(Relation<V> relation, AssignProcessor<V> assign, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment) {
+    DBIDs ids = relation.getDBIDs();
+    WritableIntegerDataStore previous = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    assign.previous = previous;
+    ParallelExecutor.run(ids, assign);
+    int changed = applyAssignment(relation, sums, clusters, assignment, previous);
+    previous.destroy();
+    return changed;
+  }
+
+  /**
+   * Apply the changed assignments to the clusters and running sums.
+   * <p>
+   * This is done sequentially in the order of the relation, to obtain exactly
+   * the same floating point results as the sequential algorithm.
+   *
+   * @param relation Data
+   * @param sums Running sums of the new means
+   * @param clusters Current clusters
+   * @param assignment New cluster assignment
+   * @param previous Previous cluster assignment
+   * @return Number of changes
+   */
+  static <V extends NumberVector> int applyAssignment(Relation<V> relation, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableIntegerDataStore previous) {
+    int changed = 0;
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      final int orig = previous.intValue(it), cur = assignment.intValue(it);
+      if(orig == cur) {
+        continue;
+      }
+      V fv = relation.get(it);
+      clusters.get(cur).add(it);
+      double[] newmean = sums[cur];
+      if(orig < 0) { // Initial assignment
+        for(int d = 0; d < fv.getDimensionality(); d++) {
+          newmean[d] += fv.doubleValue(d);
+        }
+      }
+      else {
+        clusters.get(orig).remove(it);
+        double[] oldmean = sums[orig];
+        for(int d = 0; d < fv.getDimensionality(); d++) {
+          final double v = fv.doubleValue(d);
+          newmean[d] += v;
+          oldmean[d] -= v;
+        }
+      }
+      ++changed;
+    }
+    return changed;
+  }
+
+  @Override
+  protected void updateBounds(Relation<V> relation, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, double[] move) {
+    ParallelExecutor.run(relation.getDBIDs(), new UpdateBoundsProcessor(assignment, upper, lower, move));
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Processor to (re-)assign objects, if their bounds indicate it is necessary
+   * to do so.
+   * <p>
+   * The processor is stateless, so all workers share the same instance. It only
+   * modifies the bounds and assignments of the object processed.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <V> vector datatype
+   */
+  private static class AssignProcessor<V extends NumberVector> implements Processor, Processor.Instance {
+    /**
+     * Data relation.
+     */
+    private Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    private NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Current means, and center-to-center distances.
+     */
+    private double[][] means, cdist;
+
+    /**
+     * Separation of means.
+     */
+    private double[] sep;
+
+    /**
+     * Current assignment.
+     */
+    private WritableIntegerDataStore assignment;
+
+    /**
+     * Previous assignment (output).
+     */
+    WritableIntegerDataStore previous;
+
+    /**
+     * Upper bounds.
+     */
+    private WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounds.
+     */
+    private WritableDataStore<double[]> lower;
+
+    /**
+     * Flag for the initial assignment.
+     */
+    private boolean initial;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param distance Distance function
+     * @param means Current means (updated in-place by the caller)
+     * @param sep Separation of means
+     * @param cdist Center-to-center distances
+     * @param assignment Cluster assignment
+     * @param upper Upper bounds
+     * @param lower Lower bounds
+     * @param initial Flag for the initial assignment
+     */
+    public AssignProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, double[][] means, double[] sep, double[][] cdist, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, boolean initial) {
+      super();
+      this.relation = relation;
+      this.distance = distance;
+      this.means = means;
+      this.sep = sep;
+      this.cdist = cdist;
+      this.assignment = assignment;
+      this.upper = upper;
+      this.lower = lower;
+      this.initial = initial;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return this;
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to merge.
+    }
+
+    @Override
+    public void map(DBIDRef it) {
+      if(initial) {
+        initialAssign(it);
+      }
+      else {
+        reassign(it);
+      }
+    }
+
+    /**
+     * Initial assignment of an object.
+     *
+     * @param it Object
+     */
+    private void initialAssign(DBIDRef it) {
+      final int k = means.length;
+      final boolean issquared = distance.isSquared();
+      V fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      double best = Double.POSITIVE_INFINITY;
+      int cur = -1;
+      for(int j = 0; j < k; j++) {
+        double dist = distance.distance(fv, DoubleVector.wrap(means[j]));
+        dist = issquared ? FastMath.sqrt(dist) : dist;
+        l[j] = dist;
+        if(dist < best) {
+          cur = j;
+          best = dist;
+        }
+      }
+      previous.putInt(it, -1);
+      assignment.putInt(it, cur);
+      upper.putDouble(it, best);
+    }
+
+    /**
+     * Reassign an object, if the bounds indicate this may be necessary.
+     *
+     * @param it Object
+     */
+    private void reassign(DBIDRef it) {
+      final int k = means.length;
+      final boolean issquared = distance.isSquared();
+      final int orig = assignment.intValue(it);
+      previous.putInt(it, orig);
+      double u = upper.doubleValue(it);
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        return;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      V fv = relation.get(it);
+      double[] l = lower.get(it);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = distance.distance(fv, DoubleVector.wrap(means[cur]));
+          u = issquared ? FastMath.sqrt(u) : u;
+          upper.putDouble(it, u);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
+          }
+        }
+        double dist = distance.distance(fv, DoubleVector.wrap(means[j]));
+        dist = issquared ? FastMath.sqrt(dist) : dist;
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      // Object is to be reassigned.
+      if(cur != orig) {
+        upper.putDouble(it, u); // Remember bound.
+        assignment.putInt(it, cur);
+      }
+    }
+  }
+
+  /**
+   * Processor to update the bounds after the means moved.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class UpdateBoundsProcessor implements Processor, Processor.Instance {
+    /**
+     * Cluster assignment.
+     */
+    private WritableIntegerDataStore assignment;
+
+    /**
+     * Upper bounds.
+     */
+    private WritableDoubleDataStore upper;
+
+    /**
+     * Lower bounds.
+     */
+    private WritableDataStore<double[]> lower;
+
+    /**
+     * Movement of centers.
+     */
+    private double[] move;
+
+    /**
+     * Constructor.
+     *
+     * @param assignment Cluster assignment
+     * @param upper Upper bounds
+     * @param lower Lower bounds
+     * @param move Movement of centers
+     */
+    public UpdateBoundsProcessor(WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, double[] move) {
+      super();
+      this.assignment = assignment;
+      this.upper = upper;
+      this.lower = lower;
+      this.move = move;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return this;
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to merge.
+    }
+
+    @Override
+    public void map(DBIDRef it) {
+      upper.increment(it, move[assignment.intValue(it)]);
+      double[] l = lower.get(it);
+      for(int i = 0; i < l.length; i++) {
+        l[i] -= move[i];
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends KMeansElkan.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected ParallelKMeansElkan<V> makeInstance() {
+      return new ParallelKMeansElkan<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -0,0 +1,356 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansHamerly;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import net.jafama.FastMath;
+
+/**
+ * Parallel variant of Hamerly's fast k-means by exploiting the triangle
+ * inequality.
+ * <p>
+ * This only replaces the assignment and bound update steps of
+ * {@link KMeansHamerly}: the bound checks and distance computations are
+ * distributed over all cores
+ * of the current {@link de.lmu.ifi.dbs.elki.parallel.ParallelCore}. The new
+ * assignments are applied to the cluster sums in the order of the relation,
+ * so the results are bit-identical to {@link KMeansHamerly}.
+ * <p>
+ * Reference:
+ * <p>
+ * G. Hamerly<br>
+ * Making k-means even faster<br>
+ * Proc. 2010 SIAM International Conference on Data Mining
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "G. Hamerly", //
+    title = "Making k-means even faster", //
+    booktitle = "Proc. 2010 SIAM International Conference on Data Mining", //
+    url = "https://doi.org/10.1137/1.9781611972801.12", //
+    bibkey = "DBLP:conf/sdm/Hamerly10")
+public class ParallelKMeansHamerly<V extends NumberVector> extends KMeansHamerly<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelKMeansHamerly.class);
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param varstat Compute the variance statistic
+   */
+  public ParallelKMeansHamerly(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, boolean varstat) {
+    super(distanceFunction, k, maxiter, initializer, varstat);
+  }
+
+  @Override
+  protected int initialAssignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
+    assert (k == means.length);
+    return parallelAssign(relation, new AssignProcessor<>(relation, distanceFunction, means, null, assignment, upper, lower, true), sums, clusters, assignment);
+  }
+
+  @Override
+  protected int assignToNearestCluster(Relation<V> relation, double[][] means, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment, double[] sep, WritableDoubleDataStore upper, WritableDoubleDataStore lower) {
+    assert (k == means.length);
+    return parallelAssign(relation, new AssignProcessor<>(relation, distanceFunction, means, sep, assignment, upper, lower, false), sums, clusters, assignment);
+  }
+
+  /**
+   * Run the assignment processor, then apply the changes.
+   *
+   * @param relation Data
+   * @param assign Assignment processor
+   * @param sums Running sums of the new means
+   * @param clusters Current clusters
+   * @param assignment Cluster assignment
+   * @return Number of changes
+   */
+  private int parallelAssign(Relation<V> relation, AssignProcessor<V> assign, double[][] sums, List<ModifiableDBIDs> clusters, WritableIntegerDataStore assignment) {
+    DBIDs ids = relation.getDBIDs();
+    WritableIntegerDataStore previous = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    assign.previous = previous;
+    ParallelExecutor.run(ids, assign);
+    int changed = ParallelKMeansElkan.applyAssignment(relation, sums, clusters, assignment, previous);
+    previous.destroy();
+    return changed;
+  }
+
+  @Override
+  protected void updateBounds(Relation<V> relation, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, double[] move, double delta) {
+    ParallelExecutor.run(relation.getDBIDs(), new UpdateBoundsProcessor(assignment, upper, lower, move, delta));
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Processor to (re-)assign objects, if their bounds indicate it is necessary
+   * to do so.
+   * <p>
+   * The processor is stateless, so all workers share the same instance. It only
+   * modifies the bounds and assignments of the object processed.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <V> vector datatype
+   */
+  private static class AssignProcessor<V extends NumberVector> implements Processor, Processor.Instance {
+    /**
+     * Data relation.
+     */
+    private Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    private NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Current means.
+     */
+    private double[][] means;
+
+    /**
+     * Separation of means.
+     */
+    private double[] sep;
+
+    /**
+     * Current assignment.
+     */
+    private WritableIntegerDataStore assignment;
+
+    /**
+     * Previous assignment (output).
+     */
+    WritableIntegerDataStore previous;
+
+    /**
+     * Upper and lower bounds.
+     */
+    private WritableDoubleDataStore upper, lower;
+
+    /**
+     * Flag for the initial assignment.
+     */
+    private boolean initial;
+
+    /**
+     * Constructor.
+     *
+     * @param relation Data relation
+     * @param distance Distance function
+     * @param means Current means (updated in-place by the caller)
+     * @param sep Separation of means
+     * @param assignment Cluster assignment
+     * @param upper Upper bounds
+     * @param lower Lower bounds
+     * @param initial Flag for the initial assignment
+     */
+    public AssignProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, double[][] means, double[] sep, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, boolean initial) {
+      super();
+      this.relation = relation;
+      this.distance = distance;
+      this.means = means;
+      this.sep = sep;
+      this.assignment = assignment;
+      this.upper = upper;
+      this.lower = lower;
+      this.initial = initial;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return this;
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to merge.
+    }
+
+    @Override
+    public void map(DBIDRef it) {
+      final int cur = assignment.intValue(it);
+      previous.putInt(it, initial ? -1 : cur);
+      V fv = null;
+      if(!initial) {
+        // Compute the current bound:
+        final double z = lower.doubleValue(it);
+        final double sa = sep[cur];
+        double u = upper.doubleValue(it);
+        if(u <= z || u <= sa) {
+          return;
+        }
+        // Update the upper bound
+        fv = relation.get(it);
+        u = distance.distance(fv, DoubleVector.wrap(means[cur]));
+        u = distance.isSquared() ? FastMath.sqrt(u) : u;
+        upper.putDouble(it, u);
+        if(u <= z || u <= sa) {
+          return;
+        }
+      }
+      else {
+        fv = relation.get(it);
+      }
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < means.length; i++) {
+        double dist = distance.distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      // make squared Euclidean a metric:
+      if(distance.isSquared()) {
+        min1 = FastMath.sqrt(min1);
+        min2 = FastMath.sqrt(min2);
+      }
+      if(initial || minIndex != cur) {
+        assignment.putInt(it, minIndex);
+        upper.putDouble(it, min1);
+      }
+      lower.putDouble(it, min2);
+    }
+  }
+
+  /**
+   * Processor to update the bounds after the means moved.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class UpdateBoundsProcessor implements Processor, Processor.Instance {
+    /**
+     * Cluster assignment.
+     */
+    private WritableIntegerDataStore assignment;
+
+    /**
+     * Upper and lower bounds.
+     */
+    private WritableDoubleDataStore upper, lower;
+
+    /**
+     * Movement of centers.
+     */
+    private double[] move;
+
+    /**
+     * Negative maximum movement.
+     */
+    private double delta;
+
+    /**
+     * Constructor.
+     *
+     * @param assignment Cluster assignment
+     * @param upper Upper bounds
+     * @param lower Lower bounds
+     * @param move Movement of centers
+     * @param delta Maximum center movement
+     */
+    public UpdateBoundsProcessor(WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDoubleDataStore lower, double[] move, double delta) {
+      super();
+      this.assignment = assignment;
+      this.upper = upper;
+      this.lower = lower;
+      this.move = move;
+      this.delta = -delta;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return this;
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to merge.
+    }
+
+    @Override
+    public void map(DBIDRef it) {
+      upper.increment(it, move[assignment.intValue(it)]);
+      lower.increment(it, delta);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends KMeansHamerly.Parameterizer<V> {
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected ParallelKMeansHamerly<V> makeInstance() {
+      return new ParallelKMeansHamerly<>(distanceFunction, k, maxiter, initializer, varstat);
+    }
+  }
+}
@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
 
+import java.io.File;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
@@ -27,6 +29,9 @@ import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.GlobalDataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.mapped.MappedDataStoreFactory;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
 /**
@@ -56,4 +61,30 @@ public class SLINKTest extends AbstractClusterAlgorithmTest {
     testFMeasure(db, clustering, 0.6829722);
     testClusterSizes(clustering, new int[] { 9, 200, 429 });
   }
+
+  /**
+   * Run SLINK with off-heap storage.
+   */
+  @Test
+  public void testSLINKOffHeap() {
+    testWithFactory(new MappedDataStoreFactory(null, 0));
+  }
+
+  /**
+   * Run SLINK with memory-mapped storage.
+   */
+  @Test
+  public void testSLINKMapped() {
+    testWithFactory(new MappedDataStoreFactory(new File(System.getProperty("java.io.tmpdir")), 0));
+  }
+
+  private void testWithFactory(DataStoreFactory factory) {
+    DataStoreFactory prev = GlobalDataStoreFactory.setFactory(factory);
+    try {
+      testSLINKResults();
+    }
+    finally {
+      GlobalDataStoreFactory.setFactory(prev);
+    }
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.matrix;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the distance matrix storage backends.
+ *
+ * @author Erich Schubert
+ */
+public class TriangleStorageTest {
+  /**
+   * Use a small chunk size, to test the chunk boundaries.
+   */
+  private static final int SMALL_SHIFT = 4;
+
+  @Test
+  public void testDoubleArray() {
+    checkStorage(DoubleTriangleStorageFactory.STATIC.newStorage(1000), true);
+  }
+
+  @Test
+  public void testChunkedDouble() {
+    checkStorage(new DoubleTriangleStorageFactory.ChunkedDoubleStorage(1000, SMALL_SHIFT), true);
+  }
+
+  @Test
+  public void testFloat() {
+    checkStorage(new FloatTriangleStorageFactory.FloatStorage(1000, SMALL_SHIFT), false);
+  }
+
+  @Test
+  public void testMapped() {
+    checkStorage(new MappedTriangleStorageFactory(null, false).newStorage(1000), true);
+    checkStorage(new MappedTriangleStorageFactory(null, true).newStorage(1000), false);
+  }
+
+  @Test
+  public void testMappedSegments() {
+    // Segments of 128 bytes, to test the segment boundaries.
+    checkStorage(new MappedTriangleStorageFactory.MappedStorage(1000, false, null, SMALL_SHIFT + 3), true);
+    checkStorage(new MappedTriangleStorageFactory.MappedStorage(1000, true, null, SMALL_SHIFT + 3), false);
+  }
+
+  /**
+   * Write and read back all positions.
+   *
+   * @param storage Storage to test
+   * @param exact Whether double precision is expected
+   */
+  private void checkStorage(TriangleStorage storage, boolean exact) {
+    final long size = storage.size();
+    assertEquals("Wrong size", 1000, size);
+    for(long i = 0; i < size; i++) {
+      storage.set(i, Math.sqrt(i));
+    }
+    for(long i = 0; i < size; i++) {
+      final double v = Math.sqrt(i);
+      assertEquals("Wrong value at " + i, exact ? v : (float) v, storage.get(i), 0.);
+    }
+    storage.destroy();
+  }
+}
@@ -118,6 +118,54 @@ public final class VectorUtil {
     return (a < 1.) ? a : 1.;
   }
 
+  /**
+   * Compute the absolute cosine of the angle between a dense vector and a
+   * vector stored in a row-major block.
+   *
+   * @param v1 first vector
+   * @param l1 squared length of the first vector
+   * @param block data block
+   * @param offset offset of the second vector in the block
+   * @param dim2 dimensionality of the second vector
+   * @return angle
+   */
+  public static double angleDense(double[] v1, double l1, double[] block, int offset, int dim2) {
+    final int dim1 = v1.length;
+    final int mindim = (dim1 <= dim2) ? dim1 : dim2;
+    // Same as angleDense(NumberVector, NumberVector), but l1 is given.
+    double cross = 0, l2 = 0;
+    for(int k = 0; k < mindim; k++) {
+      final double r1 = v1[k];
+      final double r2 = block[offset + k];
+      cross += r1 * r2;
+      l2 += r2 * r2;
+    }
+    for(int k = mindim; k < dim2; k++) {
+      final double r2 = block[offset + k];
+      l2 += r2 * r2;
+    }
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            FastMath.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? a : 1.;
+  }
+
+  /**
+   * Compute the squared length of a vector, for use with
+   * {@link #angleDense(double[], double, double[], int, int)}.
+   *
+   * @param v1 vector
+   * @return squared length
+   */
+  public static double squaredLength(double[] v1) {
+    double l1 = 0;
+    for(int k = 0; k < v1.length; k++) {
+      final double r1 = v1[k];
+      l1 += r1 * r1;
+    }
+    return l1;
+  }
+
   /**
    * Compute the angle for sparse vectors.
    *
@@ -353,6 +401,24 @@ public final class VectorUtil {
     return dot;
   }
 
+  /**
+   * Compute the dot product of two dense vectors stored in (row-major) arrays.
+   *
+   * @param v1 first array
+   * @param off1 offset of the first vector
+   * @param v2 second array
+   * @param off2 offset of the second vector
+   * @param dim dimensionality
+   * @return dot product
+   */
+  public static double dotDense(double[] v1, int off1, double[] v2, int off2, int dim) {
+    double dot = 0;
+    for(int k = 0; k < dim; k++) {
+      dot += v1[off1 + k] * v2[off2 + k];
+    }
+    return dot;
+  }
+
   /**
    * Compute the dot product for two sparse vectors.
    *
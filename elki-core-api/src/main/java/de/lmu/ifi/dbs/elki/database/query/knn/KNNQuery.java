@@ -24,7 +24,9 @@ import java.util.List;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 
 /**
@@ -65,4 +67,39 @@ public interface KNNQuery<O> extends DatabaseQuery {
    * @return neighbors
    */
   KNNList getKNNForObject(O obj, int k);
+
+  /**
+   * Get the k nearest neighbors for a particular id, into an existing list.
+   *
+   * The list is cleared first, and will be sorted by ascending distance.
+   * Implementations should override this to avoid allocating a result, so
+   * that a reused list produces (almost) no garbage.
+   *
+   * @param id query object ID
+   * @param k Number of neighbors requested
+   * @param result Output list
+   */
+  default void getKNNForDBID(DBIDRef id, int k, ModifiableDoubleDBIDList result) {
+    result.clear();
+    for(DoubleDBIDListIter it = getKNNForDBID(id, k).iter(); it.valid(); it.advance()) {
+      result.add(it.doubleValue(), it);
+    }
+  }
+
+  /**
+   * Get the k nearest neighbors for a particular object, into an existing
+   * list.
+   *
+   * The list is cleared first, and will be sorted by ascending distance.
+   *
+   * @param obj Query object
+   * @param k Number of neighbors requested
+   * @param result Output list
+   */
+  default void getKNNForObject(O obj, int k, ModifiableDoubleDBIDList result) {
+    result.clear();
+    for(DoubleDBIDListIter it = getKNNForObject(obj, k).iter(); it.valid(); it.advance()) {
+      result.add(it.doubleValue(), it);
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,357 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Read an ELKI bundle file without materializing the objects.
+ * <p>
+ * In contrast to {@link BundleReader}, the file stays mapped into memory, and
+ * the objects are only decoded (using the serializer of their type) when
+ * accessed. For this, the file is scanned once to record the byte offset of
+ * every object, i.e. the memory cost is 8 bytes per object and column. The
+ * operating system can page the mapped file in and out as needed, so this can
+ * be used for data sets that do not fit into the Java heap.
+ * <p>
+ * Because a single mapping is limited to 2 GiB, large files are mapped in
+ * multiple, overlapping segments. Segments always begin at the start of an
+ * object, and a new segment is begun once half of the previous segment has
+ * been used, so every object is contained in a single segment.
+ * <p>
+ * The columns returned by {@link #asMultipleObjectsBundle()} are read-only,
+ * thread-safe lists that decode a new object on every access.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses MappedByteBuffer - - «reads»
+ * @apiviz.uses FileChannel - - «reads»
+ * @apiviz.has Column
+ */
+public class MappedBundleReader {
+  /**
+   * Maximum size of a mapped segment.
+   */
+  public static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+  /**
+   * Input channel.
+   */
+  private FileChannel input;
+
+  /**
+   * Size of mapped segments.
+   */
+  private long segsize;
+
+  /**
+   * Mapped segments.
+   */
+  private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Bundle metadata.
+   */
+  private BundleMeta meta = null;
+
+  /**
+   * Serializers to use, including the DBID serializer.
+   */
+  private ByteBufferSerializer<?>[] sers;
+
+  /**
+   * Whether or not we have DBIDs.
+   */
+  private boolean hasids = false;
+
+  /**
+   * DBIDs, if stored in the bundle.
+   */
+  private ArrayModifiableDBIDs ids = null;
+
+  /**
+   * Object offsets, per column: segment number in the upper 32 bits, position
+   * within the segment in the lower 32 bits.
+   */
+  private long[][] offsets;
+
+  /**
+   * Number of objects.
+   */
+  private int size = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param input Input channel
+   */
+  public MappedBundleReader(FileChannel input) {
+    this(input, MAX_SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param input Input channel
+   * @param segsize Maximum size of a mapped segment
+   */
+  public MappedBundleReader(FileChannel input, long segsize) {
+    super();
+    this.input = input;
+    this.segsize = Math.min(segsize, MAX_SEGMENT_SIZE);
+  }
+
+  /**
+   * Scan the file, and produce a bundle with lazily decoded columns.
+   *
+   * @return Bundle
+   */
+  public MultipleObjectsBundle asMultipleObjectsBundle() {
+    if(meta == null) {
+      index();
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int i = 0; i < meta.size(); i++) {
+      bundle.appendColumn(meta.get(i), new Column<>(hasids ? i + 1 : i));
+    }
+    if(ids != null) {
+      bundle.setDBIDs(ids);
+    }
+    return bundle;
+  }
+
+  /**
+   * Get the bundle metadata.
+   *
+   * @return Metadata
+   */
+  public BundleMeta getMeta() {
+    if(meta == null) {
+      index();
+    }
+    return meta;
+  }
+
+  /**
+   * Map a segment of the file.
+   *
+   * @param start Start position
+   * @param filesize File size
+   * @return Segment number
+   */
+  private int mapSegment(long start, long filesize) {
+    try {
+      final int seg = segments.length;
+      segments = Arrays.copyOf(segments, seg + 1);
+      segments[seg] = input.map(MapMode.READ_ONLY, start, Math.min(segsize, filesize - start));
+      return seg;
+    }
+    catch(IOException e) {
+      throw new AbortException("Cannot map input bundle.", e);
+    }
+  }
+
+  /**
+   * Read the metadata, and record the offsets of all objects.
+   */
+  private void index() {
+    final long filesize;
+    try {
+      filesize = input.size();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error", e);
+    }
+    int seg = mapSegment(0, filesize);
+    long segstart = 0;
+    ByteBuffer buffer = segments[seg];
+    readMeta(buffer);
+    offsets = new long[sers.length][];
+    for(int i = hasids ? 1 : 0; i < sers.length; i++) {
+      offsets[i] = new long[1024];
+    }
+    while(segstart + buffer.position() < filesize) {
+      final int rowstart = buffer.position();
+      // Start a new segment with the current object, once we are past half of
+      // the segment (so objects of up to half the segment size always fit).
+      if(rowstart > (segsize >>> 1) && segstart + buffer.limit() < filesize) {
+        segstart += rowstart;
+        seg = mapSegment(segstart, filesize);
+        buffer = segments[seg];
+      }
+      try {
+        readRow(buffer, seg);
+        ++size;
+      }
+      catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+        throw new AbortException(segstart + buffer.limit() >= filesize ? "Bundle file is truncated." : "Object too large for a mapped segment.", e);
+      }
+    }
+  }
+
+  /**
+   * Read the metadata.
+   *
+   * @param buffer Buffer to read from
+   */
+  private void readMeta(ByteBuffer buffer) {
+    final int check = buffer.getInt();
+    if(check != BundleReader.MAGIC) {
+      throw new AbortException("File does not start with expected magic.");
+    }
+    final int nummeta = buffer.getInt();
+    assert (nummeta > 0) : "Empty bundle?";
+    meta = new BundleMeta(nummeta);
+    sers = new ByteBufferSerializer<?>[nummeta];
+    for(int i = 0; i < nummeta; i++) {
+      try {
+        @SuppressWarnings("unchecked")
+        SimpleTypeInformation<? extends Object> type = (SimpleTypeInformation<? extends Object>) TypeInformationSerializer.STATIC.fromByteBuffer(buffer);
+        sers[i] = type.getSerializer();
+        if(i == 0 && DBID.class.isAssignableFrom(type.getRestrictionClass())) {
+          hasids = true;
+          ids = DBIDUtil.newArray();
+        }
+        else {
+          meta.add(type);
+        }
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+      }
+      catch(IOException e) {
+        throw new AbortException("IO error", e);
+      }
+    }
+  }
+
+  /**
+   * Read a single row, recording the offsets of each object.
+   *
+   * @param buffer Buffer to read from
+   * @param seg Segment number
+   */
+  private void readRow(ByteBuffer buffer, int seg) {
+    final long segbits = ((long) seg) << 32;
+    DBID id = null;
+    try {
+      for(int i = 0; i < sers.length; ++i) {
+        if(i == 0 && hasids) {
+          id = (DBID) sers[0].fromByteBuffer(buffer);
+          continue;
+        }
+        final int pos = buffer.position();
+        sers[i].fromByteBuffer(buffer);
+        if(size == offsets[i].length) {
+          offsets[i] = Arrays.copyOf(offsets[i], size + (size >>> 1));
+        }
+        offsets[i][size] = segbits | pos;
+      }
+    }
+    catch(UnsupportedOperationException e) {
+      throw new AbortException("Deserialization failed.", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error", e);
+    }
+    // Only add the DBID once the row is complete.
+    if(id != null) {
+      ids.add(id);
+    }
+  }
+
+  /**
+   * Decode a single object.
+   *
+   * @param col Column (including the DBID column, if present)
+   * @param row Row number
+   * @return Decoded object
+   */
+  private Object decode(int col, int row) {
+    if(row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Row " + row + " not in bundle of size " + size);
+    }
+    final long off = offsets[col][row];
+    ByteBuffer buffer = segments[(int) (off >>> 32)].duplicate();
+    buffer.position((int) off);
+    try {
+      return sers[col].fromByteBuffer(buffer);
+    }
+    catch(UnsupportedOperationException e) {
+      throw new AbortException("Deserialization failed.", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error", e);
+    }
+  }
+
+  /**
+   * Read-only column of the bundle, decoding objects on access.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public class Column<O> extends AbstractList<O> implements RandomAccess {
+    /**
+     * Column number, including the DBID column.
+     */
+    private final int col;
+
+    /**
+     * Constructor.
+     *
+     * @param col Column number
+     */
+    protected Column(int col) {
+      super();
+      this.col = col;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public O get(int index) {
+      return (O) decode(col, index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.distance.distancefunction;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+
+/**
+ * Utility for evaluating distances on vectors stored in dense row-major
+ * blocks, using the pairwise distance method of a distance function.
+ * <p>
+ * This is the fallback used by
+ * {@link NumberVectorDistanceFunction#distances(double[], double[], int, int, int, double[])}
+ * for distance functions without a specialized implementation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class BlockDistanceUtil {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BlockDistanceUtil() {
+    // Do not instantiate
+  }
+
+  /**
+   * Compute the distances of one vector to a block of vectors, by calling the
+   * pairwise distance function for each row.
+   *
+   * @param df distance function
+   * @param query query vector
+   * @param block data block
+   * @param offset offset of the first vector in the block
+   * @param dim dimensionality of the vectors in the block
+   * @param count number of vectors
+   * @param out output array for the distances, of length at least count
+   */
+  public static void distances(NumberVectorDistanceFunction<?> df, double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    final RowVector q = new RowVector(query, 0, query.length);
+    final RowVector row = new RowVector(block, offset, dim);
+    for(int i = 0; i < count; i++, row.off += dim) {
+      out[i] = df.distance(q, row);
+    }
+  }
+
+  /**
+   * Vector view of one row of a block. Not exposed, as it is mutable.
+   *
+   * @author Erich Schubert
+   */
+  private static class RowVector implements NumberVector {
+    /**
+     * Data block.
+     */
+    final double[] block;
+
+    /**
+     * Offset in the block.
+     */
+    int off;
+
+    /**
+     * Dimensionality.
+     */
+    final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param block Data block
+     * @param off Offset
+     * @param dim Dimensionality
+     */
+    RowVector(double[] block, int off, int dim) {
+      this.block = block;
+      this.off = off;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return block[off + dimension];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) block[off + dimension];
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      System.arraycopy(block, off, ret, 0, dim);
+      return ret;
+    }
+  }
+}
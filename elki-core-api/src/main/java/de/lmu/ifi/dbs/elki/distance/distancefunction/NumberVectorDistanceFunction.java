@@ -44,4 +44,22 @@ public interface NumberVectorDistanceFunction<O> extends PrimitiveDistanceFuncti
    *         function
    */
   double distance(NumberVector o1, NumberVector o2);
+
+  /**
+   * Compute the distances of one vector to a block of vectors of the same
+   * dimensionality, stored consecutively (row-major) in a dense array.
+   * <p>
+   * The default implementation evaluates {@link #distance} for each row;
+   * distance functions should override this with a specialized loop.
+   *
+   * @param query query vector
+   * @param block data block
+   * @param offset offset of the first vector in the block
+   * @param dim dimensionality of the vectors in the block
+   * @param count number of vectors
+   * @param out output array for the distances, of length at least count
+   */
+  default void distances(double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    BlockDistanceUtil.distances(this, query, block, offset, dim, count, out);
+  }
 }
@@ -0,0 +1,68 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Index that can store its built state as a binary snapshot, and restore from
+ * such a snapshot instead of being initialized again.
+ * <p>
+ * Snapshots are only valid for the exact same relation (including the DBIDs)
+ * and the same parameters. The database takes care of the relation; the index
+ * describes its parameters with {@link #getSnapshotKey()}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.excludeSubtypes
+ */
+public interface SnapshotIndex extends Index {
+  /**
+   * Describe the parameters of this index, such that two instances with the
+   * same key would build the same index on the same relation.
+   *
+   * @return Key, or {@code null} if this instance does not support snapshots.
+   */
+  String getSnapshotKey();
+
+  /**
+   * Write the built index.
+   *
+   * @param out Output
+   * @throws IOException on write errors
+   */
+  void writeSnapshot(DataOutput out) throws IOException;
+
+  /**
+   * Restore the index from a snapshot. This is called instead of
+   * {@link #initialize()}.
+   * <p>
+   * If restoring fails with an exception, {@link #initialize()} is called on
+   * the same instance next, so no partially restored state may be kept.
+   *
+   * @param in Input
+   * @throws IOException on read errors
+   */
+  void readSnapshot(DataInput in) throws IOException;
+}
@@ -24,7 +24,9 @@ import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
@@ -49,6 +51,7 @@ import de.lmu.ifi.dbs.elki.utilities.io.FixedSizeByteBufferSerializer;
  * @apiviz.uses IntegerDBIDPair oneway - - «create»
  * @apiviz.uses IntegerDBIDRange oneway - - «create»
  * @apiviz.uses TroveHashSetModifiableDBIDs oneway - - «create»
+ * @apiviz.uses BitmapModifiableDBIDs oneway - - «create»
  * @apiviz.uses IntegerArrayDBIDs oneway - - «create»
  */
 abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
@@ -57,6 +60,55 @@ abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
    */
   DBID invalid = new IntegerDBID(Integer.MIN_VALUE);
 
+  /**
+   * Minimum size of a set to use a bitmap.
+   */
+  private static final int BITMAP_MINSIZE = 4096;
+
+  /**
+   * Minimum density of a set (one in BITMAP_DENSITY) to use a bitmap.
+   */
+  private static final int BITMAP_DENSITY = 16;
+
+  /**
+   * Reusable heaps, one per thread.
+   */
+  private final ThreadLocal<KNNHeap> heaps = new ThreadLocal<>();
+
+  /**
+   * Smallest index of the allocated static DBID ranges.
+   */
+  private int rangemin = Integer.MAX_VALUE;
+
+  /**
+   * Largest index of the allocated static DBID ranges.
+   */
+  private int rangemax = Integer.MIN_VALUE;
+
+  /**
+   * Record an allocated static range, to estimate the density of hash sets.
+   *
+   * @param start Range start
+   * @param size Range size
+   */
+  protected synchronized void registerRange(int start, int size) {
+    if(size > 0) {
+      rangemin = Math.min(rangemin, start);
+      rangemax = Math.max(rangemax, start + size - 1);
+    }
+  }
+
+  /**
+   * Decide whether to use a bitmap for a set.
+   *
+   * @param size Expected set size
+   * @param span Span of the integer indexes of the elements
+   * @return {@code true} if a bitmap will likely be cheaper than a hash set
+   */
+  private static boolean useBitmap(int size, long span) {
+    return size >= BITMAP_MINSIZE && size * (long) BITMAP_DENSITY >= span;
+  }
+
   @Override
   public DBID importInteger(int id) {
     return new IntegerDBID(id);
@@ -112,7 +164,11 @@ abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
 
   @Override
   public HashSetModifiableDBIDs newHashSet(int size) {
-    return new FastutilIntOpenHashSetModifiableDBIDs(size);
+    final long span;
+    synchronized(this) {
+      span = rangemax >= rangemin ? rangemax - (long) rangemin : Long.MAX_VALUE;
+    }
+    return useBitmap(size, span) ? new BitmapModifiableDBIDs() : new FastutilIntOpenHashSetModifiableDBIDs(size);
   }
 
   @Override
@@ -122,6 +178,24 @@ abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
 
   @Override
   public HashSetModifiableDBIDs newHashSet(DBIDs existing) {
+    if(existing instanceof BitmapModifiableDBIDs) {
+      return new BitmapModifiableDBIDs(existing);
+    }
+    final int size = existing.size();
+    if(existing instanceof DBIDRange && size >= BITMAP_MINSIZE) {
+      return new BitmapModifiableDBIDs(existing);
+    }
+    if(size >= BITMAP_MINSIZE) {
+      int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+      for(DBIDIter it = existing.iter(); it.valid(); it.advance()) {
+        final int v = it.internalGetIndex();
+        min = v < min ? v : min;
+        max = v > max ? v : max;
+      }
+      if(useBitmap(size, max - (long) min)) {
+        return new BitmapModifiableDBIDs(existing);
+      }
+    }
     return new FastutilIntOpenHashSetModifiableDBIDs(existing);
   }
 
@@ -150,6 +224,17 @@ abstract class AbstractIntegerDBIDFactory implements DBIDFactory {
     return heap;
   }
 
+  @Override
+  public KNNHeap threadLocalHeap(int k) {
+    KNNHeap heap = heaps.get();
+    if(heap == null || heap.getK() != k) {
+      heaps.set(heap = newHeap(k));
+      return heap;
+    }
+    heap.clear();
+    return heap;
+  }
+
   @Override
   public ModifiableDoubleDBIDList newDistanceDBIDList(int size) {
     return new DoubleIntegerDBIDArrayList(size);
@@ -0,0 +1,1173 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.ids.integer;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import de.lmu.ifi.dbs.elki.database.ids.BitmapDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDMIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+
+/**
+ * Set of DBIDs stored as a compressed bitmap.
+ * <p>
+ * The integer indexes of the DBIDs are split into the upper and lower 16 bits.
+ * For each value of the upper bits, a container stores the lower bits, either
+ * as a sorted array (for up to 4096 values), a bitset, or a list of runs. This
+ * is the layout used by Roaring bitmaps:
+ * <p>
+ * Reference:
+ * <p>
+ * S. Chambi, D. Lemire, O. Kaser, R. Godin<br>
+ * Better bitmap performance with Roaring bitmaps<br>
+ * Software: Practice and Experience 46(5)
+ * <p>
+ * For densely populated ranges of DBIDs, this needs much less memory than a
+ * hash set, and intersections and unions of two bitmaps are computed container
+ * by container.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Itr
+ */
+class BitmapModifiableDBIDs implements HashSetModifiableDBIDs, BitmapDBIDs, IntegerDBIDs {
+  /**
+   * Keys (upper 16 bits) of the containers, sorted.
+   */
+  private char[] keys;
+
+  /**
+   * Containers, for the lower 16 bits.
+   */
+  private Container[] conts;
+
+  /**
+   * Number of containers in use.
+   */
+  private int n;
+
+  /**
+   * Number of elements.
+   */
+  private int size;
+
+  /**
+   * Constructor.
+   */
+  protected BitmapModifiableDBIDs() {
+    super();
+    this.keys = new char[4];
+    this.conts = new Container[4];
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param existing Existing IDs
+   */
+  protected BitmapModifiableDBIDs(DBIDs existing) {
+    super();
+    if(existing instanceof BitmapModifiableDBIDs) {
+      BitmapModifiableDBIDs other = (BitmapModifiableDBIDs) existing;
+      this.n = other.n;
+      this.size = other.size;
+      this.keys = Arrays.copyOf(other.keys, Math.max(n, 4));
+      this.conts = new Container[keys.length];
+      for(int i = 0; i < n; i++) {
+        conts[i] = other.conts[i].copy();
+      }
+      return;
+    }
+    this.keys = new char[4];
+    this.conts = new Container[4];
+    addDBIDs(existing);
+    runOptimize();
+  }
+
+  /**
+   * Find the container for a key.
+   *
+   * @param key Key
+   * @return Container position, or (-insertion point - 1).
+   */
+  private int find(int key) {
+    return Arrays.binarySearch(keys, 0, n, (char) key);
+  }
+
+  /**
+   * Insert a new container.
+   *
+   * @param pos Position
+   * @param key Key
+   * @param c Container
+   */
+  private void insertContainer(int pos, int key, Container c) {
+    if(n == keys.length) {
+      keys = Arrays.copyOf(keys, n << 1);
+      conts = Arrays.copyOf(conts, n << 1);
+    }
+    System.arraycopy(keys, pos, keys, pos + 1, n - pos);
+    System.arraycopy(conts, pos, conts, pos + 1, n - pos);
+    keys[pos] = (char) key;
+    conts[pos] = c;
+    n++;
+  }
+
+  /**
+   * Remove an (empty) container.
+   *
+   * @param pos Position
+   */
+  private void removeContainer(int pos) {
+    System.arraycopy(keys, pos + 1, keys, pos, n - pos - 1);
+    System.arraycopy(conts, pos + 1, conts, pos, n - pos - 1);
+    conts[--n] = null;
+  }
+
+  /**
+   * Add a single value.
+   *
+   * @param v Value
+   * @return {@code true} if the set was modified
+   */
+  private boolean addInt(int v) {
+    final int key = v >>> 16, pos = find(key);
+    if(pos < 0) {
+      insertContainer(-pos - 1, key, new ArrayContainer().add(v & 0xFFFF));
+      size++;
+      return true;
+    }
+    final Container c = conts[pos];
+    final int before = c.cardinality();
+    conts[pos] = c.add(v & 0xFFFF);
+    if(conts[pos].cardinality() != before) {
+      size++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Remove a single value.
+   *
+   * @param v Value
+   * @return {@code true} if the set was modified
+   */
+  private boolean removeInt(int v) {
+    final int pos = find(v >>> 16);
+    if(pos < 0) {
+      return false;
+    }
+    final Container c = conts[pos];
+    final int before = c.cardinality();
+    final Container nc = c.remove(v & 0xFFFF);
+    if(nc.cardinality() == before) {
+      return false;
+    }
+    size--;
+    if(nc.cardinality() == 0) {
+      removeContainer(pos);
+    }
+    else {
+      conts[pos] = nc;
+    }
+    return true;
+  }
+
+  /**
+   * Convert containers to run containers, where this is more compact.
+   */
+  protected void runOptimize() {
+    for(int i = 0; i < n; i++) {
+      conts[i] = conts[i].runOptimize();
+    }
+  }
+
+  @Override
+  public boolean add(DBIDRef id) {
+    return addInt(DBIDUtil.asInteger(id));
+  }
+
+  @Override
+  public boolean remove(DBIDRef id) {
+    return removeInt(DBIDUtil.asInteger(id));
+  }
+
+  @Override
+  public boolean contains(DBIDRef id) {
+    final int v = DBIDUtil.asInteger(id), pos = find(v >>> 16);
+    return pos >= 0 && conts[pos].contains(v & 0xFFFF);
+  }
+
+  @Override
+  public boolean addDBIDs(DBIDs ids) {
+    if(ids instanceof BitmapModifiableDBIDs) {
+      return union((BitmapModifiableDBIDs) ids);
+    }
+    boolean success = false;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      success |= addInt(DBIDUtil.asInteger(iter));
+    }
+    return success;
+  }
+
+  /**
+   * Add all elements of another bitmap, container by container.
+   *
+   * @param other Other bitmap
+   * @return {@code true} if the set was modified
+   */
+  private boolean union(BitmapModifiableDBIDs other) {
+    final int before = size;
+    for(int j = 0; j < other.n; j++) {
+      final int key = other.keys[j], pos = find(key);
+      if(pos < 0) {
+        insertContainer(-pos - 1, key, other.conts[j].copy());
+        size += other.conts[j].cardinality();
+      }
+      else {
+        final int card = conts[pos].cardinality();
+        conts[pos] = conts[pos].or(other.conts[j]);
+        size += conts[pos].cardinality() - card;
+      }
+    }
+    return size != before;
+  }
+
+  @Override
+  public boolean removeDBIDs(DBIDs ids) {
+    boolean success = false;
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      success |= removeInt(DBIDUtil.asInteger(iter));
+    }
+    return success;
+  }
+
+  @Override
+  public boolean retainAll(DBIDs set) {
+    if(set instanceof BitmapModifiableDBIDs) {
+      return intersect((BitmapModifiableDBIDs) set);
+    }
+    boolean modified = false;
+    for(DBIDMIter it = iter(); it.valid(); it.advance()) {
+      if(!set.contains(it)) {
+        it.remove();
+        modified = true;
+      }
+    }
+    return modified;
+  }
+
+  /**
+   * Retain only the elements also in another bitmap, container by container.
+   *
+   * @param other Other bitmap
+   * @return {@code true} if the set was modified
+   */
+  private boolean intersect(BitmapModifiableDBIDs other) {
+    final int before = size;
+    int o = 0;
+    size = 0;
+    for(int i = 0, j = 0; i < n; i++) {
+      final char key = keys[i];
+      while(j < other.n && other.keys[j] < key) {
+        j++;
+      }
+      if(j < other.n && other.keys[j] == key) {
+        final Container c = conts[i].and(other.conts[j]);
+        if(c.cardinality() > 0) {
+          keys[o] = key;
+          conts[o++] = c;
+          size += c.cardinality();
+        }
+      }
+    }
+    Arrays.fill(conts, o, n, null);
+    n = o;
+    return size != before;
+  }
+
+  @Override
+  public int intersectionSize(BitmapDBIDs set) {
+    if(!(set instanceof BitmapModifiableDBIDs)) {
+      int c = 0;
+      for(DBIDIter it = iter(); it.valid(); it.advance()) {
+        c += set.contains(it) ? 1 : 0;
+      }
+      return c;
+    }
+    final BitmapModifiableDBIDs other = (BitmapModifiableDBIDs) set;
+    int c = 0;
+    for(int i = 0, j = 0; i < n && j < other.n;) {
+      final char k1 = keys[i], k2 = other.keys[j];
+      if(k1 < k2) {
+        i++;
+      }
+      else if(k1 > k2) {
+        j++;
+      }
+      else {
+        c += conts[i++].andCardinality(other.conts[j++]);
+      }
+    }
+    return c;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(conts, 0, n, null);
+    n = 0;
+    size = 0;
+  }
+
+  @Override
+  public DBIDVar pop(DBIDVar outvar) {
+    if(size == 0) {
+      throw new NoSuchElementException("Cannot pop() from an empty set.");
+    }
+    final int val = (keys[n - 1] << 16) | conts[n - 1].last();
+    removeInt(val);
+    if(outvar instanceof IntegerDBIDVar) {
+      ((IntegerDBIDVar) outvar).internalSetIndex(val);
+    }
+    else { // Fallback, should not happen (more expensive).
+      outvar.set(DBIDUtil.importInteger(val));
+    }
+    return outvar;
+  }
+
+  @Override
+  public Itr iter() {
+    return new Itr();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buf = new StringBuilder();
+    buf.append('[');
+    for(DBIDIter iter = iter(); iter.valid(); iter.advance()) {
+      if(buf.length() > 1) {
+        buf.append(", ");
+      }
+      buf.append(iter.toString());
+    }
+    buf.append(']');
+    return buf.toString();
+  }
+
+  /**
+   * Iterator over the bitmap, in order of the integer indexes.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  protected class Itr implements IntegerDBIDMIter {
+    /**
+     * Current container.
+     */
+    int ci;
+
+    /**
+     * Current value.
+     */
+    int cur;
+
+    /**
+     * Flag, if the current container was removed.
+     */
+    boolean removed;
+
+    /**
+     * Constructor.
+     */
+    protected Itr() {
+      super();
+      first(0);
+    }
+
+    /**
+     * Move to the first element of a container.
+     *
+     * @param i Container number
+     */
+    private void first(int i) {
+      ci = i;
+      if(i < n) {
+        cur = (keys[i] << 16) | conts[i].next(0);
+      }
+    }
+
+    @Override
+    public boolean valid() {
+      return removed || ci < n;
+    }
+
+    @Override
+    public IntegerDBIDMIter advance() {
+      if(removed) {
+        removed = false;
+        first(ci);
+        return this;
+      }
+      final int low = cur & 0xFFFF;
+      final int next = low < 0xFFFF ? conts[ci].next(low + 1) : -1;
+      if(next >= 0) {
+        cur = (cur & 0xFFFF0000) | next;
+      }
+      else {
+        first(ci + 1);
+      }
+      return this;
+    }
+
+    @Override
+    public int internalGetIndex() {
+      return cur;
+    }
+
+    @Override
+    public String toString() {
+      return Integer.toString(internalGetIndex());
+    }
+
+    @Override
+    public void remove() {
+      removeInt(cur);
+      final int pos = find(cur >>> 16);
+      if(pos < 0) {
+        // Container was removed, continue with the next.
+        ci = -pos - 1;
+        removed = true;
+      }
+    }
+  }
+
+  /**
+   * Container for the lower 16 bits of the values.
+   *
+   * @author Erich Schubert
+   */
+  abstract static class Container {
+    /**
+     * Maximum size of an array container.
+     */
+    static final int MAX_ARRAY = 4096;
+
+    /**
+     * Number of values in this container.
+     *
+     * @return Cardinality
+     */
+    abstract int cardinality();
+
+    /**
+     * Test if a value is contained.
+     *
+     * @param x Value, in 0 to 65535
+     * @return {@code true} if contained
+     */
+    abstract boolean contains(int x);
+
+    /**
+     * Add a value.
+     *
+     * @param x Value, in 0 to 65535
+     * @return Container after the change, may be a different object
+     */
+    abstract Container add(int x);
+
+    /**
+     * Remove a value.
+     *
+     * @param x Value, in 0 to 65535
+     * @return Container after the change, may be a different object
+     */
+    abstract Container remove(int x);
+
+    /**
+     * Find the smallest value larger or equal to x.
+     *
+     * @param x Value
+     * @return Next value, or -1
+     */
+    abstract int next(int x);
+
+    /**
+     * Largest value in the container.
+     *
+     * @return Largest value
+     */
+    abstract int last();
+
+    /**
+     * Copy the container.
+     *
+     * @return Copy
+     */
+    abstract Container copy();
+
+    /**
+     * Convert to a bitset container.
+     *
+     * @return Bitset, may be this object
+     */
+    abstract BitsetContainer toBitset();
+
+    /**
+     * Convert to a run container, if this uses less memory.
+     *
+     * @return Container
+     */
+    abstract Container runOptimize();
+
+    /**
+     * Intersection with another container.
+     *
+     * @param other Other container
+     * @return New container, may be empty
+     */
+    Container and(Container other) {
+      if(other instanceof ArrayContainer) {
+        return ((ArrayContainer) other).and(this);
+      }
+      return toBitset().and(other.toBitset());
+    }
+
+    /**
+     * Size of the intersection with another container.
+     *
+     * @param other Other container
+     * @return Intersection size
+     */
+    int andCardinality(Container other) {
+      if(other instanceof ArrayContainer) {
+        return ((ArrayContainer) other).andCardinality(this);
+      }
+      return toBitset().andCardinality(other.toBitset());
+    }
+
+    /**
+     * Union with another container.
+     *
+     * @param other Other container
+     * @return Container after the change, may be a different object
+     */
+    Container or(Container other) {
+      Container c = this;
+      if(other instanceof ArrayContainer) {
+        final ArrayContainer a = (ArrayContainer) other;
+        for(int i = 0; i < a.card; i++) {
+          c = c.add(a.vals[i]);
+        }
+        return c;
+      }
+      return toBitset().copy().or(other.toBitset());
+    }
+  }
+
+  /**
+   * Container storing a sorted array of values.
+   *
+   * @author Erich Schubert
+   */
+  static class ArrayContainer extends Container {
+    /**
+     * Values, sorted.
+     */
+    char[] vals;
+
+    /**
+     * Number of values.
+     */
+    int card;
+
+    /**
+     * Constructor.
+     */
+    ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param vals Values
+     * @param card Number of values
+     */
+    ArrayContainer(char[] vals, int card) {
+      this.vals = vals;
+      this.card = card;
+    }
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    boolean contains(int x) {
+      return Arrays.binarySearch(vals, 0, card, (char) x) >= 0;
+    }
+
+    @Override
+    Container add(int x) {
+      int pos = Arrays.binarySearch(vals, 0, card, (char) x);
+      if(pos >= 0) {
+        return this;
+      }
+      if(card == MAX_ARRAY) {
+        return toBitset().add(x);
+      }
+      pos = -pos - 1;
+      if(card == vals.length) {
+        vals = Arrays.copyOf(vals, Math.min(card << 1, MAX_ARRAY));
+      }
+      System.arraycopy(vals, pos, vals, pos + 1, card - pos);
+      vals[pos] = (char) x;
+      card++;
+      return this;
+    }
+
+    @Override
+    Container remove(int x) {
+      final int pos = Arrays.binarySearch(vals, 0, card, (char) x);
+      if(pos >= 0) {
+        System.arraycopy(vals, pos + 1, vals, pos, card - pos - 1);
+        card--;
+      }
+      return this;
+    }
+
+    @Override
+    int next(int x) {
+      final int pos = Arrays.binarySearch(vals, 0, card, (char) x);
+      if(pos >= 0) {
+        return x;
+      }
+      return -pos - 1 < card ? vals[-pos - 1] : -1;
+    }
+
+    @Override
+    int last() {
+      return vals[card - 1];
+    }
+
+    @Override
+    Container copy() {
+      return new ArrayContainer(Arrays.copyOf(vals, Math.max(card, 4)), card);
+    }
+
+    @Override
+    BitsetContainer toBitset() {
+      BitsetContainer b = new BitsetContainer();
+      for(int i = 0; i < card; i++) {
+        b.words[vals[i] >>> 6] |= 1L << vals[i];
+      }
+      b.card = card;
+      return b;
+    }
+
+    @Override
+    Container runOptimize() {
+      int runs = card > 0 ? 1 : 0;
+      for(int i = 1; i < card; i++) {
+        runs += vals[i] != vals[i - 1] + 1 ? 1 : 0;
+      }
+      return runs * 2 < card ? RunContainer.fromSorted(vals, card, runs) : this;
+    }
+
+    @Override
+    Container and(Container other) {
+      char[] out = new char[Math.max(card, 4)];
+      int c = 0;
+      if(other instanceof ArrayContainer) {
+        final ArrayContainer a = (ArrayContainer) other;
+        for(int i = 0, j = 0; i < card && j < a.card;) {
+          final char v1 = vals[i], v2 = a.vals[j];
+          if(v1 < v2) {
+            i++;
+          }
+          else if(v1 > v2) {
+            j++;
+          }
+          else {
+            out[c++] = v1;
+            i++;
+            j++;
+          }
+        }
+      }
+      else {
+        for(int i = 0; i < card; i++) {
+          if(other.contains(vals[i])) {
+            out[c++] = vals[i];
+          }
+        }
+      }
+      return new ArrayContainer(out, c);
+    }
+
+    @Override
+    int andCardinality(Container other) {
+      int c = 0;
+      if(other instanceof ArrayContainer) {
+        final ArrayContainer a = (ArrayContainer) other;
+        for(int i = 0, j = 0; i < card && j < a.card;) {
+          final char v1 = vals[i], v2 = a.vals[j];
+          if(v1 < v2) {
+            i++;
+          }
+          else if(v1 > v2) {
+            j++;
+          }
+          else {
+            c++;
+            i++;
+            j++;
+          }
+        }
+        return c;
+      }
+      for(int i = 0; i < card; i++) {
+        c += other.contains(vals[i]) ? 1 : 0;
+      }
+      return c;
+    }
+
+    @Override
+    Container or(Container other) {
+      if(!(other instanceof ArrayContainer)) {
+        // Do not modify the other container.
+        BitsetContainer bits = other instanceof BitsetContainer ? ((BitsetContainer) other).copy() : other.toBitset();
+        return bits.or(this);
+      }
+      final ArrayContainer a = (ArrayContainer) other;
+      if(card + a.card > MAX_ARRAY) {
+        return toBitset().or(a.toBitset());
+      }
+      char[] out = new char[Math.max(card + a.card, 4)];
+      int c = 0, i = 0, j = 0;
+      while(i < card && j < a.card) {
+        final char v1 = vals[i], v2 = a.vals[j];
+        if(v1 <= v2) {
+          out[c++] = v1;
+          i++;
+          j += v1 == v2 ? 1 : 0;
+        }
+        else {
+          out[c++] = v2;
+          j++;
+        }
+      }
+      while(i < card) {
+        out[c++] = vals[i++];
+      }
+      while(j < a.card) {
+        out[c++] = a.vals[j++];
+      }
+      vals = out;
+      card = c;
+      return this;
+    }
+  }
+
+  /**
+   * Container storing a bitset of all 65536 possible values.
+   *
+   * @author Erich Schubert
+   */
+  static class BitsetContainer extends Container {
+    /**
+     * Bits.
+     */
+    long[] words = new long[1024];
+
+    /**
+     * Number of values.
+     */
+    int card;
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    boolean contains(int x) {
+      return (words[x >>> 6] & (1L << x)) != 0;
+    }
+
+    @Override
+    Container add(int x) {
+      final long w = words[x >>> 6], nw = w | (1L << x);
+      if(w != nw) {
+        words[x >>> 6] = nw;
+        card++;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(int x) {
+      final long w = words[x >>> 6], nw = w & ~(1L << x);
+      if(w != nw) {
+        words[x >>> 6] = nw;
+        card--;
+        // Use a lower threshold than for adding, to avoid oscillating.
+        if(card <= MAX_ARRAY >>> 1) {
+          return toArray();
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Convert to an array container.
+     *
+     * @return Array container
+     */
+    ArrayContainer toArray() {
+      char[] vals = new char[Math.max(card, 4)];
+      int c = 0;
+      for(int i = 0; i < words.length; i++) {
+        long w = words[i];
+        while(w != 0) {
+          vals[c++] = (char) ((i << 6) + Long.numberOfTrailingZeros(w));
+          w &= w - 1;
+        }
+      }
+      return new ArrayContainer(vals, c);
+    }
+
+    @Override
+    int next(int x) {
+      int i = x >>> 6;
+      long w = words[i] & (-1L << x);
+      while(w == 0) {
+        if(++i == words.length) {
+          return -1;
+        }
+        w = words[i];
+      }
+      return (i << 6) + Long.numberOfTrailingZeros(w);
+    }
+
+    @Override
+    int last() {
+      for(int i = words.length - 1; i >= 0; i--) {
+        if(words[i] != 0) {
+          return (i << 6) + 63 - Long.numberOfLeadingZeros(words[i]);
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    BitsetContainer copy() {
+      BitsetContainer b = new BitsetContainer();
+      System.arraycopy(words, 0, b.words, 0, words.length);
+      b.card = card;
+      return b;
+    }
+
+    @Override
+    BitsetContainer toBitset() {
+      return this;
+    }
+
+    @Override
+    Container runOptimize() {
+      int runs = 0;
+      long prev = 0;
+      for(int i = 0; i < words.length; i++) {
+        final long w = words[i];
+        // Count run starts: bits set, whose predecessor is not set.
+        runs += Long.bitCount(w & ~((w << 1) | (prev >>> 63)));
+        prev = w;
+      }
+      // Bitsets use 8 KB, runs 4 bytes each.
+      return runs < 2048 ? RunContainer.fromBitset(this, runs) : this;
+    }
+
+    /**
+     * Intersection with another bitset.
+     *
+     * @param other Other bitset
+     * @return New container
+     */
+    Container and(BitsetContainer other) {
+      BitsetContainer b = new BitsetContainer();
+      int c = 0;
+      for(int i = 0; i < words.length; i++) {
+        c += Long.bitCount(b.words[i] = words[i] & other.words[i]);
+      }
+      b.card = c;
+      return c <= MAX_ARRAY ? b.toArray() : b;
+    }
+
+    /**
+     * Intersection size with another bitset.
+     *
+     * @param other Other bitset
+     * @return Intersection size
+     */
+    int andCardinality(BitsetContainer other) {
+      int c = 0;
+      for(int i = 0; i < words.length; i++) {
+        c += Long.bitCount(words[i] & other.words[i]);
+      }
+      return c;
+    }
+
+    /**
+     * Union with another bitset, in-place.
+     *
+     * @param other Other bitset
+     * @return This container
+     */
+    BitsetContainer or(BitsetContainer other) {
+      int c = 0;
+      for(int i = 0; i < words.length; i++) {
+        c += Long.bitCount(words[i] |= other.words[i]);
+      }
+      card = c;
+      return this;
+    }
+
+    @Override
+    Container or(Container other) {
+      if(other instanceof ArrayContainer) {
+        return super.or(other);
+      }
+      return or(other.toBitset());
+    }
+  }
+
+  /**
+   * Container storing runs of consecutive values. Run containers are not
+   * modified; they are converted to other containers on modification.
+   *
+   * @author Erich Schubert
+   */
+  static class RunContainer extends Container {
+    /**
+     * Start and length-1 of each run.
+     */
+    char[] runs;
+
+    /**
+     * Number of runs.
+     */
+    int nruns;
+
+    /**
+     * Number of values.
+     */
+    int card;
+
+    /**
+     * Constructor.
+     *
+     * @param runs Runs (start and length-1)
+     * @param nruns Number of runs
+     * @param card Number of values
+     */
+    RunContainer(char[] runs, int nruns, int card) {
+      this.runs = runs;
+      this.nruns = nruns;
+      this.card = card;
+    }
+
+    /**
+     * Build from a sorted array.
+     *
+     * @param vals Values
+     * @param card Number of values
+     * @param nruns Number of runs
+     * @return Run container
+     */
+    static RunContainer fromSorted(char[] vals, int card, int nruns) {
+      char[] runs = new char[nruns << 1];
+      for(int i = 0, r = 0; i < card; r += 2) {
+        final int start = vals[i];
+        int j = i + 1;
+        while(j < card && vals[j] == vals[j - 1] + 1) {
+          j++;
+        }
+        runs[r] = (char) start;
+        runs[r + 1] = (char) (j - i - 1);
+        i = j;
+      }
+      return new RunContainer(runs, nruns, card);
+    }
+
+    /**
+     * Build from a bitset.
+     *
+     * @param b Bitset
+     * @param nruns Number of runs
+     * @return Run container
+     */
+    static RunContainer fromBitset(BitsetContainer b, int nruns) {
+      char[] runs = new char[nruns << 1];
+      int r = 0, x = b.next(0);
+      while(x >= 0) {
+        int e = x;
+        while(e < 0xFFFF && b.contains(e + 1)) {
+          e++;
+        }
+        runs[r++] = (char) x;
+        runs[r++] = (char) (e - x);
+        x = e < 0xFFFF ? b.next(e + 1) : -1;
+      }
+      return new RunContainer(runs, nruns, b.card);
+    }
+
+    /**
+     * Find the run containing x, or preceding x.
+     *
+     * @param x Value
+     * @return Run number, -1 if before the first run
+     */
+    private int findRun(int x) {
+      int lo = 0, hi = nruns - 1;
+      while(lo <= hi) {
+        final int mid = (lo + hi) >>> 1;
+        if(runs[mid << 1] <= x) {
+          lo = mid + 1;
+        }
+        else {
+          hi = mid - 1;
+        }
+      }
+      return hi;
+    }
+
+    @Override
+    int cardinality() {
+      return card;
+    }
+
+    @Override
+    boolean contains(int x) {
+      final int r = findRun(x);
+      return r >= 0 && x - runs[r << 1] <= runs[(r << 1) + 1];
+    }
+
+    /**
+     * Convert to a modifiable container.
+     *
+     * @return Array or bitset container
+     */
+    private Container toModifiable() {
+      if(card > MAX_ARRAY) {
+        return toBitset();
+      }
+      char[] vals = new char[Math.max(card, 4)];
+      int c = 0;
+      for(int r = 0; r < nruns; r++) {
+        for(int v = runs[r << 1], e = v + runs[(r << 1) + 1]; v <= e; v++) {
+          vals[c++] = (char) v;
+        }
+      }
+      return new ArrayContainer(vals, c);
+    }
+
+    @Override
+    Container add(int x) {
+      return contains(x) ? this : toModifiable().add(x);
+    }
+
+    @Override
+    Container remove(int x) {
+      return contains(x) ? toModifiable().remove(x) : this;
+    }
+
+    @Override
+    int next(int x) {
+      final int r = findRun(x);
+      if(r >= 0 && x - runs[r << 1] <= runs[(r << 1) + 1]) {
+        return x;
+      }
+      return r + 1 < nruns ? runs[(r + 1) << 1] : -1;
+    }
+
+    @Override
+    int last() {
+      return runs[(nruns - 1) << 1] + runs[((nruns - 1) << 1) + 1];
+    }
+
+    @Override
+    Container copy() {
+      // Run containers are not modified.
+      return this;
+    }
+
+    @Override
+    BitsetContainer toBitset() {
+      BitsetContainer b = new BitsetContainer();
+      for(int r = 0; r < nruns; r++) {
+        final int start = runs[r << 1], end = start + runs[(r << 1) + 1] + 1;
+        // Set bits start to end (exclusive), word by word.
+        for(int i = start >>> 6, e = (end - 1) >>> 6; i <= e; i++) {
+          long mask = -1L;
+          if(i == start >>> 6) {
+            mask &= -1L << start;
+          }
+          if(i == e) {
+            mask &= -1L >>> (-end & 63);
+          }
+          b.words[i] |= mask;
+        }
+      }
+      b.card = card;
+      return b;
+    }
+
+    @Override
+    Container runOptimize() {
+      return this;
+    }
+
+    @Override
+    Container or(Container other) {
+      return toBitset().or(other);
+    }
+  }
+}
@@ -20,6 +20,8 @@
  */
 package de.lmu.ifi.dbs.elki.database.ids.integer;
 
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
@@ -161,6 +163,18 @@ class DoubleIntegerDBIDArrayList implements ModifiableDoubleDBIDList, DoubleInte
     System.arraycopy(oids, 0, ids, 0, oids.length);
   }
 
+  /**
+   * Ensure the storage can hold at least the given number of entries.
+   *
+   * @param minsize Minimum capacity
+   */
+  protected void ensureCapacity(int minsize) {
+    if(minsize > dists.length) {
+      dists = Arrays.copyOf(dists, Math.max(minsize, dists.length + (dists.length >> 1) + 1));
+      ids = Arrays.copyOf(ids, dists.length);
+    }
+  }
+
   @Override
   public void add(double dist, DBIDRef id) {
     addInternal(dist, id.internalGetIndex());
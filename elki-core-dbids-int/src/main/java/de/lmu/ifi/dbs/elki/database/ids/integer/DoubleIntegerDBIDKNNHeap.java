@@ -26,6 +26,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerHeap;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
 import net.jafama.FastMath;
@@ -214,6 +215,7 @@ class DoubleIntegerDBIDKNNHeap implements KNNHeap {
   public void clear() {
     heap.clear();
     numties = 0;
+    kdist = Double.POSITIVE_INFINITY;
   }
 
   @Override
@@ -253,6 +255,60 @@ class DoubleIntegerDBIDKNNHeap implements KNNHeap {
     return ret;
   }
 
+  @Override
+  public void toKNNList(ModifiableDoubleDBIDList out) {
+    fill(out, false);
+  }
+
+  @Override
+  public void toKNNListSqrt(ModifiableDoubleDBIDList out) {
+    fill(out, true);
+  }
+
+  /**
+   * Serialize the heap into an existing list, and clear the heap.
+   *
+   * @param out Output list
+   * @param sqrt Apply sqrt to the distances
+   */
+  private void fill(ModifiableDoubleDBIDList out, boolean sqrt) {
+    out.clear();
+    final int hsize = heap.size(), size = hsize + numties;
+    if(out instanceof DoubleIntegerDBIDArrayList) {
+      // Write directly into the arrays.
+      DoubleIntegerDBIDArrayList ret = (DoubleIntegerDBIDArrayList) out;
+      ret.ensureCapacity(size);
+      final double kdist = sqrt && numties > 0 ? FastMath.sqrt(this.kdist) : this.kdist;
+      for(int i = 0; i < numties; i++) {
+        ret.dists[hsize + i] = kdist;
+        ret.ids[hsize + i] = ties[i];
+      }
+      for(int j = hsize - 1; j >= 0; j--) {
+        ret.dists[j] = sqrt ? FastMath.sqrt(heap.peekKey()) : heap.peekKey();
+        ret.ids[j] = heap.peekValue();
+        heap.poll();
+      }
+      ret.size = size;
+    }
+    else {
+      // Add in descending order, then reverse.
+      IntegerDBIDVar var = new IntegerDBIDVar();
+      final double kdist = sqrt && numties > 0 ? FastMath.sqrt(this.kdist) : this.kdist;
+      for(int i = numties - 1; i >= 0; i--) {
+        var.internalSetIndex(ties[i]);
+        out.add(kdist, var);
+      }
+      for(; !heap.isEmpty(); heap.poll()) {
+        var.internalSetIndex(heap.peekValue());
+        out.add(sqrt ? FastMath.sqrt(heap.peekKey()) : heap.peekKey(), var);
+      }
+      for(int i = 0, j = size - 1; i < j; i++, j--) {
+        out.swap(i, j);
+      }
+    }
+    clear();
+  }
+
   /**
    * Peek the topmost distance.
    *
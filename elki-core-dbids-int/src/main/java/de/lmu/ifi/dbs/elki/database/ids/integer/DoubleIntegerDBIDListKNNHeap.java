@@ -25,6 +25,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import net.jafama.FastMath;
 
 /**
@@ -135,6 +136,32 @@ class DoubleIntegerDBIDListKNNHeap extends DoubleIntegerDBIDKNNList implements K
     return this;
   }
 
+  @Override
+  public void toKNNList(ModifiableDoubleDBIDList out) {
+    fill(out, false);
+  }
+
+  @Override
+  public void toKNNListSqrt(ModifiableDoubleDBIDList out) {
+    fill(out, true);
+  }
+
+  /**
+   * Copy the contents into an existing list, and clear the heap.
+   *
+   * @param out Output list
+   * @param sqrt Apply sqrt to the distances
+   */
+  private void fill(ModifiableDoubleDBIDList out, boolean sqrt) {
+    out.clear();
+    IntegerDBIDVar var = new IntegerDBIDVar();
+    for(int i = 0; i < size; i++) {
+      var.internalSetIndex(ids[i]);
+      out.add(sqrt ? FastMath.sqrt(dists[i]) : dists[i], var);
+    }
+    clear();
+  }
+
   @Override
   public String toString() {
     StringBuilder buf = new StringBuilder();
@@ -27,6 +27,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import net.jafama.FastMath;
 
 /**
@@ -173,6 +174,24 @@ class DoubleIntegerDBIDPairKNNListHeap implements IntegerDBIDKNNList, KNNHeap {
     return null;
   }
 
+  @Override
+  public void toKNNList(ModifiableDoubleDBIDList out) {
+    out.clear();
+    for(int i = 0; i < size; i++) {
+      out.add(data[i]);
+    }
+    clear();
+  }
+
+  @Override
+  public void toKNNListSqrt(ModifiableDoubleDBIDList out) {
+    out.clear();
+    for(int i = 0; i < size; i++) {
+      out.add(FastMath.sqrt(data[i].value), data[i]);
+    }
+    clear();
+  }
+
   @Override
   public int getK() {
     return k;
@@ -74,6 +74,7 @@ public class SimpleDBIDFactory extends AbstractIntegerDBIDFactory {
       throw new AbortException("DBID range allocation error - too many objects allocated!");
     }
     DBIDRange alloc = new IntegerDBIDRange(rangestart, size);
+    registerRange(rangestart, size);
     rangestart += size;
     return alloc;
   }
@@ -84,6 +85,7 @@ public class SimpleDBIDFactory extends AbstractIntegerDBIDFactory {
       throw new AbortException("DBID range allocation error - too many objects allocated!");
     }
     DBIDRange alloc = new IntegerDBIDRange(begin, size);
+    registerRange(begin, size);
     rangestart = Math.max(rangestart, begin + size);
     return alloc;
   }
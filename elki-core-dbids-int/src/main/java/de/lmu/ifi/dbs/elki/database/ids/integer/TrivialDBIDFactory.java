@@ -72,6 +72,7 @@ final public class TrivialDBIDFactory extends AbstractIntegerDBIDFactory {
       throw new AbortException("DBID range allocation error - too many objects allocated!");
     }
     DBIDRange alloc = new IntegerDBIDRange(start, size);
+    registerRange(start, size);
     return alloc;
   }
 
@@ -82,6 +83,7 @@ final public class TrivialDBIDFactory extends AbstractIntegerDBIDFactory {
       throw new AbortException("DBID range allocation error - too many objects allocated!");
     }
     DBIDRange alloc = new IntegerDBIDRange(begin, size);
+    registerRange(begin, size);
     int v;
     while((v = next.get()) < end) {
       if(next.compareAndSet(v, end)) {
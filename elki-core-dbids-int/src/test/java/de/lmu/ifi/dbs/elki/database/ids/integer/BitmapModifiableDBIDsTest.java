@@ -0,0 +1,167 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.ids.integer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDMIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+
+/**
+ * Test the compressed bitmap DBID sets against hash sets.
+ *
+ * @author Erich Schubert
+ */
+public class BitmapModifiableDBIDsTest {
+  /**
+   * Fill a bitmap and a hash set with random values, using different
+   * densities in different containers.
+   *
+   * @param r Random generator
+   * @param bitmap Bitmap
+   * @param hash Reference hash set
+   */
+  private static void fill(Random r, BitmapModifiableDBIDs bitmap, FastutilIntOpenHashSetModifiableDBIDs hash) {
+    IntegerDBIDVar var = new IntegerDBIDVar();
+    // Sparse, dense, very dense, and a container with negative indexes.
+    int[] starts = { 0, 1 << 16, 3 << 16, -(1 << 16) };
+    double[] rates = { .01, .3, .95, .1 };
+    for(int c = 0; c < starts.length; c++) {
+      for(int i = 0; i < 1 << 16; i++) {
+        if(r.nextDouble() < rates[c]) {
+          var.internalSetIndex(starts[c] + i);
+          assertEquals("Add result differs.", hash.add(var), bitmap.add(var));
+        }
+      }
+    }
+    // A long run.
+    for(int i = 5 << 16; i < (7 << 16) + 100; i++) {
+      var.internalSetIndex(i);
+      assertEquals("Add result differs.", hash.add(var), bitmap.add(var));
+    }
+  }
+
+  /**
+   * Compare the contents of two sets.
+   *
+   * @param expected Expected contents
+   * @param actual Actual contents
+   */
+  private static void assertSameSet(DBIDs expected, DBIDs actual) {
+    assertEquals("Sizes differ.", expected.size(), actual.size());
+    int c = 0, prev = 0;
+    for(DBIDIter it = actual.iter(); it.valid(); it.advance(), c++) {
+      assertTrue("Unexpected element: " + it, expected.contains(it));
+      if(c > 0) {
+        assertTrue("Not in order.", Integer.compareUnsigned(prev, it.internalGetIndex()) < 0);
+      }
+      prev = it.internalGetIndex();
+    }
+    assertEquals("Iterator size differs.", expected.size(), c);
+  }
+
+  @Test
+  public void testAddRemove() {
+    Random r = new Random(0L);
+    BitmapModifiableDBIDs bitmap = new BitmapModifiableDBIDs();
+    FastutilIntOpenHashSetModifiableDBIDs hash = new FastutilIntOpenHashSetModifiableDBIDs();
+    fill(r, bitmap, hash);
+    assertSameSet(hash, bitmap);
+    // Remove a random subset, including via the iterator
+    int c = 0;
+    for(DBIDMIter it = bitmap.iter(); it.valid(); it.advance()) {
+      if(r.nextDouble() < .7) {
+        assertTrue("Remove failed.", hash.remove(it));
+        it.remove();
+        c++;
+      }
+    }
+    assertTrue("Nothing removed.", c > 0);
+    assertSameSet(hash, bitmap);
+    IntegerDBIDVar var = new IntegerDBIDVar();
+    for(int i = 0; i < 100000; i++) {
+      var.internalSetIndex(r.nextInt(8 << 16));
+      assertEquals("Contains differs.", hash.contains(var), bitmap.contains(var));
+      assertEquals("Remove result differs.", hash.remove(var), bitmap.remove(var));
+    }
+    assertSameSet(hash, bitmap);
+    // Empty by pop
+    DBIDVar v = DBIDUtil.newVar();
+    while(!bitmap.isEmpty()) {
+      bitmap.pop(v);
+      assertTrue("Popped value not contained.", hash.remove(v));
+    }
+    assertTrue("Not empty.", hash.isEmpty());
+  }
+
+  @Test
+  public void testSetOperations() {
+    Random r = new Random(1L);
+    BitmapModifiableDBIDs b1 = new BitmapModifiableDBIDs(), b2 = new BitmapModifiableDBIDs();
+    FastutilIntOpenHashSetModifiableDBIDs h1 = new FastutilIntOpenHashSetModifiableDBIDs(), h2 = new FastutilIntOpenHashSetModifiableDBIDs();
+    fill(r, b1, h1);
+    fill(r, b2, h2);
+    // Also use run containers.
+    BitmapModifiableDBIDs b3 = new BitmapModifiableDBIDs(b2);
+    b3.runOptimize();
+    assertSameSet(h2, b3);
+
+    assertEquals("Intersection size differs.", DBIDUtil.intersectionSize(h1, h2), DBIDUtil.intersectionSize(b1, b2));
+    assertEquals("Intersection size differs.", DBIDUtil.intersectionSize(h1, h2), DBIDUtil.intersectionSize(b1, b3));
+    assertSameSet(DBIDUtil.intersection(h1, h2), DBIDUtil.intersection(b1, b3));
+    assertSameSet(DBIDUtil.union(h1, h2), DBIDUtil.union(b3, b1));
+    ModifiableDBIDs u = DBIDUtil.union(b1, h2);
+    assertSameSet(DBIDUtil.union(h1, h2), u);
+    // Inputs must not be modified:
+    assertSameSet(h1, b1);
+    assertSameSet(h2, b2);
+    assertSameSet(h2, b3);
+    // Mixed retainAll
+    HashSetModifiableDBIDs b4 = new BitmapModifiableDBIDs(b1);
+    assertTrue("Retain should modify.", b4.retainAll(h2));
+    h1.retainAll(h2);
+    assertSameSet(h1, b4);
+  }
+
+  @Test
+  public void testFactory() {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(100000);
+    HashSetModifiableDBIDs set = DBIDUtil.newHashSet(range);
+    assertTrue("Not a bitmap.", set instanceof BitmapModifiableDBIDs);
+    assertSameSet(range, set);
+    HashSetModifiableDBIDs large = DBIDUtil.newHashSet(50000);
+    assertTrue("Not a bitmap.", large instanceof BitmapModifiableDBIDs);
+    HashSetModifiableDBIDs small = DBIDUtil.newHashSet(10);
+    assertFalse("Should not be a bitmap.", small instanceof BitmapModifiableDBIDs);
+  }
+}
@@ -20,13 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.database.datastore;
 
-import de.lmu.ifi.dbs.elki.database.datastore.memory.MemoryDataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 
 /**
  * API for a storage factory used for producing larger storage maps.
  * 
- * Use {@link #FACTORY} for a static instance.
+ * Use {@link #FACTORY} for a static instance. This instance forwards to the
+ * factory selected for the current thread with
+ * {@link GlobalDataStoreFactory#setFactory}, by default an in-memory storage.
  * 
  * @author Erich Schubert
  * @since 0.4.0
@@ -42,7 +43,7 @@ public interface DataStoreFactory {
   /**
    * Static storage factory
    */
-  DataStoreFactory FACTORY = new MemoryDataStoreFactory();
+  DataStoreFactory FACTORY = new GlobalDataStoreFactory();
 
   /**
    * Storage will be used only temporary.
@@ -0,0 +1,125 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore;
+
+import de.lmu.ifi.dbs.elki.database.datastore.memory.MemoryDataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+
+/**
+ * Storage factory that forwards to the factory selected for the current
+ * thread. This is the class of {@link DataStoreFactory#FACTORY}, and allows
+ * replacing the default in-memory storage, e.g. with off-heap storage for very
+ * large data sets.
+ * <p>
+ * Like the parallel processing core, the selection is bound to a thread, so
+ * that concurrent runs within one JVM do not interfere; the parallel executor
+ * binds the selection of the submitting thread in its worker tasks.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.stereotype factory
+ * @apiviz.uses DataStoreFactory
+ */
+public final class GlobalDataStoreFactory implements DataStoreFactory {
+  /**
+   * Default factory.
+   */
+  private static final DataStoreFactory DEFAULT = new MemoryDataStoreFactory();
+
+  /**
+   * Factory selected for the current thread.
+   */
+  private static final ThreadLocal<DataStoreFactory> BOUND = new ThreadLocal<>();
+
+  /**
+   * Constructor, use {@link DataStoreFactory#FACTORY}.
+   */
+  GlobalDataStoreFactory() {
+    super();
+  }
+
+  /**
+   * Get the factory selected for the current thread.
+   *
+   * @return Factory
+   */
+  public static DataStoreFactory getFactory() {
+    DataStoreFactory factory = BOUND.get();
+    return factory != null ? factory : DEFAULT;
+  }
+
+  /**
+   * Select the factory to use for new data stores created by the current
+   * thread.
+   *
+   * @param factory Factory, {@code null} for the default memory factory
+   * @return Previously selected factory, may be {@code null}
+   */
+  public static DataStoreFactory setFactory(DataStoreFactory factory) {
+    if(factory instanceof GlobalDataStoreFactory) {
+      throw new IllegalArgumentException("Cannot select the global factory itself.");
+    }
+    DataStoreFactory prev = BOUND.get();
+    if(factory != null && factory != DEFAULT) {
+      BOUND.set(factory);
+    }
+    else {
+      BOUND.remove();
+    }
+    return prev;
+  }
+
+  @Override
+  public <T> WritableDataStore<T> makeStorage(DBIDs ids, int hints, Class<? super T> dataclass) {
+    return getFactory().makeStorage(ids, hints, dataclass);
+  }
+
+  @Override
+  public WritableDBIDDataStore makeDBIDStorage(DBIDs ids, int hints) {
+    return getFactory().makeDBIDStorage(ids, hints);
+  }
+
+  @Override
+  public WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints) {
+    return getFactory().makeDoubleStorage(ids, hints);
+  }
+
+  @Override
+  public WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints, double def) {
+    return getFactory().makeDoubleStorage(ids, hints, def);
+  }
+
+  @Override
+  public WritableIntegerDataStore makeIntegerStorage(DBIDs ids, int hints) {
+    return getFactory().makeIntegerStorage(ids, hints);
+  }
+
+  @Override
+  public WritableIntegerDataStore makeIntegerStorage(DBIDs ids, int hints, int def) {
+    return getFactory().makeIntegerStorage(ids, hints, def);
+  }
+
+  @Override
+  public WritableRecordStore makeRecordStorage(DBIDs ids, int hints, Class<?>... dataclasses) {
+    return getFactory().makeRecordStorage(ids, hints, dataclasses);
+  }
+}
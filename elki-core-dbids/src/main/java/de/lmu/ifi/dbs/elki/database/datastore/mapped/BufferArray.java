@@ -0,0 +1,186 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.mapped;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Array of fixed size primitive values, stored in off-heap or memory-mapped
+ * buffers.
+ * <p>
+ * Because a single buffer is limited to 2 GB, the array is split into segments
+ * of {@code 2^27} elements each.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+class BufferArray {
+  /**
+   * Number of bits used for the position within a segment.
+   */
+  private static final int SHIFT = 27;
+
+  /**
+   * Mask for the position within a segment.
+   */
+  private static final int MASK = (1 << SHIFT) - 1;
+
+  /**
+   * Data segments.
+   */
+  private ByteBuffer[] segments;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of elements
+   * @param eshift Element size, as shift (3 for 8 bytes, 2 for 4 bytes)
+   * @param directory Directory for memory-mapped files, {@code null} for
+   *        direct (off-heap) memory.
+   */
+  BufferArray(int size, int eshift, File directory) {
+    final int nseg = (int) ((size + (long) MASK) >>> SHIFT);
+    this.segments = new ByteBuffer[nseg];
+    if(directory == null) {
+      for(int i = 0; i < nseg; i++) {
+        segments[i] = ByteBuffer.allocateDirect(segmentSize(size, i) << eshift).order(ByteOrder.nativeOrder());
+      }
+      return;
+    }
+    File file = null;
+    try {
+      file = File.createTempFile("elki-", ".store", directory);
+      file.deleteOnExit();
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        final FileChannel channel = raf.getChannel();
+        long pos = 0;
+        for(int i = 0; i < nseg; i++) {
+          final long len = ((long) segmentSize(size, i)) << eshift;
+          segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, pos, len).order(ByteOrder.nativeOrder());
+          pos += len;
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not map data store file in " + directory, e);
+    }
+    finally {
+      // The mapping remains valid, the data is not needed after destroy().
+      if(file != null) {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Number of elements in a segment.
+   *
+   * @param size Total size
+   * @param i Segment number
+   * @return Number of elements in the segment
+   */
+  private static int segmentSize(int size, int i) {
+    return Math.min(size - (i << SHIFT), 1 << SHIFT);
+  }
+
+  /**
+   * Get a double value.
+   *
+   * @param off Offset
+   * @return Value
+   */
+  double getDouble(int off) {
+    return segments[off >>> SHIFT].getDouble((off & MASK) << 3);
+  }
+
+  /**
+   * Set a double value.
+   *
+   * @param off Offset
+   * @param v New value
+   */
+  void putDouble(int off, double v) {
+    segments[off >>> SHIFT].putDouble((off & MASK) << 3, v);
+  }
+
+  /**
+   * Get an integer value.
+   *
+   * @param off Offset
+   * @return Value
+   */
+  int getInt(int off) {
+    return segments[off >>> SHIFT].getInt((off & MASK) << 2);
+  }
+
+  /**
+   * Set an integer value.
+   *
+   * @param off Offset
+   * @param v New value
+   */
+  void putInt(int off, int v) {
+    segments[off >>> SHIFT].putInt((off & MASK) << 2, v);
+  }
+
+  /**
+   * Fill with a double value.
+   *
+   * @param v Value
+   */
+  void fill(double v) {
+    for(ByteBuffer seg : segments) {
+      for(int i = 0, e = seg.capacity(); i < e; i += 8) {
+        seg.putDouble(i, v);
+      }
+    }
+  }
+
+  /**
+   * Fill with an integer value.
+   *
+   * @param v Value
+   */
+  void fill(int v) {
+    for(ByteBuffer seg : segments) {
+      for(int i = 0, e = seg.capacity(); i < e; i += 4) {
+        seg.putInt(i, v);
+      }
+    }
+  }
+
+  /**
+   * Release the buffers.
+   */
+  void destroy() {
+    // Direct memory and mappings are released by the garbage collector. We do
+    // not force an unmap, as this would write back the pages of the (already
+    // deleted) file.
+    segments = null;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.mapped;
+
+import java.io.File;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+
+/**
+ * DBID data store, using off-heap or memory-mapped buffers.
+ * <p>
+ * The DBIDs are stored by their integer index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap
+ */
+public class MappedDBIDStore implements WritableDBIDDataStore {
+  /**
+   * Data buffers
+   */
+  private BufferArray data;
+
+  /**
+   * Index of the invalid DBID.
+   */
+  private final int invalid = DBIDUtil.asInteger(DBIDUtil.invalid());
+
+  /**
+   * DBID to index map
+   */
+  private DataStoreIDMap idmap;
+
+  /**
+   * Constructor.
+   *
+   * @param size Size
+   * @param idmap ID map
+   * @param directory Directory for memory-mapped files, {@code null} for
+   *        off-heap memory.
+   */
+  public MappedDBIDStore(int size, DataStoreIDMap idmap, File directory) {
+    super();
+    this.data = new BufferArray(size, 2, directory);
+    if(invalid != 0) {
+      data.fill(invalid);
+    }
+    this.idmap = idmap;
+  }
+
+  @Override
+  @Deprecated
+  public DBID get(DBIDRef id) {
+    return DBIDUtil.importInteger(data.getInt(idmap.mapDBIDToOffset(id)));
+  }
+
+  @Override
+  public DBIDVar assignVar(DBIDRef id, DBIDVar var) {
+    DBIDFactory.FACTORY.assignVar(var, data.getInt(idmap.mapDBIDToOffset(id)));
+    return var;
+  }
+
+  @Override
+  @Deprecated
+  public DBID put(DBIDRef id, DBID value) {
+    final int off = idmap.mapDBIDToOffset(id);
+    DBID ret = DBIDUtil.importInteger(data.getInt(off));
+    data.putInt(off, DBIDUtil.asInteger(value));
+    return ret;
+  }
+
+  @Override
+  public void putDBID(DBIDRef id, DBIDRef value) {
+    data.putInt(idmap.mapDBIDToOffset(id), DBIDUtil.asInteger(value));
+  }
+
+  @Override
+  public void put(DBIDRef id, DBIDRef value) {
+    data.putInt(idmap.mapDBIDToOffset(id), DBIDUtil.asInteger(value));
+  }
+
+  @Override
+  public void destroy() {
+    data.destroy();
+    data = null;
+    idmap = null;
+  }
+
+  @Override
+  public void clear() {
+    data.fill(invalid);
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    put(id, DBIDUtil.invalid());
+  }
+}
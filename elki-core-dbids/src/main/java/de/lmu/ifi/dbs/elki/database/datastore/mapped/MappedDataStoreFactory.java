@@ -0,0 +1,190 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.datastore.mapped;
+
+import java.io.File;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableRecordStore;
+import de.lmu.ifi.dbs.elki.database.datastore.memory.MemoryDataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Storage factory that keeps double, integer and DBID stores outside of the
+ * Java heap, either in direct (off-heap) memory, or in memory-mapped temporary
+ * files. This avoids large heaps and long garbage collection pauses for
+ * algorithms that keep per-object state on very large data sets.
+ * <p>
+ * Only primitive stores for static ID ranges, and with at least a minimum
+ * size, are stored this way. Object and record stores, small stores and stores
+ * for arbitrary DBIDs use the {@link MemoryDataStoreFactory}. Hints are not
+ * used.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.stereotype factory
+ * @apiviz.has MappedDoubleStore oneway - - «create»
+ * @apiviz.has MappedIntegerStore oneway - - «create»
+ * @apiviz.has MappedDBIDStore oneway - - «create»
+ */
+public class MappedDataStoreFactory implements DataStoreFactory {
+  /**
+   * Factory for stores that are kept in memory.
+   */
+  private final MemoryDataStoreFactory memory = new MemoryDataStoreFactory();
+
+  /**
+   * Directory for memory-mapped files, {@code null} for off-heap memory.
+   */
+  private File directory;
+
+  /**
+   * Minimum size of a store to not use the memory factory.
+   */
+  private int minsize;
+
+  /**
+   * Constructor.
+   *
+   * @param directory Directory for memory-mapped files, {@code null} for
+   *        off-heap memory.
+   * @param minsize Minimum number of objects to use off-heap storage.
+   */
+  public MappedDataStoreFactory(File directory, int minsize) {
+    super();
+    this.directory = directory;
+    this.minsize = minsize;
+  }
+
+  /**
+   * Test whether to use a buffer store.
+   *
+   * @param ids DBIDs to store data for
+   * @return {@code true} when to use a buffer store.
+   */
+  private boolean useBuffers(DBIDs ids) {
+    return ids instanceof DBIDRange && ids.size() >= minsize;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> WritableDataStore<T> makeStorage(DBIDs ids, int hints, Class<? super T> dataclass) {
+    if(Double.class.equals(dataclass)) {
+      return (WritableDataStore<T>) makeDoubleStorage(ids, hints);
+    }
+    if(Integer.class.equals(dataclass)) {
+      return (WritableDataStore<T>) makeIntegerStorage(ids, hints);
+    }
+    return memory.makeStorage(ids, hints, dataclass);
+  }
+
+  @Override
+  public WritableDBIDDataStore makeDBIDStorage(DBIDs ids, int hints) {
+    return useBuffers(ids) ? new MappedDBIDStore(ids.size(), (DBIDRange) ids, directory) : memory.makeDBIDStorage(ids, hints);
+  }
+
+  @Override
+  public WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints) {
+    return makeDoubleStorage(ids, hints, Double.NaN);
+  }
+
+  @Override
+  public WritableDoubleDataStore makeDoubleStorage(DBIDs ids, int hints, double def) {
+    return useBuffers(ids) ? new MappedDoubleStore(ids.size(), (DBIDRange) ids, def, directory) : memory.makeDoubleStorage(ids, hints, def);
+  }
+
+  @Override
+  public WritableIntegerDataStore makeIntegerStorage(DBIDs ids, int hints) {
+    return makeIntegerStorage(ids, hints, 0);
+  }
+
+  @Override
+  public WritableIntegerDataStore makeIntegerStorage(DBIDs ids, int hints, int def) {
+    return useBuffers(ids) ? new MappedIntegerStore(ids.size(), (DBIDRange) ids, def, directory) : memory.makeIntegerStorage(ids, hints, def);
+  }
+
+  @Override
+  public WritableRecordStore makeRecordStorage(DBIDs ids, int hints, Class<?>... dataclasses) {
+    return memory.makeRecordStorage(ids, hints, dataclasses);
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    /**
+     * Directory for memory-mapped files. If not set, direct (off-heap) memory
+     * is used.
+     */
+    public static final OptionID DIRECTORY_ID = new OptionID("datastore.directory", "Directory for memory-mapped temporary files. If not given, off-heap memory is used.");
+
+    /**
+     * Minimum number of objects to not keep the data on the heap.
+     */
+    public static final OptionID MINSIZE_ID = new OptionID("datastore.minsize", "Minimum number of objects for a store to be kept outside of the Java heap.");
+
+    /**
+     * Directory for memory-mapped files.
+     */
+    protected File directory;
+
+    /**
+     * Minimum size.
+     */
+    protected int minsize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      FileParameter directoryP = new FileParameter(DIRECTORY_ID, FileParameter.FileType.INPUT_FILE) //
+          .setOptional(true);
+      if(config.grab(directoryP)) {
+        directory = directoryP.getValue();
+      }
+      IntParameter minsizeP = new IntParameter(MINSIZE_ID, 100000) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT);
+      if(config.grab(minsizeP)) {
+        minsize = minsizeP.intValue();
+      }
+    }
+
+    @Override
+    protected MappedDataStoreFactory makeInstance() {
+      return new MappedDataStoreFactory(directory, minsize);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.ids;
+
+/**
+ * Set of DBIDs stored as a compressed bitmap, which allows computing
+ * intersections and unions with other bitmaps without testing each element.
+ * <p>
+ * Used by {@link DBIDUtil} to accelerate set operations.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public interface BitmapDBIDs extends SetDBIDs {
+  /**
+   * Compute the size of the intersection with another bitmap.
+   *
+   * @param other Other bitmap
+   * @return Intersection size
+   */
+  int intersectionSize(BitmapDBIDs other);
+}
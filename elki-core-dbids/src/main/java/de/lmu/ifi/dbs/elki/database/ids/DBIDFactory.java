@@ -194,6 +194,18 @@ public interface DBIDFactory {
    */
   KNNHeap newHeap(KNNList exist);
 
+  /**
+   * Get an empty heap owned by the current thread.
+   *
+   * The same instance is returned by subsequent calls in this thread (with
+   * the same k), so it must be serialized before calling any code that may use
+   * the thread-local heap itself, and must not be retained.
+   *
+   * @param k K value
+   * @return Empty heap of size k
+   */
+  KNNHeap threadLocalHeap(int k);
+
   /**
    * Get a serializer for DBIDs.
    *
@@ -289,11 +289,16 @@ public final class DBIDUtil {
    * @param second Second set
    * @return result.
    */
-  // TODO: optimize better?
   public static ModifiableDBIDs intersection(DBIDs first, DBIDs second) {
     if(first.size() > second.size()) {
       return intersection(second, first);
     }
+    if(first instanceof BitmapDBIDs && second instanceof BitmapDBIDs) {
+      // Intersect container by container.
+      HashSetModifiableDBIDs inter = newHashSet(first);
+      inter.retainAll(second);
+      return inter;
+    }
     ModifiableDBIDs inter = newHashSet(first.size());
     for(DBIDIter it = first.iter(); it.valid(); it.advance()) {
       if(second.contains(it)) {
@@ -311,6 +316,9 @@ public final class DBIDUtil {
    * @return size
    */
   public static int intersectionSize(DBIDs first, DBIDs second) {
+    if(first instanceof BitmapDBIDs && second instanceof BitmapDBIDs) {
+      return ((BitmapDBIDs) first).intersectionSize((BitmapDBIDs) second);
+    }
     // If exactly one is a Set, use it as second parameter.
     if(second instanceof SetDBIDs) {
       if(!(first instanceof SetDBIDs)) {
@@ -388,6 +396,13 @@ public final class DBIDUtil {
    * @return the union of ids1 and ids2 without duplicates
    */
   public static ModifiableDBIDs union(DBIDs ids1, DBIDs ids2) {
+    if(ids1 instanceof BitmapDBIDs || ids2 instanceof BitmapDBIDs) {
+      // Copy the bitmap, and add the other.
+      final boolean first = ids1 instanceof BitmapDBIDs;
+      ModifiableDBIDs result = newHashSet(first ? ids1 : ids2);
+      result.addDBIDs(first ? ids2 : ids1);
+      return result;
+    }
     ModifiableDBIDs result = DBIDUtil.newHashSet(Math.max(ids1.size(), ids2.size()));
     result.addDBIDs(ids1);
     result.addDBIDs(ids2);
@@ -513,6 +528,31 @@ public final class DBIDUtil {
     return DBIDFactory.FACTORY.newHeap(exist);
   }
 
+  /**
+   * Get the k-distance from a kNN result list sorted by ascending distance,
+   * consistent with {@link KNNList#getKNNDistance()}.
+   *
+   * @param list kNN result
+   * @param k K value
+   * @return Distance of the k-th neighbor, infinity if there are fewer
+   */
+  public static double kNNDistance(DoubleDBIDList list, int k) {
+    return list.size() >= k ? list.iter().seek(k - 1).doubleValue() : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Get an empty, reusable heap owned by the current thread.
+   *
+   * The heap is shared by all callers in the same thread: serialize its
+   * contents before calling other code, and do not retain it.
+   *
+   * @param k K value
+   * @return Empty heap of size k
+   */
+  public static KNNHeap threadLocalHeap(int k) {
+    return DBIDFactory.FACTORY.threadLocalHeap(k);
+  }
+
   /**
    * Produce a random shuffling of the given DBID array.
    *
@@ -50,6 +50,25 @@ public interface KNNHeap {
    */
   KNNList toKNNListSqrt();
 
+  /**
+   * Serialize into an existing list, in ascending order. The list is cleared
+   * first. This empties the heap!
+   *
+   * Use this with a reused list to avoid allocating a new result for every
+   * query.
+   *
+   * @param out Output list
+   */
+  void toKNNList(ModifiableDoubleDBIDList out);
+
+  /**
+   * Serialize into an existing list, in ascending order, but applying sqrt to
+   * every distance. The list is cleared first. This empties the heap!
+   *
+   * @param out Output list
+   */
+  void toKNNListSqrt(ModifiableDoubleDBIDList out);
+
   /**
    * Get the K parameter ("maxsize" internally).
    *
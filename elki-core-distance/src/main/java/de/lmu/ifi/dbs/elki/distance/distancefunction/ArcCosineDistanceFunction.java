@@ -79,6 +79,15 @@ public class ArcCosineDistanceFunction implements SpatialPrimitiveDistanceFuncti
     return d > 0 ? d : 0; // Avoid NaN
   }
 
+  @Override
+  public void distances(double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    final double l1 = VectorUtil.squaredLength(query);
+    for(int i = 0, o = offset; i < count; i++, o += dim) {
+      final double d = Math.acos(VectorUtil.angleDense(query, l1, block, o, dim));
+      out[i] = d > 0 ? d : 0; // Avoid NaN
+    }
+  }
+
   @Override
   public double minDist(SpatialComparable mbr1, SpatialComparable mbr2) {
     double d = Math.acos(VectorUtil.minCosAngle(mbr1, mbr2));
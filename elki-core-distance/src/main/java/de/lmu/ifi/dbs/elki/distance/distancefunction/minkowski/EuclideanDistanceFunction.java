@@ -124,6 +124,14 @@ public class EuclideanDistanceFunction extends LPIntegerNormDistanceFunction {
     return FastMath.sqrt(agg);
   }
 
+  @Override
+  public void distances(double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
+    for(int i = 0, o = offset; i < count; i++, o += dim) {
+      out[i] = FastMath.sqrt(squared.distance(query, block, o, dim));
+    }
+  }
+
   @Override
   public double norm(NumberVector v) {
     return FastMath.sqrt(preNorm(v, 0, v.getDimensionality()));
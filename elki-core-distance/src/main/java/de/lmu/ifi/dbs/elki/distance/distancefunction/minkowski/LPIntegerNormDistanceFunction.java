@@ -176,6 +176,36 @@ public class LPIntegerNormDistanceFunction extends LPNormDistanceFunction {
     return FastMath.pow(agg, invp);
   }
 
+  @Override
+  public void distances(double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    final int mindim = query.length < dim ? query.length : dim;
+    // Remaining dimensions of the query, if it is longer.
+    double qtail = 0.;
+    for(int d = mindim; d < query.length; d++) {
+      final double xd = query[d];
+      qtail += MathUtil.powi(xd >= 0. ? xd : -xd, intp);
+    }
+    for(int i = 0, o = offset; i < count; i++, o += dim) {
+      double agg = 0.;
+      for(int d = 0; d < mindim; d++) {
+        final double xd = query[d], yd = block[o + d];
+        agg += MathUtil.powi(xd >= yd ? xd - yd : yd - xd, intp);
+      }
+      if(query.length > mindim) {
+        agg += qtail;
+      }
+      else if(dim > mindim) {
+        double tail = 0.;
+        for(int d = o + mindim, e = o + dim; d < e; d++) {
+          final double yd = block[d];
+          tail += MathUtil.powi(yd >= 0. ? yd : -yd, intp);
+        }
+        agg += tail;
+      }
+      out[i] = FastMath.pow(agg, invp);
+    }
+  }
+
   @Override
   public double norm(NumberVector v) {
     return FastMath.pow(preNorm(v, 0, v.getDimensionality()), invp);
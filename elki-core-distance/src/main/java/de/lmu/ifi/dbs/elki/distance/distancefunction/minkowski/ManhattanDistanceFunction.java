@@ -123,6 +123,36 @@ public class ManhattanDistanceFunction extends LPIntegerNormDistanceFunction {
     return agg;
   }
 
+  @Override
+  public void distances(double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    final int mindim = query.length < dim ? query.length : dim;
+    // Remaining dimensions of the query, if it is longer.
+    double qtail = 0.;
+    for(int d = mindim; d < query.length; d++) {
+      final double xd = query[d];
+      qtail += (xd >= 0.) ? xd : -xd;
+    }
+    for(int i = 0, o = offset; i < count; i++, o += dim) {
+      double agg = 0.;
+      for(int d = 0; d < mindim; d++) {
+        final double xd = query[d], yd = block[o + d];
+        agg += xd >= yd ? xd - yd : yd - xd;
+      }
+      if(query.length > mindim) {
+        agg += qtail;
+      }
+      else if(dim > mindim) {
+        double tail = 0.;
+        for(int d = o + mindim, e = o + dim; d < e; d++) {
+          final double yd = block[d];
+          tail += (yd >= 0.) ? yd : -yd;
+        }
+        agg += tail;
+      }
+      out[i] = agg;
+    }
+  }
+
   @Override
   public double norm(NumberVector v) {
     return preNorm(v, 0, v.getDimensionality());
@@ -120,6 +120,39 @@ public class MaximumDistanceFunction extends LPNormDistanceFunction {
     return agg;
   }
 
+  @Override
+  public void distances(double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    final int mindim = query.length < dim ? query.length : dim;
+    // Remaining dimensions of the query, if it is longer.
+    double qtail = 0.;
+    for(int d = mindim; d < query.length; d++) {
+      final double xd = query[d];
+      final double delta = xd >= 0. ? xd : -xd;
+      qtail = delta >= qtail ? delta : qtail;
+    }
+    for(int i = 0, o = offset; i < count; i++, o += dim) {
+      double agg = 0.;
+      for(int d = 0; d < mindim; d++) {
+        final double xd = query[d], yd = block[o + d];
+        final double delta = xd >= yd ? xd - yd : yd - xd;
+        agg = delta >= agg ? delta : agg;
+      }
+      if(query.length > mindim) {
+        agg = agg >= qtail ? agg : qtail;
+      }
+      else if(dim > mindim) {
+        double b = 0.;
+        for(int d = o + mindim, e = o + dim; d < e; d++) {
+          final double yd = block[d];
+          final double delta = yd >= 0. ? yd : -yd;
+          b = delta >= b ? delta : b;
+        }
+        agg = agg >= b ? agg : b;
+      }
+      out[i] = agg;
+    }
+  }
+
   @Override
   public double norm(NumberVector v) {
     return preNorm(v, 0, v.getDimensionality());
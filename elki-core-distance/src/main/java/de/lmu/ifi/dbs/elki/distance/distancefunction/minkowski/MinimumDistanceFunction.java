@@ -68,6 +68,22 @@ public class MinimumDistanceFunction extends AbstractNumberVectorDistanceFunctio
     return agg;
   }
 
+  @Override
+  public void distances(double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    if(query.length != dim) {
+      throw new IllegalArgumentException("Objects do not have the same dimensionality.");
+    }
+    for(int i = 0, o = offset; i < count; i++, o += dim) {
+      double agg = Double.POSITIVE_INFINITY;
+      for(int d = 0; d < dim; d++) {
+        final double xd = query[d], yd = block[o + d];
+        final double val = xd >= yd ? xd - yd : yd - xd;
+        agg = val < agg ? val : agg;
+      }
+      out[i] = agg;
+    }
+  }
+
   @Override
   public double norm(NumberVector v) {
     final int dim = v.getDimensionality();
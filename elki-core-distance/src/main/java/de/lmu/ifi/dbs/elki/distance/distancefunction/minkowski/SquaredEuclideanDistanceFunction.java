@@ -20,6 +20,9 @@
  */
 package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
@@ -159,6 +162,140 @@ public class SquaredEuclideanDistanceFunction extends AbstractNumberVectorDistan
     return agg;
   }
 
+  /**
+   * Special version for vectors stored in a packed row-major block.
+   *
+   * @param v1 First vector
+   * @param block Data block
+   * @param offset Offset of the second vector in the block
+   * @param dim2 Dimensionality of the second vector
+   * @return Squared Euclidean distance
+   */
+  public double distance(double[] v1, double[] block, int offset, int dim2) {
+    final int dim1 = v1.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = 0.;
+    for(int d = 0, o = offset; d < mindim; d++, o++) {
+      final double delta = v1[d] - block[o];
+      agg += delta * delta;
+    }
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      double tail = 0.;
+      for(int o = offset + mindim, e = offset + dim2; o < e; o++) {
+        final double xd = block[o];
+        tail += xd * xd;
+      }
+      agg += tail;
+    }
+    return agg;
+  }
+
+  /**
+   * Special version for vectors stored in a packed row-major buffer, which may
+   * reside off-heap or in a memory-mapped file.
+   *
+   * @param v1 First vector
+   * @param block Data buffer
+   * @param offset Offset of the second vector in the buffer
+   * @param dim2 Dimensionality of the second vector
+   * @return Squared Euclidean distance
+   */
+  public double distance(double[] v1, DoubleBuffer block, int offset, int dim2) {
+    final int dim1 = v1.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = 0.;
+    for(int d = 0, o = offset; d < mindim; d++, o++) {
+      final double delta = v1[d] - block.get(o);
+      agg += delta * delta;
+    }
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      double tail = 0.;
+      for(int o = offset + mindim, e = offset + dim2; o < e; o++) {
+        final double xd = block.get(o);
+        tail += xd * xd;
+      }
+      agg += tail;
+    }
+    return agg;
+  }
+
+  /**
+   * Special version for vectors stored in a packed row-major single precision
+   * block.
+   *
+   * @param v1 First vector
+   * @param block Data block
+   * @param offset Offset of the second vector in the block
+   * @param dim2 Dimensionality of the second vector
+   * @return Squared Euclidean distance
+   */
+  public double distance(double[] v1, float[] block, int offset, int dim2) {
+    final int dim1 = v1.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = 0.;
+    for(int d = 0, o = offset; d < mindim; d++, o++) {
+      final double delta = v1[d] - block[o];
+      agg += delta * delta;
+    }
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      double tail = 0.;
+      for(int o = offset + mindim, e = offset + dim2; o < e; o++) {
+        final double xd = block[o];
+        tail += xd * xd;
+      }
+      agg += tail;
+    }
+    return agg;
+  }
+
+  /**
+   * Special version for vectors stored in a packed row-major single precision
+   * buffer, which may reside off-heap or in a memory-mapped file.
+   *
+   * @param v1 First vector
+   * @param block Data buffer
+   * @param offset Offset of the second vector in the buffer
+   * @param dim2 Dimensionality of the second vector
+   * @return Squared Euclidean distance
+   */
+  public double distance(double[] v1, FloatBuffer block, int offset, int dim2) {
+    final int dim1 = v1.length;
+    final int mindim = dim1 < dim2 ? dim1 : dim2;
+    double agg = 0.;
+    for(int d = 0, o = offset; d < mindim; d++, o++) {
+      final double delta = v1[d] - block.get(o);
+      agg += delta * delta;
+    }
+    if(dim1 > mindim) {
+      agg += preNorm(v1, mindim, dim1);
+    }
+    else if(dim2 > mindim) {
+      double tail = 0.;
+      for(int o = offset + mindim, e = offset + dim2; o < e; o++) {
+        final double xd = block.get(o);
+        tail += xd * xd;
+      }
+      agg += tail;
+    }
+    return agg;
+  }
+
+  @Override
+  public void distances(double[] query, double[] block, int offset, int dim, int count, double[] out) {
+    for(int i = 0, o = offset; i < count; i++, o += dim) {
+      out[i] = distance(query, block, o, dim);
+    }
+  }
+
   @Override
   public double norm(NumberVector v) {
     return preNorm(v, 0, v.getDimensionality());
@@ -220,4 +220,35 @@ public abstract class AbstractDistanceFunctionTest {
     assertEquals("Not zero: " + dist.toString(), 0., zero, 1e-10);
     assertEquals("Not zero: " + dist.toString(), 0., zero2, 1e-10);
   }
+
+  /**
+   * Check that the block distance kernels produce exactly the same values as
+   * the pairwise distance function.
+   *
+   * @param dist Distance function to check
+   * @param varlen Also test query vectors of different dimensionality
+   */
+  public static void blockConsistency(NumberVectorDistanceFunction<?> dist, boolean varlen) {
+    final Random rnd = new FastNonThreadsafeRandom(2);
+    final int dim = TEST_DIM, count = 17, offset = 3;
+    double[] block = new double[offset + count * dim];
+    for(int i = 0; i < block.length; i++) {
+      block[i] = (rnd.nextDouble() - .5) * 2E4;
+    }
+    block[offset + dim] = 0.; // Some zeros
+    double[] out = new double[count];
+    for(int qdim = varlen ? dim - 2 : dim; qdim <= (varlen ? dim + 2 : dim); qdim++) {
+      double[] query = new double[qdim];
+      for(int d = 0; d < qdim; d++) {
+        query[d] = (rnd.nextDouble() - .5) * 2E4;
+      }
+      dist.distances(query, block, offset, dim, count, out);
+      DoubleVector qv = DoubleVector.wrap(query);
+      for(int i = 0; i < count; i++) {
+        double[] row = new double[dim];
+        System.arraycopy(block, offset + i * dim, row, 0, dim);
+        assertEquals("Block distance differs: " + dist.toString(), dist.distance(qv, DoubleVector.wrap(row)), out[i], 0.);
+      }
+    }
+  }
 }
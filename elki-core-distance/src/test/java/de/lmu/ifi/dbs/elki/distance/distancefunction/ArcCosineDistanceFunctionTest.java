@@ -39,5 +39,6 @@ public class ArcCosineDistanceFunctionTest extends AbstractDistanceFunctionTest
     // Note: some of these are not well defined, as we have zero vectors.
     varyingLengthBasic(0, dist, MathUtil.HALFPI, MathUtil.HALFPI, MathUtil.HALFPI, MathUtil.HALFPI, MathUtil.HALFPI, MathUtil.HALFPI);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, true);
   }
 }
@@ -45,5 +45,6 @@ public class LPIntegerNormDistanceFunctionTest extends AbstractDistanceFunctionT
     varyingLengthBasic(0, dist, 1, 0, 1, 1, FastMath.pow(2, 1. / 3), 1);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, true);
   }
 }
@@ -48,6 +48,7 @@ public class LPNormDistanceFunctionTest extends AbstractDistanceFunctionTest {
     varyingLengthBasic(0, dist, 1, 0, 1, 1, 4, 1);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, true);
     dist = new ELKIBuilder<>(LPNormDistanceFunction.class) //
         .with(LPNormDistanceFunction.Parameterizer.P_ID, 3) //
         .build();
@@ -57,5 +58,6 @@ public class LPNormDistanceFunctionTest extends AbstractDistanceFunctionTest {
     varyingLengthBasic(0, dist, 1, 0, 1, 1, FastMath.pow(2, 1. / 3), 1);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, true);
   }
 }
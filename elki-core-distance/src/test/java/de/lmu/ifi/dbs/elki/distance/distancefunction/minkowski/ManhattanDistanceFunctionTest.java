@@ -39,5 +39,6 @@ public class ManhattanDistanceFunctionTest extends AbstractDistanceFunctionTest
     varyingLengthBasic(0, dist, 1, 0, 1, 1, 2, 1);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, true);
   }
 }
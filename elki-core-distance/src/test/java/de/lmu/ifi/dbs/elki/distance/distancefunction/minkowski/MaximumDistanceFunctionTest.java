@@ -39,5 +39,6 @@ public class MaximumDistanceFunctionTest extends AbstractDistanceFunctionTest {
     varyingLengthBasic(0, dist, 1, 0, 1, 1, 1, 1);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, true);
   }
 }
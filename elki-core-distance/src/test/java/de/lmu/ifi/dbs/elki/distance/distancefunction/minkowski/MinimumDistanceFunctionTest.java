@@ -38,5 +38,6 @@ public class MinimumDistanceFunctionTest extends AbstractDistanceFunctionTest {
     basicChecks(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, false);
   }
 }
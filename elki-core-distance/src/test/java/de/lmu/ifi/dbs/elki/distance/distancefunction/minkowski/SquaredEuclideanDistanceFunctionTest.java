@@ -20,8 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.AbstractDistanceFunctionTest;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
@@ -39,5 +45,27 @@ public class SquaredEuclideanDistanceFunctionTest extends AbstractDistanceFuncti
     varyingLengthBasic(0, dist, 1, 0, 1, 1, 2, 1);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, true);
+  }
+
+  @Test
+  public void testSinglePrecision() {
+    Random rnd = new Random(0L);
+    for(int i = 0; i < 100; i++) {
+      FloatVector v1 = randomFloatVector(rnd, 1 + rnd.nextInt(20));
+      FloatVector v2 = randomFloatVector(rnd, 1 + rnd.nextInt(20));
+      // Single precision input must agree exactly with double precision.
+      double expected = SquaredEuclideanDistanceFunction.STATIC.distance(DoubleVector.copy(v1.toArray()), DoubleVector.copy(v2.toArray()));
+      assertEquals("Squared Euclidean", expected, SquaredEuclideanDistanceFunction.STATIC.distance(v1, v2), 0.);
+      assertEquals("Euclidean", Math.sqrt(expected), EuclideanDistanceFunction.STATIC.distance(v1, v2), 0.);
+    }
+  }
+
+  private static FloatVector randomFloatVector(Random rnd, int dim) {
+    float[] values = new float[dim];
+    for(int d = 0; d < dim; d++) {
+      values[d] = (float) rnd.nextGaussian();
+    }
+    return new FloatVector(values);
   }
 }
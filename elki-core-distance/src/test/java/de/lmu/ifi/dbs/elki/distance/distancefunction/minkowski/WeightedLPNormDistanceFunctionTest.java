@@ -49,6 +49,7 @@ public class WeightedLPNormDistanceFunctionTest extends AbstractDistanceFunction
     basicChecks(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, false);
     dist = new ELKIBuilder<>(WeightedLPNormDistanceFunction.class) //
         .with(LPNormDistanceFunction.Parameterizer.P_ID, 3)//
         .with(WeightedNumberVectorDistanceFunction.WEIGHTS_ID, MathUtil.randomDoubleArray(TEST_DIM, new Random(0L))) //
@@ -57,5 +58,6 @@ public class WeightedLPNormDistanceFunctionTest extends AbstractDistanceFunction
     basicChecks(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, false);
   }
 }
@@ -44,5 +44,6 @@ public class WeightedManhattanDistanceFunctionTest extends AbstractDistanceFunct
     basicChecks(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, false);
   }
 }
@@ -44,5 +44,6 @@ public class WeightedMaximumDistanceFunctionTest extends AbstractDistanceFunctio
     basicChecks(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, false);
   }
 }
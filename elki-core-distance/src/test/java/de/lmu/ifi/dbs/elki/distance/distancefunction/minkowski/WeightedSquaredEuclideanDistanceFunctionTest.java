@@ -44,5 +44,6 @@ public class WeightedSquaredEuclideanDistanceFunctionTest extends AbstractDistan
     basicChecks(dist);
     spatialConsistency(dist);
     nonnegativeSpatialConsistency(dist);
+    blockConsistency(dist, false);
   }
 }
@@ -21,21 +21,40 @@
 package de.lmu.ifi.dbs.elki.parallel;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
- * 
- * TODO: make configurable how many threads are used.
+ * Core for parallel processing in ELKI, based on a work-stealing
+ * {@link ForkJoinPool}.
+ * <p>
+ * The worker threads are daemon threads, and will terminate automatically
+ * when the pool has been idle for a while.
+ * <p>
+ * By default, a shared static core using all available processors is used.
+ * A task can instead be bound to its own core with
+ * {@link #setCore(ParallelCore)}; tasks run by the {@link ParallelExecutor}
+ * are bound to the core of the submitting thread while they execute, so that
+ * nested parallel runs use the same core. This allows limiting the number of
+ * threads used, and running multiple tasks side by side with separate pools.
  * 
  * @author Erich Schubert
  * @since 0.7.0
  */
 public class ParallelCore {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelCore.class);
+
   /**
    * The number of CPUs to use.
    */
@@ -46,10 +65,18 @@ public class ParallelCore {
    */
   private static final ParallelCore STATIC = new ParallelCore(ALL_PROCESSORS);
 
+  /**
+   * Core bound to the current thread.
+   * <p>
+   * This is deliberately not inheritable: pool worker threads would otherwise
+   * keep the binding of the thread that caused their creation.
+   */
+  private static final ThreadLocal<ParallelCore> BOUND = new ThreadLocal<>();
+
   /**
    * Executor service.
    */
-  ThreadPoolExecutor executor;
+  volatile ForkJoinPool executor;
 
   /**
    * Number of connected submitters.
@@ -61,21 +88,94 @@ public class ParallelCore {
    */
   private int processors;
 
+  /**
+   * Number of parallel runs executed.
+   */
+  private AtomicLong runs = new AtomicLong(0);
+
+  /**
+   * Total wall clock time of parallel runs, multiplied with the parallelism.
+   */
+  private AtomicLong available = new AtomicLong(0);
+
+  /**
+   * Total time the workers were busy.
+   */
+  private AtomicLong busy = new AtomicLong(0);
+
   /**
    * Constructor.
+   * 
+   * @param processors Number of threads to use, {@code <= 0} for all
+   *        available processors.
    */
-  protected ParallelCore(int processors) {
+  public ParallelCore(int processors) {
     super();
-    this.processors = processors;
+    this.processors = processors > 0 ? processors : ALL_PROCESSORS;
   }
 
   /**
-   * Get the static core object.
+   * Get the core object for the current thread.
    * 
-   * @return Core
+   * @return Core bound to the current thread, or the static core.
    */
   public static ParallelCore getCore() {
-    return STATIC;
+    ParallelCore core = BOUND.get();
+    return core != null ? core : STATIC;
+  }
+
+  /**
+   * Bind a core to the current thread.
+   * 
+   * @param core Core to use, {@code null} to use the static core.
+   * @return Previously bound core, may be {@code null}
+   */
+  public static ParallelCore setCore(ParallelCore core) {
+    ParallelCore prev = BOUND.get();
+    if(core != null) {
+      BOUND.set(core);
+    }
+    else {
+      BOUND.remove();
+    }
+    return prev;
+  }
+
+  /**
+   * Run a task with a temporary core bound to the current thread.
+   * <p>
+   * The previous binding is restored, and the worker threads are shut down
+   * when the task completes.
+   * 
+   * @param processors Number of threads to use
+   * @param task Task to run
+   */
+  public static void withCore(int processors, Runnable task) {
+    withCore(processors, () -> {
+      task.run();
+      return null;
+    });
+  }
+
+  /**
+   * Run a task with a temporary core bound to the current thread.
+   * <p>
+   * The previous binding is restored, and the worker threads are shut down
+   * when the task completes.
+   * 
+   * @param processors Number of threads to use
+   * @param task Task to run
+   * @return Result of the task
+   */
+  public static <T> T withCore(int processors, Supplier<T> task) {
+    ParallelCore core = new ParallelCore(processors), prev = setCore(core);
+    try {
+      return task.get();
+    }
+    finally {
+      setCore(prev);
+      core.shutdown();
+    }
   }
 
   /**
@@ -84,7 +184,7 @@ public class ParallelCore {
    * @return Number of threads to run in parallel
    */
   public int getParallelism() {
-    return executor != null ? executor.getMaximumPoolSize() : processors;
+    return processors;
   }
 
   /**
@@ -98,6 +198,17 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Submit a fork-join task to the executor core.
+   * 
+   * @param task Submitted task
+   * 
+   * @return Task, to observe completion
+   */
+  public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+    return executor.submit(task);
+  }
+
   /**
    * Connect to the executor.
    */
@@ -105,28 +216,61 @@ public class ParallelCore {
     if(executor == null) {
       synchronized(this) {
         if(executor == null) {
-          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-          executor.allowCoreThreadTimeOut(true);
+          executor = new ForkJoinPool(processors);
         }
       }
     }
-    int c = this.connected.incrementAndGet();
-    if(c == 1) {
-      executor.allowCoreThreadTimeOut(false);
-      executor.setCorePoolSize(executor.getMaximumPoolSize());
-    }
+    this.connected.incrementAndGet();
   }
 
   /**
    * Disconnect to the executor.
    */
   public void disconnect() {
-    int c = this.connected.decrementAndGet();
-    if(c == 0) {
-      synchronized(this) {
-        executor.allowCoreThreadTimeOut(true);
-        executor.setCorePoolSize(0);
+    this.connected.decrementAndGet();
+  }
+
+  /**
+   * Shut down the worker threads of this core.
+   * <p>
+   * The core can still be used afterwards, a new pool will then be started.
+   */
+  public void shutdown() {
+    synchronized(this) {
+      if(executor != null && connected.get() == 0) {
+        executor.shutdown();
+        executor = null;
       }
     }
   }
+
+  /**
+   * Account for the utilization of a parallel run.
+   * 
+   * @param wallnanos Wall clock time of the run
+   * @param busynanos Time the worker threads were busy
+   */
+  protected void accountRun(long wallnanos, long busynanos) {
+    runs.incrementAndGet();
+    available.addAndGet(wallnanos * processors);
+    busy.addAndGet(busynanos);
+  }
+
+  /**
+   * Log the utilization statistics of this core.
+   */
+  public void logStatistics() {
+    if(!LOG.isStatistics() || runs.get() == 0) {
+      return;
+    }
+    final String key = ParallelCore.class.getName();
+    LOG.statistics(new LongStatistic(key + ".threads", processors));
+    LOG.statistics(new LongStatistic(key + ".runs", runs.get()));
+    ForkJoinPool executor = this.executor;
+    if(executor != null) {
+      LOG.statistics(new LongStatistic(key + ".steals", executor.getStealCount()));
+    }
+    final long avail = available.get();
+    LOG.statistics(new DoubleStatistic(key + ".utilization", avail > 0 ? busy.get() / (double) avail : 0.));
+  }
 }
@@ -20,13 +20,15 @@
  */
 package de.lmu.ifi.dbs.elki.parallel;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.GlobalDataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -36,7 +38,20 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 
 /**
- * Class to run processors in parallel, on all available cores.
+ * Class to run processors in parallel, on all available cores of the current
+ * {@link ParallelCore}.
+ * <p>
+ * The work is distributed using fork-join with adaptive splitting: each task
+ * processes its range in small chunks, and splits off the remaining half
+ * whenever no surplus work is queued locally, so idle workers can steal it.
+ * Because of this, a few expensive objects (e.g., in dense regions of the
+ * data) no longer stall a whole statically assigned block.
+ * <p>
+ * Each worker thread instantiates every {@link Processor} only once per run,
+ * and reuses this instance for all chunks it processes; {@link Processor#cleanup}
+ * is invoked once per worker after all work completed. If any task fails (or
+ * the calling thread is interrupted), the remaining tasks are cancelled
+ * cooperatively at the next chunk boundary.
  *
  * TODO: add progress
  *
@@ -44,9 +59,22 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
  * @since 0.7.0
  *
  * @apiviz.has BlockArrayRunner
+ * @apiviz.has BlockArrayTask
+ * @apiviz.has RangeTask
  * @apiviz.uses ParallelCore
  */
 public final class ParallelExecutor {
+  /**
+   * Maximum number of objects processed before checking for splitting and
+   * cancellation.
+   */
+  private static final int MAX_CHUNKSIZE = 1024;
+
+  /**
+   * Target number of chunks per worker thread.
+   */
+  private static final int CHUNKS_PER_THREAD = 16;
+
   /**
    * Private constructor. Static methods only.
    */
@@ -63,31 +91,62 @@ public final class ParallelExecutor {
   public static void run(DBIDs ids, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
     core.connect();
+    RunState state = null;
+    final long begin = System.nanoTime();
     try {
-      // TODO: try different strategies anyway!
       ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
       final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = Math.min(start + blocksize, size);
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
-      }
+      final int parallelism = core.getParallelism();
+      final int chunksize = Math.max(1, Math.min(MAX_CHUNKSIZE, size / (parallelism * CHUNKS_PER_THREAD)));
+      state = new RunState(core, aids, chunksize, procs);
+      ForkJoinTask<Void> task = core.submit(new BlockArrayTask(state, 0, size, null));
+      task.get();
+      state.cleanup();
+      core.accountRun(System.nanoTime() - begin, state.getBusyTime());
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Processor execution failed.", e);
+    }
+    catch(InterruptedException e) {
+      state.cancelled = true;
+      throw new RuntimeException("Parallel execution interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
 
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
-      }
+  /**
+   * Run a task on the integer range {@code [0, size)} on all available CPUs,
+   * e.g., on the rows of a matrix.
+   * <p>
+   * The range is split adaptively as above, and the task is invoked on
+   * disjoint subranges of at most {@code chunksize} elements. Small ranges, or
+   * a single-threaded core, run directly in the calling thread.
+   *
+   * @param size Size of the range
+   * @param chunksize Maximum number of elements to process at once
+   * @param task Task to run
+   */
+  public static void run(int size, int chunksize, RangeProcessor task) {
+    chunksize = Math.max(1, chunksize);
+    ParallelCore core = ParallelCore.getCore();
+    if(size <= chunksize || core.getParallelism() <= 1) {
+      task.process(0, size);
+      return;
+    }
+    core.connect();
+    RangeState state = new RangeState(core, task, chunksize);
+    final long begin = System.nanoTime();
+    try {
+      core.submit(new RangeTask(state, 0, size, null)).get();
+      core.accountRun(System.nanoTime() - begin, state.busy.get());
     }
     catch(ExecutionException e) {
       throw new RuntimeException("Processor execution failed.", e);
     }
     catch(InterruptedException e) {
+      state.cancelled = true;
       throw new RuntimeException("Parallel execution interrupted.");
     }
     finally {
@@ -96,69 +155,414 @@ public final class ParallelExecutor {
   }
 
   /**
-   * Run for an array part, without step size.
+   * Processor for integer ranges, c.f. {@link ParallelExecutor#run(int, int,
+   * RangeProcessor)}.
    *
    * @author Erich Schubert
+   */
+  @FunctionalInterface
+  public interface RangeProcessor {
+    /**
+     * Process a range of integers.
+     *
+     * @param start Start (inclusive)
+     * @param end End (exclusive)
+     */
+    void process(int start, int end);
+  }
+
+  /**
+   * State shared by all tasks of a single range run.
    *
-   * @apiviz.uses Processor
+   * @author Erich Schubert
    */
-  protected static class BlockArrayRunner implements Callable<ArrayDBIDs>, Executor {
+  protected static class RangeState {
     /**
-     * Array IDs to process
+     * Core the run was submitted to.
+     */
+    final ParallelCore core;
+
+    /**
+     * Storage factory selected by the submitting thread.
+     */
+    final DataStoreFactory storage = GlobalDataStoreFactory.getFactory();
+
+    /**
+     * Processor to run.
      */
-    private ArrayDBIDs ids;
+    final RangeProcessor proc;
+
+    /**
+     * Number of elements to process at once.
+     */
+    final int chunksize;
+
+    /**
+     * Flag for cooperative cancellation.
+     */
+    volatile boolean cancelled = false;
+
+    /**
+     * Time spent processing, in nanoseconds.
+     */
+    final AtomicLong busy = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param core Core the run was submitted to
+     * @param proc Processor to run
+     * @param chunksize Number of elements to process at once
+     */
+    protected RangeState(ParallelCore core, RangeProcessor proc, int chunksize) {
+      super();
+      this.core = core;
+      this.proc = proc;
+      this.chunksize = chunksize;
+    }
+  }
+
+  /**
+   * Fork-join task processing an integer range, with adaptive splitting.
+   *
+   * @author Erich Schubert
+   */
+  protected static class RangeTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Shared run state.
+     */
+    private final RangeState state;
 
     /**
      * Start position
      */
-    private int start;
+    private final int start;
 
     /**
      * End position
      */
-    private int end;
+    private final int end;
+
+    /**
+     * Next task forked by the same parent.
+     */
+    private final RangeTask next;
+
+    /**
+     * Constructor.
+     *
+     * @param state Shared run state
+     * @param start Starting position
+     * @param end End position
+     * @param next Next task forked by the same parent
+     */
+    protected RangeTask(RangeState state, int start, int end, RangeTask next) {
+      super();
+      this.state = state;
+      this.start = start;
+      this.end = end;
+      this.next = next;
+    }
+
+    @Override
+    protected void compute() {
+      final RangeState state = this.state;
+      final int chunksize = state.chunksize;
+      RangeTask forked = null;
+      int lo = start, hi = end;
+      // Nested parallel runs need to use the same core and storage.
+      final ParallelCore prev = ParallelCore.setCore(state.core);
+      final DataStoreFactory prevstorage = GlobalDataStoreFactory.setFactory(state.storage);
+      try {
+        while(lo < hi && !state.cancelled) {
+          // Split off the upper half, if nobody has work to steal.
+          if(hi - lo >= chunksize << 1 && getSurplusQueuedTaskCount() <= 0) {
+            final int mid = (lo + hi) >>> 1;
+            (forked = new RangeTask(state, mid, hi, forked)).fork();
+            hi = mid;
+            continue;
+          }
+          final int cend = Math.min(lo + chunksize, hi);
+          final long begin = System.nanoTime();
+          state.proc.process(lo, cend);
+          state.busy.addAndGet(System.nanoTime() - begin);
+          lo = cend;
+        }
+      }
+      catch(RuntimeException | Error e) {
+        state.cancelled = true;
+        throw e;
+      }
+      finally {
+        ParallelCore.setCore(prev);
+        GlobalDataStoreFactory.setFactory(prevstorage);
+      }
+      for(; forked != null; forked = forked.next) {
+        forked.join();
+      }
+    }
+  }
+
+  /**
+   * State shared by all tasks of a single run.
+   *
+   * @author Erich Schubert
+   */
+  protected static class RunState {
+    /**
+     * Core the run was submitted to.
+     */
+    final ParallelCore core;
+
+    /**
+     * Storage factory selected by the submitting thread.
+     */
+    final DataStoreFactory storage = GlobalDataStoreFactory.getFactory();
+
+    /**
+     * Array IDs to process
+     */
+    final ArrayDBIDs ids;
+
+    /**
+     * Number of objects to process at once.
+     */
+    final int chunksize;
 
     /**
      * The processor masters that own the instances.
      */
-    private Processor[] procs;
+    final Processor[] procs;
 
     /**
-     * Variables map.
+     * Worker state, by thread.
      */
-    private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
+    final ConcurrentHashMap<Thread, BlockArrayRunner> workers = new ConcurrentHashMap<>();
+
+    /**
+     * Flag for cooperative cancellation.
+     */
+    volatile boolean cancelled = false;
 
     /**
      * Constructor.
      *
+     * @param core Core the run was submitted to
      * @param ids IDs to process
-     * @param start Starting position
-     * @param end End position
+     * @param chunksize Number of objects to process at once
      * @param procs Processors to run
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected RunState(ParallelCore core, ArrayDBIDs ids, int chunksize, Processor[] procs) {
       super();
+      this.core = core;
       this.ids = ids;
+      this.chunksize = chunksize;
+      this.procs = procs;
+    }
+
+    /**
+     * Get the runner of the current worker thread.
+     *
+     * @return Runner
+     */
+    protected BlockArrayRunner getRunner() {
+      final Thread thread = Thread.currentThread();
+      BlockArrayRunner runner = workers.get(thread);
+      if(runner == null) {
+        runner = new BlockArrayRunner(ids, procs);
+        workers.put(thread, runner);
+      }
+      return runner;
+    }
+
+    /**
+     * Get the total time the workers were busy processing.
+     *
+     * @return Busy time in nanoseconds
+     */
+    protected long getBusyTime() {
+      long sum = 0;
+      for(BlockArrayRunner runner : workers.values()) {
+        sum += runner.busy;
+      }
+      return sum;
+    }
+
+    /**
+     * Cleanup all worker instances.
+     */
+    protected void cleanup() {
+      for(BlockArrayRunner runner : workers.values()) {
+        runner.cleanup();
+      }
+    }
+  }
+
+  /**
+   * Fork-join task processing a range of the array, with adaptive splitting.
+   *
+   * @author Erich Schubert
+   */
+  protected static class BlockArrayTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Shared run state.
+     */
+    private final RunState state;
+
+    /**
+     * Start position
+     */
+    private final int start;
+
+    /**
+     * End position
+     */
+    private final int end;
+
+    /**
+     * Next task forked by the same parent.
+     */
+    private final BlockArrayTask next;
+
+    /**
+     * Constructor.
+     *
+     * @param state Shared run state
+     * @param start Starting position
+     * @param end End position
+     * @param next Next task forked by the same parent
+     */
+    protected BlockArrayTask(RunState state, int start, int end, BlockArrayTask next) {
+      super();
+      this.state = state;
       this.start = start;
       this.end = end;
-      this.procs = procs;
+      this.next = next;
     }
 
     @Override
-    public ArrayDBIDs call() {
-      Processor.Instance[] instances = new Processor.Instance[procs.length];
+    protected void compute() {
+      final RunState state = this.state;
+      final int chunksize = state.chunksize;
+      BlockArrayTask forked = null;
+      int lo = start, hi = end;
+      // Nested parallel runs, and the processor instances, need to use the
+      // same core and storage.
+      final ParallelCore prev = ParallelCore.setCore(state.core);
+      final DataStoreFactory prevstorage = GlobalDataStoreFactory.setFactory(state.storage);
+      try {
+        final BlockArrayRunner runner = state.getRunner();
+        while(lo < hi && !state.cancelled) {
+          // Split off the upper half, if nobody has work to steal.
+          if(hi - lo >= chunksize << 1 && getSurplusQueuedTaskCount() <= 0) {
+            final int mid = (lo + hi) >>> 1;
+            (forked = new BlockArrayTask(state, mid, hi, forked)).fork();
+            hi = mid;
+            continue;
+          }
+          final int cend = Math.min(lo + chunksize, hi);
+          runner.process(lo, cend);
+          lo = cend;
+        }
+      }
+      catch(RuntimeException | Error e) {
+        state.cancelled = true;
+        throw e;
+      }
+      finally {
+        ParallelCore.setCore(prev);
+        GlobalDataStoreFactory.setFactory(prevstorage);
+      }
+      for(; forked != null; forked = forked.next) {
+        forked.join();
+      }
+    }
+  }
+
+  /**
+   * Per-worker processor instances, reused across all chunks processed by the
+   * same thread.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.uses Processor
+   */
+  protected static class BlockArrayRunner implements Executor {
+    /**
+     * Iterator over the array IDs to process
+     */
+    private DBIDArrayIter iter;
+
+    /**
+     * The processor masters that own the instances.
+     */
+    private Processor[] procs;
+
+    /**
+     * Processor instances.
+     */
+    private Processor.Instance[] instances;
+
+    /**
+     * Variables map.
+     */
+    private HashMap<SharedVariable<?>, SharedVariable.Instance<?>> variables = new HashMap<>();
+
+    /**
+     * Time spent processing, in nanoseconds.
+     */
+    private long busy = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param ids IDs to process
+     * @param procs Processors to run
+     */
+    protected BlockArrayRunner(ArrayDBIDs ids, Processor[] procs) {
+      super();
+      this.iter = ids.iter();
+      this.procs = procs;
+      this.instances = new Processor.Instance[procs.length];
       for(int i = 0; i < procs.length; i++) {
         instances[i] = procs[i].instantiate(this);
       }
-      for(DBIDArrayIter iter = ids.iter().seek(start); iter.valid() && iter.getOffset() < end; iter.advance()) {
+    }
+
+    /**
+     * Process a range of objects.
+     *
+     * @param start Start position
+     * @param end End position
+     */
+    protected void process(int start, int end) {
+      final Processor.Instance[] instances = this.instances;
+      final long begin = System.nanoTime();
+      for(iter.seek(start); iter.valid() && iter.getOffset() < end; iter.advance()) {
         for(int i = 0; i < instances.length; i++) {
           instances[i].map(iter);
         }
       }
+      busy += System.nanoTime() - begin;
+    }
+
+    /**
+     * Cleanup the processor instances.
+     */
+    protected void cleanup() {
       for(int i = 0; i < instances.length; i++) {
         procs[i].cleanup(instances[i]);
       }
-      return ids;
     }
 
     @Override
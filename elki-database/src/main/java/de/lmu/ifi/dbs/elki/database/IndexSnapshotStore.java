@@ -0,0 +1,309 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPIntegerNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.Index;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+
+/**
+ * Directory of index snapshots, such that indexes do not need to be rebuilt
+ * when the same data is analyzed again.
+ * <p>
+ * Each snapshot file is named after the index class and a 64 bit hash of the
+ * relation and the index parameters. The file header repeats the relation
+ * hash, size, and the full parameter key, and is verified before the snapshot
+ * is used. The relation hash covers the DBIDs and the object values, so
+ * snapshots are only reused when the data is loaded with the same DBIDs (e.g.
+ * in a fresh JVM, or with fixed DBIDs).
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses SnapshotIndex
+ */
+public class IndexSnapshotStore {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(IndexSnapshotStore.class);
+
+  /**
+   * Magic number, "ELKI".
+   */
+  public static final int SNAPSHOT_MAGIC = 0x454C4B49;
+
+  /**
+   * Version of the file format.
+   */
+  public static final int SNAPSHOT_VERSION = 1;
+
+  /**
+   * Suffix for snapshot files.
+   */
+  private static final String SUFFIX = ".snapshot";
+
+  /**
+   * Directory to store the snapshots in.
+   */
+  private File directory;
+
+  /**
+   * Last relation hashed.
+   */
+  private Relation<?> lastrel = null;
+
+  /**
+   * Hash of the last relation.
+   */
+  private long lasthash;
+
+  /**
+   * Constructor.
+   *
+   * @param directory Directory to store the snapshots in
+   */
+  public IndexSnapshotStore(File directory) {
+    super();
+    this.directory = directory;
+  }
+
+  /**
+   * Try to restore a new, uninitialized index from a matching snapshot.
+   *
+   * @param relation Relation to index
+   * @param index Index instance, not yet initialized
+   * @return {@code true} if the index was restored; otherwise the caller needs
+   *         to initialize the index
+   */
+  public boolean restore(Relation<?> relation, Index index) {
+    final String key = index instanceof SnapshotIndex ? ((SnapshotIndex) index).getSnapshotKey() : null;
+    if(key == null) {
+      return false;
+    }
+    final long hash = hashRelation(relation);
+    File file = snapshotFile(index, key, hash);
+    if(!file.exists()) {
+      return false;
+    }
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(index.getClass().getName() + ".snapshot-load").begin() : null;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if(in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION //
+          || in.readLong() != hash || in.readInt() != relation.size() //
+          || !key.equals(in.readUTF())) {
+        LOG.warning("Index snapshot " + file + " does not match, rebuilding.");
+        return false;
+      }
+      ((SnapshotIndex) index).readSnapshot(in);
+    }
+    catch(IOException | RuntimeException e) {
+      LOG.warning("Could not restore index snapshot " + file + ", rebuilding.", e);
+      return false;
+    }
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+    if(LOG.isVerbose()) {
+      LOG.verbose("Restored index from snapshot " + file);
+    }
+    return true;
+  }
+
+  /**
+   * Store a snapshot of an initialized index, if supported.
+   * <p>
+   * The file is written to a temporary file first, and then moved into place,
+   * so concurrent runs never see a partial snapshot.
+   *
+   * @param relation Indexed relation
+   * @param index Index
+   */
+  public void store(Relation<?> relation, Index index) {
+    final String key = index instanceof SnapshotIndex ? ((SnapshotIndex) index).getSnapshotKey() : null;
+    if(key == null) {
+      return;
+    }
+    final long hash = hashRelation(relation);
+    File file = snapshotFile(index, key, hash);
+    File tmp = null;
+    try {
+      if(!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Could not create directory " + directory);
+      }
+      tmp = File.createTempFile(file.getName(), ".tmp", directory);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeLong(hash);
+        out.writeInt(relation.size());
+        out.writeUTF(key);
+        ((SnapshotIndex) index).writeSnapshot(out);
+      }
+      try {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch(AtomicMoveNotSupportedException e) {
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmp = null;
+    }
+    catch(IOException e) {
+      LOG.warning("Could not write index snapshot " + file, e);
+    }
+    finally {
+      if(tmp != null && !tmp.delete()) {
+        tmp.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * Describe a distance function for a snapshot key.
+   * <p>
+   * Only distances whose parameters are fully known can be described: the
+   * parameter-free {@code STATIC} instances, and the plain Minkowski norms.
+   * Other distances (e.g. the weighted norms) could differ in parameters that
+   * are not visible in the key, and yield {@code null}.
+   *
+   * @param distanceFunction Distance function
+   * @return Key, or {@code null} if snapshots are not supported
+   */
+  public static String distanceKey(DistanceFunction<?> distanceFunction) {
+    final Class<?> cls = distanceFunction.getClass();
+    if(cls == LPNormDistanceFunction.class || cls == LPIntegerNormDistanceFunction.class) {
+      return cls.getName() + ":p=" + ((LPNormDistanceFunction) distanceFunction).getP();
+    }
+    return staticKey(distanceFunction);
+  }
+
+  /**
+   * Describe a parameter-free object (e.g. a strategy) for a snapshot key.
+   * <p>
+   * Only the {@code STATIC} singleton instance of a class is known to be
+   * parameter-free; other instances yield {@code null}.
+   *
+   * @param obj Object to describe
+   * @return Key, or {@code null} if snapshots are not supported
+   */
+  public static String staticKey(Object obj) {
+    final Class<?> cls = obj.getClass();
+    try {
+      Field f = cls.getDeclaredField("STATIC");
+      if(Modifier.isStatic(f.getModifiers()) && f.get(null) == obj) {
+        return cls.getName();
+      }
+    }
+    catch(NoSuchFieldException | IllegalAccessException | SecurityException e) {
+      // Not a parameter-free singleton.
+    }
+    return null;
+  }
+
+  /**
+   * Get the snapshot file name.
+   *
+   * @param index Index
+   * @param key Parameter key
+   * @param hash Relation hash
+   * @return File
+   */
+  private File snapshotFile(Index index, String key, long hash) {
+    long h = mix(hash, index.getClass().getName().hashCode());
+    h = mix(h, key.hashCode());
+    h = mix(h, key.length());
+    return new File(directory, index.getClass().getSimpleName() + "-" + Long.toHexString(finish(h)) + SUFFIX);
+  }
+
+  /**
+   * Hash the DBIDs and values of a relation.
+   *
+   * @param relation Relation
+   * @return Hash code
+   */
+  protected long hashRelation(Relation<?> relation) {
+    if(relation == lastrel) {
+      return lasthash;
+    }
+    long h = mix(0L, relation.getDataTypeInformation().toString().hashCode());
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      h = mix(h, DBIDUtil.asInteger(it));
+      Object o = relation.get(it);
+      if(o instanceof NumberVector) {
+        NumberVector v = (NumberVector) o;
+        final int dim = v.getDimensionality();
+        h = mix(h, dim);
+        for(int d = 0; d < dim; d++) {
+          h = mix(h, Double.doubleToLongBits(v.doubleValue(d)));
+        }
+      }
+      else {
+        h = mix(h, o != null ? o.hashCode() : 0);
+      }
+    }
+    lastrel = relation;
+    return lasthash = finish(h);
+  }
+
+  /**
+   * Mix a value into a hash code.
+   *
+   * @param h Previous hash
+   * @param v Value
+   * @return Mixed hash
+   */
+  private static long mix(long h, long v) {
+    return (h ^ v) * 0x100000001B3L + 0x9E3779B97F4A7C15L;
+  }
+
+  /**
+   * Final avalanche of a hash code.
+   *
+   * @param h Hash
+   * @return Hash
+   */
+  private static long finish(long h) {
+    h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+    h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return h ^ (h >>> 33);
+  }
+}
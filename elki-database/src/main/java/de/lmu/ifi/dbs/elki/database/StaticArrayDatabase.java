@@ -20,9 +20,13 @@
  */
 package de.lmu.ifi.dbs.elki.database;
 
+import java.io.File;
 import java.util.Collection;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
@@ -31,17 +35,24 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
+import de.lmu.ifi.dbs.elki.database.relation.MappedBundleRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.PackedNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.ColumnarBundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedBundleReader;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -80,6 +91,21 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Store dense vector relations in packed storage.
+   */
+  protected boolean packed;
+
+  /**
+   * Allocate packed storage off-heap.
+   */
+  protected boolean offheap;
+
+  /**
+   * Index snapshots, may be {@code null}.
+   */
+  protected IndexSnapshotStore snapshots;
+
   /**
    * Constructor.
    *
@@ -87,10 +113,39 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?>> indexFactories) {
+    this(databaseConnection, indexFactories, false, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param packed Store dense vector relations in packed storage
+   * @param offheap Allocate packed storage off-heap
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?>> indexFactories, boolean packed, boolean offheap) {
+    this(databaseConnection, indexFactories, packed, offheap, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param packed Store dense vector relations in packed storage
+   * @param offheap Allocate packed storage off-heap
+   * @param snapshotDirectory Directory for index snapshots, may be
+   *        {@code null}
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?>> indexFactories, boolean packed, boolean offheap, File snapshotDirectory) {
     super();
     this.databaseConnection = databaseConnection;
     this.ids = null;
     this.idrep = null;
+    this.packed = packed;
+    this.offheap = offheap;
+    this.snapshots = snapshotDirectory != null ? new IndexSnapshotStore(snapshotDirectory) : null;
 
     // Add indexes.
     if(indexFactories != null) {
@@ -143,28 +198,63 @@ public class StaticArrayDatabase extends AbstractDatabase {
       int numrel = bundle.metaLength();
       for(int i = 0; i < numrel; i++) {
         SimpleTypeInformation<?> meta = bundle.meta(i);
-        @SuppressWarnings("unchecked")
-        SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        Relation<?> relation;
+        if(packed && isPackable(meta) && bundle.getColumn(i) instanceof ColumnarBundleReader.VectorColumn) {
+          // Use the mapped blocks as packed storage, without copying.
+          @SuppressWarnings("unchecked")
+          VectorFieldTypeInformation<? extends NumberVector> vmeta = (VectorFieldTypeInformation<? extends NumberVector>) meta;
+          ColumnarBundleReader.VectorColumn<?> col = (ColumnarBundleReader.VectorColumn<?>) bundle.getColumn(i);
+          PackedNumberVectorRelation prel = new PackedNumberVectorRelation(vmeta, ids, null, col.getBlocks(), col.getRowsPerBlock());
+          relation = prel;
+          meta = prel.getDataTypeInformation();
+        }
+        else if(packed && isPackable(meta)) {
+          @SuppressWarnings("unchecked")
+          VectorFieldTypeInformation<? extends NumberVector> vmeta = (VectorFieldTypeInformation<? extends NumberVector>) meta;
+          PackedNumberVectorRelation prel = new PackedNumberVectorRelation(vmeta, ids, null, offheap);
+          for(it.seek(0); it.valid(); it.advance()) {
+            prel.set(it, (NumberVector) bundle.data(it.getOffset(), i));
+          }
+          relation = prel;
+          meta = prel.getDataTypeInformation();
+        }
+        else if(bundle.getColumn(i) instanceof MappedBundleReader.Column) {
+          // Keep the data in the mapped file, decode on access.
+          @SuppressWarnings("unchecked")
+          SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
+          @SuppressWarnings("unchecked")
+          MappedBundleReader.Column<Object> col = (MappedBundleReader.Column<Object>) bundle.getColumn(i);
+          relation = new MappedBundleRelation<>(ometa, ids, null, col);
+        }
+        else {
+          @SuppressWarnings("unchecked")
+          SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
+          WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+          for(it.seek(0); it.valid(); it.advance()) {
+            store.put(it, bundle.data(it.getOffset(), i));
+          }
+          relation = new MaterializedRelation<>(ometa, ids, null, store);
         }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
         relations.add(relation);
         getHierarchy().add(this, relation);
 
         // Try to add indexes where appropriate
         for(IndexFactory<?> factory : indexFactories) {
-          if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
+          if(factory.getInputTypeRestriction().isAssignableFromType(meta)) {
             @SuppressWarnings("unchecked")
             final IndexFactory<Object> ofact = (IndexFactory<Object>) factory;
             @SuppressWarnings("unchecked")
             final Relation<Object> orep = (Relation<Object>) relation;
-            final Index index = ofact.instantiate(orep);
-            Duration duration = LOG.isStatistics() ? LOG.newDuration(index.getClass().getName() + ".construction").begin() : null;
-            index.initialize();
-            if(duration != null) {
-              LOG.statistics(duration.end());
+            Index index = ofact.instantiate(orep);
+            if(snapshots == null || !snapshots.restore(orep, index)) {
+              Duration duration = LOG.isStatistics() ? LOG.newDuration(index.getClass().getName() + ".construction").begin() : null;
+              index.initialize();
+              if(duration != null) {
+                LOG.statistics(duration.end());
+              }
+              if(snapshots != null) {
+                snapshots.store(orep, index);
+              }
             }
             getHierarchy().add(relation, index);
           }
@@ -176,6 +266,21 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Test whether a relation can be stored in packed storage.
+   *
+   * @param meta Type information
+   * @return {@code true} for dense numeric vectors of fixed dimensionality
+   */
+  protected static boolean isPackable(SimpleTypeInformation<?> meta) {
+    if(!(meta instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    final Class<?> cls = meta.getRestrictionClass();
+    return NumberVector.class.isAssignableFrom(cls) && !SparseNumberVector.class.isAssignableFrom(cls) //
+        && ((VectorFieldTypeInformation<?>) meta).getDimensionality() > 0;
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -189,11 +294,50 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractDatabase.Parameterizer {
+    /**
+     * Flag to store dense vector relations in packed storage.
+     * <p>
+     * Key: {@code -db.packed}
+     * </p>
+     */
+    public static final OptionID PACKED_ID = new OptionID("db.packed", "Store dense numeric vectors in contiguous packed blocks, instead of one object per vector. FloatVector data is kept in single precision. Relations then have the generic NumberVector type.");
+
+    /**
+     * Flag to allocate packed storage off-heap.
+     * <p>
+     * Key: {@code -db.packed.offheap}
+     * </p>
+     */
+    public static final OptionID OFFHEAP_ID = new OptionID("db.packed.offheap", "Allocate packed vector storage off-heap, in direct buffers.");
+
+    /**
+     * Directory for index snapshots.
+     * <p>
+     * Key: {@code -db.index.snapshot}
+     * </p>
+     */
+    public static final OptionID SNAPSHOT_ID = new OptionID("db.index.snapshot", "Directory to store snapshots of built indexes in. Indexes are restored from a snapshot instead of being rebuilt when data and parameters match.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
     protected DatabaseConnection databaseConnection = null;
 
+    /**
+     * Store dense vector relations in packed storage.
+     */
+    protected boolean packed = false;
+
+    /**
+     * Allocate packed storage off-heap.
+     */
+    protected boolean offheap = false;
+
+    /**
+     * Directory for index snapshots.
+     */
+    protected File snapshotDirectory = null;
+
     /**
      * Indexes to add.
      */
@@ -212,11 +356,25 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      Flag packedF = new Flag(PACKED_ID);
+      if(config.grab(packedF)) {
+        packed = packedF.isTrue();
+      }
+      if(packed) {
+        Flag offheapF = new Flag(OFFHEAP_ID);
+        if(config.grab(offheapF)) {
+          offheap = offheapF.isTrue();
+        }
+      }
+      FileParameter snapshotP = new FileParameter(SNAPSHOT_ID, FileParameter.FileType.OUTPUT_FILE, true);
+      if(config.grab(snapshotP)) {
+        snapshotDirectory = snapshotP.getValue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, packed, offheap, snapshotDirectory);
     }
   }
 }
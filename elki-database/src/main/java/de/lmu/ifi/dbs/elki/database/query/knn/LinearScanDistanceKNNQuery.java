@@ -29,6 +29,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 
@@ -51,10 +52,38 @@ public class LinearScanDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> i
     super(distanceQuery);
   }
 
+  // Note: no thread-local heaps here, as non-primitive distances may perform
+  // kNN queries themselves.
+
   @Override
   public KNNList getKNNForDBID(DBIDRef id, int k) {
+    return linearScan(id, DBIDUtil.newHeap(k)).toKNNList();
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    return linearScan(obj, DBIDUtil.newHeap(k)).toKNNList();
+  }
+
+  @Override
+  public void getKNNForDBID(DBIDRef id, int k, ModifiableDoubleDBIDList result) {
+    linearScan(id, DBIDUtil.newHeap(k)).toKNNList(result);
+  }
+
+  @Override
+  public void getKNNForObject(O obj, int k, ModifiableDoubleDBIDList result) {
+    linearScan(obj, DBIDUtil.newHeap(k)).toKNNList(result);
+  }
+
+  /**
+   * Main loop of the linear scan for a database object.
+   *
+   * @param id Query object ID
+   * @param heap Output heap
+   * @return Heap
+   */
+  private KNNHeap linearScan(DBIDRef id, KNNHeap heap) {
     final DistanceQuery<O> dq = distanceQuery;
-    KNNHeap heap = DBIDUtil.newHeap(k);
     double max = Double.POSITIVE_INFINITY;
     for(DBIDIter iter = getRelation().getDBIDs().iter(); iter.valid(); iter.advance()) {
       final double dist = dq.distance(id, iter);
@@ -62,13 +91,18 @@ public class LinearScanDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> i
         max = heap.insert(dist, iter);
       }
     }
-    return heap.toKNNList();
+    return heap;
   }
 
-  @Override
-  public KNNList getKNNForObject(O obj, int k) {
+  /**
+   * Main loop of the linear scan for a query object.
+   *
+   * @param obj Query object
+   * @param heap Output heap
+   * @return Heap
+   */
+  private KNNHeap linearScan(O obj, KNNHeap heap) {
     final DistanceQuery<O> dq = distanceQuery;
-    KNNHeap heap = DBIDUtil.newHeap(k);
     double max = Double.POSITIVE_INFINITY;
     for(DBIDIter iter = getRelation().getDBIDs().iter(); iter.valid(); iter.advance()) {
       final double dist = dq.distance(obj, iter);
@@ -76,7 +110,7 @@ public class LinearScanDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> i
         max = heap.insert(dist, iter);
       }
     }
-    return heap.toKNNList();
+    return heap;
   }
 
   @Override
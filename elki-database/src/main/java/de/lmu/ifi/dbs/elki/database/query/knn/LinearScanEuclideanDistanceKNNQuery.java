@@ -24,14 +24,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.VectorUtil;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.PackedNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
@@ -63,13 +69,25 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   @Override
   public KNNList getKNNForDBID(DBIDRef id, int k) {
     final Relation<? extends O> relation = getRelation();
-    return linearScan(relation , relation.iterDBIDs(), relation.get(id), DBIDUtil.newHeap(k)).toKNNListSqrt();
+    return linearScan(relation, relation.iterDBIDs(), relation.get(id), DBIDUtil.threadLocalHeap(k)).toKNNListSqrt();
   }
 
   @Override
   public KNNList getKNNForObject(O obj, int k) {
     final Relation<? extends O> relation = getRelation();
-    return linearScan(relation, relation.iterDBIDs(), obj, DBIDUtil.newHeap(k)).toKNNListSqrt();
+    return linearScan(relation, relation.iterDBIDs(), obj, DBIDUtil.threadLocalHeap(k)).toKNNListSqrt();
+  }
+
+  @Override
+  public void getKNNForDBID(DBIDRef id, int k, ModifiableDoubleDBIDList result) {
+    final Relation<? extends O> relation = getRelation();
+    linearScan(relation, relation.iterDBIDs(), relation.get(id), DBIDUtil.threadLocalHeap(k)).toKNNListSqrt(result);
+  }
+
+  @Override
+  public void getKNNForObject(O obj, int k, ModifiableDoubleDBIDList result) {
+    final Relation<? extends O> relation = getRelation();
+    linearScan(relation, relation.iterDBIDs(), obj, DBIDUtil.threadLocalHeap(k)).toKNNListSqrt(result);
   }
 
   /**
@@ -82,6 +100,9 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    * @return Heap
    */
   private KNNHeap linearScan(Relation<? extends O> relation, DBIDIter iter, final O obj, KNNHeap heap) {
+    if(relation instanceof PackedNumberVectorRelation) {
+      return linearScanPacked((PackedNumberVectorRelation) relation, obj.toArray(), heap);
+    }
     final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
     double max = Double.POSITIVE_INFINITY;
     while(iter.valid()) {
@@ -94,6 +115,26 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
     return heap;
   }
 
+  /**
+   * Main loop of the linear scan, reading directly from packed storage.
+   *
+   * @param relation Packed data relation
+   * @param obj Query object
+   * @param heap Output heap
+   * @return Heap
+   */
+  private KNNHeap linearScanPacked(PackedNumberVectorRelation relation, final double[] obj, KNNHeap heap) {
+    double max = Double.POSITIVE_INFINITY;
+    // Rows are stored in the order of the relation DBIDs:
+    for(DBIDArrayIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
+      final double dist = relation.squaredEuclideanDistance(obj, iter.getOffset());
+      if(dist <= max) {
+        max = heap.insert(dist, iter);
+      }
+    }
+    return heap;
+  }
+
   @Override
   public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
     final Relation<? extends O> relation = getRelation();
@@ -124,6 +165,27 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
     final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
     final Relation<? extends O> relation = getRelation();
     final int size = objs.size();
+    if(size > 1 && linearScanBatchKNNDot(relation, objs, heaps)) {
+      return;
+    }
+    if(relation instanceof PackedNumberVectorRelation) {
+      final PackedNumberVectorRelation packed = (PackedNumberVectorRelation) relation;
+      final double[][] qs = new double[size][];
+      for(int index = 0; index < size; index++) {
+        qs[index] = objs.get(index).toArray();
+      }
+      for(DBIDArrayIter iter = packed.getDBIDs().iter(); iter.valid(); iter.advance()) {
+        final int row = iter.getOffset();
+        for(int index = 0; index < size; index++) {
+          final KNNHeap heap = heaps.get(index);
+          final double dist = packed.squaredEuclideanDistance(qs[index], row);
+          if(dist <= heap.getKNNDistance()) {
+            heap.insert(dist, iter);
+          }
+        }
+      }
+      return;
+    }
     // Linear scan style KNN.
     for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
       O candidate = relation.get(iter);
@@ -136,4 +198,124 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Batch kNN on dense data of fixed dimensionality, using the expansion
+   * {@code |x-y|^2 = |x|^2 + |y|^2 - 2 x*y}.
+   * <p>
+   * The squared norms are computed once, and the dot products of a block of
+   * queries with a block of data vectors are computed with a cache-blocked
+   * kernel. Because this expansion is prone to cancellation, it is only used
+   * to prune candidates, using a bound on the rounding error; the remaining
+   * candidates are re-checked with the exact distance, so the result is the
+   * same as with the regular linear scan.
+   *
+   * @param relation Data relation
+   * @param objs Query objects
+   * @param heaps Output heaps
+   * @return {@code false} if the data is not suitable, and nothing was done.
+   */
+  private boolean linearScanBatchKNNDot(Relation<? extends O> relation, List<O> objs, List<KNNHeap> heaps) {
+    if(!(relation.getDataTypeInformation() instanceof VectorFieldTypeInformation) || TypeUtil.SPARSE_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation())) {
+      return false;
+    }
+    final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
+    final int dim = ((VectorFieldTypeInformation<?>) relation.getDataTypeInformation()).getDimensionality();
+    final int size = objs.size();
+    // Pack the queries, and compute their squared norms.
+    final double[][] qarrs = new double[size][];
+    final double[] qs = new double[size * dim], qnorms = new double[size];
+    for(int i = 0; i < size; i++) {
+      final double[] q = qarrs[i] = objs.get(i).toArray();
+      if(q.length != dim) {
+        return false;
+      }
+      System.arraycopy(q, 0, qs, i * dim, dim);
+      qnorms[i] = VectorUtil.squaredLength(q);
+    }
+    // Relative error bound of the expansion, see e.g. Higham, Accuracy and
+    // Stability of Numerical Algorithms, on the error of dot products.
+    final double tol = 2 * (dim + 2) * Math.ulp(1.);
+    final double[] block = new double[BLOCKSIZE * dim], bnorms = new double[BLOCKSIZE];
+    final double[] dots = new double[QUERYBLOCKSIZE * BLOCKSIZE];
+    final PackedNumberVectorRelation packed = relation instanceof PackedNumberVectorRelation ? (PackedNumberVectorRelation) relation : null;
+    final DBIDArrayIter iter = (packed != null ? packed.getDBIDs() : DBIDUtil.ensureArray(relation.getDBIDs())).iter();
+    for(int start = 0, end = relation.size(), n; start < end; start += n) {
+      // Pack the candidates, and compute their squared norms.
+      if(packed != null) {
+        // Rows are stored in the order of the relation DBIDs:
+        n = packed.copyRows(start, BLOCKSIZE, block);
+      }
+      else {
+        n = 0;
+        for(iter.seek(start); iter.valid() && n < BLOCKSIZE; iter.advance(), n++) {
+          final O obj = relation.get(iter);
+          for(int d = 0, o = n * dim; d < dim; d++) {
+            block[o++] = obj.doubleValue(d);
+          }
+        }
+      }
+      for(int j = 0; j < n; j++) {
+        bnorms[j] = VectorUtil.dotDense(block, j * dim, block, j * dim, dim);
+      }
+      for(int qstart = 0; qstart < size; qstart += QUERYBLOCKSIZE) {
+        final int qend = Math.min(qstart + QUERYBLOCKSIZE, size);
+        dots(qs, qstart, qend, block, n, dim, dots);
+        for(int index = qstart, o = 0; index < qend; index++) {
+          final KNNHeap heap = heaps.get(index);
+          final double qnorm = qnorms[index];
+          iter.seek(start);
+          for(int j = 0; j < n; j++, o++, iter.advance()) {
+            final double norms = qnorm + bnorms[j];
+            // Negated, so that NaN values are re-checked, too.
+            if(!(norms - 2 * dots[o] - tol * norms > heap.getKNNDistance())) {
+              final double dist = squared.distance(qarrs[index], block, j * dim, dim);
+              if(dist <= heap.getKNNDistance()) {
+                heap.insert(dist, iter);
+              }
+            }
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compute the dot products of a block of queries with a block of data
+   * vectors. Four data vectors are processed at once, to reuse each query
+   * value loaded.
+   *
+   * @param qs Query vectors
+   * @param qstart First query
+   * @param qend Query end (exclusive)
+   * @param block Data vectors
+   * @param n Number of data vectors
+   * @param dim Dimensionality
+   * @param out Output array, row-major
+   */
+  private static void dots(double[] qs, int qstart, int qend, double[] block, int n, int dim, double[] out) {
+    for(int i = qstart, o = 0; i < qend; i++) {
+      final int qoff = i * dim;
+      int j = 0;
+      for(; j + 4 <= n; j += 4, o += 4) {
+        final int b0 = j * dim, b1 = b0 + dim, b2 = b1 + dim, b3 = b2 + dim;
+        double s0 = 0., s1 = 0., s2 = 0., s3 = 0.;
+        for(int d = 0; d < dim; d++) {
+          final double q = qs[qoff + d];
+          s0 += q * block[b0 + d];
+          s1 += q * block[b1 + d];
+          s2 += q * block[b2 + d];
+          s3 += q * block[b3 + d];
+        }
+        out[o] = s0;
+        out[o + 1] = s1;
+        out[o + 2] = s2;
+        out[o + 3] = s3;
+      }
+      for(; j < n; j++, o++) {
+        out[o] = VectorUtil.dotDense(qs, qoff, block, j * dim, dim);
+      }
+    }
+  }
+}
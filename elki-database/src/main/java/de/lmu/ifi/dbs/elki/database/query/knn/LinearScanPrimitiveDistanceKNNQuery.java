@@ -23,15 +23,20 @@ package de.lmu.ifi.dbs.elki.database.query.knn;
 import java.util.ArrayList;
 import java.util.List;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.PackedNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
 
 /**
@@ -47,6 +52,16 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
  * @apiviz.uses PrimitiveDistanceFunction
  */
 public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * Number of objects to process at once with the block distance API.
+   */
+  protected static final int BLOCKSIZE = 256;
+
+  /**
+   * Number of queries to process at once in batch queries.
+   */
+  protected static final int QUERYBLOCKSIZE = 64;
+
   /**
    * Unboxed distance function.
    */
@@ -65,13 +80,25 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
   @Override
   public KNNList getKNNForDBID(DBIDRef id, int k) {
     final Relation<? extends O> relation = getRelation();
-    return linearScan(relation, relation.iterDBIDs(), relation.get(id), DBIDUtil.newHeap(k)).toKNNList();
+    return linearScan(relation, relation.iterDBIDs(), relation.get(id), DBIDUtil.threadLocalHeap(k)).toKNNList();
   }
 
   @Override
   public KNNList getKNNForObject(O obj, int k) {
     final Relation<? extends O> relation = getRelation();
-    return linearScan(relation, relation.iterDBIDs(), obj, DBIDUtil.newHeap(k)).toKNNList();
+    return linearScan(relation, relation.iterDBIDs(), obj, DBIDUtil.threadLocalHeap(k)).toKNNList();
+  }
+
+  @Override
+  public void getKNNForDBID(DBIDRef id, int k, ModifiableDoubleDBIDList result) {
+    final Relation<? extends O> relation = getRelation();
+    linearScan(relation, relation.iterDBIDs(), relation.get(id), DBIDUtil.threadLocalHeap(k)).toKNNList(result);
+  }
+
+  @Override
+  public void getKNNForObject(O obj, int k, ModifiableDoubleDBIDList result) {
+    final Relation<? extends O> relation = getRelation();
+    linearScan(relation, relation.iterDBIDs(), obj, DBIDUtil.threadLocalHeap(k)).toKNNList(result);
   }
 
   /**
@@ -85,6 +112,9 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
    */
   private KNNHeap linearScan(Relation<? extends O> relation, DBIDIter iter, final O obj, KNNHeap heap) {
     final PrimitiveDistanceFunction<? super O> rawdist = this.rawdist;
+    if(relation instanceof PackedNumberVectorRelation && rawdist instanceof NumberVectorDistanceFunction) {
+      return linearScanPacked((PackedNumberVectorRelation) relation, (NumberVectorDistanceFunction<?>) rawdist, ((NumberVector) obj).toArray(), heap);
+    }
     double max = Double.POSITIVE_INFINITY;
     while(iter.valid()) {
       final double dist = rawdist.distance(obj, relation.get(iter));
@@ -96,6 +126,33 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
     return heap;
   }
 
+  /**
+   * Main loop of the linear scan, computing blocks of distances directly on
+   * the packed storage.
+   *
+   * @param relation Packed data relation
+   * @param df Distance function
+   * @param obj Query object
+   * @param heap Output heap
+   * @return Heap
+   */
+  private KNNHeap linearScanPacked(PackedNumberVectorRelation relation, NumberVectorDistanceFunction<?> df, double[] obj, KNNHeap heap) {
+    final double[] buf = new double[BLOCKSIZE];
+    double max = Double.POSITIVE_INFINITY;
+    // Rows are stored in the order of the relation DBIDs:
+    DBIDArrayIter iter = relation.getDBIDs().iter();
+    for(int row = 0, size = relation.size(); row < size;) {
+      final int n = relation.distances(df, obj, row, BLOCKSIZE, buf);
+      for(int i = 0; i < n; i++, iter.advance()) {
+        if(buf[i] <= max) {
+          max = heap.insert(buf[i], iter);
+        }
+      }
+      row += n;
+    }
+    return heap;
+  }
+
   @Override
   public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
     final Relation<? extends O> relation = getRelation();
@@ -125,16 +182,26 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
     final PrimitiveDistanceFunction<? super O> rawdist = this.rawdist;
     final Relation<? extends O> relation = getRelation();
     final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
+    // Linear scan style KNN, on blocks of candidates.
+    final List<O> candidates = new ArrayList<>(BLOCKSIZE);
+    final DBIDArrayIter iter = DBIDUtil.ensureArray(relation.getDBIDs()).iter();
+    for(int start = 0, end = relation.size(); start < end; start += BLOCKSIZE) {
+      candidates.clear();
+      for(iter.seek(start); iter.valid() && candidates.size() < BLOCKSIZE; iter.advance()) {
+        candidates.add(relation.get(iter));
+      }
+      final int n = candidates.size();
       for(int index = 0; index < size; index++) {
+        final O obj = objs.get(index);
         final KNNHeap heap = heaps.get(index);
-        final double dist = rawdist.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
+        iter.seek(start);
+        for(int j = 0; j < n; j++, iter.advance()) {
+          final double dist = rawdist.distance(obj, candidates.get(j));
+          if(dist <= heap.getKNNDistance()) {
+            heap.insert(dist, iter);
+          }
         }
       }
     }
   }
-}
\ No newline at end of file
+}
@@ -21,12 +21,14 @@
 package de.lmu.ifi.dbs.elki.database.query.range;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.PackedNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import net.jafama.FastMath;
@@ -99,6 +101,10 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
     // This should be more precise, but slower:
     // upper = MathUtil.floatToDoubleUpper((float)range);
     final double sqrange = upper * upper;
+    if(relation instanceof PackedNumberVectorRelation) {
+      linearScanPacked((PackedNumberVectorRelation) relation, obj.toArray(), range, sqrange, result);
+      return;
+    }
     while(iter.valid()) {
       final double sqdistance = squared.distance(obj, relation.get(iter));
       if(sqdistance <= sqrange) {
@@ -110,4 +116,26 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
       iter.advance();
     }
   }
+
+  /**
+   * Main loop for linear scan, reading directly from packed storage.
+   * 
+   * @param relation Packed data relation
+   * @param obj Query object
+   * @param range Query radius
+   * @param sqrange Squared query radius, slightly increased
+   * @param result Output data structure
+   */
+  private void linearScanPacked(PackedNumberVectorRelation relation, double[] obj, double range, double sqrange, ModifiableDoubleDBIDList result) {
+    // Rows are stored in the order of the relation DBIDs:
+    for(DBIDArrayIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
+      final double sqdistance = relation.squaredEuclideanDistance(obj, iter.getOffset());
+      if(sqdistance <= sqrange) {
+        final double dist = FastMath.sqrt(sqdistance);
+        if(dist <= range) { // double check, as we increased the radius above
+          result.add(dist, iter);
+        }
+      }
+    }
+  }
 }
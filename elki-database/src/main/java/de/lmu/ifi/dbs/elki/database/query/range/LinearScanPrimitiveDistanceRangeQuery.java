@@ -20,13 +20,17 @@
  */
 package de.lmu.ifi.dbs.elki.database.query.range;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.PackedNumberVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
 
 /**
@@ -43,6 +47,11 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
  * @param <O> Database object type
  */
 public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRangeQuery<O> {
+  /**
+   * Number of objects to process at once with the block distance API.
+   */
+  private static final int BLOCKSIZE = 256;
+
   /**
    * Unboxed distance function.
    */
@@ -101,6 +110,10 @@ public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRa
    */
   private void linearScan(Relation<? extends O> relation, DBIDIter iter, O obj, double range, ModifiableDoubleDBIDList result) {
     final PrimitiveDistanceFunction<? super O> rawdist = this.rawdist;
+    if(relation instanceof PackedNumberVectorRelation && rawdist instanceof NumberVectorDistanceFunction) {
+      linearScanPacked((PackedNumberVectorRelation) relation, (NumberVectorDistanceFunction<?>) rawdist, ((NumberVector) obj).toArray(), range, result);
+      return;
+    }
     while(iter.valid()) {
       final double distance = rawdist.distance(obj, relation.get(iter));
       if(distance <= range) {
@@ -109,4 +122,29 @@ public class LinearScanPrimitiveDistanceRangeQuery<O> extends AbstractDistanceRa
       iter.advance();
     }
   }
+
+  /**
+   * Main loop for linear scan, computing blocks of distances directly on the
+   * packed storage.
+   * 
+   * @param relation Packed data relation
+   * @param df Distance function
+   * @param obj Query object
+   * @param range Query radius
+   * @param result Output data structure
+   */
+  private void linearScanPacked(PackedNumberVectorRelation relation, NumberVectorDistanceFunction<?> df, double[] obj, double range, ModifiableDoubleDBIDList result) {
+    final double[] buf = new double[BLOCKSIZE];
+    // Rows are stored in the order of the relation DBIDs:
+    DBIDArrayIter iter = relation.getDBIDs().iter();
+    for(int row = 0, size = relation.size(); row < size;) {
+      final int n = relation.distances(df, obj, row, BLOCKSIZE, buf);
+      for(int i = 0; i < n; i++, iter.advance()) {
+        if(buf[i] <= range) {
+          result.add(buf[i], iter);
+        }
+      }
+      row += n;
+    }
+  }
 }
@@ -0,0 +1,163 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedBundleReader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Relation backed by a column of a memory-mapped bundle file.
+ * <p>
+ * Objects are not materialized, but decoded from the mapped file on every
+ * access to {@link #get}. This trades CPU for memory: only the object offsets
+ * are kept on the heap, while the operating system pages the file data in and
+ * out as needed.
+ * <p>
+ * The relation is not modifiable.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf MappedBundleReader.Column
+ *
+ * @param <O> Object type
+ */
+public class MappedBundleRelation<O> extends AbstractRelation<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedBundleRelation.class);
+
+  /**
+   * Type information.
+   */
+  private final SimpleTypeInformation<O> type;
+
+  /**
+   * The DBIDs this is defined for, in file order.
+   */
+  private final ArrayStaticDBIDs ids;
+
+  /**
+   * Mapping of DBIDs to rows, if the DBIDs are a range.
+   */
+  private final DataStoreIDMap idmap;
+
+  /**
+   * Mapping of DBIDs to rows, otherwise.
+   */
+  private final WritableIntegerDataStore rows;
+
+  /**
+   * Mapped data column.
+   */
+  private final MappedBundleReader.Column<O> column;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * The relation name (short version)
+   */
+  private String shortname = "relation";
+
+  /**
+   * Constructor.
+   *
+   * @param type Type information
+   * @param ids IDs, in file order
+   * @param name Name
+   * @param column Mapped data column
+   */
+  public MappedBundleRelation(SimpleTypeInformation<O> type, ArrayDBIDs ids, String name, MappedBundleReader.Column<O> column) {
+    super();
+    assert (ids.size() == column.size()) : "Number of DBIDs does not match the bundle size.";
+    this.type = type;
+    this.ids = (ArrayStaticDBIDs) DBIDUtil.makeUnmodifiable(ids);
+    this.name = name;
+    this.column = column;
+    if(ids instanceof DBIDRange) {
+      this.idmap = (DBIDRange) ids;
+      this.rows = null;
+    }
+    else {
+      this.idmap = null;
+      this.rows = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        rows.putInt(it, it.getOffset());
+      }
+    }
+  }
+
+  @Override
+  public O get(DBIDRef id) {
+    return column.get(idmap != null ? idmap.mapDBIDToOffset(id) : rows.intValue(id));
+  }
+
+  @Override
+  public ArrayStaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public SimpleTypeInformation<O> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return shortname;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -0,0 +1,850 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.relation;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreIDMap;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.ArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.NumberArrayAdapter;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Relation storing dense numeric vectors of fixed dimensionality packed into
+ * contiguous row-major blocks of doubles, either on the heap or off-heap in
+ * direct byte buffers. {@link FloatVector} data is stored in single precision,
+ * i.e. with half the memory.
+ * <p>
+ * This avoids one object (plus one array) per vector, and keeps the data of
+ * consecutive objects adjacent in memory. Vectors returned by {@link #get} are
+ * lightweight views into the block, which are only valid as long as the
+ * relation exists; use {@link NumberVector#toArray()} to obtain a copy.
+ * <p>
+ * Rows are stored in the order of the DBIDs given at construction, so that
+ * linear scans can process the block sequentially (see
+ * {@link #squaredEuclideanDistance(double[], int)}).
+ * <p>
+ * The relation is not modifiable after loading. Because the vectors are not
+ * instances of the original vector class, the relation advertises the type
+ * {@link NumberVector}, not e.g. {@link DoubleVector}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Vector
+ */
+public class PackedNumberVectorRelation extends AbstractRelation<NumberVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(PackedNumberVectorRelation.class);
+
+  /**
+   * Maximum number of values in a single block (1 GiB of doubles).
+   */
+  private static final int MAX_BLOCKSIZE = 1 << 27;
+
+  /**
+   * Type information.
+   */
+  private final VectorFieldTypeInformation<NumberVector> type;
+
+  /**
+   * The DBIDs this is defined for, in storage order.
+   */
+  private final ArrayStaticDBIDs ids;
+
+  /**
+   * Mapping of DBIDs to rows, if the DBIDs are a range.
+   */
+  private final DataStoreIDMap idmap;
+
+  /**
+   * Mapping of DBIDs to rows, otherwise.
+   */
+  private final WritableIntegerDataStore rows;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Number of bits to shift a row number to obtain the block number.
+   */
+  private final int shift;
+
+  /**
+   * Mask to obtain the row within the block.
+   */
+  private final int mask;
+
+  /**
+   * Heap blocks, or {@code null}.
+   */
+  private final double[][] heap;
+
+  /**
+   * Off-heap blocks, or {@code null}.
+   */
+  private final DoubleBuffer[] direct;
+
+  /**
+   * Single precision heap blocks, or {@code null}.
+   */
+  private final float[][] fheap;
+
+  /**
+   * Single precision off-heap blocks, or {@code null}.
+   */
+  private final FloatBuffer[] fdirect;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * The relation name (short version)
+   */
+  private String shortname = "relation";
+
+  /**
+   * Constructor.
+   *
+   * @param type Type information of the original vectors
+   * @param ids IDs, in storage order
+   * @param name Name
+   * @param offheap Allocate the storage off-heap, in direct buffers
+   */
+  public PackedNumberVectorRelation(VectorFieldTypeInformation<? extends NumberVector> type, ArrayDBIDs ids, String name, boolean offheap) {
+    super();
+    this.dim = type.getDimensionality();
+    final boolean single = FloatVector.class.isAssignableFrom(type.getRestrictionClass());
+    this.type = makeType(type, single);
+    this.ids = (ArrayStaticDBIDs) DBIDUtil.makeUnmodifiable(ids);
+    this.name = name;
+    this.idmap = ids instanceof DBIDRange ? (DBIDRange) ids : null;
+    this.rows = idmap == null ? makeRows(ids) : null;
+    // Choose a power-of-two number of rows per block.
+    final int rowsperblock = Integer.highestOneBit(Math.max(1, MAX_BLOCKSIZE / Math.max(1, dim)));
+    this.shift = Integer.numberOfTrailingZeros(rowsperblock);
+    this.mask = rowsperblock - 1;
+    final int size = ids.size();
+    final int numblocks = Math.max(1, (size + mask) >>> shift);
+    this.heap = !single && !offheap ? new double[numblocks][] : null;
+    this.direct = !single && offheap ? new DoubleBuffer[numblocks] : null;
+    this.fheap = single && !offheap ? new float[numblocks][] : null;
+    this.fdirect = single && offheap ? new FloatBuffer[numblocks] : null;
+    for(int i = 0; i < numblocks; i++) {
+      final int blocksize = Math.min(rowsperblock, size - (i << shift)) * dim;
+      if(heap != null) {
+        heap[i] = new double[blocksize];
+      }
+      else if(fheap != null) {
+        fheap[i] = new float[blocksize];
+      }
+      else if(direct != null) {
+        direct[i] = ByteBuffer.allocateDirect(blocksize * ByteArrayUtil.SIZE_DOUBLE).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+      }
+      else {
+        fdirect[i] = ByteBuffer.allocateDirect(blocksize * ByteArrayUtil.SIZE_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
+      }
+    }
+  }
+
+  /**
+   * Constructor, wrapping existing (e.g. memory-mapped) off-heap blocks
+   * without copying.
+   * <p>
+   * The blocks must store the vectors in row-major order, with a power of two
+   * rows per block (except for the last block). {@link FloatBuffer} blocks are
+   * used for single precision data.
+   *
+   * @param type Type information of the original vectors
+   * @param ids IDs, in storage order
+   * @param name Name
+   * @param blocks Storage blocks, {@link DoubleBuffer}s or {@link FloatBuffer}s
+   * @param rowsperblock Number of rows per block, a power of two
+   */
+  public PackedNumberVectorRelation(VectorFieldTypeInformation<? extends NumberVector> type, ArrayDBIDs ids, String name, Buffer[] blocks, int rowsperblock) {
+    super();
+    if(Integer.bitCount(rowsperblock) != 1 || (ids.size() + rowsperblock - 1) / rowsperblock > blocks.length) {
+      throw new IllegalArgumentException("Storage blocks do not match the data size.");
+    }
+    this.dim = type.getDimensionality();
+    final boolean single = blocks instanceof FloatBuffer[];
+    this.type = makeType(type, single);
+    this.ids = (ArrayStaticDBIDs) DBIDUtil.makeUnmodifiable(ids);
+    this.name = name;
+    this.idmap = ids instanceof DBIDRange ? (DBIDRange) ids : null;
+    this.rows = idmap == null ? makeRows(ids) : null;
+    this.shift = Integer.numberOfTrailingZeros(rowsperblock);
+    this.mask = rowsperblock - 1;
+    this.heap = null;
+    this.fheap = null;
+    this.direct = single ? null : (DoubleBuffer[]) blocks;
+    this.fdirect = single ? (FloatBuffer[]) blocks : null;
+  }
+
+  /**
+   * Build the mapping of DBIDs to rows.
+   *
+   * @param ids IDs, in storage order
+   * @return Row storage
+   */
+  private static WritableIntegerDataStore makeRows(ArrayDBIDs ids) {
+    WritableIntegerDataStore rows = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      rows.putInt(it, it.getOffset());
+    }
+    return rows;
+  }
+
+  /**
+   * Build the type information for the packed vectors.
+   *
+   * @param type Original type information
+   * @param single Single precision storage
+   * @return Type information
+   */
+  private static VectorFieldTypeInformation<NumberVector> makeType(VectorFieldTypeInformation<? extends NumberVector> type, boolean single) {
+    final int dim = type.getDimensionality();
+    String[] labels = null;
+    if(type.getLabel(0) != null) {
+      labels = new String[dim];
+      for(int i = 0; i < dim; i++) {
+        labels[i] = type.getLabel(i);
+      }
+    }
+    final Serializer ser = single ? Serializer.FLOAT : Serializer.STATIC;
+    return new VectorFieldTypeInformation<>(new Factory((NumberVector.Factory<?>) type.getFactory(), ser), dim, labels, ser);
+  }
+
+  /**
+   * Get the storage row of an object.
+   *
+   * @param id Object
+   * @return Row number
+   */
+  public int getRow(DBIDRef id) {
+    return idmap != null ? idmap.mapDBIDToOffset(id) : rows.intValue(id);
+  }
+
+  /**
+   * Store a vector.
+   *
+   * @param id Object
+   * @param vec Vector to store
+   */
+  public void set(DBIDRef id, NumberVector vec) {
+    assert (vec.getDimensionality() == dim) : "Vector dimensionality does not match.";
+    final int row = getRow(id), off = (row & mask) * dim;
+    if(heap != null) {
+      final double[] block = heap[row >>> shift];
+      for(int d = 0; d < dim; d++) {
+        block[off + d] = vec.doubleValue(d);
+      }
+    }
+    else if(fheap != null) {
+      final float[] block = fheap[row >>> shift];
+      for(int d = 0; d < dim; d++) {
+        block[off + d] = vec.floatValue(d);
+      }
+    }
+    else if(direct != null) {
+      final DoubleBuffer block = direct[row >>> shift];
+      for(int d = 0; d < dim; d++) {
+        block.put(off + d, vec.doubleValue(d));
+      }
+    }
+    else {
+      final FloatBuffer block = fdirect[row >>> shift];
+      for(int d = 0; d < dim; d++) {
+        block.put(off + d, vec.floatValue(d));
+      }
+    }
+  }
+
+  @Override
+  public NumberVector get(DBIDRef id) {
+    return get(getRow(id));
+  }
+
+  /**
+   * Compute the squared Euclidean distance of a query vector to a stored row,
+   * reading directly from the packed storage.
+   *
+   * @param query Query vector
+   * @param row Row number, see {@link #getRow}
+   * @return Squared Euclidean distance
+   */
+  public double squaredEuclideanDistance(double[] query, int row) {
+    final int off = (row & mask) * dim, block = row >>> shift;
+    final SquaredEuclideanDistanceFunction squared = SquaredEuclideanDistanceFunction.STATIC;
+    return heap != null ? squared.distance(query, heap[block], off, dim) : //
+        fheap != null ? squared.distance(query, fheap[block], off, dim) : //
+            direct != null ? squared.distance(query, direct[block], off, dim) : //
+                squared.distance(query, fdirect[block], off, dim);
+  }
+
+  /**
+   * Compute the distances of a query vector to consecutive stored rows, using
+   * the block kernel of the distance function where possible.
+   * <p>
+   * At most {@code max} rows are processed, but fewer if the end of a storage
+   * block is reached; the caller needs to continue with the next row then.
+   *
+   * @param df Distance function
+   * @param query Query vector
+   * @param row First row, see {@link #getRow}
+   * @param max Maximum number of rows
+   * @param out Output array, of length at least max
+   * @return Number of rows processed
+   */
+  public int distances(NumberVectorDistanceFunction<?> df, double[] query, int row, int max, double[] out) {
+    final int block = row >>> shift, off = row & mask;
+    final int n = Math.min(max, Math.min(ids.size() - row, mask + 1 - off));
+    if(heap != null) {
+      df.distances(query, heap[block], off * dim, dim, n, out);
+      return n;
+    }
+    final NumberVector q = DoubleVector.wrap(query);
+    for(int i = 0; i < n; i++) {
+      out[i] = df.distance(q, get(row + i));
+    }
+    return n;
+  }
+
+  /**
+   * Copy consecutive stored rows into a row-major array, reading directly from
+   * the packed storage.
+   * <p>
+   * At most {@code max} rows are copied, but fewer if the end of a storage
+   * block is reached; the caller needs to continue with the next row then.
+   *
+   * @param row First row, see {@link #getRow}
+   * @param max Maximum number of rows
+   * @param out Output array, of length at least {@code max * dim}
+   * @return Number of rows copied
+   */
+  public int copyRows(int row, int max, double[] out) {
+    final int block = row >>> shift, off = (row & mask) * dim;
+    final int n = Math.min(max, Math.min(ids.size() - row, mask + 1 - (row & mask)));
+    final int len = n * dim;
+    if(heap != null) {
+      System.arraycopy(heap[block], off, out, 0, len);
+    }
+    else if(direct != null) {
+      DoubleBuffer buf = direct[block].duplicate();
+      buf.position(off);
+      buf.get(out, 0, len);
+    }
+    else if(fheap != null) {
+      final float[] src = fheap[block];
+      for(int i = 0; i < len; i++) {
+        out[i] = src[off + i];
+      }
+    }
+    else {
+      final FloatBuffer src = fdirect[block];
+      for(int i = 0; i < len; i++) {
+        out[i] = src.get(off + i);
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Get the stored vector of a row.
+   *
+   * @param row Row number
+   * @return Vector view
+   */
+  private NumberVector get(int row) {
+    final int block = row >>> shift, off = (row & mask) * dim;
+    return heap != null ? new Vector(heap[block], off, dim) : //
+        fheap != null ? new FloatArrayVector(fheap[block], off, dim) : //
+            direct != null ? new BufferVector(direct[block], off, dim) : //
+                new FloatBufferVector(fdirect[block], off, dim);
+  }
+
+  /**
+   * Test whether the vectors are stored in single precision.
+   *
+   * @return {@code true} for single precision storage
+   */
+  public boolean isSinglePrecision() {
+    return fheap != null || fdirect != null;
+  }
+
+  /**
+   * Get the dimensionality of the stored vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public ArrayStaticDBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public VectorFieldTypeInformation<NumberVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return shortname;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Lightweight vector view into a heap block.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Vector implements NumberVector {
+    /**
+     * Data block.
+     */
+    private final double[] block;
+
+    /**
+     * Offset in the block.
+     */
+    private final int off;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param block Data block
+     * @param off Offset
+     * @param dim Dimensionality
+     */
+    protected Vector(double[] block, int off, int dim) {
+      this.block = block;
+      this.off = off;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return block[off + dimension];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) block[off + dimension];
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      System.arraycopy(block, off, ret, 0, dim);
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      return toString(this);
+    }
+
+    /**
+     * Format a vector like {@link DoubleVector#toString()}.
+     *
+     * @param v Vector
+     * @return String representation
+     */
+    protected static String toString(NumberVector v) {
+      StringBuilder buf = new StringBuilder();
+      for(int i = 0, dim = v.getDimensionality(); i < dim; i++) {
+        buf.append(i > 0 ? ATTRIBUTE_SEPARATOR : "").append(v.doubleValue(i));
+      }
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Lightweight vector view into an off-heap buffer.
+   *
+   * @author Erich Schubert
+   */
+  protected static class BufferVector implements NumberVector {
+    /**
+     * Data buffer.
+     */
+    private final DoubleBuffer block;
+
+    /**
+     * Offset in the buffer.
+     */
+    private final int off;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param block Data buffer
+     * @param off Offset
+     * @param dim Dimensionality
+     */
+    protected BufferVector(DoubleBuffer block, int off, int dim) {
+      this.block = block;
+      this.off = off;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return block.get(off + dimension);
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) block.get(off + dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        ret[d] = block.get(off + d);
+      }
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      return Vector.toString(this);
+    }
+  }
+
+  /**
+   * Lightweight vector view into a single precision heap block.
+   *
+   * @author Erich Schubert
+   */
+  protected static class FloatArrayVector implements NumberVector {
+    /**
+     * Data block.
+     */
+    private final float[] block;
+
+    /**
+     * Offset in the block.
+     */
+    private final int off;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param block Data block
+     * @param off Offset
+     * @param dim Dimensionality
+     */
+    protected FloatArrayVector(float[] block, int off, int dim) {
+      this.block = block;
+      this.off = off;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return block[off + dimension];
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      return block[off + dimension];
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) block[off + dimension];
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        ret[d] = block[off + d];
+      }
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      return Vector.toString(this);
+    }
+  }
+
+  /**
+   * Lightweight vector view into a single precision off-heap buffer.
+   *
+   * @author Erich Schubert
+   */
+  protected static class FloatBufferVector implements NumberVector {
+    /**
+     * Data buffer.
+     */
+    private final FloatBuffer block;
+
+    /**
+     * Offset in the buffer.
+     */
+    private final int off;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Constructor.
+     *
+     * @param block Data buffer
+     * @param off Offset
+     * @param dim Dimensionality
+     */
+    protected FloatBufferVector(FloatBuffer block, int off, int dim) {
+      this.block = block;
+      this.off = off;
+      this.dim = dim;
+    }
+
+    @Override
+    public int getDimensionality() {
+      return dim;
+    }
+
+    @Override
+    public double doubleValue(int dimension) {
+      return block.get(off + dimension);
+    }
+
+    @Override
+    public float floatValue(int dimension) {
+      return block.get(off + dimension);
+    }
+
+    @Override
+    public long longValue(int dimension) {
+      return (long) block.get(off + dimension);
+    }
+
+    @Override
+    public double[] toArray() {
+      double[] ret = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        ret[d] = block.get(off + d);
+      }
+      return ret;
+    }
+
+    @Override
+    public String toString() {
+      return Vector.toString(this);
+    }
+  }
+
+  /**
+   * Factory for the packed type, which creates new vectors using the factory
+   * of the original vector type.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Factory implements NumberVector.Factory<NumberVector> {
+    /**
+     * Factory of the original vector type.
+     */
+    private final NumberVector.Factory<?> inner;
+
+    /**
+     * Serializer to use.
+     */
+    private final Serializer serializer;
+
+    /**
+     * Constructor.
+     *
+     * @param inner Factory of the original vector type
+     * @param serializer Serializer to use
+     */
+    protected Factory(NumberVector.Factory<?> inner, Serializer serializer) {
+      this.inner = inner;
+      this.serializer = serializer;
+    }
+
+    @Override
+    public <A> NumberVector newFeatureVector(A array, ArrayAdapter<? extends Number, A> adapter) {
+      return inner.newFeatureVector(array, adapter);
+    }
+
+    @Override
+    public <A> NumberVector newNumberVector(A array, NumberArrayAdapter<?, ? super A> adapter) {
+      return inner.newNumberVector(array, adapter);
+    }
+
+    @Override
+    public ByteBufferSerializer<NumberVector> getDefaultSerializer() {
+      return serializer;
+    }
+
+    @Override
+    public Class<? super NumberVector> getRestrictionClass() {
+      return NumberVector.class;
+    }
+  }
+
+  /**
+   * Serialization for dense vectors, compatible with
+   * {@link DoubleVector.VariableSerializer} respectively
+   * {@link FloatVector.VariableSerializer}.
+   *
+   * @author Erich Schubert
+   */
+  protected static class Serializer implements ByteBufferSerializer<NumberVector> {
+    /**
+     * Static instance, for double precision.
+     */
+    protected static final Serializer STATIC = new Serializer(false);
+
+    /**
+     * Static instance, for single precision.
+     */
+    protected static final Serializer FLOAT = new Serializer(true);
+
+    /**
+     * Single precision.
+     */
+    private final boolean single;
+
+    /**
+     * Constructor.
+     *
+     * @param single Single precision
+     */
+    private Serializer(boolean single) {
+      this.single = single;
+    }
+
+    @Override
+    public NumberVector fromByteBuffer(ByteBuffer buffer) throws IOException {
+      return single ? FloatVector.VARIABLE_SERIALIZER.fromByteBuffer(buffer) : DoubleVector.VARIABLE_SERIALIZER.fromByteBuffer(buffer);
+    }
+
+    @Override
+    public void toByteBuffer(ByteBuffer buffer, NumberVector vec) throws IOException {
+      final int dim = vec.getDimensionality();
+      ByteArrayUtil.writeUnsignedVarint(buffer, dim);
+      for(int i = 0; i < dim; i++) {
+        if(single) {
+          buffer.putFloat(vec.floatValue(i));
+        }
+        else {
+          buffer.putDouble(vec.doubleValue(i));
+        }
+      }
+    }
+
+    @Override
+    public int getByteSize(NumberVector vec) {
+      final int dim = vec.getDimensionality();
+      return ByteArrayUtil.getUnsignedVarintSize(dim) + (single ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE) * dim;
+    }
+  }
+}
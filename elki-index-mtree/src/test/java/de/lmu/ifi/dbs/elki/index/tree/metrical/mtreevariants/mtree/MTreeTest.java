@@ -45,5 +45,6 @@ public class MTreeTest extends AbstractIndexStructureTest {
         .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300).build();
     testExactEuclidean(factory, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
     testSinglePoint(factory, MetricalIndexKNNQuery.class, MetricalIndexRangeQuery.class);
+    testConcurrentQueries(factory, MetricalIndexKNNQuery.class);
   }
 }
@@ -20,8 +20,11 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import java.io.DataInput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeSet;
@@ -53,6 +56,7 @@ import de.lmu.ifi.dbs.elki.index.RKNNIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 
@@ -78,6 +82,19 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
    */
   private static final Logging LOG = Logging.getLogger(MaterializeKNNAndRKNNPreprocessor.class);
 
+  /**
+   * Number of objects per bulk kNN query.
+   */
+  private static final int BULK_SIZE = 256;
+
+  /**
+   * Order of the reverse kNN lists: by distance, then by DBID.
+   */
+  private static final Comparator<DoubleDBIDPair> REVERSE_ORDER = (a, b) -> {
+    final int c = Double.compare(a.doubleValue(), b.doubleValue());
+    return c != 0 ? c : DBIDUtil.compare(a, b);
+  };
+
   /**
    * Additional data storage for RkNN.
    */
@@ -102,35 +119,83 @@ public class MaterializeKNNAndRKNNPreprocessor<O> extends MaterializeKNNPreproce
     materializeKNNAndRKNNs(DBIDUtil.ensureArray(relation.getDBIDs()), progress);
   }
 
+  @Override
+  public void readSnapshot(DataInput in) throws IOException {
+    super.readSnapshot(in);
+    // Rebuild the reverse lists from the restored kNN lists.
+    materialized_RkNN = DataStoreUtil.makeStorage(relation.getDBIDs(), DataStoreFactory.HINT_HOT, TreeSet.class);
+    try {
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        materialized_RkNN.put(iter, newReverseList());
+      }
+      for(DBIDIter id = relation.iterDBIDs(); id.valid(); id.advance()) {
+        for(DoubleDBIDListIter iter = storage.get(id).iter(); iter.valid(); iter.advance()) {
+          materialized_RkNN.get(iter).add(DBIDUtil.newPair(iter.doubleValue(), id));
+        }
+      }
+    }
+    catch(RuntimeException e) {
+      storage = null; // Allow initialize() to run.
+      materialized_RkNN = null;
+      throw e;
+    }
+  }
+
   /**
    * Materializes the kNNs and RkNNs of the specified object IDs.
    *
+   * Blocks of objects are processed in parallel: the bulk kNN query, storing
+   * the results, and adding the objects to the reverse lists of their
+   * neighbors. The storage and each reverse list are only modified while
+   * holding their monitor. Because the reverse lists are totally ordered, the
+   * result does not depend on the thread schedule.
+   *
    * @param ids the IDs of the objects
+   * @param progress Progress, may be {@code null}
    */
   private void materializeKNNAndRKNNs(ArrayDBIDs ids, FiniteProgress progress) {
     // add an empty list to each rknn
     for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
       if(materialized_RkNN.get(iter) == null) {
-        materialized_RkNN.put(iter, new TreeSet<DoubleDBIDPair>());
+        materialized_RkNN.put(iter, newReverseList());
       }
     }
 
-    // knn query
-    List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(ids, k);
-    int i = 0;
-    for(DBIDIter id = ids.iter(); id.valid(); id.advance(), i++) {
-      KNNList kNNs = kNNList.get(i);
-      storage.put(id, kNNs);
-      for(DoubleDBIDListIter iter = kNNs.iter(); iter.valid(); iter.advance()) {
-        TreeSet<DoubleDBIDPair> rknns = materialized_RkNN.get(iter);
-        rknns.add(makePair(iter, id));
+    // knn query, and aggregation of the reverse lists
+    ParallelExecutor.run(ids.size(), BULK_SIZE, (start, end) -> {
+      final ArrayDBIDs block = ids.slice(start, end);
+      List<? extends KNNList> kNNList = knnQuery.getKNNForBulkDBIDs(block, k);
+      int i = 0;
+      for(DBIDIter id = block.iter(); id.valid(); id.advance(), i++) {
+        KNNList kNNs = kNNList.get(i);
+        synchronized(storage) {
+          storage.put(id, kNNs);
+        }
+        for(DoubleDBIDListIter iter = kNNs.iter(); iter.valid(); iter.advance()) {
+          TreeSet<DoubleDBIDPair> rknns = materialized_RkNN.get(iter);
+          synchronized(rknns) {
+            rknns.add(makePair(iter, id));
+          }
+        }
+        getLogger().incrementProcessed(progress);
       }
-      getLogger().incrementProcessed(progress);
-    }
+    });
 
     getLogger().ensureCompleted(progress);
   }
 
+  /**
+   * Create a new reverse kNN list, ordered by distance and then by DBID.
+   * <p>
+   * The order is total, so objects at the same distance are all kept, and
+   * the list contents do not depend on the insertion order.
+   *
+   * @return New list
+   */
+  private static TreeSet<DoubleDBIDPair> newReverseList() {
+    return new TreeSet<>(REVERSE_ORDER);
+  }
+
   private DoubleDBIDPair makePair(DoubleDBIDListIter iter, DBIDIter id) {
     return DBIDUtil.newPair(iter.getPair().doubleValue(), id);
   }
@@ -20,10 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 import javax.swing.event.EventListenerList;
 
+import de.lmu.ifi.dbs.elki.database.IndexSnapshotStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
@@ -39,11 +43,15 @@ import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
@@ -54,6 +62,9 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
  *
  * Used for example by {@link de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF}.
  *
+ * The kNN queries are run in parallel, on the threads of the current
+ * {@link de.lmu.ifi.dbs.elki.parallel.ParallelCore}.
+ *
  * @author Erich Schubert
  * @since 0.2
  *
@@ -66,7 +77,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
 @Title("Materialize kNN Neighborhood preprocessor")
 @Description("Materializes the k nearest neighbors of objects of a database.")
 @Alias("de.lmu.ifi.dbs.elki.preprocessing.MaterializeKNNPreprocessor")
-public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreprocessor<O> implements DynamicIndex {
+public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreprocessor<O> implements DynamicIndex, SnapshotIndex {
   /**
    * Logger to use.
    */
@@ -129,21 +140,8 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
       }
     }
     else {
-      final boolean ismetric = getDistanceQuery().getDistanceFunction().isMetric();
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        if(ismetric && storage.get(iter) != null) {
-          log.incrementProcessed(progress);
-          continue; // Previously computed (duplicate point?)
-        }
-        KNNList knn = knnQuery.getKNNForDBID(iter, k);
-        storage.put(iter, knn);
-        if(ismetric) {
-          for(DoubleDBIDListIter it = knn.iter(); it.valid() && it.doubleValue() == 0.; it.advance()) {
-            storage.put(it, knn); // Reuse
-          }
-        }
-        log.incrementProcessed(progress);
-      }
+      // The queries are independent, and are run in parallel.
+      ParallelExecutor.run(ids, new MaterializeProcessor(getDistanceQuery().getDistanceFunction().isMetric(), progress));
     }
     log.ensureCompleted(progress);
     if(duration != null) {
@@ -151,6 +149,126 @@ public class MaterializeKNNPreprocessor<O> extends AbstractMaterializeKNNPreproc
     }
   }
 
+  /**
+   * Processor to materialize the kNN of each object.
+   * <p>
+   * For metric distances, the result is also stored for duplicates of the
+   * query point. The storage may be hash-based, so it is only accessed while
+   * holding its monitor; the kNN queries themselves run concurrently.
+   *
+   * @author Erich Schubert
+   */
+  protected class MaterializeProcessor implements Processor {
+    /**
+     * Reuse the results of duplicate points.
+     */
+    boolean ismetric;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    FiniteProgress progress;
+
+    /**
+     * Constructor.
+     *
+     * @param ismetric Reuse the results of duplicate points
+     * @param progress Progress, may be {@code null}
+     */
+    public MaterializeProcessor(boolean ismetric, FiniteProgress progress) {
+      super();
+      this.ismetric = ismetric;
+      this.progress = progress;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public void cleanup(Processor.Instance inst) {
+      // Nothing to do.
+    }
+
+    /**
+     * Instance for a single worker thread.
+     *
+     * @author Erich Schubert
+     */
+    public class Instance implements Processor.Instance {
+      @Override
+      public void map(DBIDRef id) {
+        if(!ismetric || !isStored(id)) {
+          KNNList knn = knnQuery.getKNNForDBID(id, k);
+          synchronized(storage) {
+            storage.put(id, knn);
+            if(ismetric) {
+              for(DoubleDBIDListIter it = knn.iter(); it.valid() && it.doubleValue() == 0.; it.advance()) {
+                storage.put(it, knn); // Reuse
+              }
+            }
+          }
+        } // else: Previously computed (duplicate point?)
+        getLogger().incrementProcessed(progress);
+      }
+
+      /**
+       * Test whether a result was already stored for an object.
+       *
+       * @param id Object
+       * @return {@code true} if a kNN list is stored
+       */
+      private boolean isStored(DBIDRef id) {
+        synchronized(storage) {
+          return storage.get(id) != null;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String getSnapshotKey() {
+    final String dist = IndexSnapshotStore.distanceKey(distanceFunction);
+    return dist != null ? "k=" + k + ";distance=" + dist : null;
+  }
+
+  @Override
+  public void writeSnapshot(DataOutput out) throws IOException {
+    if(storage == null) {
+      preprocess();
+    }
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      KNNList knn = storage.get(iter);
+      out.writeInt(knn.size());
+      for(DoubleDBIDListIter it = knn.iter(); it.valid(); it.advance()) {
+        out.writeInt(DBIDUtil.asInteger(it));
+        out.writeDouble(it.doubleValue());
+      }
+    }
+  }
+
+  @Override
+  public void readSnapshot(DataInput in) throws IOException {
+    createStorage();
+    try {
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        final int size = in.readInt();
+        // Ties beyond k are kept by the heap.
+        KNNHeap heap = DBIDUtil.newHeap(k);
+        for(int i = 0; i < size; i++) {
+          final int id = in.readInt();
+          heap.insert(in.readDouble(), DBIDUtil.importInteger(id));
+        }
+        storage.put(iter, heap.toKNNList());
+      }
+    }
+    catch(IOException | RuntimeException e) {
+      storage = null; // Allow initialize() to run.
+      throw e;
+    }
+  }
+
   @Override
   public final void insert(DBIDRef id) {
     objectsInserted(DBIDUtil.deref(id));
@@ -0,0 +1,679 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.ids.*;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+import de.lmu.ifi.dbs.elki.utilities.random.Xoroshiro128NonThreadsafeRandom;
+
+/**
+ * Parallel NN-descent, for the approximate construction of a kNN graph.
+ * <p>
+ * Unlike {@link NNDescent}, the neighbor lists are kept in fixed-capacity
+ * primitive arrays (object offset, distance, and a flag for new neighbors),
+ * sorted by distance. Candidate sampling, reverse neighbor aggregation, and the
+ * local joins are run in parallel; neighbor lists are updated while holding
+ * one of a fixed number of striped locks. As in {@link NNDescent}, the
+ * algorithm terminates when the fraction of sampled new neighbors drops below
+ * {@code delta}.
+ * <p>
+ * Because the join order depends on the thread scheduling, the result is not
+ * reproducible across runs when multiple threads are used.
+ * <p>
+ * Reference:
+ * <p>
+ * W. Dong and C. Moses and K. Li<br>
+ * Efficient k-nearest neighbor graph construction for generic similarity
+ * measures<br>
+ * Proc. 20th Int. Conf. on World Wide Web (WWW'11)
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "W. Dong, C. Moses, K. Li", //
+    title = "Efficient k-nearest neighbor graph construction for generic similarity measures", //
+    booktitle = "Proc. 20th Int. Conf. on World Wide Web (WWW'11)", //
+    url = "https://doi.org/10.1145/1963405.1963487", //
+    bibkey = "DBLP:conf/www/DongCL11")
+public class ParallelNNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNNDescent.class);
+
+  /**
+   * Number of locks, must be a power of two.
+   */
+  private static final int NUM_LOCKS = 1 << 10;
+
+  /**
+   * Number of objects processed at once by a thread.
+   */
+  private static final int CHUNKSIZE = 256;
+
+  /**
+   * Log prefix.
+   */
+  private String prefix = getClass().getCanonicalName();
+
+  /**
+   * Random generator
+   */
+  private final RandomFactory rnd;
+
+  /**
+   * Early termination parameter
+   */
+  private double delta;
+
+  /**
+   * Sample rate
+   */
+  private double rho;
+
+  /**
+   * Maximum number of iterations
+   */
+  private int iterations;
+
+  /**
+   * Neighbor list capacity (excluding the query point).
+   */
+  private int kk;
+
+  /**
+   * Number of sampled candidates.
+   */
+  private int items;
+
+  /**
+   * Neighbor lists: object offsets, -1 for empty slots.
+   */
+  private int[] nbrs;
+
+  /**
+   * Neighbor lists: distances, ascending.
+   */
+  private double[] dists;
+
+  /**
+   * Neighbor lists: flags for new neighbors.
+   */
+  private boolean[] isnew;
+
+  /**
+   * Striped locks for updating the neighbor lists.
+   */
+  private Object[] locks;
+
+  /**
+   * Sampled new forward neighbors, and their counts.
+   */
+  private int[] fnew, fnewc;
+
+  /**
+   * Old forward neighbors, and their counts.
+   */
+  private int[] fold, foldc;
+
+  /**
+   * Sampled new reverse neighbors, and the number of reverse neighbors seen.
+   */
+  private int[] rnew, rnewc;
+
+  /**
+   * Sampled old reverse neighbors, and the number of reverse neighbors seen.
+   */
+  private int[] rold, roldc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction distance function
+   * @param k k
+   * @param rnd Random generator
+   * @param delta Delta threshold
+   * @param rho Rho threshold
+   * @param iterations Maximum number of iterations
+   */
+  public ParallelNNDescent(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, RandomFactory rnd, double delta, double rho, int iterations) {
+    super(relation, distanceFunction, k);
+    this.rnd = rnd;
+    this.delta = delta;
+    this.rho = rho;
+    this.iterations = iterations;
+  }
+
+  @Override
+  protected void preprocess() {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    final long starttime = System.currentTimeMillis();
+    // The query point itself is added in the end, internally (k-1) is used
+    kk = k - 1;
+    items = (int) Math.ceil(rho * kk);
+    if((long) size * Math.max(kk, items) > Integer.MAX_VALUE - 8) {
+      throw new AbortException("Data set too large for the neighbor arrays: " + size + " * " + Math.max(kk, items));
+    }
+    nbrs = new int[size * kk];
+    dists = new double[size * kk];
+    isnew = new boolean[size * kk];
+    Arrays.fill(nbrs, -1);
+    Arrays.fill(dists, Double.POSITIVE_INFINITY);
+    locks = new Object[NUM_LOCKS];
+    for(int i = 0; i < NUM_LOCKS; i++) {
+      locks[i] = new Object();
+    }
+    fnew = new int[size * items];
+    fold = new int[size * kk];
+    rnew = new int[size * items];
+    rold = new int[size * items];
+    fnewc = new int[size];
+    foldc = new int[size];
+    rnewc = new int[size];
+    roldc = new int[size];
+
+    final AtomicLong updates = new AtomicLong(), distcalcs = new AtomicLong();
+    final Random random = rnd.getSingleThreadedRandom();
+    initializeRandom(ids, random.nextLong(), distcalcs);
+    long counter_all = distcalcs.get();
+
+    IndefiniteProgress progress = LOG.isVerbose() ? new IndefiniteProgress("KNNGraph iteration", LOG) : null;
+    int iter = 0;
+    for(; iter < iterations; iter++) {
+      updates.set(0);
+      distcalcs.set(0);
+      // t is the number of sampled new neighbors
+      final long seed = random.nextLong();
+      final long t = sampleNew(size, seed);
+      final double rate = t / (double) (kk * size);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + ".update-rate", rate));
+      }
+      if(rate < delta) {
+        LOG.verbose("KNNGraph terminated because update rate got smaller than delta.");
+        break;
+      }
+      final long seed2 = random.nextLong();
+      ParallelExecutor.run(size, CHUNKSIZE, (start, end) -> reverse(start, end, new Xoroshiro128NonThreadsafeRandom(seed2 + start)));
+      ParallelExecutor.run(size, CHUNKSIZE, (start, end) -> join(ids, start, end, updates, distcalcs));
+
+      final long counter = distcalcs.get();
+      counter_all += counter;
+      if(LOG.isStatistics()) {
+        LOG.statistics(new DoubleStatistic(prefix + ".scan-rate", counter_all * .5 / (size * (size - 1L))));
+        LOG.statistics(new LongStatistic(prefix + ".updates", updates.get()));
+      }
+      LOG.incrementProcessed(progress);
+      if(counter < delta * kk * size) {
+        LOG.verbose("KNNGraph terminated because we performed less than delta*k*size distance computations.");
+        break;
+      }
+    }
+    if(LOG.isVerbose() && iter == iterations) {
+      LOG.verbose("KNNGraph terminated because the maximum number of iterations was reached.");
+    }
+    LOG.setCompleted(progress);
+    fnew = fnewc = fold = foldc = rnew = rnewc = rold = roldc = null;
+
+    // Convert to kNN lists, including the query point itself:
+    storage = DataStoreFactory.FACTORY.makeStorage(ids, DataStoreFactory.HINT_DB, KNNList.class);
+    DBIDArrayIter it = ids.iter(), nit = ids.iter();
+    for(int i = 0; it.valid(); it.advance(), i++) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      heap.insert(0, it);
+      for(int j = i * kk, e = j + kk; j < e && nbrs[j] >= 0; j++) {
+        heap.insert(dists[j], nit.seek(nbrs[j]));
+      }
+      storage.put(it, heap.toKNNList());
+    }
+    nbrs = null;
+    dists = null;
+    isnew = null;
+    locks = null;
+    final long end = System.currentTimeMillis();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(prefix + ".construction-time.ms", end - starttime));
+    }
+  }
+
+  /**
+   * Initialize the neighbor lists with random neighbors.
+   *
+   * @param ids Object ids
+   * @param seed Random seed
+   * @param distcalcs Distance computation counter
+   */
+  private void initializeRandom(ArrayDBIDs ids, long seed, AtomicLong distcalcs) {
+    final int size = ids.size(), samples = Math.min(kk, size - 1);
+    ParallelExecutor.run(size, CHUNKSIZE, (start, end) -> {
+      DBIDArrayIter ia = ids.iter(), ib = ids.iter();
+      Random r = new Xoroshiro128NonThreadsafeRandom(seed + start);
+      int[] chosen = new int[samples];
+      for(int a = start; a < end; a++) {
+        ia.seek(a);
+        sample: for(int c = 0; c < samples;) {
+          int b = r.nextInt(size - 1);
+          b = b < a ? b : b + 1; // Skip a itself.
+          for(int i = 0; i < c; i++) {
+            if(chosen[i] == b) {
+              continue sample;
+            }
+          }
+          chosen[c++] = b;
+          final double d = distanceQuery.distance(ia, ib.seek(b));
+          update(a, b, d);
+          update(b, a, d);
+        }
+        distcalcs.addAndGet(samples);
+      }
+    });
+  }
+
+  /**
+   * Sample the new forward neighbors of all objects.
+   *
+   * @param size Data set size
+   * @param seed Random seed
+   * @return Number of sampled new neighbors
+   */
+  private long sampleNew(int size, long seed) {
+    final AtomicLong t = new AtomicLong();
+    ParallelExecutor.run(size, CHUNKSIZE, (start, end) -> t.addAndGet(sampleNew(start, end, new Xoroshiro128NonThreadsafeRandom(seed + start))));
+    return t.get();
+  }
+
+  /**
+   * Sample the new forward neighbors, and collect the old forward neighbors.
+   * Sampled neighbors are no longer flagged as new.
+   *
+   * @param start First object
+   * @param end End
+   * @param r Random generator
+   * @return Number of sampled new neighbors
+   */
+  private int sampleNew(int start, int end, Random r) {
+    int t = 0;
+    int[] tmp = new int[kk];
+    for(int a = start; a < end; a++) {
+      final int base = a * kk;
+      int nn = 0, no = 0;
+      for(int j = base, e = base + kk; j < e && nbrs[j] >= 0; j++) {
+        if(isnew[j]) {
+          tmp[nn++] = j;
+        }
+        else {
+          fold[base + no++] = nbrs[j];
+        }
+      }
+      final int take = Math.min(nn, items), fbase = a * items;
+      for(int i = 0; i < take; i++) {
+        final int s = i + r.nextInt(nn - i), j = tmp[s];
+        tmp[s] = tmp[i];
+        fnew[fbase + i] = nbrs[j];
+        isnew[j] = false;
+      }
+      fnewc[a] = take;
+      foldc[a] = no;
+      rnewc[a] = roldc[a] = 0;
+      t += take;
+    }
+    return t;
+  }
+
+  /**
+   * Aggregate the reverse neighbors, using reservoir sampling.
+   *
+   * @param start First object
+   * @param end End
+   * @param r Random generator
+   */
+  private void reverse(int start, int end, Random r) {
+    for(int a = start; a < end; a++) {
+      for(int j = a * items, e = j + fnewc[a]; j < e; j++) {
+        addReverse(rnew, rnewc, fnew[j], a, r);
+      }
+      for(int j = a * kk, e = j + foldc[a]; j < e; j++) {
+        addReverse(rold, roldc, fold[j], a, r);
+      }
+    }
+  }
+
+  /**
+   * Add a reverse neighbor to the reservoir sample of an object.
+   *
+   * @param sample Samples
+   * @param seen Number of reverse neighbors seen
+   * @param a Object
+   * @param b Reverse neighbor
+   * @param r Random generator
+   */
+  private void addReverse(int[] sample, int[] seen, int a, int b, Random r) {
+    if(items == 0) {
+      return;
+    }
+    synchronized(locks[a & (NUM_LOCKS - 1)]) {
+      final int c = seen[a]++;
+      final int p = c < items ? c : r.nextInt(c + 1);
+      if(p < items) {
+        sample[a * items + p] = b;
+      }
+    }
+  }
+
+  /**
+   * Local join of the new and old neighbors.
+   *
+   * @param ids Object ids
+   * @param start First object
+   * @param end End
+   * @param updates Update counter
+   * @param distcalcs Distance computation counter
+   */
+  private void join(ArrayDBIDs ids, int start, int end, AtomicLong updates, AtomicLong distcalcs) {
+    DBIDArrayIter ia = ids.iter(), ib = ids.iter();
+    int[] cnew = new int[items << 1], cold = new int[kk + items];
+    long u = 0, c = 0;
+    for(int a = start; a < end; a++) {
+      final int nn = collect(fnew, a * items, fnewc[a], rnew, a * items, Math.min(rnewc[a], items), cnew);
+      if(nn == 0) {
+        continue;
+      }
+      int no = collect(fold, a * kk, foldc[a], rold, a * items, Math.min(roldc[a], items), cold);
+      no = removeAll(cold, no, cnew, nn);
+      for(int i = 0; i < nn; i++) {
+        final int x = cnew[i];
+        ia.seek(x);
+        // new x new
+        for(int j = i + 1; j < nn; j++) {
+          final int y = cnew[j];
+          final double d = distanceQuery.distance(ia, ib.seek(y));
+          u += (update(x, y, d) ? 1 : 0) + (update(y, x, d) ? 1 : 0);
+        }
+        // new x old
+        for(int j = 0; j < no; j++) {
+          final int y = cold[j];
+          final double d = distanceQuery.distance(ia, ib.seek(y));
+          u += (update(x, y, d) ? 1 : 0) + (update(y, x, d) ? 1 : 0);
+        }
+        c += nn - i - 1 + no;
+      }
+    }
+    updates.addAndGet(u);
+    distcalcs.addAndGet(c);
+  }
+
+  /**
+   * Collect the union of two candidate lists, sorted and without duplicates.
+   *
+   * @param a First list
+   * @param aoff First list offset
+   * @param alen First list length
+   * @param b Second list
+   * @param boff Second list offset
+   * @param blen Second list length
+   * @param out Output buffer
+   * @return Number of candidates
+   */
+  private static int collect(int[] a, int aoff, int alen, int[] b, int boff, int blen, int[] out) {
+    System.arraycopy(a, aoff, out, 0, alen);
+    System.arraycopy(b, boff, out, alen, blen);
+    final int n = alen + blen;
+    Arrays.sort(out, 0, n);
+    int p = 0;
+    for(int i = 0; i < n; i++) {
+      if(p == 0 || out[p - 1] != out[i]) {
+        out[p++] = out[i];
+      }
+    }
+    return p;
+  }
+
+  /**
+   * Remove all elements of a sorted list from another sorted list.
+   *
+   * @param a List to modify
+   * @param alen Length
+   * @param b Elements to remove
+   * @param blen Number of elements to remove
+   * @return New length
+   */
+  private static int removeAll(int[] a, int alen, int[] b, int blen) {
+    int p = 0;
+    for(int i = 0, j = 0; i < alen; i++) {
+      while(j < blen && b[j] < a[i]) {
+        j++;
+      }
+      if(j >= blen || b[j] != a[i]) {
+        a[p++] = a[i];
+      }
+    }
+    return p;
+  }
+
+  /**
+   * Insert a neighbor candidate into the neighbor list of an object.
+   *
+   * @param a Object
+   * @param b Neighbor candidate
+   * @param d Distance
+   * @return {@code true} if the neighbor list was updated.
+   */
+  private boolean update(int a, int b, double d) {
+    if(kk == 0) {
+      return false;
+    }
+    final int base = a * kk, last = base + kk - 1;
+    // Fast rejection without locking: the k-distance only decreases.
+    if(!(d < dists[last])) {
+      return false;
+    }
+    synchronized(locks[a & (NUM_LOCKS - 1)]) {
+      if(!(d < dists[last])) {
+        return false;
+      }
+      int pos = -1, i = base;
+      for(; i <= last && nbrs[i] >= 0; i++) {
+        if(nbrs[i] == b) {
+          return false; // Already a neighbor.
+        }
+        if(pos < 0 && dists[i] > d) {
+          pos = i;
+        }
+      }
+      pos = pos < 0 ? i : pos; // Else: first empty slot
+      System.arraycopy(nbrs, pos, nbrs, pos + 1, last - pos);
+      System.arraycopy(dists, pos, dists, pos + 1, last - pos);
+      System.arraycopy(isnew, pos, isnew, pos + 1, last - pos);
+      nbrs[pos] = b;
+      dists[pos] = d;
+      isnew[pos] = true;
+      return true;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public void logStatistics() {
+    // Statistics are logged during construction.
+  }
+
+  @Override
+  public String getLongName() {
+    return "Parallel NNDescent kNN";
+  }
+
+  @Override
+  public String getShortName() {
+    return "parallel-nn-descent-knn";
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    return super.getKNNQuery(distanceQuery, hints);
+  }
+
+  /**
+   * Index factory.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Random generator
+     */
+    private final RandomFactory rnd;
+
+    /**
+     * Early termination parameter
+     */
+    private final double delta;
+
+    /**
+     * Sample rate
+     */
+    private final double rho;
+
+    /**
+     * Maximum number of iterations
+     */
+    private final int iterations;
+
+    /**
+     * Constructor.
+     *
+     * @param k K
+     * @param distanceFunction distance function
+     * @param rnd Random generator
+     * @param delta Delta threshold
+     * @param rho Rho threshold
+     * @param iterations Maximum number of iterations
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, RandomFactory rnd, double delta, double rho, int iterations) {
+      super(k, distanceFunction);
+      this.rnd = rnd;
+      this.delta = delta;
+      this.rho = rho;
+      this.iterations = iterations;
+    }
+
+    @Override
+    public ParallelNNDescent<O> instantiate(Relation<O> relation) {
+      return new ParallelNNDescent<>(relation, distanceFunction, k, rnd, delta, rho, iterations);
+    }
+
+    /**
+     * Parameterization class
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Random generator
+       */
+      private RandomFactory rnd;
+
+      /**
+       * Early termination parameter
+       */
+      private double delta;
+
+      /**
+       * Sample rate
+       */
+      private double rho;
+
+      /**
+       * Maximum number of iterations
+       */
+      private int iterations;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        RandomParameter rndP = new RandomParameter(NNDescent.Factory.Parameterizer.SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+        DoubleParameter deltaP = new DoubleParameter(NNDescent.Factory.Parameterizer.DELTA_ID, 0.001) //
+            .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+        if(config.grab(deltaP)) {
+          delta = deltaP.getValue();
+        }
+        DoubleParameter rhoP = new DoubleParameter(NNDescent.Factory.Parameterizer.RHO_ID, 1) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+        if(config.grab(rhoP)) {
+          rho = rhoP.getValue();
+        }
+        IntParameter iterP = new IntParameter(NNDescent.Factory.Parameterizer.ITER_ID, 100) //
+            .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(iterP)) {
+          iterations = iterP.getValue();
+        }
+      }
+
+      @Override
+      protected ParallelNNDescent.Factory<O> makeInstance() {
+        return new ParallelNNDescent.Factory<>(k, distanceFunction, rnd, delta, rho, iterations);
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.IndexSnapshotStore;
+import de.lmu.ifi.dbs.elki.database.query.knn.PreprocessorKNNQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.WeightedEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.AbstractMaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNAndRKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Test the kNN preprocessors as index structures, including snapshots.
+ *
+ * @author Erich Schubert
+ */
+public class MaterializeKNNPreprocessorTest extends AbstractIndexStructureTest {
+  @Test
+  public void testSnapshot() {
+    MaterializeKNNPreprocessor.Factory<?> factory = new ELKIBuilder<>(MaterializeKNNPreprocessor.Factory.class) //
+        .with(AbstractMaterializeKNNPreprocessor.Factory.K_ID, 10) //
+        .with(AbstractMaterializeKNNPreprocessor.Factory.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class).build();
+    testSnapshot(factory, PreprocessorKNNQuery.class);
+  }
+
+  @Test
+  public void testSnapshotRKNN() {
+    MaterializeKNNAndRKNNPreprocessor.Factory<?> factory = new ELKIBuilder<>(MaterializeKNNAndRKNNPreprocessor.Factory.class) //
+        .with(AbstractMaterializeKNNPreprocessor.Factory.K_ID, 10) //
+        .with(AbstractMaterializeKNNPreprocessor.Factory.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class).build();
+    testSnapshot(factory, PreprocessorKNNQuery.class);
+  }
+
+  @Test
+  public void testSnapshotKey() {
+    assertEquals(EuclideanDistanceFunction.class.getName(), IndexSnapshotStore.distanceKey(EuclideanDistanceFunction.STATIC));
+    assertNotEquals(IndexSnapshotStore.distanceKey(new LPNormDistanceFunction(1.5)), IndexSnapshotStore.distanceKey(new LPNormDistanceFunction(2.5)));
+    // The weights are not part of the key, so no snapshots.
+    assertNull(IndexSnapshotStore.distanceKey(new WeightedEuclideanDistanceFunction(new double[] { 1., 2. })));
+  }
+}
@@ -60,6 +60,7 @@ import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNAndRKNNPreprocessor;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -91,6 +92,18 @@ public class MaterializedKNNAndRKNNPreprocessorTest {
 
   @Test
   public void testPreprocessor() {
+    runPreprocessorTest();
+  }
+
+  /**
+   * Materialize the kNN and RkNN in parallel.
+   */
+  @Test
+  public void testPreprocessorParallel() {
+    ParallelCore.withCore(4, this::runPreprocessorTest);
+  }
+
+  private void runPreprocessorTest() {
     UpdatableDatabase db;
     // get database
     try (InputStream is = AbstractSimpleAlgorithmTest.open(dataset)) {
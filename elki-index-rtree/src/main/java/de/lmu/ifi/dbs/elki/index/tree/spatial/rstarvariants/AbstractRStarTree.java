@@ -846,9 +846,9 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       super();
       Logging log = getLogger();
       final String prefix = AbstractRStarTree.this.getClass().getName();
-      distanceCalcs = log.isStatistics() ? log.newCounter(prefix + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(prefix + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(prefix + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? log.newAtomicCounter(prefix + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? log.newAtomicCounter(prefix + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? log.newAtomicCounter(prefix + ".rangequeries") : null;
     }
 
     /**
@@ -89,6 +89,15 @@ public class RTreeSettings {
     this.bulkSplitter = bulkSplitter;
   }
 
+  /**
+   * Get the bulk loading strategy.
+   * 
+   * @return Bulk loading strategy, may be {@code null}
+   */
+  public BulkSplit getBulkStrategy() {
+    return bulkSplitter;
+  }
+
   /**
    * Set the node splitting strategy.
    * 
@@ -125,6 +134,15 @@ public class RTreeSettings {
     this.relativeMinFill = relative;
   }
 
+  /**
+   * Get the relative minimum fill.
+   * 
+   * @return Relative minimum fill
+   */
+  public double getMinimumFill() {
+    return relativeMinFill;
+  }
+
   /**
    * @return the overflowTreatment
    */
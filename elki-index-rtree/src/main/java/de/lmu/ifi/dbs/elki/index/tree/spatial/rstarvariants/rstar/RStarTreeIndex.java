@@ -20,10 +20,14 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.IndexSnapshotStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -36,23 +40,32 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.index.DynamicIndex;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.index.tree.IndexTreePath;
+import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.RTreeSettings;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.persistent.MemoryPageFile;
 import de.lmu.ifi.dbs.elki.persistent.PageFile;
 
 /**
  * The common use of the rstar tree: indexing number vectors.
+ * <p>
+ * Snapshots are supported for bulk-loaded trees in main memory, if the bulk
+ * split strategy is parameter-free. Trees built by insertion depend on the
+ * insertion, split, and overflow strategies, which usually have parameters.
  * 
  * @author Erich Schubert
  * @since 0.4.0
  * 
  * @param <O> Object type
  */
-public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements RangeIndex<O>, KNNIndex<O>, DynamicIndex {
+public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements RangeIndex<O>, KNNIndex<O>, DynamicIndex, SnapshotIndex {
   /**
    * The appropriate logger for this index.
    */
@@ -155,6 +168,107 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
     }
   }
 
+  @Override
+  public String getSnapshotKey() {
+    if(settings.getBulkStrategy() == null || !(getFile() instanceof MemoryPageFile)) {
+      return null;
+    }
+    final String bulk = IndexSnapshotStore.staticKey(settings.getBulkStrategy());
+    return bulk != null ? "pagesize=" + getPageSize() + ";minfill=" + settings.getMinimumFill() + ";bulk=" + bulk : null;
+  }
+
+  @Override
+  public void writeSnapshot(DataOutput out) throws IOException {
+    out.writeBoolean(initialized);
+    if(!initialized) {
+      return;
+    }
+    out.writeInt(dirCapacity);
+    out.writeInt(leafCapacity);
+    out.writeInt(dirMinimum);
+    out.writeInt(leafMinimum);
+    writeSnapshotNode(out, getRoot());
+  }
+
+  /**
+   * Write a subtree. Leaf entries are stored as DBIDs only, directory entries
+   * as the page ID of the child followed by the child subtree.
+   *
+   * @param out Output
+   * @param node Subtree root
+   * @throws IOException on write errors
+   */
+  private void writeSnapshotNode(DataOutput out, RStarTreeNode node) throws IOException {
+    out.writeInt(node.getPageID());
+    out.writeBoolean(node.isLeaf());
+    out.writeInt(node.getNumEntries());
+    for(int i = 0; i < node.getNumEntries(); i++) {
+      SpatialEntry entry = node.getEntry(i);
+      if(node.isLeaf()) {
+        out.writeInt(DBIDUtil.asInteger(((LeafEntry) entry).getDBID()));
+      }
+      else {
+        writeSnapshotNode(out, getNode(entry));
+      }
+    }
+  }
+
+  @Override
+  public void readSnapshot(DataInput in) throws IOException {
+    assert (!initialized) : "Tree already initialized.";
+    if(!in.readBoolean()) {
+      initialize(); // Empty relation.
+      return;
+    }
+    TreeIndexHeader header = new TreeIndexHeader(getPageSize(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    // Read all nodes first, so a truncated snapshot does not modify the tree.
+    List<RStarTreeNode> nodes = new ArrayList<>();
+    RStarTreeNode root = readSnapshotNode(in, header, nodes);
+    if(root.getPageID() != getPageID(createRootEntry())) {
+      throw new IOException("Snapshot root is not on the root page.");
+    }
+    super.initialize();
+    int maxid = 0;
+    for(RStarTreeNode node : nodes) {
+      writeNode(node);
+      maxid = Math.max(maxid, node.getPageID());
+    }
+    getFile().setNextPageID(maxid + 1);
+    initializeFromFile(header, getFile());
+    ((SpatialDirectoryEntry) getRootEntry()).setMBR(root.computeMBR());
+  }
+
+  /**
+   * Read a subtree.
+   *
+   * @param in Input
+   * @param header Tree header, for the node capacities
+   * @param nodes Output list of all nodes read
+   * @return Subtree root
+   * @throws IOException on read errors
+   */
+  private RStarTreeNode readSnapshotNode(DataInput in, TreeIndexHeader header, List<RStarTreeNode> nodes) throws IOException {
+    final int pageid = in.readInt();
+    final boolean isLeaf = in.readBoolean();
+    final int size = in.readInt(), capacity = isLeaf ? header.getLeafCapacity() : header.getDirCapacity();
+    if(pageid < 0 || size < 0 || size > capacity) {
+      throw new IOException("Invalid node in snapshot.");
+    }
+    RStarTreeNode node = new RStarTreeNode(capacity, isLeaf);
+    node.setPageID(pageid);
+    for(int i = 0; i < size; i++) {
+      if(isLeaf) {
+        node.addLeafEntry(createNewLeafEntry(DBIDUtil.importInteger(in.readInt())));
+      }
+      else {
+        RStarTreeNode child = readSnapshotNode(in, header, nodes);
+        node.addDirectoryEntry(new SpatialDirectoryEntry(child.getPageID(), child.computeMBR()));
+      }
+    }
+    nodes.add(node);
+    return node;
+  }
+
   @Override
   public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
     // Query on the relation we index
@@ -0,0 +1,215 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
+import de.lmu.ifi.dbs.elki.math.spacefillingcurves.SpatialSorter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Parallel bulk loading by sorting the objects along the Hilbert curve, then
+ * partitioning the sorted list.
+ * <p>
+ * This produces the same pages as {@link SpatialSortBulkSplit} with the
+ * {@link HilbertSpatialSorter}, but the bounding box, the Hilbert numbers, and
+ * the sorted runs of the merge sort are computed in parallel.
+ * <p>
+ * Based conceptually on:
+ * <p>
+ * On packing R-trees<br>
+ * I. Kamel, C. Faloutsos<br>
+ * Proc. 2nd Int. Conf. on Information and Knowledge Management (CIKM)
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "I. Kamel, C. Faloutsos", //
+    title = "On packing R-trees", //
+    booktitle = "Proc. 2nd Int. Conf. on Information and Knowledge Management", //
+    url = "https://doi.org/10.1145/170088.170403", //
+    bibkey = "DBLP:conf/cikm/KamelF93")
+public class ParallelHilbertSortBulkSplit extends AbstractBulkSplit {
+  /**
+   * Static instance.
+   */
+  public static final ParallelHilbertSortBulkSplit STATIC = new ParallelHilbertSortBulkSplit();
+
+  /**
+   * Number of objects processed at once, and length of the initial sorted
+   * runs.
+   */
+  private static final int CHUNKSIZE = 1 << 12;
+
+  @Override
+  public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
+    final int size = spatialObjects.size();
+    final double[] mm = computeMinMax(spatialObjects);
+    final int dim = mm.length >> 1;
+    // Map to Hilbert numbers:
+    final HilbertRef[] refs = new HilbertRef[size];
+    ParallelExecutor.run(size, CHUNKSIZE, (start, end) -> {
+      int[] buf = new int[dim];
+      for(int i = start; i < end; i++) {
+        SpatialComparable v = spatialObjects.get(i);
+        for(int d = 0, d2 = 0; d < dim; d++, d2 += 2) {
+          double val = (v.getMin(d) + v.getMax(d)) * .5;
+          val = Integer.MAX_VALUE * ((val - mm[d2]) / (mm[d2 + 1] - mm[d2]));
+          buf[d] = (int) val;
+        }
+        refs[i] = new HilbertRef(v, HilbertSpatialSorter.coordinatesToHilbert(buf, Integer.SIZE - 1, 1));
+      }
+    });
+    HilbertRef[] sorted = mergeSort(refs);
+    @SuppressWarnings("unchecked") // Reordering only.
+    List<SpatialComparable> cobjs = (List<SpatialComparable>) spatialObjects;
+    for(int i = 0; i < size; i++) {
+      cobjs.set(i, sorted[i].vec);
+    }
+    return super.trivialPartition(spatialObjects, minEntries, maxEntries);
+  }
+
+  /**
+   * Compute the minimum and maximum of each dimension in parallel.
+   *
+   * @param objs Objects
+   * @return Array of min, max pairs (length = 2 * dim)
+   */
+  private static double[] computeMinMax(List<? extends SpatialComparable> objs) {
+    final int size = objs.size();
+    final double[] mm = SpatialSorter.computeMinMax(objs.subList(0, Math.min(size, CHUNKSIZE)));
+    if(size > CHUNKSIZE) {
+      ParallelExecutor.run(size - CHUNKSIZE, CHUNKSIZE, (start, end) -> {
+        double[] lmm = SpatialSorter.computeMinMax(objs.subList(start + CHUNKSIZE, end + CHUNKSIZE));
+        synchronized(mm) {
+          for(int d = 0; d < mm.length; d += 2) {
+            mm[d] = Math.min(mm[d], lmm[d]);
+            mm[d + 1] = Math.max(mm[d + 1], lmm[d + 1]);
+          }
+        }
+      });
+    }
+    return mm;
+  }
+
+  /**
+   * Stable merge sort, sorting the initial runs and merging pairs of runs in
+   * parallel.
+   *
+   * @param data Data to sort (will be modified)
+   * @return Sorted array, either {@code data} or a buffer
+   */
+  private static HilbertRef[] mergeSort(HilbertRef[] data) {
+    final int size = data.length;
+    ParallelExecutor.run((size + CHUNKSIZE - 1) / CHUNKSIZE, 1, (start, end) -> {
+      for(int r = start; r < end; r++) {
+        Arrays.sort(data, r * CHUNKSIZE, Math.min((r + 1) * CHUNKSIZE, size));
+      }
+    });
+    HilbertRef[] src = data, dst = new HilbertRef[size];
+    for(long width = CHUNKSIZE; width < size; width <<= 1) {
+      final int w = (int) width;
+      final HilbertRef[] in = src, out = dst;
+      ParallelExecutor.run((int) ((size + 2 * width - 1) / (2 * width)), 1, (start, end) -> {
+        for(int r = start; r < end; r++) {
+          final int lo = (int) Math.min(2L * r * w, size);
+          merge(in, out, lo, (int) Math.min(lo + (long) w, size), (int) Math.min(lo + 2L * w, size));
+        }
+      });
+      src = out;
+      dst = in;
+    }
+    return src;
+  }
+
+  /**
+   * Merge two adjacent sorted runs.
+   *
+   * @param in Input array
+   * @param out Output array
+   * @param lo Start of first run
+   * @param mid Start of second run
+   * @param hi End of second run
+   */
+  private static void merge(HilbertRef[] in, HilbertRef[] out, int lo, int mid, int hi) {
+    int i = lo, j = mid, o = lo;
+    while(i < mid && j < hi) {
+      out[o++] = in[j].compareTo(in[i]) < 0 ? in[j++] : in[i++];
+    }
+    System.arraycopy(in, i, out, o, mid - i);
+    System.arraycopy(in, j, out, o + mid - i, hi - j);
+  }
+
+  /**
+   * Object used in spatial sorting, combining the spatial object and its
+   * Hilbert number.
+   *
+   * @author Erich Schubert
+   */
+  private static class HilbertRef implements Comparable<HilbertRef> {
+    /**
+     * The referenced object.
+     */
+    protected SpatialComparable vec;
+
+    /**
+     * Hilbert representation.
+     */
+    protected long[] bits;
+
+    /**
+     * Constructor.
+     *
+     * @param vec Vector
+     * @param bits Bit representation
+     */
+    protected HilbertRef(SpatialComparable vec, long[] bits) {
+      super();
+      this.vec = vec;
+      this.bits = bits;
+    }
+
+    @Override
+    public int compareTo(HilbertRef o) {
+      return BitsUtil.compare(this.bits, o.bits);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected ParallelHilbertSortBulkSplit makeInstance() {
+      return STATIC;
+    }
+  }
+}
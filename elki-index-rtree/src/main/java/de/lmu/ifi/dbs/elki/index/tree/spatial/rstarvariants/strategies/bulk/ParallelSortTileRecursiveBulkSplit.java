@@ -0,0 +1,103 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
+import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of the Sort-Tile-Recursive bulk split.
+ * <p>
+ * The first dimension is cut into slabs in the calling thread (using
+ * quickselect, which is linear per slab boundary), then the slabs are
+ * partitioned recursively in parallel. Because the slabs occupy disjoint
+ * ranges of the list, the workers only reorder their own subrange.
+ * The resulting pages are the same as with
+ * {@link SortTileRecursiveBulkSplit}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelSortTileRecursiveBulkSplit extends SortTileRecursiveBulkSplit {
+  /**
+   * Static instance.
+   */
+  public static final ParallelSortTileRecursiveBulkSplit STATIC = new ParallelSortTileRecursiveBulkSplit();
+
+  @Override
+  public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
+    final int dims = spatialObjects.get(0).getDimensionality();
+    if(dims == 1) {
+      return super.partition(spatialObjects, minEntries, maxEntries);
+    }
+    final int size = spatialObjects.size();
+    final int p = (int) FastMath.ceil(size / (double) maxEntries);
+    // Cut the first dimension into slabs:
+    final int s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / dims));
+    final int[] bounds = new int[s + 1];
+    SpatialSingleMeanComparator c = new SpatialSingleMeanComparator(0);
+    final double len = size; // double intentional!
+    for(int i = 0; i < s; i++) {
+      final int s2 = (int) ((i * len) / s), e2 = (int) (((i + 1) * len) / s);
+      if(e2 < size) {
+        QuickSelect.quickSelect(spatialObjects, c, s2, size, e2);
+      }
+      bounds[i + 1] = e2;
+    }
+    // Partition the slabs in parallel:
+    @SuppressWarnings("unchecked")
+    final List<List<T>>[] parts = (List<List<T>>[]) new List<?>[s];
+    ParallelExecutor.run(s, 1, (start, end) -> {
+      SpatialSingleMeanComparator lc = new SpatialSingleMeanComparator(1);
+      for(int i = start; i < end; i++) {
+        List<List<T>> ret = new ArrayList<>();
+        strPartition(spatialObjects, bounds[i], bounds[i + 1], 1, dims, maxEntries, lc, ret);
+        parts[i] = ret;
+      }
+    });
+    List<List<T>> ret = new ArrayList<>(p);
+    for(List<List<T>> part : parts) {
+      ret.addAll(part);
+    }
+    return ret;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected ParallelSortTileRecursiveBulkSplit makeInstance() {
+      return STATIC;
+    }
+  }
+}
@@ -37,6 +37,7 @@ import de.lmu.ifi.dbs.elki.math.spacefillingcurves.BinarySplitSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.PeanoSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
@@ -58,6 +59,7 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
     testExactCosine(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
     testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    testConcurrentQueries(factory, RStarTreeKNNQuery.class);
   }
 
   /**
@@ -253,6 +255,18 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
 
+  /**
+   * Test restoring a bulk loaded {@link RStarTree} from a snapshot.
+   */
+  @Test
+  public void testSnapshot() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class) //
+        .build();
+    testSnapshot(factory, RStarTreeKNNQuery.class);
+  }
+
   /**
    * Test {@link RStarTree} bulk loaded using
    * {@link MaxExtensionSortTileRecursiveBulkSplit}
@@ -282,4 +296,38 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactCosine(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
     testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
+
+  /**
+   * Test {@link RStarTree} bulk loaded using
+   * {@link ParallelSortTileRecursiveBulkSplit}
+   */
+  @Test
+  public void testParallelSortTileRecursiveBulkSplit() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, ParallelSortTileRecursiveBulkSplit.class) //
+        .build();
+    ParallelCore.withCore(4, () -> {
+      testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+      testExactCosine(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+      testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    });
+  }
+
+  /**
+   * Test {@link RStarTree} bulk loaded using
+   * {@link ParallelHilbertSortBulkSplit}
+   */
+  @Test
+  public void testParallelHilbertSortBulkSplit() {
+    RStarTreeFactory<NumberVector> factory = new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .with(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, ParallelHilbertSortBulkSplit.class) //
+        .build();
+    ParallelCore.withCore(4, () -> {
+      testExactEuclidean(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+      testExactCosine(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+      testSinglePoint(factory, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    });
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+
+/**
+ * Check that the parallel bulk splits produce the same pages as the serial
+ * versions.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelBulkSplitTest {
+  /**
+   * Test the parallel STR bulk split.
+   */
+  @Test
+  public void testSortTileRecursive() {
+    compare(SortTileRecursiveBulkSplit.STATIC, ParallelSortTileRecursiveBulkSplit.STATIC);
+  }
+
+  /**
+   * Test the parallel Hilbert curve bulk split.
+   */
+  @Test
+  public void testHilbertSort() {
+    compare(new SpatialSortBulkSplit(HilbertSpatialSorter.STATIC), ParallelHilbertSortBulkSplit.STATIC);
+  }
+
+  /**
+   * Compare the partitions of two bulk split strategies.
+   *
+   * @param serial Serial reference
+   * @param parallel Parallel version
+   */
+  private void compare(BulkSplit serial, BulkSplit parallel) {
+    Random r = new Random(0L);
+    List<DoubleVector> data = new ArrayList<>();
+    for(int i = 0; i < 50000; i++) {
+      data.add(new DoubleVector(new double[] { r.nextDouble(), r.nextDouble(), r.nextGaussian() }));
+    }
+    List<List<DoubleVector>> ref = serial.partition(new ArrayList<>(data), 10, 20);
+    ParallelCore.withCore(4, () -> {
+      List<List<DoubleVector>> par = parallel.partition(new ArrayList<>(data), 10, 20);
+      assertEquals("Number of partitions differs.", ref.size(), par.size());
+      for(int i = 0; i < ref.size(); i++) {
+        List<DoubleVector> a = ref.get(i), b = par.get(i);
+        assertEquals("Partition size differs.", a.size(), b.size());
+        for(int j = 0; j < a.size(); j++) {
+          assertSame("Partition contents differ.", a.get(j), b.get(j));
+        }
+      }
+    });
+  }
+}
@@ -20,8 +20,12 @@
  */
 package de.lmu.ifi.dbs.elki.index.tree.metrical.covertree;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import de.lmu.ifi.dbs.elki.database.IndexSnapshotStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -41,6 +45,7 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.KNNIndex;
 import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.index.SnapshotIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
@@ -76,7 +81,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
     booktitle = "In Proc. 23rd Int. Conf. Machine Learning (ICML 2006)", //
     url = "https://doi.org/10.1145/1143844.1143857", //
     bibkey = "DBLP:conf/icml/BeygelzimerKL06")
-public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>, KNNIndex<O> {
+public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>, KNNIndex<O>, SnapshotIndex {
   /**
    * Class logger.
    */
@@ -191,6 +196,80 @@ public class CoverTree<O> extends AbstractCoverTree<O> implements RangeIndex<O>,
     }
   }
 
+  @Override
+  public String getSnapshotKey() {
+    final String dist = IndexSnapshotStore.distanceKey(distanceFunction);
+    return dist != null ? "expansion=" + expansion + ";truncate=" + truncate + ";distance=" + dist : null;
+  }
+
+  @Override
+  public void writeSnapshot(DataOutput out) throws IOException {
+    out.writeBoolean(root != null);
+    if(root != null) {
+      writeNode(out, root);
+    }
+  }
+
+  /**
+   * Write a subtree.
+   *
+   * @param out Output
+   * @param node Subtree root
+   * @throws IOException on write errors
+   */
+  private void writeNode(DataOutput out, Node node) throws IOException {
+    out.writeDouble(node.maxDist);
+    out.writeDouble(node.parentDist);
+    out.writeInt(node.singletons.size());
+    for(DoubleDBIDListIter it = node.singletons.iter(); it.valid(); it.advance()) {
+      out.writeInt(DBIDUtil.asInteger(it));
+      out.writeDouble(it.doubleValue());
+    }
+    out.writeInt(node.children != null ? node.children.size() : -1);
+    if(node.children != null) {
+      for(Node child : node.children) {
+        writeNode(out, child);
+      }
+    }
+  }
+
+  @Override
+  public void readSnapshot(DataInput in) throws IOException {
+    assert (root == null) : "Tree already initialized.";
+    root = in.readBoolean() ? readNode(in) : null;
+  }
+
+  /**
+   * Read a subtree.
+   *
+   * @param in Input
+   * @return Subtree root
+   * @throws IOException on read errors
+   */
+  private Node readNode(DataInput in) throws IOException {
+    final double maxDist = in.readDouble(), parentDist = in.readDouble();
+    final int size = in.readInt();
+    DBID routing = DBIDUtil.importInteger(in.readInt());
+    in.readDouble(); // Distance of the routing object, always 0.
+    ModifiableDoubleDBIDList singletons = DBIDUtil.newDistanceDBIDList(size - 1);
+    for(int i = 1; i < size; i++) {
+      final int id = in.readInt();
+      singletons.add(in.readDouble(), DBIDUtil.importInteger(id));
+    }
+    final int numc = in.readInt();
+    if(numc < 0) {
+      return new Node(routing, maxDist, parentDist, singletons);
+    }
+    Node node = new Node(routing, maxDist, parentDist);
+    for(DoubleDBIDListIter it = singletons.iter(); it.valid(); it.advance()) {
+      node.singletons.add(it.doubleValue(), it);
+    }
+    for(int i = 0; i < numc; i++) {
+      node.children.add(readNode(in));
+    }
+    return node;
+  }
+
   /**
    * Bulk-load the index.
    *
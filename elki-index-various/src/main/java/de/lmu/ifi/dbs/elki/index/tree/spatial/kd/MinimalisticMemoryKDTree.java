@@ -126,8 +126,8 @@ public class MinimalisticMemoryKDTree<O extends NumberVector> extends AbstractIn
     assert (leafsize >= 1);
     if(LOG.isStatistics()) {
       String prefix = this.getClass().getName();
-      this.objaccess = LOG.newCounter(prefix + ".objaccess");
-      this.distcalc = LOG.newCounter(prefix + ".distancecalcs");
+      this.objaccess = LOG.newAtomicCounter(prefix + ".objaccess");
+      this.distcalc = LOG.newAtomicCounter(prefix + ".distancecalcs");
     }
     else {
       this.objaccess = null;
@@ -122,8 +122,8 @@ public class SmallMemoryKDTree<O extends NumberVector> extends AbstractIndex<O>
     assert (leafsize >= 1);
     if(LOG.isStatistics()) {
       String prefix = this.getClass().getName();
-      this.objaccess = LOG.newCounter(prefix + ".objaccess");
-      this.distcalc = LOG.newCounter(prefix + ".distancecalcs");
+      this.objaccess = LOG.newAtomicCounter(prefix + ".objaccess");
+      this.distcalc = LOG.newAtomicCounter(prefix + ".distancecalcs");
     }
     else {
       this.objaccess = null;
@@ -41,5 +41,6 @@ public class MinimalisticMemoryKDTreeTest extends AbstractIndexStructureTest {
     MinimalisticMemoryKDTree.Factory<?> factory = new ELKIBuilder<>(MinimalisticMemoryKDTree.Factory.class).build();
     testExactEuclidean(factory, MinimalisticMemoryKDTree.KDTreeKNNQuery.class, MinimalisticMemoryKDTree.KDTreeRangeQuery.class);
     testSinglePoint(factory, MinimalisticMemoryKDTree.KDTreeKNNQuery.class, MinimalisticMemoryKDTree.KDTreeRangeQuery.class);
+    testConcurrentQueries(factory, MinimalisticMemoryKDTree.KDTreeKNNQuery.class);
   }
 }
@@ -40,5 +40,6 @@ public class SmallMemoryKDTreeTest extends AbstractIndexStructureTest {
     SmallMemoryKDTree.Factory<?> factory = new ELKIBuilder<>(SmallMemoryKDTree.Factory.class).build();
     testExactEuclidean(factory, SmallMemoryKDTree.KDTreeKNNQuery.class, SmallMemoryKDTree.KDTreeRangeQuery.class);
     testSinglePoint(factory, SmallMemoryKDTree.KDTreeKNNQuery.class, SmallMemoryKDTree.KDTreeRangeQuery.class);
+    testConcurrentQueries(factory, SmallMemoryKDTree.KDTreeKNNQuery.class);
   }
 }
@@ -23,15 +23,18 @@ package de.lmu.ifi.dbs.elki.application;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.ColumnarBundleWriter;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -56,6 +59,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
    */
   private File outfile;
 
+  /**
+   * Write the columnar format.
+   */
+  private boolean columnar;
+
   /**
    * Constructor.
    *
@@ -63,9 +71,22 @@ public class ConvertToBundleApplication extends AbstractApplication {
    * @param outfile Output filename
    */
   public ConvertToBundleApplication(DatabaseConnection input, File outfile) {
+    this(input, outfile, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param input Data source configuration
+   * @param outfile Output filename
+   * @param columnar Write the columnar format, see
+   *        {@link ColumnarBundleWriter}
+   */
+  public ConvertToBundleApplication(DatabaseConnection input, File outfile, boolean columnar) {
     super();
     this.input = input;
     this.outfile = outfile;
+    this.columnar = columnar;
   }
 
   @Override
@@ -77,7 +98,17 @@ public class ConvertToBundleApplication extends AbstractApplication {
     if(LOG.isVerbose()) {
       LOG.verbose("Serializing to output file: " + outfile.toString());
     }
-    // TODO: make configurable?
+    if(columnar) {
+      try (RandomAccessFile file = new RandomAccessFile(outfile, "rw");
+          FileChannel channel = file.getChannel()) {
+        file.setLength(0);
+        new ColumnarBundleWriter().write(bundle, channel);
+      }
+      catch(IOException e) {
+        LOG.exception("IO Error", e);
+      }
+      return;
+    }
     BundleWriter writer = new BundleWriter();
     try {
       FileOutputStream fos = new FileOutputStream(outfile);
@@ -109,6 +140,16 @@ public class ConvertToBundleApplication extends AbstractApplication {
      */
     public static final OptionID DATABASE_CONNECTION_ID = new OptionID("dbc", "Database connection class.");
 
+    /**
+     * Flag to write the columnar format.
+     *
+     * Key:
+     * <p>
+     * {@code -bundle.columnar}
+     * </p>
+     */
+    public static final OptionID COLUMNAR_ID = new OptionID("bundle.columnar", "Write the columnar bundle format, which can be memory-mapped into packed vector storage without decoding.");
+
     /**
      * The data input step.
      */
@@ -119,6 +160,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
      */
     private File outfile;
 
+    /**
+     * Write the columnar format.
+     */
+    private boolean columnar;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -127,11 +173,15 @@ public class ConvertToBundleApplication extends AbstractApplication {
         input = inputP.instantiateClass(config);
       }
       outfile = super.getParameterOutputFile(config, "File name to serialize the bundle to.");
+      Flag columnarF = new Flag(COLUMNAR_ID);
+      if(config.grab(columnarF)) {
+        columnar = columnarF.isTrue();
+      }
     }
 
     @Override
     protected ConvertToBundleApplication makeInstance() {
-      return new ConvertToBundleApplication(input, outfile);
+      return new ConvertToBundleApplication(input, outfile, columnar);
     }
   }
 
@@ -100,7 +100,7 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
     /**
      * Option ID for the bundle parameter.
      */
-    private static final OptionID BUNDLE_ID = new OptionID("bundle.input", "Bundle file to load the data from.");
+    public static final OptionID BUNDLE_ID = new OptionID("bundle.input", "Bundle file to load the data from.");
 
     /**
      * File to load.
@@ -0,0 +1,150 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.datasource.bundle.ColumnarBundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+
+/**
+ * Class to load a columnar bundle file, by memory-mapping its columns.
+ *
+ * With {@link de.lmu.ifi.dbs.elki.database.StaticArrayDatabase} in packed mode,
+ * numeric vector columns are used as packed storage directly, without decoding
+ * or copying the vectors. Columnar bundle files can be produced with
+ * {@link de.lmu.ifi.dbs.elki.application.ConvertToBundleApplication}.
+ *
+ * Filters will usually materialize the data in memory.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf ColumnarBundleReader
+ */
+public class ColumnarBundleDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ColumnarBundleDatabaseConnection.class);
+
+  /**
+   * File to load.
+   */
+  private File infile;
+
+  /**
+   * Load the mapped columns into memory in advance.
+   */
+  private boolean preload;
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   * @param preload Load the mapped columns into memory in advance
+   */
+  public ColumnarBundleDatabaseConnection(List<ObjectFilter> filters, File infile, boolean preload) {
+    super(filters);
+    this.infile = infile;
+    this.preload = preload;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    // Mappings remain valid after closing the file.
+    try (RandomAccessFile file = new RandomAccessFile(infile, "r");
+        FileChannel channel = file.getChannel()) {
+      ColumnarBundleReader reader = new ColumnarBundleReader(channel);
+      MultipleObjectsBundle bundle = reader.asMultipleObjectsBundle();
+      if(preload) {
+        reader.preload();
+      }
+      if(LOG.isVerbose()) {
+        LOG.verbose("Mapped " + bundle.dataLength() + " objects from " + infile);
+      }
+      return invokeBundleFilters(bundle);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error loading bundle", e);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractDatabaseConnection.Parameterizer {
+    /**
+     * Flag to load the mapped columns into memory in advance.
+     */
+    public static final OptionID PRELOAD_ID = new OptionID("bundle.preload", "Load the mapped columns into memory in parallel, instead of on demand.");
+
+    /**
+     * File to load.
+     */
+    private File infile;
+
+    /**
+     * Load the mapped columns into memory in advance.
+     */
+    private boolean preload;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      configFilters(config);
+      FileParameter infileP = new FileParameter(BundleDatabaseConnection.Parameterizer.BUNDLE_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(infileP)) {
+        infile = infileP.getValue();
+      }
+      Flag preloadF = new Flag(PRELOAD_ID);
+      if(config.grab(preloadF)) {
+        preload = preloadF.isTrue();
+      }
+    }
+
+    @Override
+    protected ColumnarBundleDatabaseConnection makeInstance() {
+      return new ColumnarBundleDatabaseConnection(filters, infile, preload);
+    }
+  }
+}
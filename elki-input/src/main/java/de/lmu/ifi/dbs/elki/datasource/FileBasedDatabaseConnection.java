@@ -30,6 +30,7 @@ import java.util.List;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.datasource.parser.ArffParser;
 import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.datasource.parser.ParallelNumberVectorLabelParser;
 import de.lmu.ifi.dbs.elki.datasource.parser.Parser;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
@@ -38,6 +39,7 @@ import de.lmu.ifi.dbs.elki.utilities.io.FileUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 
 /**
  * File based database connection based on the parser to be set.
@@ -111,6 +113,14 @@ public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
      */
     public static final OptionID INPUT_ID = new OptionID("dbc.in", "The name of the input file to be parsed.");
 
+    /**
+     * Flag to parse number vectors in parallel chunks.
+     * <p>
+     * Key: {@code -dbc.parallel}
+     * </p>
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("dbc.parallel", "Parse number vector files in parallel chunks (default parser only).");
+
     /**
      * Input stream to process.
      */
@@ -128,6 +138,10 @@ public class FileBasedDatabaseConnection extends InputStreamDatabaseConnection {
           defaultParser = ArffParser.class;
         }
       }
+      Flag parallelF = new Flag(PARALLEL_ID);
+      if(config.grab(parallelF) && parallelF.isTrue() && defaultParser == NumberVectorLabelParser.class) {
+        defaultParser = ParallelNumberVectorLabelParser.class;
+      }
       configParser(config, Parser.class, defaultParser);
       configFilters(config);
     }
@@ -0,0 +1,124 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedBundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+
+/**
+ * Class to use a bundle file as database, without loading it into memory.
+ *
+ * The file is mapped into memory, and objects are decoded only when accessed.
+ * Together with {@link de.lmu.ifi.dbs.elki.database.StaticArrayDatabase} this
+ * allows processing data sets larger than the Java heap. Bundle files can be
+ * produced with
+ * {@link de.lmu.ifi.dbs.elki.application.ConvertToBundleApplication}.
+ *
+ * Filters will usually materialize the data in memory.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf MappedBundleReader
+ */
+public class MappedBundleDatabaseConnection extends AbstractDatabaseConnection {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MappedBundleDatabaseConnection.class);
+
+  /**
+   * File to load.
+   */
+  private File infile;
+
+  /**
+   * Constructor.
+   *
+   * @param filters Filters
+   * @param infile Input file
+   */
+  public MappedBundleDatabaseConnection(List<ObjectFilter> filters, File infile) {
+    super(filters);
+    this.infile = infile;
+  }
+
+  @Override
+  public MultipleObjectsBundle loadData() {
+    // Mappings remain valid after closing the file.
+    try (RandomAccessFile file = new RandomAccessFile(infile, "r");
+        FileChannel channel = file.getChannel()) {
+      MultipleObjectsBundle bundle = new MappedBundleReader(channel).asMultipleObjectsBundle();
+      if(LOG.isVerbose()) {
+        LOG.verbose("Mapped " + bundle.dataLength() + " objects from " + infile);
+      }
+      return invokeBundleFilters(bundle);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error loading bundle", e);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractDatabaseConnection.Parameterizer {
+    /**
+     * File to load.
+     */
+    private File infile;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      configFilters(config);
+      FileParameter infileP = new FileParameter(BundleDatabaseConnection.Parameterizer.BUNDLE_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(infileP)) {
+        infile = infileP.getValue();
+      }
+    }
+
+    @Override
+    protected MappedBundleDatabaseConnection makeInstance() {
+      return new MappedBundleDatabaseConnection(filters, infile);
+    }
+  }
+}
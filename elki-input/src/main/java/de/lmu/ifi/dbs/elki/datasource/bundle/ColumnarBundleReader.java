@@ -0,0 +1,526 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import de.lmu.ifi.dbs.elki.data.ExternalID;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Read a bundle written by {@link ColumnarBundleWriter}, by memory-mapping
+ * its columns.
+ * <p>
+ * Numeric vector columns are exposed as {@link VectorColumn}s, whose blocks
+ * can be used directly as packed storage (see
+ * {@link de.lmu.ifi.dbs.elki.database.relation.PackedNumberVectorRelation}),
+ * without decoding and copying every vector. Labels are decoded once per
+ * distinct value.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf VectorColumn
+ */
+public class ColumnarBundleReader {
+  /**
+   * Input channel.
+   */
+  private FileChannel input;
+
+  /**
+   * All mapped regions, for preloading.
+   */
+  private List<MappedByteBuffer> maps = new ArrayList<>();
+
+  /**
+   * Constructor.
+   *
+   * @param input Input channel
+   */
+  public ColumnarBundleReader(FileChannel input) {
+    super();
+    this.input = input;
+  }
+
+  /**
+   * Map the file, and produce a bundle with its columns.
+   *
+   * @return Bundle
+   */
+  public MultipleObjectsBundle asMultipleObjectsBundle() {
+    try {
+      final long filesize = input.size();
+      ByteBuffer header = read(0, ColumnarBundleWriter.HEADER_SIZE, filesize);
+      if(header.getInt() != ColumnarBundleWriter.MAGIC) {
+        throw new AbortException("File does not start with expected magic.");
+      }
+      if(header.getInt() != ColumnarBundleWriter.VERSION) {
+        throw new AbortException("Unsupported columnar bundle version.");
+      }
+      final int size = header.getInt(), numcols = header.getInt();
+      MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+      long pos = ColumnarBundleWriter.HEADER_SIZE;
+      for(int c = 0; c < numcols; c++) {
+        ByteBuffer colheader = read(pos, ColumnarBundleWriter.COLUMN_HEADER_SIZE, filesize);
+        final int kind = colheader.getInt(), typelen = colheader.getInt();
+        final long offset = colheader.getLong(), length = colheader.getLong();
+        final SimpleTypeInformation<?> type = typelen > 0 ? readType(read(pos + ColumnarBundleWriter.COLUMN_HEADER_SIZE, typelen, filesize)) : null;
+        pos += ColumnarBundleWriter.COLUMN_HEADER_SIZE + typelen;
+        if(offset < 0 || length < 0 || offset + length > filesize) {
+          throw new AbortException("Columnar bundle file is truncated.");
+        }
+        switch(kind){
+        case ColumnarBundleWriter.KIND_DBID:
+          bundle.setDBIDs(readDBIDs(map(offset, length).asIntBuffer(), size));
+          break;
+        case ColumnarBundleWriter.KIND_DOUBLE:
+        case ColumnarBundleWriter.KIND_FLOAT:
+          bundle.appendColumn(type, makeVectorColumn(type, offset, size, kind == ColumnarBundleWriter.KIND_FLOAT));
+          break;
+        case ColumnarBundleWriter.KIND_DICTIONARY:
+          bundle.appendColumn(type, new DictionaryColumn(type, map(offset, length), size));
+          break;
+        case ColumnarBundleWriter.KIND_EXTERNALID:
+          bundle.appendColumn(TypeUtil.EXTERNALID, new ExternalIDColumn(map(offset, length), size));
+          break;
+        case ColumnarBundleWriter.KIND_SERIALIZED:
+          bundle.appendColumn(type, new SerializedColumn(type, map(offset, length), size));
+          break;
+        default:
+          throw new AbortException("Unknown column kind: " + kind);
+        }
+      }
+      return bundle;
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error reading columnar bundle", e);
+    }
+  }
+
+  /**
+   * Load all mapped columns into memory, in parallel, to avoid page faults
+   * during processing.
+   */
+  public void preload() {
+    ParallelExecutor.run(maps.size(), 1, (start, end) -> {
+      for(int i = start; i < end; i++) {
+        maps.get(i).load();
+      }
+    });
+  }
+
+  /**
+   * Read a part of the file.
+   *
+   * @param pos Position
+   * @param len Length
+   * @param filesize File size
+   * @return Buffer, in file byte order
+   * @throws IOException on I/O errors
+   */
+  private ByteBuffer read(long pos, int len, long filesize) throws IOException {
+    if(pos + len > filesize) {
+      throw new AbortException("Columnar bundle file is truncated.");
+    }
+    ByteBuffer buf = ByteBuffer.allocate(len);
+    while(buf.hasRemaining()) {
+      if(input.read(buf, pos + buf.position()) < 0) {
+        throw new AbortException("Columnar bundle file is truncated.");
+      }
+    }
+    buf.flip();
+    return buf.order(ColumnarBundleWriter.ORDER);
+  }
+
+  /**
+   * Map a part of the file.
+   *
+   * @param offset Offset
+   * @param length Length
+   * @return Mapped buffer, in file byte order
+   * @throws IOException on I/O errors
+   */
+  private ByteBuffer map(long offset, long length) throws IOException {
+    MappedByteBuffer map = input.map(MapMode.READ_ONLY, offset, length);
+    maps.add(map);
+    return map.order(ColumnarBundleWriter.ORDER);
+  }
+
+  /**
+   * Decode type information.
+   *
+   * @param buf Buffer
+   * @return Type information
+   */
+  private static SimpleTypeInformation<?> readType(ByteBuffer buf) {
+    try {
+      return (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(buf.order(ByteOrder.BIG_ENDIAN));
+    }
+    catch(UnsupportedOperationException e) {
+      throw new AbortException("Deserialization failed: " + e.getMessage(), e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error", e);
+    }
+  }
+
+  /**
+   * Read the DBIDs.
+   *
+   * @param buf Integer buffer
+   * @param size Number of objects
+   * @return DBIDs
+   */
+  private static ArrayModifiableDBIDs readDBIDs(IntBuffer buf, int size) {
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(size);
+    for(int i = 0; i < size; i++) {
+      ids.add(DBIDUtil.importInteger(buf.get(i)));
+    }
+    return ids;
+  }
+
+  /**
+   * Map a vector column, in blocks.
+   *
+   * @param type Column type
+   * @param offset Column offset
+   * @param size Number of objects
+   * @param single Single precision
+   * @return Column
+   * @throws IOException on I/O errors
+   */
+  private VectorColumn<?> makeVectorColumn(SimpleTypeInformation<?> type, long offset, int size, boolean single) throws IOException {
+    @SuppressWarnings("unchecked")
+    final VectorFieldTypeInformation<? extends NumberVector> vtype = (VectorFieldTypeInformation<? extends NumberVector>) type;
+    final int dim = vtype.getDimensionality();
+    final int width = single ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE;
+    final int rowsperblock = ColumnarBundleWriter.rowsPerBlock(dim);
+    final int numblocks = Math.max(1, (int) ((size + (long) rowsperblock - 1) / rowsperblock));
+    Buffer[] blocks = single ? new FloatBuffer[numblocks] : new DoubleBuffer[numblocks];
+    for(int i = 0; i < numblocks; i++) {
+      final int rows = Math.max(0, Math.min(rowsperblock, size - i * rowsperblock));
+      ByteBuffer map = map(offset + (long) i * rowsperblock * dim * width, (long) rows * dim * width);
+      blocks[i] = single ? map.asFloatBuffer() : map.asDoubleBuffer();
+    }
+    return new VectorColumn<>(vtype, blocks, rowsperblock, size);
+  }
+
+  /**
+   * Column of dense numeric vectors, stored in mapped row-major blocks.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class VectorColumn<V extends NumberVector> extends AbstractList<V> implements RandomAccess {
+    /**
+     * Vector factory.
+     */
+    private NumberVector.Factory<V> factory;
+
+    /**
+     * Storage blocks, {@link DoubleBuffer}s or {@link FloatBuffer}s.
+     */
+    private Buffer[] blocks;
+
+    /**
+     * Dimensionality, rows per block and number of rows.
+     */
+    private int dim, rowsperblock, size;
+
+    /**
+     * Constructor.
+     *
+     * @param type Vector type
+     * @param blocks Storage blocks
+     * @param rowsperblock Rows per block
+     * @param size Number of rows
+     */
+    @SuppressWarnings("unchecked")
+    private VectorColumn(VectorFieldTypeInformation<V> type, Buffer[] blocks, int rowsperblock, int size) {
+      super();
+      this.factory = (NumberVector.Factory<V>) type.getFactory();
+      this.blocks = blocks;
+      this.dim = type.getDimensionality();
+      this.rowsperblock = rowsperblock;
+      this.size = size;
+    }
+
+    @Override
+    public V get(int index) {
+      if(index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Row " + index + " not in bundle of size " + size);
+      }
+      final Buffer block = blocks[index / rowsperblock];
+      final int off = (index % rowsperblock) * dim;
+      double[] values = new double[dim];
+      if(block instanceof DoubleBuffer) {
+        for(int d = 0; d < dim; d++) {
+          values[d] = ((DoubleBuffer) block).get(off + d);
+        }
+      }
+      else {
+        for(int d = 0; d < dim; d++) {
+          values[d] = ((FloatBuffer) block).get(off + d);
+        }
+      }
+      return factory.newNumberVector(values);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Get the storage blocks: a {@link DoubleBuffer} array, or a
+     * {@link FloatBuffer} array for single precision data.
+     *
+     * @return Storage blocks, row-major
+     */
+    public Buffer[] getBlocks() {
+      return blocks;
+    }
+
+    /**
+     * Get the number of rows per storage block.
+     *
+     * @return Rows per block, a power of two
+     */
+    public int getRowsPerBlock() {
+      return rowsperblock;
+    }
+
+    /**
+     * Get the dimensionality.
+     *
+     * @return Dimensionality
+     */
+    public int getDimensionality() {
+      return dim;
+    }
+  }
+
+  /**
+   * Dictionary encoded column.
+   *
+   * @author Erich Schubert
+   */
+  private static class DictionaryColumn extends AbstractList<Object> implements RandomAccess {
+    /**
+     * Distinct values.
+     */
+    private Object[] dict;
+
+    /**
+     * Codes.
+     */
+    private IntBuffer codes;
+
+    /**
+     * Number of rows.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param type Column type
+     * @param buf Column data
+     * @param size Number of rows
+     */
+    DictionaryColumn(SimpleTypeInformation<?> type, ByteBuffer buf, int size) {
+      super();
+      final ByteBufferSerializer<?> ser = type.getSerializer();
+      dict = new Object[buf.getInt()];
+      try {
+        for(int i = 0; i < dict.length; i++) {
+          final int len = buf.getInt(), next = buf.position() + len;
+          dict[i] = ser.fromByteBuffer(buf.duplicate().order(ByteOrder.BIG_ENDIAN));
+          buf.position(next);
+        }
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed.", e);
+      }
+      catch(IOException e) {
+        throw new AbortException("IO error", e);
+      }
+      buf.position((buf.position() + 3) & ~3);
+      this.codes = buf.slice().order(ColumnarBundleWriter.ORDER).asIntBuffer();
+      this.size = size;
+    }
+
+    @Override
+    public Object get(int index) {
+      final int code = codes.get(index);
+      return code >= 0 ? dict[code] : null;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Column of external identifiers.
+   *
+   * @author Erich Schubert
+   */
+  private static class ExternalIDColumn extends AbstractList<ExternalID> implements RandomAccess {
+    /**
+     * String offsets.
+     */
+    private LongBuffer offsets;
+
+    /**
+     * String data.
+     */
+    private ByteBuffer data;
+
+    /**
+     * Number of rows.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param buf Column data
+     * @param size Number of rows
+     */
+    ExternalIDColumn(ByteBuffer buf, int size) {
+      super();
+      this.offsets = buf.asLongBuffer();
+      buf.position((size + 1) * ByteArrayUtil.SIZE_LONG);
+      this.data = buf.slice();
+      this.size = size;
+    }
+
+    @Override
+    public ExternalID get(int index) {
+      final int start = (int) offsets.get(index), len = (int) offsets.get(index + 1) - start;
+      if(len == 0) {
+        return null;
+      }
+      byte[] bytes = new byte[len];
+      ByteBuffer dup = data.duplicate();
+      dup.position(start);
+      dup.get(bytes);
+      return new ExternalID(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Column of serialized objects.
+   *
+   * @author Erich Schubert
+   */
+  private static class SerializedColumn extends AbstractList<Object> implements RandomAccess {
+    /**
+     * Serializer.
+     */
+    private ByteBufferSerializer<?> ser;
+
+    /**
+     * Object offsets.
+     */
+    private LongBuffer offsets;
+
+    /**
+     * Serialized data.
+     */
+    private ByteBuffer data;
+
+    /**
+     * Number of rows.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param type Column type
+     * @param buf Column data
+     * @param size Number of rows
+     */
+    SerializedColumn(SimpleTypeInformation<?> type, ByteBuffer buf, int size) {
+      super();
+      this.ser = type.getSerializer();
+      this.offsets = buf.asLongBuffer();
+      buf.position((size + 1) * ByteArrayUtil.SIZE_LONG);
+      this.data = buf.slice().order(ByteOrder.BIG_ENDIAN);
+      this.size = size;
+    }
+
+    @Override
+    public Object get(int index) {
+      ByteBuffer dup = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+      dup.position((int) offsets.get(index));
+      try {
+        return ser.fromByteBuffer(dup);
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Deserialization failed.", e);
+      }
+      catch(IOException e) {
+        throw new AbortException("IO error", e);
+      }
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
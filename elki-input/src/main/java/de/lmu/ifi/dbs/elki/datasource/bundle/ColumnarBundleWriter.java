@@ -0,0 +1,498 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.ClassLabel;
+import de.lmu.ifi.dbs.elki.data.ExternalID;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.SparseNumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Write a bundle in a columnar format, where each column is one contiguous
+ * block that can be memory-mapped by the {@link ColumnarBundleReader}.
+ * <p>
+ * File layout (little endian): magic, version, number of objects, number of
+ * columns; then for each column its kind, the length of its serialized type
+ * information, the offset and length of its data, and the type information.
+ * Column data is 8 byte aligned. Type information, dictionary entries and
+ * serialized objects use the big endian order of the serializers:
+ * <ul>
+ * <li>Dense vectors of fixed dimensionality: row-major doubles, or floats for
+ * {@link FloatVector} data.</li>
+ * <li>Labels ({@link LabelList}, {@link ClassLabel}, strings): a dictionary of
+ * the distinct values, followed by one int code per object.</li>
+ * <li>External IDs: n+1 long offsets, followed by the UTF-8 strings.</li>
+ * <li>DBIDs: one int per object.</li>
+ * <li>Any other type with a serializer: n+1 long offsets, followed by the
+ * serialized objects.</li>
+ * </ul>
+ * Vector columns are written in parallel, through writable mappings of the
+ * output file.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses MultipleObjectsBundle
+ */
+public class ColumnarBundleWriter {
+  /**
+   * Magic number, "ELKC".
+   */
+  public static final int MAGIC = 0x454C4B43;
+
+  /**
+   * File format version.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Column kind: DBIDs.
+   */
+  static final int KIND_DBID = 0;
+
+  /**
+   * Column kind: double precision vectors.
+   */
+  static final int KIND_DOUBLE = 1;
+
+  /**
+   * Column kind: single precision vectors.
+   */
+  static final int KIND_FLOAT = 2;
+
+  /**
+   * Column kind: dictionary encoded labels.
+   */
+  static final int KIND_DICTIONARY = 3;
+
+  /**
+   * Column kind: external identifiers.
+   */
+  static final int KIND_EXTERNALID = 4;
+
+  /**
+   * Column kind: serialized objects.
+   */
+  static final int KIND_SERIALIZED = 5;
+
+  /**
+   * Maximum number of values in a mapped vector block (1 GiB of doubles).
+   */
+  static final int MAX_BLOCKSIZE = 1 << 27;
+
+  /**
+   * Byte order of the file.
+   */
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  /**
+   * Size of the file header.
+   */
+  static final int HEADER_SIZE = 16;
+
+  /**
+   * Size of a column header, without type information.
+   */
+  static final int COLUMN_HEADER_SIZE = 24;
+
+  /**
+   * Write a bundle.
+   *
+   * @param bundle Bundle to write
+   * @param output Output channel, must be readable and writable
+   * @throws IOException on I/O errors
+   */
+  public void write(MultipleObjectsBundle bundle, FileChannel output) throws IOException {
+    final int size = bundle.dataLength(), nummeta = bundle.metaLength();
+    final ArrayDBIDs ids = bundle.getDBIDs();
+    final int numcols = nummeta + (ids != null ? 1 : 0);
+    int[] kinds = new int[numcols];
+    byte[][] types = new byte[numcols][];
+    ByteBuffer[] payloads = new ByteBuffer[numcols];
+    long[] lengths = new long[numcols];
+    int headersize = HEADER_SIZE;
+    for(int c = 0; c < numcols; c++) {
+      final int i = ids != null ? c - 1 : c;
+      if(i < 0) {
+        kinds[c] = KIND_DBID;
+        payloads[c] = encodeDBIDs(ids);
+      }
+      else {
+        final SimpleTypeInformation<?> type = bundle.meta(i);
+        final List<?> data = bundle.getColumn(i);
+        kinds[c] = kindOf(type);
+        switch(kinds[c]){
+        case KIND_DOUBLE:
+        case KIND_FLOAT:
+          final int dim = ((VectorFieldTypeInformation<?>) type).getDimensionality();
+          lengths[c] = (long) size * dim * (kinds[c] == KIND_DOUBLE ? ByteArrayUtil.SIZE_DOUBLE : ByteArrayUtil.SIZE_FLOAT);
+          break;
+        case KIND_DICTIONARY:
+          payloads[c] = encodeDictionary(type, data);
+          break;
+        case KIND_EXTERNALID:
+          payloads[c] = encodeExternalIDs(data);
+          break;
+        default:
+          payloads[c] = encodeSerialized(type, data);
+        }
+        if(kinds[c] != KIND_EXTERNALID) {
+          // External IDs have no serializer, so the type cannot be stored.
+          types[c] = serializeType(type);
+        }
+      }
+      if(payloads[c] != null) {
+        lengths[c] = payloads[c].limit();
+      }
+      headersize += COLUMN_HEADER_SIZE + (types[c] != null ? types[c].length : 0);
+    }
+    // Assign offsets, and write the header.
+    long[] offsets = new long[numcols];
+    long pos = align8(headersize);
+    ByteBuffer header = ByteBuffer.allocate(headersize).order(ORDER);
+    header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(numcols);
+    for(int c = 0; c < numcols; c++) {
+      offsets[c] = pos;
+      header.putInt(kinds[c]).putInt(types[c] != null ? types[c].length : 0);
+      header.putLong(offsets[c]).putLong(lengths[c]);
+      if(types[c] != null) {
+        header.put(types[c]);
+      }
+      pos = align8(pos + lengths[c]);
+    }
+    header.flip();
+    writeFully(output, header, 0);
+    for(int c = 0; c < numcols; c++) {
+      if(payloads[c] != null) {
+        writeFully(output, payloads[c], offsets[c]);
+      }
+      else {
+        final int i = ids != null ? c - 1 : c;
+        writeVectors(output, offsets[c], bundle.getColumn(i), ((VectorFieldTypeInformation<?>) bundle.meta(i)).getDimensionality(), size, kinds[c] == KIND_FLOAT);
+      }
+    }
+    output.truncate(pos);
+    output.force(false);
+  }
+
+  /**
+   * Choose the column kind for a type.
+   *
+   * @param type Type information
+   * @return Column kind
+   */
+  private static int kindOf(SimpleTypeInformation<?> type) {
+    final Class<?> cls = type.getRestrictionClass();
+    if(type instanceof VectorFieldTypeInformation && NumberVector.class.isAssignableFrom(cls) //
+        && !SparseNumberVector.class.isAssignableFrom(cls) //
+        && ((VectorFieldTypeInformation<?>) type).getDimensionality() > 0 //
+        && ((VectorFieldTypeInformation<?>) type).getFactory() instanceof NumberVector.Factory) {
+      return FloatVector.class.isAssignableFrom(cls) ? KIND_FLOAT : KIND_DOUBLE;
+    }
+    if(ExternalID.class.isAssignableFrom(cls)) {
+      return KIND_EXTERNALID;
+    }
+    if(type.getSerializer() == null) {
+      throw new AbortException("Cannot serialize - no serializer found for type: " + type.toString());
+    }
+    if(LabelList.class.isAssignableFrom(cls) || ClassLabel.class.isAssignableFrom(cls) || String.class.equals(cls)) {
+      return KIND_DICTIONARY;
+    }
+    return KIND_SERIALIZED;
+  }
+
+  /**
+   * Serialize type information.
+   *
+   * @param type Type information
+   * @return Serialized type
+   * @throws IOException on I/O errors
+   */
+  private static byte[] serializeType(SimpleTypeInformation<?> type) throws IOException {
+    // The size estimates of the type serializers are not reliable (e.g. for
+    // unlabeled vector fields), so grow the buffer as necessary.
+    for(int size = 1024;; size <<= 1) {
+      ByteBuffer buf = ByteBuffer.allocate(size);
+      try {
+        TypeInformationSerializer.STATIC.toByteBuffer(buf, type);
+        return Arrays.copyOf(buf.array(), buf.position());
+      }
+      catch(BufferOverflowException e) {
+        if(size >= 1 << 24) {
+          throw new AbortException("Type information too large: " + type.toString(), e);
+        }
+      }
+      catch(UnsupportedOperationException e) {
+        throw new AbortException("Cannot serialize type: " + type.toString(), e);
+      }
+    }
+  }
+
+  /**
+   * Write vectors, in parallel, into a mapping of the output file.
+   *
+   * @param output Output channel
+   * @param offset Column offset
+   * @param data Vectors
+   * @param dim Dimensionality
+   * @param size Number of vectors
+   * @param single Use single precision
+   * @throws IOException on I/O errors
+   */
+  private static void writeVectors(FileChannel output, long offset, List<?> data, int dim, int size, boolean single) throws IOException {
+    final int width = single ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE;
+    final int rowsperblock = rowsPerBlock(dim);
+    for(int start = 0; start < size; start += rowsperblock) {
+      final int first = start, rows = Math.min(rowsperblock, size - start);
+      MappedByteBuffer map = output.map(MapMode.READ_WRITE, offset + (long) first * dim * width, (long) rows * dim * width);
+      map.order(ORDER);
+      final DoubleBuffer dblock = single ? null : map.asDoubleBuffer();
+      final FloatBuffer fblock = single ? map.asFloatBuffer() : null;
+      ParallelExecutor.run(rows, 1024, (begin, end) -> {
+        for(int r = begin; r < end; r++) {
+          final NumberVector vec = (NumberVector) data.get(first + r);
+          if(vec.getDimensionality() != dim) {
+            throw new AbortException("Vector dimensionality does not match the column type.");
+          }
+          final int off = r * dim;
+          for(int d = 0; d < dim; d++) {
+            if(single) {
+              fblock.put(off + d, vec.floatValue(d));
+            }
+            else {
+              dblock.put(off + d, vec.doubleValue(d));
+            }
+          }
+        }
+      });
+      map.force();
+    }
+  }
+
+  /**
+   * Number of rows per mapped block of a vector column.
+   *
+   * @param dim Dimensionality
+   * @return Rows per block, a power of two
+   */
+  static int rowsPerBlock(int dim) {
+    return Integer.highestOneBit(Math.max(1, MAX_BLOCKSIZE / Math.max(1, dim)));
+  }
+
+  /**
+   * Encode the DBIDs.
+   *
+   * @param ids DBIDs
+   * @return Encoded column
+   */
+  private static ByteBuffer encodeDBIDs(ArrayDBIDs ids) {
+    ByteBuffer buf = allocate((long) ids.size() * ByteArrayUtil.SIZE_INT);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      buf.putInt(DBIDUtil.asInteger(it));
+    }
+    buf.flip();
+    return buf;
+  }
+
+  /**
+   * Encode a label column with a dictionary.
+   * <p>
+   * Values are deduplicated by their serialized form, as not every label type
+   * implements {@code equals}.
+   *
+   * @param type Column type
+   * @param data Column data
+   * @return Encoded column
+   */
+  private static ByteBuffer encodeDictionary(SimpleTypeInformation<?> type, List<?> data) {
+    @SuppressWarnings("unchecked")
+    final ByteBufferSerializer<Object> ser = (ByteBufferSerializer<Object>) type.getSerializer();
+    Object2IntOpenHashMap<ByteBuffer> map = new Object2IntOpenHashMap<>();
+    map.defaultReturnValue(-1);
+    List<ByteBuffer> dict = new ArrayList<>();
+    int[] codes = new int[data.size()];
+    long dictsize = ByteArrayUtil.SIZE_INT;
+    try {
+      for(int i = 0; i < codes.length; i++) {
+        final Object o = data.get(i);
+        if(o == null) {
+          codes[i] = -1;
+          continue;
+        }
+        ByteBuffer key = ByteBuffer.allocate(ser.getByteSize(o));
+        ser.toByteBuffer(key, o);
+        key.flip();
+        int code = map.getInt(key);
+        if(code < 0) {
+          map.put(key, code = dict.size());
+          dict.add(key);
+          dictsize += ByteArrayUtil.SIZE_INT + key.limit();
+        }
+        codes[i] = code;
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Serialization failed.", e);
+    }
+    dictsize = (dictsize + 3) & ~3L;
+    ByteBuffer buf = allocate(dictsize + (long) codes.length * ByteArrayUtil.SIZE_INT);
+    buf.putInt(dict.size());
+    for(ByteBuffer key : dict) {
+      buf.putInt(key.limit());
+      buf.put(key.duplicate());
+    }
+    buf.position((int) dictsize);
+    for(int code : codes) {
+      buf.putInt(code);
+    }
+    buf.flip();
+    return buf;
+  }
+
+  /**
+   * Encode external IDs as UTF-8 strings.
+   *
+   * @param data Column data
+   * @return Encoded column
+   */
+  private static ByteBuffer encodeExternalIDs(List<?> data) {
+    final int size = data.size();
+    byte[][] strs = new byte[size][];
+    long total = 0;
+    for(int i = 0; i < size; i++) {
+      final Object o = data.get(i);
+      strs[i] = o != null ? o.toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+      total += strs[i].length;
+    }
+    ByteBuffer buf = allocate((size + 1L) * ByteArrayUtil.SIZE_LONG + total);
+    long pos = 0;
+    for(int i = 0; i < size; i++) {
+      buf.putLong(pos);
+      pos += strs[i].length;
+    }
+    buf.putLong(pos);
+    for(byte[] str : strs) {
+      buf.put(str);
+    }
+    buf.flip();
+    return buf;
+  }
+
+  /**
+   * Encode arbitrary objects with their serializer.
+   *
+   * @param type Column type
+   * @param data Column data
+   * @return Encoded column
+   */
+  private static ByteBuffer encodeSerialized(SimpleTypeInformation<?> type, List<?> data) {
+    @SuppressWarnings("unchecked")
+    final ByteBufferSerializer<Object> ser = (ByteBufferSerializer<Object>) type.getSerializer();
+    final int size = data.size();
+    try {
+      long total = 0;
+      for(int i = 0; i < size; i++) {
+        total += ser.getByteSize(data.get(i));
+      }
+      ByteBuffer buf = allocate((size + 1L) * ByteArrayUtil.SIZE_LONG + total);
+      long pos = 0;
+      for(int i = 0; i < size; i++) {
+        buf.putLong(pos);
+        pos += ser.getByteSize(data.get(i));
+      }
+      buf.putLong(pos);
+      buf.order(ByteOrder.BIG_ENDIAN);
+      for(int i = 0; i < size; i++) {
+        ser.toByteBuffer(buf, data.get(i));
+      }
+      buf.flip();
+      return buf;
+    }
+    catch(IOException e) {
+      throw new AbortException("Serialization failed.", e);
+    }
+  }
+
+  /**
+   * Allocate a buffer for a column.
+   *
+   * @param size Size
+   * @return Buffer
+   */
+  private static ByteBuffer allocate(long size) {
+    if(size > Integer.MAX_VALUE) {
+      throw new AbortException("Column too large for the columnar format: " + size + " bytes.");
+    }
+    return ByteBuffer.allocate((int) size).order(ORDER);
+  }
+
+  /**
+   * Write a buffer at the given position.
+   *
+   * @param output Output channel
+   * @param buf Buffer
+   * @param pos Position
+   * @throws IOException on I/O errors
+   */
+  private static void writeFully(FileChannel output, ByteBuffer buf, long pos) throws IOException {
+    while(buf.hasRemaining()) {
+      pos += output.write(buf, pos);
+    }
+  }
+
+  /**
+   * Round up to a multiple of 8.
+   *
+   * @param pos Position
+   * @return Aligned position
+   */
+  static long align8(long pos) {
+    return (pos + 7) & ~7L;
+  }
+}
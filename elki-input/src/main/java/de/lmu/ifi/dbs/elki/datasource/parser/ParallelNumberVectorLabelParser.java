@@ -0,0 +1,448 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Multi-threaded variant of the {@link NumberVectorLabelParser}.
+ * <p>
+ * The input is read in blocks of (approximately) the given chunk size, which
+ * are cut at line breaks. Each chunk is tokenized and converted to vectors by
+ * a separate {@link NumberVectorLabelParser} on a worker thread, and the
+ * results are concatenated in file order, so the object order (and hence the
+ * DBIDs assigned) is the same as with the sequential parser. Column
+ * separators, quotes, comments and label columns are configured exactly as for
+ * the sequential parser.
+ * <p>
+ * This parser does not stream: when used with a {@link
+ * de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection}, stream filters
+ * are applied to the complete bundle after parsing.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses NumberVectorLabelParser
+ *
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorLabelParser<V extends NumberVector> implements Parser {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorLabelParser.class);
+
+  /**
+   * Default chunk size (4 MiB).
+   */
+  public static final int DEFAULT_CHUNKSIZE = 1 << 22;
+
+  /**
+   * Input format.
+   */
+  protected CSVReaderFormat format;
+
+  /**
+   * Keeps the indices of the attributes to be treated as a string label.
+   */
+  protected long[] labelIndices;
+
+  /**
+   * Vector factory class.
+   */
+  protected NumberVector.Factory<V> factory;
+
+  /**
+   * Number of bytes per chunk.
+   */
+  protected int chunksize;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param chunksize Number of bytes to parse per task
+   */
+  public ParallelNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory, int chunksize) {
+    super();
+    this.format = format;
+    this.labelIndices = labelIndices;
+    this.factory = factory;
+    this.chunksize = chunksize;
+  }
+
+  /**
+   * Constructor with defaults.
+   *
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(NumberVector.Factory<V> factory) {
+    this(CSVReaderFormat.DEFAULT_FORMAT, null, factory, DEFAULT_CHUNKSIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param colSep Column separator
+   * @param quoteChars Quote character
+   * @param comment Comment pattern
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(Pattern colSep, String quoteChars, Pattern comment, long[] labelIndices, NumberVector.Factory<V> factory) {
+    this(new CSVReaderFormat(colSep, quoteChars, comment), labelIndices, factory, DEFAULT_CHUNKSIZE);
+  }
+
+  @Override
+  public MultipleObjectsBundle parse(InputStream in) {
+    // Read a few chunks per thread at once, to bound memory usage.
+    final int batchsize = Math.max(1, ParallelCore.getCore().getParallelism() << 1);
+    final InputStream[] chunks = new InputStream[batchsize];
+    final long[] firstlines = new long[batchsize];
+    // Filled by the workers, at disjoint positions.
+    final List<ChunkParser<V>> parsers = new ArrayList<>(Collections.nCopies(batchsize, (ChunkParser<V>) null));
+    ChunkReader reader = new ChunkReader(in, chunksize);
+    ChunkParser<V> first = null;
+    List<V> vecs = new ArrayList<>();
+    List<LabelList> lbls = new ArrayList<>();
+    int mindim = Integer.MAX_VALUE, maxdim = 0;
+    boolean haslabels = false;
+    try {
+      while(true) {
+        int n = 0;
+        for(InputStream chunk; n < batchsize && (chunk = reader.nextChunk()) != null;) {
+          firstlines[n] = reader.chunkline;
+          chunks[n++] = chunk;
+        }
+        if(n == 0) {
+          break;
+        }
+        ParallelExecutor.run(n, 1, (start, end) -> {
+          for(int i = start; i < end; i++) {
+            ChunkParser<V> parser = new ChunkParser<>(format, labelIndices, factory);
+            parser.parseChunk(chunks[i], firstlines[i]);
+            parsers.set(i, parser);
+            chunks[i] = null;
+          }
+        });
+        // Reassemble in file order.
+        for(int i = 0; i < n; i++) {
+          ChunkParser<V> parser = parsers.set(i, null);
+          first = first != null ? first : parser;
+          for(List<String> row : parser.labelrows) {
+            if(vecs.isEmpty()) { // Column header
+              first.columnnames = row;
+            }
+            else { // Not a header, but an object without numerical values.
+              vecs.add(factory.newNumberVector(new double[0]));
+              lbls.add(LabelList.make(row));
+              mindim = 0;
+              haslabels |= !row.isEmpty();
+            }
+          }
+          vecs.addAll(parser.vecs);
+          lbls.addAll(parser.lbls);
+          mindim = Math.min(mindim, parser.mindim);
+          maxdim = Math.max(maxdim, parser.maxdim);
+          haslabels |= parser.haslabels;
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new IllegalArgumentException("Error while reading input data.", e);
+    }
+    if(maxdim == 0) {
+      throw new AbortException("No numeric data was read. Verify the column separator; for textual data use other parsers.");
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    bundle.appendColumn(first.getTypeInformation(mindim, maxdim), vecs);
+    if(haslabels) {
+      bundle.appendColumn(TypeUtil.LABELLIST, lbls);
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".chunks", reader.numchunks));
+    }
+    return bundle;
+  }
+
+  @Override
+  public void cleanup() {
+    // Nothing to do: every chunk uses its own parser.
+  }
+
+  /**
+   * Split an input stream into chunks at line breaks.
+   *
+   * Because the line feed byte cannot occur within a multi-byte UTF-8
+   * character, we can split the raw bytes without decoding.
+   *
+   * @author Erich Schubert
+   */
+  private static class ChunkReader {
+    /**
+     * Input stream.
+     */
+    InputStream in;
+
+    /**
+     * Minimum chunk size.
+     */
+    int chunksize;
+
+    /**
+     * Bytes after the last line break of the previous chunk.
+     */
+    byte[] rest = new byte[0];
+
+    /**
+     * End of stream flag.
+     */
+    boolean eof = false;
+
+    /**
+     * Number of chunks read.
+     */
+    long numchunks = 0;
+
+    /**
+     * Line number of the first line of the next chunk.
+     */
+    long nextline = 1;
+
+    /**
+     * Line number of the first line of the last chunk returned.
+     */
+    long chunkline = 1;
+
+    /**
+     * Constructor.
+     *
+     * @param in Input stream
+     * @param chunksize Chunk size
+     */
+    ChunkReader(InputStream in, int chunksize) {
+      this.in = in;
+      this.chunksize = chunksize;
+    }
+
+    /**
+     * Read the next chunk of complete lines.
+     *
+     * @return Chunk, or {@code null} at the end of the stream.
+     * @throws IOException on read errors
+     */
+    InputStream nextChunk() throws IOException {
+      while(true) {
+        if(eof) {
+          if(rest.length == 0) {
+            return null;
+          }
+          ++numchunks;
+          chunkline = nextline;
+          InputStream chunk = new ByteArrayInputStream(rest);
+          rest = new byte[0];
+          return chunk;
+        }
+        // Lines longer than the chunk size enlarge the buffer.
+        byte[] buf = Arrays.copyOf(rest, Math.max(chunksize, rest.length << 1));
+        int len = rest.length;
+        while(len < buf.length) {
+          int r = in.read(buf, len, buf.length - len);
+          if(r < 0) {
+            eof = true;
+            break;
+          }
+          len += r;
+        }
+        int end = len;
+        while(end > rest.length && buf[end - 1] != '\n') {
+          --end;
+        }
+        if(end > rest.length) {
+          rest = Arrays.copyOfRange(buf, end, len);
+          ++numchunks;
+          chunkline = nextline;
+          for(int i = 0; i < end; i++) {
+            nextline += buf[i] == '\n' ? 1 : 0;
+          }
+          return new ByteArrayInputStream(buf, 0, end);
+        }
+        // No line break found, continue reading.
+        rest = Arrays.copyOf(buf, len);
+      }
+    }
+  }
+
+  /**
+   * Parser for a single chunk.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  private static class ChunkParser<V extends NumberVector> extends NumberVectorLabelParser<V> {
+    /**
+     * Vectors parsed.
+     */
+    List<V> vecs = new ArrayList<>();
+
+    /**
+     * Labels parsed.
+     */
+    List<LabelList> lbls = new ArrayList<>();
+
+    /**
+     * Label-only rows at the beginning of the chunk.
+     */
+    List<List<String>> labelrows = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param format Input format
+     * @param labelIndices Column indexes that are not numeric.
+     * @param factory Vector factory
+     */
+    ChunkParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory) {
+      super(format, labelIndices, factory);
+    }
+
+    /**
+     * Parse a chunk of input data.
+     *
+     * @param in Chunk input
+     * @param firstline Line number of the first line of the chunk in the file
+     */
+    void parseChunk(InputStream in, long firstline) {
+      initStream(in);
+      // Leading label rows are resolved when merging.
+      curvec = null;
+      try {
+        while(reader.nextLineExceptComments()) {
+          if(!parseLineInternal()) {
+            labelrows.add(columnnames);
+          }
+          else {
+            final int curdim = curvec.getDimensionality();
+            mindim = (curdim < mindim) ? curdim : mindim;
+            maxdim = (curdim > maxdim) ? curdim : maxdim;
+            vecs.add(curvec);
+            lbls.add(curlbl);
+          }
+        }
+      }
+      catch(IOException e) {
+        throw new IllegalArgumentException("Error while parsing line " + (firstline + reader.getLineNumber() - 1) + ".", e);
+      }
+      finally {
+        cleanup();
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Number of bytes to parse at once.
+     * <p>
+     * Key: {@code -parser.chunksize}
+     * </p>
+     */
+    public static final OptionID CHUNKSIZE_ID = new OptionID("parser.chunksize", "Number of bytes to parse at once in each thread.");
+
+    /**
+     * Reader format.
+     */
+    protected CSVReaderFormat format;
+
+    /**
+     * Keeps the indices of the attributes to be treated as a string label.
+     */
+    protected long[] labelIndices;
+
+    /**
+     * Factory object.
+     */
+    protected NumberVector.Factory<V> factory;
+
+    /**
+     * Number of bytes per chunk.
+     */
+    protected int chunksize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      format = config.tryInstantiate(CSVReaderFormat.class);
+      IntListParameter labelIndicesP = new IntListParameter(NumberVectorLabelParser.Parameterizer.LABEL_INDICES_ID, true);
+      if(config.grab(labelIndicesP)) {
+        labelIndices = labelIndicesP.getValueAsBitSet();
+      }
+      ObjectParameter<NumberVector.Factory<V>> factoryP = new ObjectParameter<>(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, NumberVector.Factory.class, DoubleVector.Factory.class);
+      if(config.grab(factoryP)) {
+        factory = factoryP.instantiateClass(config);
+      }
+      IntParameter chunksizeP = new IntParameter(CHUNKSIZE_ID, DEFAULT_CHUNKSIZE) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(chunksizeP)) {
+        chunksize = chunksizeP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelNumberVectorLabelParser<V> makeInstance() {
+      return new ParallelNumberVectorLabelParser<>(format, labelIndices, factory, chunksize);
+    }
+  }
+}
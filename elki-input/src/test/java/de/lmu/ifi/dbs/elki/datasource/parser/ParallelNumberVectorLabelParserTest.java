@@ -0,0 +1,131 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDataSourceTest;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.InputStreamDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the parallel parser against the sequential parser.
+ *
+ * @author Erich Schubert
+ */
+public class ParallelNumberVectorLabelParserTest extends AbstractDataSourceTest {
+  @Test
+  public void testFiles() throws IOException {
+    for(String file : new String[] { "normalization-test-1.csv", "label-selection-test-1.csv", "dimensionality-test-1.csv", "external-id-test-1.csv" }) {
+      String filename = UNITTEST + file;
+      MultipleObjectsBundle expect, got;
+      try (InputStream is = open(filename)) {
+        expect = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(is);
+      }
+      Parser parser = new ELKIBuilder<>(ParallelNumberVectorLabelParser.class) //
+          .with(ParallelNumberVectorLabelParser.Parameterizer.CHUNKSIZE_ID, 100) //
+          .build();
+      try (InputStream is = open(filename);
+          InputStreamDatabaseConnection dbc = new InputStreamDatabaseConnection(is, null, parser)) {
+        got = ParallelCore.withCore(4, dbc::loadData);
+      }
+      assertSameBundle(file, expect, got);
+    }
+  }
+
+  @Test
+  public void testFileBasedConnection() throws IOException {
+    String filename = UNITTEST + "normalization-test-1.csv";
+    MultipleObjectsBundle expect;
+    try (InputStream is = open(filename)) {
+      expect = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(is);
+    }
+    File file = new File(getClass().getClassLoader().getResource(filename).getFile());
+    ListParameterization params = new ListParameterization() //
+        .addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, file) //
+        .addFlag(FileBasedDatabaseConnection.Parameterizer.PARALLEL_ID) //
+        .addParameter(ParallelNumberVectorLabelParser.Parameterizer.CHUNKSIZE_ID, 100);
+    FileBasedDatabaseConnection dbc = ClassGenericsUtil.parameterizeOrAbort(FileBasedDatabaseConnection.class, params);
+    // The chunk size is only consumed by the parallel parser.
+    assertFalse("Parallel parser not used.", params.hasUnusedParameters());
+    assertSameBundle("dbc.parallel", expect, ParallelCore.withCore(4, dbc::loadData));
+  }
+
+  @Test
+  public void testHeaderAndLabelColumns() {
+    StringBuilder buf = new StringBuilder(10000) //
+        .append("# Comment line\n").append("x,y,id,label\n");
+    for(int i = 0; i < 500; i++) {
+      buf.append(i * .5).append(',').append(-i).append(',').append(i).append(",\"a b\"\n");
+      if(i % 17 == 0) {
+        buf.append("; Another comment\n");
+      }
+    }
+    byte[] data = buf.toString().getBytes(StandardCharsets.UTF_8);
+    long[] labels = new long[] { 4L }; // Column 2.
+    MultipleObjectsBundle expect = new NumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, labels, DoubleVector.FACTORY).parse(new ByteArrayInputStream(data));
+    ParallelCore.withCore(4, () -> {
+      for(int chunksize : new int[] { 1, 7, 64, 1000, 100000 }) {
+        MultipleObjectsBundle got = new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, labels, DoubleVector.FACTORY, chunksize).parse(new ByteArrayInputStream(data));
+        assertSameBundle("chunk size " + chunksize, expect, got);
+        VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) got.meta(0);
+        assertEquals("Dimensionality", 2, type.getDimensionality());
+        assertEquals("Column name", "x", type.getLabel(0));
+        assertEquals("Column name", "y", type.getLabel(1));
+        assertEquals("Labels", "1 a b", got.data(1, 1).toString());
+      }
+    });
+  }
+
+  /**
+   * Compare two bundles.
+   *
+   * @param prefix Message prefix
+   * @param expect Expected bundle
+   * @param got Actual bundle
+   */
+  private static void assertSameBundle(String prefix, MultipleObjectsBundle expect, MultipleObjectsBundle got) {
+    assertEquals(prefix + ": columns", expect.metaLength(), got.metaLength());
+    assertEquals(prefix + ": size", expect.dataLength(), got.dataLength());
+    for(int c = 0; c < expect.metaLength(); c++) {
+      assertEquals(prefix + ": type", expect.meta(c).toString(), got.meta(c).toString());
+      for(int r = 0; r < expect.dataLength(); r++) {
+        assertEquals(prefix + ": row " + r, expect.data(r, c).toString(), got.data(r, c).toString());
+      }
+    }
+  }
+}
@@ -40,6 +40,8 @@ import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.Priority;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
@@ -154,27 +156,39 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     Duration etime = LOG.newDuration(STAT + "fp-growth.extraction.time").begin();
     final IndefiniteProgress itemp = LOG.isVerbose() ? new IndefiniteProgress("Frequent itemsets", LOG) : null;
     final List<Itemset> solution = new ArrayList<>();
-    // Start extraction with the least frequent items
-    tree.extract(minsupp, minlength, maxlength, true, new FPTree.Collector() {
-      @Override
-      public void collect(int support, int[] data, int start, int plen) {
+    // The conditional trees of the top-level items are mined in parallel, each
+    // task collecting into its own buffer. The shared tree can only be pruned
+    // during extraction when running single-threaded.
+    final int parallelism = ParallelCore.getCore().getParallelism();
+    final boolean destruct = parallelism <= 1;
+    final int stop = (minlength > 1) ? minlength - 1 : 0, num = Math.max(0, items - stop);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", num, LOG) : null;
+    ParallelExecutor.run(num, Math.max(1, Math.min(64, num / (parallelism << 4))), (start, end) -> {
+      final List<Itemset> buf = new ArrayList<>();
+      // Start extraction with the least frequent items
+      tree.extract(minsupp, minlength, maxlength, start + stop, end + stop, destruct, (support, data, first, plen) -> {
         // Always translate the indexes back to the original values via 'idx'!
-        if(plen - start == 1) {
-          solution.add(new OneItemset(idx[data[start]], support));
+        if(plen - first == 1) {
+          buf.add(new OneItemset(idx[data[first]], support));
           LOG.incrementProcessed(itemp);
           return;
         }
         // Copy from buffer to a permanent storage
-        int[] indices = new int[plen - start];
-        for(int i = start, j = 0; i < plen; i++) {
+        int[] indices = new int[plen - first];
+        for(int i = first, j = 0; i < plen; i++) {
           indices[j++] = idx[data[i]]; // Translate to original items
         }
         Arrays.sort(indices);
-        solution.add(new SparseItemset(indices, support));
+        buf.add(new SparseItemset(indices, support));
         LOG.incrementProcessed(itemp);
+      }, prog);
+      synchronized(solution) {
+        solution.addAll(buf);
       }
     });
+    LOG.ensureCompleted(prog);
     LOG.setCompleted(itemp);
+    // Sort, for a deterministic order independent of the scheduling.
     Collections.sort(solution);
     LOG.statistics(etime.end());
     LOG.statistics(new LongStatistic(STAT + "frequent-itemsets", solution.size()));
@@ -336,15 +350,35 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      * @param col Itemset collector
      */
     public void extract(int minsupp, int minlength, int maxlength, boolean destruct, Collector col) {
-      int[] buf = new int[header.length], buf2 = new int[header.length],
-          buf3 = new int[header.length];
       int stop = (minlength > 1) ? minlength - 1 : 0;
       FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", header.length - stop, LOG) : null;
-      for(int j = header.length - 1; j >= stop; --j) {
+      extract(minsupp, minlength, maxlength, stop, header.length, destruct, col, prog);
+      LOG.ensureCompleted(prog);
+    }
+
+    /**
+     * Extract itemsets ending in the items {@code [start, end)}, which are
+     * processed in descending order.
+     * <p>
+     * Unless {@code destruct} is set, this tree is not modified, and disjoint
+     * item ranges may be extracted concurrently (with separate collectors).
+     *
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param start First item
+     * @param end End of item range (exclusive)
+     * @param destruct Remove nodes
+     * @param col Itemset collector
+     * @param prog Progress, incremented for each item (may be {@code null})
+     */
+    public void extract(int minsupp, int minlength, int maxlength, int start, int end, boolean destruct, Collector col, FiniteProgress prog) {
+      int[] buf = new int[header.length], buf2 = new int[header.length],
+          buf3 = new int[header.length];
+      for(int j = end - 1; j >= start; --j) {
         extract(minsupp, minlength, maxlength, j, buf, 0, buf2, buf3, destruct, col);
         LOG.incrementProcessed(prog);
       }
-      LOG.ensureCompleted(prog);
     }
 
     /**
@@ -426,8 +460,9 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       if(plen >= minlength && plen <= maxlength) {
         col.collect(support, postfix, 0, plen);
       }
+      // The projected tree is private, and can always be pruned.
       for(int j = last; j >= 0; j--) {
-        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, destruct, col);
+        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, true, col);
       }
       if(destruct) {
         header[item] = null;
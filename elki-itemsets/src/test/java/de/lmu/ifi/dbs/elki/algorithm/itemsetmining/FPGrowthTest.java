@@ -22,9 +22,12 @@ package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.List;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
@@ -111,4 +114,21 @@ public class FPGrowthTest extends AbstractFrequentItemsetAlgorithmTest {
         .with(FPGrowth.Parameterizer.MINSUPP_ID, 200).build().run(db);
     assertEquals("Size not as expected.", 184, res.getItemsets().size());
   }
+
+  @Test
+  public void testLargeParallel() {
+    Database db = loadTransactions(UNITTEST + "itemsets/zutaten.txt.gz", 16401);
+    FPGrowth fp = new ELKIBuilder<>(FPGrowth.class) //
+        .with(FPGrowth.Parameterizer.MINSUPP_ID, 50) //
+        .with(FPGrowth.Parameterizer.MINLENGTH_ID, 2).build();
+    List<Itemset> ref = fp.run(db).getItemsets();
+    ParallelCore.withCore(4, () -> {
+      List<Itemset> res = fp.run(db).getItemsets();
+      assertEquals("Size not as expected.", ref.size(), res.size());
+      for(int i = 0; i < ref.size(); i++) {
+        assertEquals("Itemsets differ.", 0, ref.get(i).compareTo(res.get(i)));
+        assertEquals("Support differs.", ref.get(i).getSupport(), res.get(i).getSupport());
+      }
+    });
+  }
 }
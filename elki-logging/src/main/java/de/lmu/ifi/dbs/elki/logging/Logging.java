@@ -30,6 +30,7 @@ import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.Progress;
 import de.lmu.ifi.dbs.elki.logging.progress.ProgressLogRecord;
 import de.lmu.ifi.dbs.elki.logging.progress.StepProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.MillisTimeDuration;
@@ -611,6 +612,17 @@ public class Logging {
     return new UnsynchronizedLongCounter(key);
   }
 
+  /**
+   * Generate a new thread-safe counter, e.g., for data structures that are
+   * queried from multiple threads.
+   * 
+   * @param key Key to use
+   * @return Counter.
+   */
+  public Counter newAtomicCounter(String key) {
+    return new AtomicLongCounter(key);
+  }
+
   /**
    * Generate a new duration statistic.
    * 
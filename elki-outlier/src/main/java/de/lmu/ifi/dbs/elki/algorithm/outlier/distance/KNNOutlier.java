@@ -29,6 +29,9 @@ import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
@@ -130,11 +133,21 @@ public class KNNOutlier<O> extends AbstractDistanceBasedAlgorithm<O, OutlierResu
 
     DoubleMinMax minmax = new DoubleMinMax();
     WritableDoubleDataStore knno_score = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
+    // Reused result buffer for linear scans, to avoid allocating a list for
+    // every query. Indexes return their (often materialized) lists directly.
+    ModifiableDoubleDBIDList knns = knnQuery instanceof LinearScanQuery ? DBIDUtil.newDistanceDBIDList(k) : null;
     // compute distance to the k nearest neighbor.
     for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
       // distance to the kth nearest neighbor
       // (assuming the query point is always included, with distance 0)
-      final double dkn = knnQuery.getKNNForDBID(it, k).getKNNDistance();
+      final double dkn;
+      if(knns != null) {
+        knnQuery.getKNNForDBID(it, k, knns);
+        dkn = DBIDUtil.kNNDistance(knns, k);
+      }
+      else {
+        dkn = knnQuery.getKNNForDBID(it, k).getKNNDistance();
+      }
 
       knno_score.putDouble(it, dkn);
       minmax.put(dkn);
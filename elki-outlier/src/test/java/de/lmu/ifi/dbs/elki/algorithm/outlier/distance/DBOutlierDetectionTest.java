@@ -34,6 +34,7 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.distancematrix.PrecomputedDistanceMatrix;
 import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MaterializeKNNPreprocessor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
 
@@ -73,6 +74,24 @@ public class DBOutlierDetectionTest extends AbstractOutlierAlgorithmTest {
     testAUC(db, "Noise", result, 0.97487179);
   }
 
+  /**
+   * Test with a kNN index materialized in parallel.
+   */
+  @Test
+  public void testDBOutlierKNNParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-fire.ascii", 1025);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    MaterializeKNNPreprocessor<NumberVector> preproc = new MaterializeKNNPreprocessor<>(rel, EuclideanDistanceFunction.STATIC, 179);
+    db.getHierarchy().add(rel, preproc);
+    ParallelCore.withCore(4, preproc::initialize);
+    OutlierResult result = new ELKIBuilder<DBOutlierDetection<DoubleVector>>(DBOutlierDetection.class) //
+        .with(DBOutlierDetection.Parameterizer.D_ID, 0.175) //
+        .with(DBOutlierDetection.Parameterizer.P_ID, 0.98) //
+        .build().run(db);
+    testSingleScore(result, 1025, 0.0);
+    testAUC(db, "Noise", result, 0.97487179);
+  }
+
   /**
    * Test with a range index.
    */
@@ -20,12 +20,17 @@
  */
 package de.lmu.ifi.dbs.elki.persistent;
 
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.logging.Logging;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 
 /**
  * A memory based implementation of a PageFile that simulates I/O-access.
- * Implemented as a Map with keys representing the ids of the saved pages.
+ * Implemented as an array indexed by the ids of the saved pages.
+ * <p>
+ * Page reads do not lock, so a tree index can be queried from multiple threads
+ * once it has been built. Writes are serialized, and must not run concurrently
+ * to queries.
  *
  * @author Elke Achtert
  * @since 0.2
@@ -39,9 +44,10 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
   private static final Logging LOG = Logging.getLogger(MemoryPageFile.class);
 
   /**
-   * Holds the pages.
+   * Holds the pages. Reassigned on every write, to publish the change to
+   * readers that do not lock.
    */
-  private final Int2ObjectOpenHashMap<P> file;
+  private volatile Page[] file;
 
   /**
    * Creates a new MemoryPageFile that is supported by a cache with the
@@ -51,20 +57,27 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
    */
   public MemoryPageFile(int pageSize) {
     super(pageSize);
-    this.file = new Int2ObjectOpenHashMap<>();
+    this.file = new Page[16];
   }
 
+  @SuppressWarnings("unchecked")
   @Override
-  public synchronized P readPage(int pageID) {
+  public P readPage(int pageID) {
     countRead();
-    return file.get(pageID);
+    final Page[] file = this.file;
+    return pageID < file.length ? (P) file[pageID] : null;
   }
 
   @Override
-  protected void writePage(int pageID, P page) {
+  protected synchronized void writePage(int pageID, P page) {
     countWrite();
-    file.put(pageID, page);
+    Page[] file = this.file;
+    if(pageID >= file.length) {
+      file = Arrays.copyOf(file, Math.max(pageID + 1, file.length + (file.length >>> 1)));
+    }
+    file[pageID] = page;
     page.setDirty(false);
+    this.file = file;
   }
 
   @Override
@@ -75,12 +88,16 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
 
     // delete from file
     countWrite();
-    file.remove(pageID);
+    final Page[] file = this.file;
+    if(pageID < file.length) {
+      file[pageID] = null;
+      this.file = file;
+    }
   }
 
   @Override
-  public void clear() {
-    file.clear();
+  public synchronized void clear() {
+    this.file = new Page[16];
   }
 
   @Override
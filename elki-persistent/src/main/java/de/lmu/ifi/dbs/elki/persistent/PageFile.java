@@ -50,6 +50,9 @@ public interface PageFile<P extends Page> {
 
   /**
    * Reads the page with the given id from this file.
+   * <p>
+   * Must be safe to call from multiple threads, as long as no pages are
+   * written concurrently (i.e., when querying an index after construction).
    * 
    * @param pageID the id of the page to be returned
    * @return the page with the given pageId
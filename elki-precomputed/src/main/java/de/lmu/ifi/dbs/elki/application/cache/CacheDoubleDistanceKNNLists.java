@@ -30,7 +30,10 @@ import java.nio.channels.FileLock;
 import de.lmu.ifi.dbs.elki.application.AbstractApplication;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
@@ -38,19 +41,25 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.preprocessed.knn.MappedKNNGraph;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Precompute the k nearest neighbors in a disk cache.
+ * <p>
+ * Optionally, the fixed-stride {@link MappedKNNGraph} format is written, in
+ * parallel, which can be used without loading.
  * 
  * @author Erich Schubert
  * @since 0.2
@@ -85,6 +94,11 @@ public class CacheDoubleDistanceKNNLists<O> extends AbstractApplication {
    */
   private File out;
 
+  /**
+   * Write the memory-mapped format.
+   */
+  private boolean mapped;
+
   /**
    * Magic number to identify files.
    * 
@@ -102,11 +116,25 @@ public class CacheDoubleDistanceKNNLists<O> extends AbstractApplication {
    * @param out Matrix output file
    */
   public CacheDoubleDistanceKNNLists(Database database, DistanceFunction<? super O> distance, int k, File out) {
+    this(database, distance, k, out, false);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param database Data source
+   * @param distance Distance function
+   * @param k Number of nearest neighbors
+   * @param out Matrix output file
+   * @param mapped Write the memory-mapped format
+   */
+  public CacheDoubleDistanceKNNLists(Database database, DistanceFunction<? super O> distance, int k, File out, boolean mapped) {
     super();
     this.database = database;
     this.distance = distance;
     this.k = k;
     this.out = out;
+    this.mapped = mapped;
   }
 
   @Override
@@ -116,6 +144,15 @@ public class CacheDoubleDistanceKNNLists<O> extends AbstractApplication {
     DistanceQuery<O> distanceQuery = database.getDistanceQuery(relation, distance);
     KNNQuery<O> knnQ = database.getKNNQuery(distanceQuery, DatabaseQuery.HINT_HEAVY_USE);
 
+    if(mapped) {
+      try {
+        writeMapped(relation, knnQ);
+      }
+      catch(IOException e) {
+        LOG.exception(e);
+      }
+      return;
+    }
     // open file.
     try (RandomAccessFile file = new RandomAccessFile(out, "rw");
         FileChannel channel = file.getChannel();
@@ -166,6 +203,29 @@ public class CacheDoubleDistanceKNNLists<O> extends AbstractApplication {
     // FIXME: close!
   }
 
+  /**
+   * Write the kNN lists in the mapped format. As every object has a fixed
+   * position in the file, the neighbors are computed and written in parallel.
+   *
+   * @param relation Relation
+   * @param knnQ kNN query
+   * @throws IOException on I/O errors
+   */
+  private void writeMapped(Relation<O> relation, KNNQuery<O> knnQ) throws IOException {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final MappedKNNGraph graph = MappedKNNGraph.create(out, ids, k);
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Computing kNN", ids.size(), LOG) : null;
+    ParallelExecutor.run(ids.size(), 1024, (start, end) -> {
+      DBIDArrayIter it = ids.iter();
+      for(int i = start; i < end; i++) {
+        graph.put(i, knnQ.getKNNForDBID(it.seek(i), k));
+        LOG.incrementProcessed(prog);
+      }
+    });
+    LOG.ensureCompleted(prog);
+    graph.flush();
+  }
+
   /**
    * Parameterization class.
    * 
@@ -198,6 +258,14 @@ public class CacheDoubleDistanceKNNLists<O> extends AbstractApplication {
      */
     public static final OptionID K_ID = new OptionID("loader.k", "Number of nearest neighbors to precompute.");
 
+    /**
+     * Flag to write the fixed-stride memory-mapped format.
+     * <p>
+     * Key: {@code -loader.mapped}
+     * </p>
+     */
+    public static final OptionID MAPPED_ID = new OptionID("loader.mapped", "Write a fixed-stride file that can be memory-mapped without loading, computed in parallel. Ties beyond k are not stored.");
+
     /**
      * Data source to process.
      */
@@ -218,6 +286,11 @@ public class CacheDoubleDistanceKNNLists<O> extends AbstractApplication {
      */
     private File out = null;
 
+    /**
+     * Write the memory-mapped format.
+     */
+    private boolean mapped = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -240,11 +313,15 @@ public class CacheDoubleDistanceKNNLists<O> extends AbstractApplication {
       if(config.grab(cpar)) {
         out = cpar.getValue();
       }
+      final Flag mappedF = new Flag(MAPPED_ID);
+      if(config.grab(mappedF)) {
+        mapped = mappedF.isTrue();
+      }
     }
 
     @Override
     protected CacheDoubleDistanceKNNLists<O> makeInstance() {
-      return new CacheDoubleDistanceKNNLists<>(database, distance, k, out);
+      return new CacheDoubleDistanceKNNLists<>(database, distance, k, out, mapped);
     }
   }
 
@@ -28,9 +28,16 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 
 import de.lmu.ifi.dbs.elki.application.cache.CacheDoubleDistanceKNNLists;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.SetDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -42,6 +49,10 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
 
 /**
  * Preprocessor that loads an existing cached kNN result.
+ * <p>
+ * Files in the fixed-stride {@link MappedKNNGraph} format are not loaded, but
+ * the neighbors are served directly from the mapped file. Such a file can be
+ * used for any k up to the k it was written with.
  * 
  * @author Erich Schubert
  * @since 0.6.0
@@ -54,6 +65,16 @@ public class CachedDoubleDistanceKNNPreprocessor<O> extends AbstractMaterializeK
    */
   private File filename;
 
+  /**
+   * Mapped kNN graph, if the file uses the mapped format.
+   */
+  private MappedKNNGraph graph;
+
+  /**
+   * Row numbers of the objects, if the rows are not contiguous.
+   */
+  private WritableIntegerDataStore rows;
+
   /**
    * Constructor.
    * 
@@ -74,6 +95,15 @@ public class CachedDoubleDistanceKNNPreprocessor<O> extends AbstractMaterializeK
 
   @Override
   protected void preprocess() {
+    try {
+      if(MappedKNNGraph.isMappedGraph(filename)) {
+        openMapped();
+        return;
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("I/O error in loading kNN cache: " + e.getMessage(), e);
+    }
     createStorage();
     // open file.
     try (RandomAccessFile file = new RandomAccessFile(filename, "rw");
@@ -109,6 +139,58 @@ public class CachedDoubleDistanceKNNPreprocessor<O> extends AbstractMaterializeK
     }
   }
 
+  /**
+   * Open a kNN cache in the mapped format.
+   *
+   * @throws IOException on I/O errors
+   */
+  private void openMapped() throws IOException {
+    MappedKNNGraph graph = MappedKNNGraph.open(filename);
+    if(graph.size() != relation.size()) {
+      throw new AbortException("kNN cache contains " + graph.size() + " objects, but the relation has " + relation.size());
+    }
+    if(graph.getK() < k) {
+      throw new AbortException("kNN cache contains fewer than k objects!");
+    }
+    if(graph.isContiguous()) {
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        if(graph.getContiguousRow(iter) < 0) {
+          throw new AbortException("kNN cache does not contain object " + DBIDUtil.toString(iter));
+        }
+      }
+    }
+    else {
+      SetDBIDs ids = DBIDUtil.ensureSet(relation.getDBIDs());
+      rows = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+      DBIDVar var = DBIDUtil.newVar();
+      for(int r = 0; r < graph.size(); r++) {
+        if(!ids.contains(graph.assignVar(r, var))) {
+          throw new AbortException("kNN cache contains object " + DBIDUtil.toString((DBIDRef) var) + " which is not in the relation.");
+        }
+        rows.putInt(var, r);
+      }
+      // Duplicate rows would leave objects without a row.
+      for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+        if(rows.intValue(iter) < 0) {
+          throw new AbortException("kNN cache does not contain object " + DBIDUtil.toString(iter));
+        }
+      }
+    }
+    this.graph = graph;
+  }
+
+  @Override
+  public KNNList get(DBIDRef id) {
+    if(graph == null && storage == null) {
+      preprocess();
+    }
+    if(graph != null) {
+      final int row = rows != null ? rows.intValue(id) : graph.getContiguousRow(id);
+      return row >= 0 ? graph.get(row, k) : null;
+    }
+    return storage.get(id);
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
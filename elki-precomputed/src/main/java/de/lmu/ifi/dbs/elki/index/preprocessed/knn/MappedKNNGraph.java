@@ -0,0 +1,597 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDPair;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Memory-mapped kNN graph with a fixed stride of k neighbors per object.
+ * <p>
+ * File layout (big endian):
+ * <ol>
+ * <li>Header: magic, number of objects n, stride k, flags.</li>
+ * <li>Object table: the DBID of each row, then the number of neighbors
+ * stored for each row (at most k).</li>
+ * <li>Neighbor DBIDs, n rows of k ints each, 8 byte aligned.</li>
+ * <li>Neighbor distances, n rows of k doubles each.</li>
+ * </ol>
+ * Because every row has the same size, the position of any list is computed
+ * directly, rows can be written by multiple threads at once, and the lists are
+ * served as {@link KNNList} views of the mapped file without copying. Any
+ * prefix k' &le; k can be served from the same file. Ties beyond the k-th
+ * neighbor are not stored.
+ * <p>
+ * The file is mapped in segments of whole rows, so files larger than 2 GB are
+ * supported.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has KNNView
+ */
+public class MappedKNNGraph {
+  /**
+   * Magic number to identify files; different from
+   * {@link de.lmu.ifi.dbs.elki.application.cache.CacheDoubleDistanceKNNLists#KNN_CACHE_MAGIC}.
+   */
+  public static final int MAPPED_KNN_CACHE_MAGIC = 0xCAC43D1E;
+
+  /**
+   * Flag: the row DBIDs are a contiguous range.
+   */
+  public static final int FLAG_CONTIGUOUS = 1;
+
+  /**
+   * Header size.
+   */
+  private static final int HEADER_SIZE = 16;
+
+  /**
+   * Default maximum size of a mapped segment.
+   */
+  private static final int SEGMENT_BYTES = 1 << 30;
+
+  /**
+   * Number of rows.
+   */
+  private final int n;
+
+  /**
+   * Stride, maximum number of neighbors per row.
+   */
+  private final int k;
+
+  /**
+   * Flags.
+   */
+  private final int flags;
+
+  /**
+   * Rows per segment.
+   */
+  private final int rps;
+
+  /**
+   * DBIDs of the rows.
+   */
+  private IntBuffer[] rowids;
+
+  /**
+   * Number of neighbors stored per row.
+   */
+  private IntBuffer[] sizes;
+
+  /**
+   * Neighbor DBIDs.
+   */
+  private IntBuffer[] neighbors;
+
+  /**
+   * Neighbor distances.
+   */
+  private DoubleBuffer[] distances;
+
+  /**
+   * Mapped buffers, for flushing.
+   */
+  private MappedByteBuffer[] maps;
+
+  /**
+   * Mapped header, only when writing.
+   */
+  private MappedByteBuffer header;
+
+  /**
+   * Constructor.
+   *
+   * @param channel File channel
+   * @param mode Map mode
+   * @param n Number of rows
+   * @param k Stride
+   * @param flags Flags
+   * @param segmentBytes Maximum segment size
+   * @throws IOException on mapping errors
+   */
+  protected MappedKNNGraph(FileChannel channel, MapMode mode, int n, int k, int flags, int segmentBytes) throws IOException {
+    this.n = n;
+    this.k = k;
+    this.flags = flags;
+    this.rps = Math.max(1, segmentBytes / (k << 3));
+    final int nseg = (int) ((n + (long) rps - 1) / rps);
+    rowids = new IntBuffer[nseg];
+    sizes = new IntBuffer[nseg];
+    neighbors = new IntBuffer[nseg];
+    distances = new DoubleBuffer[nseg];
+    maps = new MappedByteBuffer[nseg << 2];
+    final long sizesOffset = HEADER_SIZE + ((long) n << 2);
+    final long neighborsOffset = align8(sizesOffset + ((long) n << 2));
+    final long distancesOffset = align8(neighborsOffset + ((long) n * k << 2));
+    for(int s = 0; s < nseg; s++) {
+      final long first = (long) s * rps;
+      final int rows = (int) Math.min(rps, n - first);
+      rowids[s] = map(channel, mode, s << 2, HEADER_SIZE + (first << 2), rows << 2).asIntBuffer();
+      sizes[s] = map(channel, mode, (s << 2) + 1, sizesOffset + (first << 2), rows << 2).asIntBuffer();
+      neighbors[s] = map(channel, mode, (s << 2) + 2, neighborsOffset + (first * k << 2), (long) rows * k << 2).asIntBuffer();
+      distances[s] = map(channel, mode, (s << 2) + 3, distancesOffset + (first * k << 3), (long) rows * k << 3).asDoubleBuffer();
+    }
+  }
+
+  /**
+   * Map a region of the file.
+   *
+   * @param channel Channel
+   * @param mode Map mode
+   * @param i Index to store the mapping at
+   * @param pos Position
+   * @param len Length
+   * @return Mapped buffer
+   * @throws IOException on mapping errors
+   */
+  private MappedByteBuffer map(FileChannel channel, MapMode mode, int i, long pos, long len) throws IOException {
+    return maps[i] = channel.map(mode, pos, len);
+  }
+
+  /**
+   * Total file size.
+   *
+   * @param n Number of rows
+   * @param k Stride
+   * @return File size
+   */
+  protected static long fileSize(int n, int k) {
+    final long neighborsOffset = align8(HEADER_SIZE + ((long) n << 3));
+    return align8(neighborsOffset + ((long) n * k << 2)) + ((long) n * k << 3);
+  }
+
+  /**
+   * Round up to a multiple of 8.
+   *
+   * @param pos Position
+   * @return Aligned position
+   */
+  private static long align8(long pos) {
+    return (pos + 7) & ~7L;
+  }
+
+  /**
+   * Create a new file, and map it for writing.
+   *
+   * @param file File name
+   * @param ids Objects, in row order
+   * @param k Stride
+   * @return Mapped graph
+   * @throws IOException on I/O errors
+   */
+  public static MappedKNNGraph create(File file, ArrayDBIDs ids, int k) throws IOException {
+    return create(file, ids, k, SEGMENT_BYTES);
+  }
+
+  /**
+   * Create a new file, and map it for writing.
+   *
+   * @param file File name
+   * @param ids Objects, in row order
+   * @param k Stride
+   * @param segmentBytes Maximum segment size
+   * @return Mapped graph
+   * @throws IOException on I/O errors
+   */
+  protected static MappedKNNGraph create(File file, ArrayDBIDs ids, int k, int segmentBytes) throws IOException {
+    final int n = ids.size();
+    boolean contiguous = true;
+    DBIDArrayIter it = ids.iter();
+    final int first = n > 0 ? DBIDUtil.asInteger(it) : 0;
+    for(; it.valid(); it.advance()) {
+      if(DBIDUtil.asInteger(it) != first + it.getOffset()) {
+        contiguous = false;
+        break;
+      }
+    }
+    final int flags = contiguous ? FLAG_CONTIGUOUS : 0;
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel()) {
+      raf.setLength(0);
+      raf.setLength(fileSize(n, k));
+      // The magic number is only written by flush, when complete.
+      raf.writeInt(0);
+      raf.writeInt(n);
+      raf.writeInt(k);
+      raf.writeInt(flags);
+      // The mappings remain valid after closing the channel.
+      MappedKNNGraph graph = new MappedKNNGraph(channel, MapMode.READ_WRITE, n, k, flags, segmentBytes);
+      graph.header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+      for(it.seek(0); it.valid(); it.advance()) {
+        final int r = it.getOffset();
+        graph.rowids[r / graph.rps].put(r % graph.rps, DBIDUtil.asInteger(it));
+      }
+      return graph;
+    }
+  }
+
+  /**
+   * Open an existing file for reading.
+   *
+   * @param file File name
+   * @return Mapped graph
+   * @throws IOException on I/O errors
+   */
+  public static MappedKNNGraph open(File file) throws IOException {
+    return open(file, SEGMENT_BYTES);
+  }
+
+  /**
+   * Open an existing file for reading.
+   *
+   * @param file File name
+   * @param segmentBytes Maximum segment size
+   * @return Mapped graph
+   * @throws IOException on I/O errors
+   */
+  protected static MappedKNNGraph open(File file, int segmentBytes) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      if(raf.readInt() != MAPPED_KNN_CACHE_MAGIC) {
+        throw new AbortException("Cache magic number does not match.");
+      }
+      final int n = raf.readInt(), k = raf.readInt(), flags = raf.readInt();
+      if(n < 0 || k < 1 || raf.length() < fileSize(n, k)) {
+        throw new AbortException("kNN cache file is truncated or corrupt.");
+      }
+      return new MappedKNNGraph(channel, MapMode.READ_ONLY, n, k, flags, segmentBytes);
+    }
+  }
+
+  /**
+   * Test whether a file uses this format.
+   *
+   * @param file File
+   * @return {@code true} if the magic number matches
+   * @throws IOException on I/O errors
+   */
+  public static boolean isMappedGraph(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      return raf.length() >= HEADER_SIZE && raf.readInt() == MAPPED_KNN_CACHE_MAGIC;
+    }
+  }
+
+  /**
+   * Store the neighbors of a row. Different rows may be written concurrently.
+   *
+   * @param row Row number
+   * @param knn Neighbors, only the first k are stored
+   */
+  public void put(int row, DoubleDBIDList knn) {
+    final int s = row / rps, r = row % rps;
+    final IntBuffer nids = neighbors[s];
+    final DoubleBuffer ndists = distances[s];
+    int i = 0, off = r * k;
+    for(DoubleDBIDListIter it = knn.iter(); it.valid() && i < k; it.advance(), i++, off++) {
+      nids.put(off, DBIDUtil.asInteger(it));
+      ndists.put(off, it.doubleValue());
+    }
+    sizes[s].put(r, i);
+  }
+
+  /**
+   * Write all changes to disk, and mark the file as complete.
+   */
+  public void flush() {
+    if(header == null) {
+      return; // Read-only
+    }
+    for(MappedByteBuffer map : maps) {
+      map.force();
+    }
+    header.putInt(0, MAPPED_KNN_CACHE_MAGIC);
+    header.force();
+  }
+
+  /**
+   * Get the neighbors of a row.
+   *
+   * @param row Row number
+   * @param k Number of neighbors, at most the stride
+   * @return View of the neighbors
+   */
+  public KNNList get(int row, int k) {
+    final int s = row / rps, r = row % rps;
+    return new KNNView(neighbors[s], distances[s], r * this.k, sizes[s].get(r), k);
+  }
+
+  /**
+   * Get the DBID of a row.
+   *
+   * @param row Row number
+   * @param var Variable to assign
+   * @return {@code var}
+   */
+  public DBIDVar assignVar(int row, DBIDVar var) {
+    var.set(DBIDUtil.importInteger(rowids[row / rps].get(row % rps)));
+    return var;
+  }
+
+  /**
+   * Get the row of a DBID, if the row DBIDs are contiguous.
+   *
+   * @param id Object
+   * @return Row number, or -1 if not contained or not contiguous.
+   */
+  public int getContiguousRow(DBIDRef id) {
+    if((flags & FLAG_CONTIGUOUS) == 0 || n == 0) {
+      return -1;
+    }
+    final long row = DBIDUtil.asInteger(id) - (long) rowids[0].get(0);
+    return row >= 0 && row < n ? (int) row : -1;
+  }
+
+  /**
+   * Test whether the row DBIDs are contiguous.
+   *
+   * @return {@code true} when {@link #getContiguousRow} can be used.
+   */
+  public boolean isContiguous() {
+    return (flags & FLAG_CONTIGUOUS) != 0;
+  }
+
+  /**
+   * Number of rows.
+   *
+   * @return Number of rows
+   */
+  public int size() {
+    return n;
+  }
+
+  /**
+   * Stride, the maximum number of neighbors stored.
+   *
+   * @return k
+   */
+  public int getK() {
+    return k;
+  }
+
+  /**
+   * View of a kNN list in the mapped file.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class KNNView implements KNNList {
+    /**
+     * Neighbor DBIDs.
+     */
+    private final IntBuffer ids;
+
+    /**
+     * Neighbor distances.
+     */
+    private final DoubleBuffer dists;
+
+    /**
+     * Offset of the first neighbor.
+     */
+    private final int off;
+
+    /**
+     * Number of entries available.
+     */
+    private final int stored;
+
+    /**
+     * Parameter k.
+     */
+    private final int k;
+
+    /**
+     * List size, including ties at the k-th neighbor.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param ids Neighbor DBIDs
+     * @param dists Neighbor distances
+     * @param off Offset of the first neighbor
+     * @param stored Number of entries available
+     * @param k Parameter k
+     */
+    protected KNNView(IntBuffer ids, DoubleBuffer dists, int off, int stored, int k) {
+      this.ids = ids;
+      this.dists = dists;
+      this.off = off;
+      this.stored = stored;
+      this.k = k;
+      int size = Math.min(k, stored);
+      if(size > 0) {
+        final double kdist = dists.get(off + size - 1);
+        // Add all values tied:
+        while(size < stored && dists.get(off + size) <= kdist) {
+          size++;
+        }
+      }
+      this.size = size;
+    }
+
+    @Override
+    public int getK() {
+      return k;
+    }
+
+    @Override
+    public double getKNNDistance() {
+      return size >= k ? dists.get(off + k - 1) : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public KNNList subList(int k) {
+      return new KNNView(ids, dists, off, stored, k);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    @Override
+    public boolean contains(DBIDRef o) {
+      final int id = DBIDUtil.asInteger(o);
+      for(int i = 0; i < size; i++) {
+        if(ids.get(off + i) == id) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public DoubleDBIDPair get(int index) {
+      assert (index < size) : "Access beyond design size of list.";
+      return DBIDUtil.newPair(dists.get(off + index), DBIDUtil.importInteger(ids.get(off + index)));
+    }
+
+    @Override
+    public DBIDVar assignVar(int index, DBIDVar var) {
+      assert (index < size) : "Access beyond design size of list.";
+      var.set(iter().seek(index));
+      return var;
+    }
+
+    @Override
+    public DoubleDBIDList slice(int begin, int end) {
+      return new KNNView(ids, dists, off + begin, end - begin, end - begin);
+    }
+
+    @Override
+    public Itr iter() {
+      return new Itr();
+    }
+
+    /**
+     * Iterator for the view.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class Itr implements DoubleDBIDListIter {
+      /**
+       * Current position.
+       */
+      private int pos = 0;
+
+      @Override
+      public boolean valid() {
+        return pos < size && pos >= 0;
+      }
+
+      @Override
+      public Itr advance() {
+        pos++;
+        return this;
+      }
+
+      @Override
+      public Itr advance(int count) {
+        pos += count;
+        return this;
+      }
+
+      @Override
+      public Itr retract() {
+        --pos;
+        return this;
+      }
+
+      @Override
+      public Itr seek(int off) {
+        pos = off;
+        return this;
+      }
+
+      @Override
+      public int getOffset() {
+        return pos;
+      }
+
+      @Override
+      public double doubleValue() {
+        return dists.get(off + pos);
+      }
+
+      @Override
+      public DoubleDBIDPair getPair() {
+        return get(pos);
+      }
+
+      @Override
+      public int internalGetIndex() {
+        return ids.get(off + pos);
+      }
+    }
+  }
+}
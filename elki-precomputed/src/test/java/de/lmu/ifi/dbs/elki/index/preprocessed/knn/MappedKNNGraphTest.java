@@ -0,0 +1,154 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.application.cache.CacheDoubleDistanceKNNLists;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Test the memory-mapped kNN graph format.
+ *
+ * @author Erich Schubert
+ */
+public class MappedKNNGraphTest {
+  /**
+   * Test data.
+   */
+  static final String FILENAME = "elki/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  /**
+   * Data size.
+   */
+  static final int SIZE = 330;
+
+  @Test
+  public void testRoundtrip() throws IOException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(FILENAME, SIZE);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC), 10);
+    // Shuffled rows, and small segments, to test the row mapping.
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(rel.getDBIDs());
+    DBIDUtil.randomShuffle(ids, new RandomFactory(0L));
+    File file = File.createTempFile("knn", ".graph");
+    try {
+      MappedKNNGraph graph = MappedKNNGraph.create(file, ids, 10, 10 * 8 * 7);
+      ParallelCore.withCore(4, () -> {
+        // Write rows concurrently.
+        ParallelExecutor.run(SIZE, 16, (start, end) -> {
+          DBIDArrayIter it = ids.iter();
+          for(int i = start; i < end; i++) {
+            graph.put(i, knnq.getKNNForDBID(it.seek(i), 10));
+          }
+        });
+      });
+      graph.flush();
+
+      MappedKNNGraph read = MappedKNNGraph.open(file, 10 * 8 * 7);
+      assertEquals(SIZE, read.size());
+      assertEquals(10, read.getK());
+      assertTrue(!read.isContiguous());
+      DBIDArrayIter it = ids.iter();
+      for(int r = 0; r < SIZE; r++) {
+        it.seek(r);
+        assertTrue(DBIDUtil.equal(it, read.assignVar(r, DBIDUtil.newVar())));
+        assertSame(knnq.getKNNForDBID(it, 10), read.get(r, 10), 10);
+        // Prefix reuse:
+        assertSame(knnq.getKNNForDBID(it, 3), read.get(r, 3), 3);
+        assertSame(knnq.getKNNForDBID(it, 3), read.get(r, 10).subList(3), 3);
+      }
+
+      // Serve the lists via the preprocessor.
+      CachedDoubleDistanceKNNPreprocessor<DoubleVector> preproc = new CachedDoubleDistanceKNNPreprocessor<>(rel, EuclideanDistanceFunction.STATIC, 5, file);
+      preproc.initialize();
+      for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance()) {
+        assertSame(knnq.getKNNForDBID(iter, 5), preproc.get(iter), 5);
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testApplication() throws IOException {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(FILENAME, SIZE);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC), 10);
+    File file = File.createTempFile("knn", ".graph");
+    try {
+      new CacheDoubleDistanceKNNLists<DoubleVector>(db, EuclideanDistanceFunction.STATIC, 10, file, true).run();
+      assertTrue(MappedKNNGraph.isMappedGraph(file));
+      CachedDoubleDistanceKNNPreprocessor<DoubleVector> preproc = new CachedDoubleDistanceKNNPreprocessor<>(rel, EuclideanDistanceFunction.STATIC, 7, file);
+      preproc.initialize();
+      for(DBIDIter iter = rel.iterDBIDs(); iter.valid(); iter.advance()) {
+        assertSame(knnq.getKNNForDBID(iter, 7), preproc.get(iter), 7);
+      }
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Compare two kNN lists.
+   *
+   * @param exp Expected list
+   * @param got Actual list
+   * @param k k
+   */
+  private static void assertSame(KNNList exp, KNNList got, int k) {
+    assertEquals("k does not match.", k, got.getK());
+    assertEquals("kNN distance does not match.", exp.getKNNDistance(), got.getKNNDistance(), 0.);
+    // Ties beyond the stored k may be missing.
+    assertTrue("Result size does not match.", got.size() <= exp.size() && got.size() >= k);
+    int i = 0;
+    for(DoubleDBIDListIter e = exp.iter(), g = got.iter(); g.valid(); e.advance(), g.advance(), i++) {
+      assertEquals("Distance does not match.", e.doubleValue(), g.doubleValue(), 0.);
+      assertEquals("Distance does not match.", e.doubleValue(), got.get(i).doubleValue(), 0.);
+      assertTrue("Neighbor does not match.", DBIDUtil.equal(e, g));
+      assertTrue("Neighbor does not match.", DBIDUtil.equal(e, got.get(i)));
+    }
+    assertEquals(got.size(), i);
+  }
+}
@@ -23,7 +23,15 @@ package de.lmu.ifi.dbs.elki.index;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
@@ -33,6 +41,7 @@ import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
 import de.lmu.ifi.dbs.elki.database.ids.*;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
@@ -251,4 +260,108 @@ public abstract class AbstractIndexStructureTest {
       assertTrue("Wrong range result", DBIDUtil.equal(range.iter(), first));
     }
   }
+
+  /**
+   * Test concurrent kNN queries on a shared index, which must agree with a
+   * linear scan.
+   *
+   * @param factory Index factory
+   * @param expectKNNQuery Expected query class
+   */
+  protected void testConcurrentQueries(IndexFactory<?> factory, Class<?> expectKNNQuery) {
+    ListParameterization inputparams = new ListParameterization() //
+        .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1)) //
+        .addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, factory);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    final KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq.getClass(), expectKNNQuery.isAssignableFrom(knnq.getClass()));
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(rep.getDBIDs());
+    final LinearScanDistanceKNNQuery<DoubleVector> linq = new LinearScanDistanceKNNQuery<>(dist);
+    final int threads = 4;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>(threads);
+      for(int t = 0; t < threads; t++) {
+        final int offset = t;
+        futures.add(pool.submit(() -> {
+          // Each thread queries all objects, starting at a different offset
+          DBIDArrayIter it = ids.iter();
+          for(int i = 0; i < ids.size(); i++) {
+            it.seek((i + offset * ids.size() / threads) % ids.size());
+            KNNList exp = linq.getKNNForDBID(it, k), got = knnq.getKNNForDBID(it, k);
+            assertEquals("Result size does not match linear scan.", exp.size(), got.size());
+            for(DoubleDBIDListIter e = exp.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+              assertEquals("Distance does not match linear scan.", e.doubleValue(), g.doubleValue(), 1e-15);
+            }
+          }
+        }));
+      }
+      for(Future<?> f : futures) {
+        f.get();
+      }
+    }
+    catch(Exception e) {
+      throw new AssertionError("Concurrent query failed.", e);
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Test storing and restoring a snapshot of the index.
+   *
+   * @param factory Index factory
+   * @param expectKNNQuery expected knn query class
+   */
+  protected void testSnapshot(IndexFactory<?> factory, Class<?> expectKNNQuery) {
+    File dir = null;
+    try {
+      dir = Files.createTempDirectory("elki-snapshot").toFile();
+      ListParameterization inputparams = new ListParameterization() //
+          .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1)) //
+          .addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, factory) //
+          .addParameter(StaticArrayDatabase.Parameterizer.SNAPSHOT_ID, dir);
+      Database db1 = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+      File[] files = dir.listFiles();
+      assertEquals("Snapshot was not written.", 1, files.length);
+      // A rebuild would replace the file, and reset the timestamp.
+      final long mtime = 1000000000000L;
+      assertTrue(files[0].setLastModified(mtime));
+
+      inputparams = new ListParameterization() //
+          .addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1)) //
+          .addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, factory) //
+          .addParameter(StaticArrayDatabase.Parameterizer.SNAPSHOT_ID, dir);
+      Database db2 = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams);
+      assertEquals("Snapshot was not reused.", mtime, files[0].lastModified());
+
+      Relation<DoubleVector> rep1 = db1.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      Relation<DoubleVector> rep2 = db2.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+      KNNQuery<DoubleVector> knnq1 = db1.getKNNQuery(db1.getDistanceQuery(rep1, EuclideanDistanceFunction.STATIC), k);
+      KNNQuery<DoubleVector> knnq2 = db2.getKNNQuery(db2.getDistanceQuery(rep2, EuclideanDistanceFunction.STATIC), k);
+      assertTrue("Returned knn query is not of expected class: expected " + expectKNNQuery + " got " + knnq2.getClass(), expectKNNQuery.isAssignableFrom(knnq2.getClass()));
+      for(DBIDIter it = rep2.iterDBIDs(); it.valid(); it.advance()) {
+        KNNList exp = knnq1.getKNNForDBID(it, k), got = knnq2.getKNNForDBID(it, k);
+        assertEquals("Result size does not match.", exp.size(), got.size());
+        for(DoubleDBIDListIter e = exp.iter(), g = got.iter(); e.valid(); e.advance(), g.advance()) {
+          assertEquals("Distance does not match.", e.doubleValue(), g.doubleValue(), 0.);
+          assertTrue("Neighbor does not match.", DBIDUtil.equal(e, g));
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AssertionError("Could not create temporary directory.", e);
+    }
+    finally {
+      if(dir != null) {
+        for(File f : dir.listFiles()) {
+          f.delete();
+        }
+        dir.delete();
+      }
+    }
+  }
 }
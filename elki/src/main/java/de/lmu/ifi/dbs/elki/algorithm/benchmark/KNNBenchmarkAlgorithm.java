@@ -28,7 +28,9 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
@@ -116,6 +118,8 @@ public class KNNBenchmarkAlgorithm<O> extends AbstractDistanceBasedAlgorithm<O,
     // Get a distance and kNN query instance.
     DistanceQuery<O> distQuery = database.getDistanceQuery(relation, getDistanceFunction());
     KNNQuery<O> knnQuery = database.getKNNQuery(distQuery, k);
+    // Reuse a result buffer for linear scans; indexes return their lists.
+    final boolean reuse = knnQuery instanceof LinearScanQuery;
 
     // No query set - use original database.
     if(queries == null) {
@@ -123,15 +127,23 @@ public class KNNBenchmarkAlgorithm<O> extends AbstractDistanceBasedAlgorithm<O,
       FiniteProgress prog = LOG.isVeryVerbose() ? new FiniteProgress("kNN queries", sample.size(), LOG) : null;
       int hash = 0;
       MeanVariance mv = new MeanVariance(), mvdist = new MeanVariance();
+      ModifiableDoubleDBIDList buf = reuse ? DBIDUtil.newDistanceDBIDList(k) : null;
       for(DBIDIter iditer = sample.iter(); iditer.valid(); iditer.advance()) {
-        KNNList knns = knnQuery.getKNNForDBID(iditer, k);
+        final DoubleDBIDList knns;
+        if(buf != null) {
+          knnQuery.getKNNForDBID(iditer, k, buf);
+          knns = buf;
+        }
+        else {
+          knns = knnQuery.getKNNForDBID(iditer, k);
+        }
         int ichecksum = 0;
         for(DBIDIter it = knns.iter(); it.valid(); it.advance()) {
           ichecksum += DBIDUtil.asInteger(it);
         }
         hash = Util.mixHashCodes(hash, ichecksum);
         mv.put(knns.size());
-        mvdist.put(knns.getKNNDistance());
+        mvdist.put(DBIDUtil.kNNDistance(knns, k));
         LOG.incrementProcessed(prog);
       }
       LOG.ensureCompleted(prog);
@@ -164,19 +176,27 @@ public class KNNBenchmarkAlgorithm<O> extends AbstractDistanceBasedAlgorithm<O,
       FiniteProgress prog = LOG.isVeryVerbose() ? new FiniteProgress("kNN queries", sample.size(), LOG) : null;
       int hash = 0;
       MeanVariance mv = new MeanVariance(), mvdist = new MeanVariance();
+      ModifiableDoubleDBIDList buf = reuse ? DBIDUtil.newDistanceDBIDList(k) : null;
       for(DBIDIter iditer = sample.iter(); iditer.valid(); iditer.advance()) {
         int off = sids.binarySearch(iditer);
         assert (off >= 0);
         @SuppressWarnings("unchecked")
         O o = (O) bundle.data(off, col);
-        KNNList knns = knnQuery.getKNNForObject(o, k);
+        final DoubleDBIDList knns;
+        if(buf != null) {
+          knnQuery.getKNNForObject(o, k, buf);
+          knns = buf;
+        }
+        else {
+          knns = knnQuery.getKNNForObject(o, k);
+        }
         int ichecksum = 0;
         for(DBIDIter it = knns.iter(); it.valid(); it.advance()) {
           ichecksum += DBIDUtil.asInteger(it);
         }
         hash = Util.mixHashCodes(hash, ichecksum);
         mv.put(knns.size());
-        mvdist.put(knns.getKNNDistance());
+        mvdist.put(DBIDUtil.kNNDistance(knns, k));
         LOG.incrementProcessed(prog);
       }
       LOG.ensureCompleted(prog);
@@ -22,8 +22,15 @@ package de.lmu.ifi.dbs.elki.application;
 
 import de.lmu.ifi.dbs.elki.KDDTask;
 import de.lmu.ifi.dbs.elki.algorithm.Algorithm;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.GlobalDataStoreFactory;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 import de.lmu.ifi.dbs.elki.workflow.OutputStep;
 
 /**
@@ -43,19 +50,82 @@ public class KDDCLIApplication extends AbstractApplication {
    */
   KDDTask task;
 
+  /**
+   * Number of threads to use for parallel processing, 0 for the default.
+   */
+  int threads;
+
+  /**
+   * Storage factory to use, {@code null} for the default.
+   */
+  DataStoreFactory storage;
+
   /**
    * Constructor.
    * 
    * @param task Task to run
    */
   public KDDCLIApplication(KDDTask task) {
+    this(task, 0, null);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param task Task to run
+   * @param threads Number of threads to use, 0 for the default core.
+   */
+  public KDDCLIApplication(KDDTask task, int threads) {
+    this(task, threads, null);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param task Task to run
+   * @param threads Number of threads to use, 0 for the default core.
+   * @param storage Storage factory to use, {@code null} for the default.
+   */
+  public KDDCLIApplication(KDDTask task, int threads, DataStoreFactory storage) {
     super();
     this.task = task;
+    this.threads = threads;
+    this.storage = storage;
   }
 
   @Override
   public void run() {
-    task.run();
+    if(storage == null) {
+      runTask();
+      return;
+    }
+    DataStoreFactory prev = GlobalDataStoreFactory.setFactory(storage);
+    try {
+      runTask();
+    }
+    finally {
+      GlobalDataStoreFactory.setFactory(prev);
+    }
+  }
+
+  /**
+   * Run the task, with the configured number of threads.
+   */
+  private void runTask() {
+    if(threads <= 0) {
+      task.run();
+      return;
+    }
+    // Use a separate pool for this run:
+    ParallelCore core = new ParallelCore(threads);
+    ParallelCore prev = ParallelCore.setCore(core);
+    try {
+      task.run();
+    }
+    finally {
+      ParallelCore.setCore(prev);
+      core.shutdown();
+    }
   }
 
   /**
@@ -66,20 +136,57 @@ public class KDDCLIApplication extends AbstractApplication {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractApplication.Parameterizer {
+    /**
+     * Number of threads to use for parallel processing.
+     * <p>
+     * Key: {@code -parallel.threads}
+     * </p>
+     */
+    public static final OptionID THREADS_ID = new OptionID("parallel.threads", "Number of threads to use for parallel algorithms. By default, all available processors are used.");
+
+    /**
+     * Storage factory for per-object data, e.g. for off-heap storage.
+     * <p>
+     * Key: {@code -datastore.factory}
+     * </p>
+     */
+    public static final OptionID STORAGE_ID = new OptionID("datastore.factory", "Storage factory for per-object data of algorithms. By default, the data is kept on the Java heap.");
+
     /**
      * The KDD Task to perform.
      */
     protected KDDTask task;
 
+    /**
+     * Storage factory, {@code null} for the default.
+     */
+    protected DataStoreFactory storage;
+
+    /**
+     * Number of threads to use, 0 for the default.
+     */
+    protected int threads = 0;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
+      IntParameter threadsP = new IntParameter(THREADS_ID) //
+          .setOptional(true) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(threadsP)) {
+        threads = threadsP.intValue();
+      }
+      ObjectParameter<DataStoreFactory> storageP = new ObjectParameter<>(STORAGE_ID, DataStoreFactory.class);
+      storageP.setOptional(true);
+      if(config.grab(storageP)) {
+        storage = storageP.instantiateClass(config);
+      }
       task = config.tryInstantiate(KDDTask.class);
     }
 
     @Override
     protected KDDCLIApplication makeInstance() {
-      return new KDDCLIApplication(task);
+      return new KDDCLIApplication(task, threads, storage);
     }
   }
 
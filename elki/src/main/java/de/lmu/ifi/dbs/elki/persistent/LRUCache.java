@@ -34,6 +34,9 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * This cache has a fixed maximum number of objects (<code>cacheSize</code>). If
  * the cache is full and another object is added, the LRU (least recently used)
  * object is dropped.
+ * <p>
+ * This cache is synchronized, and a single large scan will evict all other
+ * pages. {@link TwoQueuePageCache} avoids both.
  * 
  * @author Elke Achtert
  * @since 0.2
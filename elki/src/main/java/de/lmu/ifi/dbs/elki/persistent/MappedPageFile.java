@@ -0,0 +1,386 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectInput;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferObjectOutput;
+
+/**
+ * A page file that maps the file into memory using {@link FileChannel}, and
+ * reads and writes pages directly from and to the mapped buffer.
+ * <p>
+ * In contrast to {@link PersistentPageFile}, pages are not round-tripped
+ * through Java serialization: the {@link ExternalizablePage} methods are
+ * invoked with a {@link ByteBufferObjectInput} or {@link
+ * ByteBufferObjectOutput} on a slice of the mapping. The file layout (header,
+ * page offsets, empty page list) is the same, but the page contents are not
+ * compatible with {@link PersistentPageFile}.
+ * <p>
+ * The file is mapped in segments of several pages each. Reading pages does
+ * not require locking, and is safe for concurrent readers. If read-ahead is
+ * enabled, each segment is loaded into memory entirely when it is first
+ * mapped, which also prefetches all sibling pages within the segment.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf MappedByteBuffer
+ *
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Target size of a mapped segment.
+   */
+  private static final int SEGMENT_SIZE = 1 << 26;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * The type of pages we use.
+   */
+  protected final Class<P> pageclass;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Load mapped segments entirely.
+   */
+  private boolean readahead;
+
+  /**
+   * Number of pages per mapped segment.
+   */
+  private final int pagesPerSegment;
+
+  /**
+   * File offset of the first page.
+   */
+  private long pageOffset;
+
+  /**
+   * Mapped segments, replaced (not modified) when a segment is added.
+   */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Constructor.
+   *
+   * @param pageSize the page size
+   * @param fileName the file name
+   * @param pageclass the class of pages to be used
+   * @param readahead Load each mapped segment into memory entirely
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass, boolean readahead) {
+    super(pageSize);
+    this.pageclass = pageclass;
+    this.readahead = readahead;
+    this.pagesPerSegment = Math.max(1, SEGMENT_SIZE / pageSize);
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      file = new RandomAccessFile(f, "rw");
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading persistent page file.", e);
+    }
+  }
+
+  /**
+   * Get a buffer for a single page.
+   *
+   * @param pageID Page id
+   * @return Buffer, positioned at the beginning of the page
+   * @throws IOException on mapping errors
+   */
+  private ByteBuffer getPageBuffer(int pageID) throws IOException {
+    final int seg = pageID / pagesPerSegment;
+    MappedByteBuffer[] segs = segments;
+    MappedByteBuffer map = seg < segs.length ? segs[seg] : null;
+    map = map != null ? map : mapSegment(seg);
+    // Duplicate, because other threads may use the same segment.
+    ByteBuffer buf = map.duplicate();
+    final int off = (pageID - seg * pagesPerSegment) * pageSize;
+    buf.limit(off + pageSize).position(off);
+    return buf.slice();
+  }
+
+  /**
+   * Map a segment of the file.
+   *
+   * @param seg Segment number
+   * @return Mapped buffer
+   * @throws IOException on mapping errors
+   */
+  private synchronized MappedByteBuffer mapSegment(int seg) throws IOException {
+    MappedByteBuffer[] segs = segments;
+    if(seg < segs.length && segs[seg] != null) {
+      return segs[seg];
+    }
+    final long segsize = pagesPerSegment * (long) pageSize;
+    // Note: this will enlarge the file, if necessary.
+    MappedByteBuffer map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, pageOffset + seg * segsize, segsize);
+    if(readahead) {
+      map.load();
+    }
+    segs = Arrays.copyOf(segs, Math.max(seg + 1, segs.length));
+    segs[seg] = map;
+    segments = segs;
+    return map;
+  }
+
+  /**
+   * Reads the page with the given id from this file.
+   *
+   * @param pageID the id of the page to be returned
+   * @return the page with the given pageId
+   */
+  @Override
+  public P readPage(int pageID) {
+    try {
+      countRead();
+      ByteBuffer buffer = getPageBuffer(pageID);
+      int type = buffer.getInt();
+      if(type == EMPTY_PAGE) {
+        return null;
+      }
+      if(type != FILLED_PAGE) {
+        throw new IllegalArgumentException("Unknown type: " + type);
+      }
+      P page = pageclass.newInstance();
+      page.readExternal(new ByteBufferObjectInput(buffer));
+      return page;
+    }
+    catch(InstantiationException | IllegalAccessException | ClassNotFoundException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
+    }
+  }
+
+  /**
+   * Deletes the node with the specified id from this file.
+   *
+   * @param pageID the id of the node to be deleted
+   */
+  @Override
+  public void deletePage(int pageID) {
+    try {
+      // put id to empty pages list
+      super.deletePage(pageID);
+
+      // delete from file
+      countWrite();
+      getPageBuffer(pageID).putInt(EMPTY_PAGE);
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    try {
+      countWrite();
+      ByteBuffer buffer = getPageBuffer(pageID);
+      buffer.putInt(FILLED_PAGE);
+      page.writeExternal(new ByteBufferObjectOutput(buffer));
+      page.setDirty(false);
+    }
+    catch(BufferOverflowException e) {
+      throw new IllegalArgumentException("Size of page " + page + " is greater than specified pagesize: " + pageSize);
+    }
+    catch(IOException e) {
+      throw new RuntimeException("Error writing to page file.", e);
+    }
+  }
+
+  /**
+   * Closes this file.
+   */
+  @Override
+  public void close() {
+    try {
+      // Note: super.close() would clear the file.
+      unmap();
+      // Remove the unused part of the last segment.
+      file.setLength(pageOffset + nextPageID * (long) pageSize);
+      if(header instanceof TreeIndexHeader) {
+        // write the list of empty pages to the end of the file
+        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+        ((TreeIndexHeader) header).setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Write back and release all mapped segments.
+   */
+  private synchronized void unmap() {
+    for(MappedByteBuffer map : segments) {
+      if(map != null) {
+        map.force();
+      }
+    }
+    segments = new MappedByteBuffer[0];
+  }
+
+  /**
+   * Clears this PageFile.
+   */
+  @Override
+  public void clear() {
+    try {
+      unmap();
+      file.setLength(header.size());
+    }
+    catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Get the header of this persistent page file.
+   *
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * Set the next page id to the given value. If this means that any page ids
+   * stored in <code>emptyPages</code> are smaller than
+   * <code>next_page_id</code>, they are removed from this file's observation
+   * stack.
+   *
+   * @param next_page_id the id of the next page to be inserted (if there are no
+   *        more empty pages to be filled)
+   */
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    try {
+      this.header = header;
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        pageOffset = header.getReservedPages() * (long) pageSize;
+
+        // reading empty nodes in Stack
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new RuntimeException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+        }
+        else { // must scan complete file
+          final int numpages = (int) ((file.length() - pageOffset) / pageSize);
+          for(int i = 0; i < numpages; i++) {
+            int type = getPageBuffer(i).getInt();
+            if(type == EMPTY_PAGE) {
+              emptyPages.push(i);
+            }
+            else if(type == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new IllegalArgumentException("Unknown type: " + type);
+            }
+          }
+        }
+      }
+      // create new file
+      else {
+        LOG.debug("Initializing with a new page file.");
+        header.writeHeader(file);
+        pageOffset = header.getReservedPages() * (long) pageSize;
+      }
+    }
+    catch(IOException e) {
+      throw new RuntimeException("IOException occurred.", e);
+    }
+
+    // Return "new file" status
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -27,6 +27,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -114,10 +116,13 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
     try {
       countRead();
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
-      byte[] buffer = new byte[pageSize];
-      file.seek(offset);
-      file.read(buffer);
-      return byteArrayToPage(buffer);
+      // Positional reads do not modify the file pointer, and are thread-safe.
+      ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+      FileChannel channel = file.getChannel();
+      while(buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+        // Read until full, or end of file.
+      }
+      return byteArrayToPage(buffer.array());
     }
     catch(IOException e) {
       throw new RuntimeException("IOException occurred during reading of page " + pageID + "\n", e);
@@ -0,0 +1,490 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.lmu.ifi.dbs.elki.index.tree.Node;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntLinkedOpenHashSet;
+
+/**
+ * Page cache using the scan resistant 2Q replacement policy, split into
+ * independently locked stripes for concurrent access.
+ * <p>
+ * Pages referenced for the first time enter a small FIFO queue. Only when a
+ * page is referenced again after it was evicted from this queue (which is
+ * detected via a queue of recently evicted page ids), it is added to the main
+ * LRU queue. A single large scan therefore only replaces pages in the FIFO
+ * queue, but not the frequently used pages in the main queue.
+ * <p>
+ * Optionally, directory nodes of tree indexes are pinned: they are kept in
+ * memory outside of the cache size limit, and are never evicted.
+ * <p>
+ * Reading pages is safe for concurrent readers, as long as the backing page
+ * file supports concurrent reads, too. Pages are distributed to the stripes by
+ * their page id, and each stripe is locked separately. Backing pages are read
+ * without holding a lock.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PageFile
+ *
+ * @param <P> Page type
+ */
+@Reference(authors = "T. Johnson, D. Shasha", //
+    title = "2Q: A Low Overhead High Performance Buffer Management Replacement Algorithm", //
+    booktitle = "Proc. 20th Int. Conf. on Very Large Data Bases (VLDB'94)", //
+    url = "http://www.vldb.org/conf/1994/P439.PDF", //
+    bibkey = "DBLP:conf/vldb/JohnsonS94")
+public class TwoQueuePageCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(TwoQueuePageCache.class);
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * Number of stripes.
+   */
+  protected int numstripes;
+
+  /**
+   * Pin directory nodes.
+   */
+  protected boolean pinDirectory;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Cache stripes.
+   */
+  private List<Stripe<P>> stripes;
+
+  /**
+   * Pinned pages.
+   */
+  private ConcurrentHashMap<Integer, P> pinned = new ConcurrentHashMap<>();
+
+  /**
+   * Statistics: cache hits, misses and evictions.
+   */
+  private Counter hits, misses, evictions;
+
+  /**
+   * Constructor.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param numstripes Number of stripes
+   * @param pinDirectory Pin directory nodes in memory
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public TwoQueuePageCache(int cacheSizeBytes, int numstripes, boolean pinDirectory, PageFile<P> file) {
+    super();
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.numstripes = numstripes;
+    this.pinDirectory = pinDirectory;
+    this.file = file;
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      hits = LOG.newAtomicCounter(prefix + ".hits");
+      misses = LOG.newAtomicCounter(prefix + ".misses");
+      evictions = LOG.newAtomicCounter(prefix + ".evictions");
+    }
+  }
+
+  /**
+   * Get the stripe of a page.
+   *
+   * @param pageID Page id
+   * @return Stripe
+   */
+  private Stripe<P> stripe(int pageID) {
+    return stripes.get(pageID % stripes.size());
+  }
+
+  /**
+   * Test whether a page is to be pinned.
+   *
+   * @param page Page
+   * @return {@code true} for directory nodes, when pinning is enabled.
+   */
+  private boolean isPinned(P page) {
+    return pinDirectory && page instanceof Node && !((Node<?>) page).isLeaf();
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    P page = pinned.get(pageID);
+    if(page == null) {
+      final Stripe<P> stripe = stripe(pageID);
+      synchronized(stripe) {
+        page = stripe.get(pageID);
+      }
+    }
+    if(page != null) {
+      count(hits);
+      return page;
+    }
+    count(misses);
+    // Read without holding the lock:
+    page = file.readPage(pageID);
+    if(page == null) {
+      return null;
+    }
+    if(isPinned(page)) {
+      P prev = pinned.putIfAbsent(pageID, page);
+      return prev != null ? prev : page;
+    }
+    final Stripe<P> stripe = stripe(pageID);
+    synchronized(stripe) {
+      // Another thread may have loaded the page in the meantime.
+      P prev = stripe.get(pageID);
+      if(prev != null) {
+        return prev;
+      }
+      stripe.add(pageID, page);
+      evict(stripe);
+    }
+    return page;
+  }
+
+  @Override
+  protected void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    final Stripe<P> stripe = stripe(pageID);
+    // Trees may reassign page ids, e.g., when splitting the root.
+    if(isPinned(page)) {
+      pinned.put(pageID, page);
+      synchronized(stripe) {
+        stripe.remove(pageID);
+      }
+      return;
+    }
+    pinned.remove(pageID);
+    synchronized(stripe) {
+      if(!stripe.replace(pageID, page)) {
+        stripe.add(pageID, page);
+        evict(stripe);
+      }
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    countWrite();
+    if(pinned.remove(pageID) == null) {
+      final Stripe<P> stripe = stripe(pageID);
+      synchronized(stripe) {
+        stripe.remove(pageID);
+      }
+    }
+    file.deletePage(pageID);
+  }
+
+  /**
+   * Evict pages from a stripe, until it is within its capacity.
+   *
+   * @param stripe Stripe (must be locked by the caller)
+   */
+  private void evict(Stripe<P> stripe) {
+    while(stripe.size() > stripe.capacity) {
+      expirePage(stripe.evict());
+      count(evictions);
+    }
+  }
+
+  /**
+   * Write page through to disk.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to backing:" + page.getPageID());
+    }
+    if(page.isDirty()) {
+      file.writePage(page);
+    }
+  }
+
+  /**
+   * Increment a statistics counter.
+   *
+   * @param counter Counter, may be {@code null}
+   */
+  private static void count(Counter counter) {
+    if(counter != null) {
+      counter.increment();
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    final int cacheSize = cacheSizeBytes / header.getPageSize();
+    if(cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    final int num = Math.max(1, Math.min(numstripes, cacheSize));
+    if(LOG.isDebugging()) {
+      LOG.debug("2Q cache size is " + cacheSize + " pages in " + num + " stripes.");
+    }
+    stripes = new ArrayList<>(num);
+    for(int i = 0; i < num; i++) {
+      // Distribute the remainder to the first stripes.
+      stripes.add(new Stripe<>(cacheSize / num + (i < cacheSize % num ? 1 : 0)));
+    }
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public void flush() {
+    for(Stripe<P> stripe : stripes) {
+      synchronized(stripe) {
+        while(stripe.size() > 0) {
+          expirePage(stripe.evict());
+        }
+        stripe.ghost.clear();
+      }
+    }
+    for(P page : pinned.values()) {
+      expirePage(page);
+    }
+    pinned.clear();
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public void clear() {
+    for(Stripe<P> stripe : stripes) {
+      synchronized(stripe) {
+        stripe.in.clear();
+        stripe.main.clear();
+        stripe.ghost.clear();
+      }
+    }
+    pinned.clear();
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".pinned", pinned.size()));
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * A single stripe of the cache, with its own 2Q queues.
+   *
+   * @author Erich Schubert
+   *
+   * @param <P> Page type
+   */
+  private static class Stripe<P> {
+    /**
+     * FIFO queue of pages referenced once.
+     */
+    final Int2ObjectLinkedOpenHashMap<P> in = new Int2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * LRU queue of frequently referenced pages.
+     */
+    final Int2ObjectLinkedOpenHashMap<P> main = new Int2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * Ids of pages recently evicted from the FIFO queue.
+     */
+    final IntLinkedOpenHashSet ghost = new IntLinkedOpenHashSet();
+
+    /**
+     * Maximum number of pages in this stripe.
+     */
+    final int capacity;
+
+    /**
+     * Target size of the FIFO queue.
+     */
+    final int kin;
+
+    /**
+     * Maximum number of ghost entries.
+     */
+    final int kout;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Capacity
+     */
+    Stripe(int capacity) {
+      this.capacity = capacity;
+      // Parameters as suggested by Johnson and Shasha:
+      this.kin = Math.max(1, capacity >> 2);
+      this.kout = Math.max(1, capacity >> 1);
+    }
+
+    /**
+     * Number of cached pages.
+     *
+     * @return Size
+     */
+    int size() {
+      return in.size() + main.size();
+    }
+
+    /**
+     * Get a cached page, and update the queues.
+     *
+     * @param pageID Page id
+     * @return Page, or {@code null}
+     */
+    P get(int pageID) {
+      P page = main.getAndMoveToLast(pageID);
+      // Pages in the FIFO queue are not moved on access.
+      return page != null ? page : in.get(pageID);
+    }
+
+    /**
+     * Add a new page.
+     *
+     * @param pageID Page id
+     * @param page Page
+     */
+    void add(int pageID, P page) {
+      if(ghost.remove(pageID)) {
+        main.putAndMoveToLast(pageID, page);
+      }
+      else {
+        in.putAndMoveToLast(pageID, page);
+      }
+    }
+
+    /**
+     * Replace a cached page.
+     *
+     * @param pageID Page id
+     * @param page New page
+     * @return {@code false} if the page was not cached.
+     */
+    boolean replace(int pageID, P page) {
+      if(main.containsKey(pageID)) {
+        main.putAndMoveToLast(pageID, page);
+        return true;
+      }
+      if(in.containsKey(pageID)) {
+        in.put(pageID, page);
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Remove a page.
+     *
+     * @param pageID Page id
+     */
+    void remove(int pageID) {
+      if(main.remove(pageID) == null && in.remove(pageID) == null) {
+        ghost.remove(pageID);
+      }
+    }
+
+    /**
+     * Choose and remove a page to evict.
+     *
+     * @return Evicted page
+     */
+    P evict() {
+      if(in.size() > kin || main.isEmpty()) {
+        final int pageID = in.firstIntKey();
+        P page = in.removeFirst();
+        ghost.add(pageID);
+        if(ghost.size() > kout) {
+          ghost.removeFirstInt();
+        }
+        return page;
+      }
+      return main.removeFirst();
+    }
+  }
+}
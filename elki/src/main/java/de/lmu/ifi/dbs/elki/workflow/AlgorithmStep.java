@@ -29,6 +29,7 @@ import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.LoggingConfiguration;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.BasicResult;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.result.ResultHierarchy;
@@ -97,7 +98,12 @@ public class AlgorithmStep implements WorkflowStep {
     for(Algorithm algorithm : algorithms) {
       Thread.currentThread().setName(algorithm.toString());
       Duration duration = LOG.isStatistics() ? LOG.newDuration(algorithm.getClass().getName() + ".runtime").begin() : null;
-      Result res = algorithm.run(database);
+      // Run on a separate core, to measure the utilization of this run only.
+      Result res = ParallelCore.withCore(ParallelCore.getCore().getParallelism(), () -> {
+        Result r = algorithm.run(database);
+        ParallelCore.getCore().logStatistics();
+        return r;
+      });
       if(duration != null) {
         LOG.statistics(duration.end());
       }
@@ -0,0 +1,128 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.PackedNumberVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.AbstractDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the packed vector storage against the regular materialized storage.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedRelationTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testPackedHeap() {
+    testPacked(false, false);
+  }
+
+  @Test
+  public void testPackedOffHeap() {
+    testPacked(true, false);
+  }
+
+  @Test
+  public void testPackedFloatHeap() {
+    testPacked(false, true);
+  }
+
+  @Test
+  public void testPackedFloatOffHeap() {
+    testPacked(true, true);
+  }
+
+  private void testPacked(boolean offheap, boolean single) {
+    ListParameterization dparams = new ListParameterization();
+    dparams.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    if(single) {
+      dparams.addParameter(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, FloatVector.FACTORY);
+    }
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, dparams);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractDatabaseConnection.Parameterizer.FILTERS_ID, new FixedDBIDsFilter(1));
+    if(single) {
+      params.addParameter(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, FloatVector.FACTORY);
+    }
+    params.addFlag(StaticArrayDatabase.Parameterizer.PACKED_ID);
+    if(offheap) {
+      params.addFlag(StaticArrayDatabase.Parameterizer.OFFHEAP_ID);
+    }
+    Database pdb = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, rel.size(), params);
+    Relation<NumberVector> prel = pdb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Relation not packed.", prel instanceof PackedNumberVectorRelation);
+    assertEquals("Precision not as expected.", single, ((PackedNumberVectorRelation) prel).isSinglePrecision());
+
+    final int dim = rel.get(rel.iterDBIDs()).getDimensionality();
+    for(DBIDIter it = rel.iterDBIDs(), pit = prel.iterDBIDs(); it.valid(); it.advance(), pit.advance()) {
+      assertTrue("DBIDs do not agree.", DBIDUtil.equal(it, pit));
+      NumberVector v = rel.get(it), pv = prel.get(pit);
+      assertEquals("Dimensionality does not agree.", dim, pv.getDimensionality());
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Values do not agree.", v.doubleValue(d), pv.doubleValue(d), 0.);
+      }
+    }
+
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    DistanceQuery<NumberVector> pdq = prel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = rel.getKNNQuery(dq, 10);
+    KNNQuery<NumberVector> pknnq = prel.getKNNQuery(pdq, 10);
+    RangeQuery<NumberVector> rq = rel.getRangeQuery(dq);
+    RangeQuery<NumberVector> prq = prel.getRangeQuery(pdq);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 100; it.advance(), i++) {
+      assertSameResult(knnq.getKNNForDBID(it, 10), pknnq.getKNNForDBID(it, 10));
+      assertSameResult(rq.getRangeForDBID(it, .1), prq.getRangeForDBID(it, .1));
+    }
+  }
+
+  private void assertSameResult(DoubleDBIDList expected, DoubleDBIDList actual) {
+    assertEquals("Result sizes do not agree.", expected.size(), actual.size());
+    for(DoubleDBIDListIter e = expected.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertEquals("Distances do not agree.", e.doubleValue(), a.doubleValue(), 1e-15);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the batch and reused-list kNN queries of the Euclidean linear scan
+ * against single queries.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class LinearScanEuclideanDistanceKNNQueryTest {
+  public static final String filename = "elki/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testBulk() {
+    testBulk(new ListParameterization());
+  }
+
+  @Test
+  public void testBulkPacked() {
+    ListParameterization params = new ListParameterization();
+    params.addFlag(StaticArrayDatabase.Parameterizer.PACKED_ID);
+    testBulk(params);
+  }
+
+  @Test
+  public void testReusedList() {
+    testReusedList(new ListParameterization());
+    ListParameterization params = new ListParameterization();
+    params.addFlag(StaticArrayDatabase.Parameterizer.PACKED_ID);
+    testReusedList(params);
+  }
+
+  private void testReusedList(ListParameterization params) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = rel.getKNNQuery(dq, 10);
+    ModifiableDoubleDBIDList actual = DBIDUtil.newDistanceDBIDList();
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList expected = knnq.getKNNForDBID(it, 10);
+      knnq.getKNNForDBID(it, 10, actual);
+      assertSameResult(expected, actual);
+      knnq.getKNNForObject(rel.get(it), 10, actual);
+      assertSameResult(expected, actual);
+    }
+  }
+
+  private static void assertSameResult(DoubleDBIDList expected, DoubleDBIDList actual) {
+    assertEquals("Result sizes do not agree.", expected.size(), actual.size());
+    for(DoubleDBIDListIter e = expected.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertEquals("Distances do not agree.", e.doubleValue(), a.doubleValue(), 0.);
+      assertTrue("Neighbors do not agree.", DBIDUtil.equal(e, a));
+    }
+  }
+
+  private void testBulk(ListParameterization params) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = rel.getKNNQuery(dq, 10);
+    assertTrue("Unexpected query class.", knnq instanceof LinearScanEuclideanDistanceKNNQuery);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, 10);
+    assertEquals("Wrong number of results.", ids.size(), bulk.size());
+    int i = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      assertSameResult(knnq.getKNNForDBID(it, 10), bulk.get(i));
+    }
+  }
+}
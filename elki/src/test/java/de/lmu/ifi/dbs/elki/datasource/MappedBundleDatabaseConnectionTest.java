@@ -0,0 +1,180 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.AbstractClusterAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansLloyd;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MappedBundleRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MappedBundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.FixedDBIDsFilter;
+import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the memory-mapped bundle connection against the regular in-memory
+ * database.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class MappedBundleDatabaseConnectionTest extends AbstractClusterAlgorithmTest {
+  public static final String filename = UNITTEST + "different-densities-2d-no-noise.ascii";
+
+  /**
+   * Temporary bundle file.
+   */
+  private static File bundlefile;
+
+  /**
+   * Data loaded into memory.
+   */
+  private static MultipleObjectsBundle bundle;
+
+  @BeforeClass
+  public static void writeBundle() throws IOException {
+    try (InputStream is = open(filename)) {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(InputStreamDatabaseConnection.Parameterizer.STREAM_ID, is);
+      DatabaseConnection dbc = ClassGenericsUtil.parameterizeOrAbort(InputStreamDatabaseConnection.class, params);
+      bundle = dbc.loadData();
+    }
+    bundlefile = File.createTempFile("elki-unittest", ".bundle");
+    try (FileOutputStream fos = new FileOutputStream(bundlefile);
+        FileChannel channel = fos.getChannel()) {
+      new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+    }
+  }
+
+  @AfterClass
+  public static void removeBundle() {
+    bundlefile.delete();
+  }
+
+  @Test
+  public void testQueries() {
+    Database db = makeSimpleDatabase(filename, -1);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Database mdb = makeMappedDatabase();
+    Relation<NumberVector> mrel = mdb.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    assertTrue("Relation not mapped.", mrel instanceof MappedBundleRelation);
+    assertEquals("Sizes do not agree.", rel.size(), mrel.size());
+
+    for(DBIDIter it = rel.iterDBIDs(), mit = mrel.iterDBIDs(); it.valid(); it.advance(), mit.advance()) {
+      assertTrue("DBIDs do not agree.", DBIDUtil.equal(it, mit));
+      assertVectorEquals(rel.get(it), mrel.get(mit));
+    }
+
+    DistanceQuery<NumberVector> dq = rel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    DistanceQuery<NumberVector> mdq = mrel.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = rel.getKNNQuery(dq, 10);
+    KNNQuery<NumberVector> mknnq = mrel.getKNNQuery(mdq, 10);
+    RangeQuery<NumberVector> rq = rel.getRangeQuery(dq);
+    RangeQuery<NumberVector> mrq = mrel.getRangeQuery(mdq);
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 100; it.advance(), i++) {
+      assertSameResult(knnq.getKNNForDBID(it, 10), mknnq.getKNNForDBID(it, 10));
+      assertSameResult(rq.getRangeForDBID(it, .1), mrq.getRangeForDBID(it, .1));
+    }
+  }
+
+  @Test
+  public void testKMeans() {
+    Database mdb = makeMappedDatabase();
+    Clustering<?> result = new ELKIBuilder<KMeansLloyd<DoubleVector>>(KMeansLloyd.class) //
+        .with(KMeans.K_ID, 5) //
+        .with(KMeans.SEED_ID, 7) //
+        .build().run(mdb);
+    // Same result as KMeansLloydTest on the in-memory database
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  @Test
+  public void testSegments() throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(bundlefile, "r");
+        FileChannel channel = file.getChannel()) {
+      // Use tiny segments, to have objects cross segment boundaries.
+      MultipleObjectsBundle mbundle = new MappedBundleReader(channel, 1000).asMultipleObjectsBundle();
+      assertEquals("Number of columns does not agree.", bundle.metaLength(), mbundle.metaLength());
+      assertEquals("Sizes do not agree.", bundle.dataLength(), mbundle.dataLength());
+      for(int r = 0; r < bundle.dataLength(); r++) {
+        assertVectorEquals((NumberVector) bundle.data(r, 0), (NumberVector) mbundle.data(r, 0));
+        assertEquals("Labels do not agree.", bundle.data(r, 1).toString(), mbundle.data(r, 1).toString());
+      }
+    }
+  }
+
+  private static Database makeMappedDatabase() {
+    List<ObjectFilter> filters = Arrays.<ObjectFilter> asList(new FixedDBIDsFilter(1));
+    Database db = new StaticArrayDatabase(new MappedBundleDatabaseConnection(filters, bundlefile), null);
+    db.initialize();
+    return db;
+  }
+
+  private static void assertVectorEquals(NumberVector expected, NumberVector actual) {
+    assertEquals("Dimensionality does not agree.", expected.getDimensionality(), actual.getDimensionality());
+    for(int d = 0; d < expected.getDimensionality(); d++) {
+      assertEquals("Values do not agree.", expected.doubleValue(d), actual.doubleValue(d), 0.);
+    }
+  }
+
+  private static void assertSameResult(DoubleDBIDList expected, DoubleDBIDList actual) {
+    assertEquals("Result sizes do not agree.", expected.size(), actual.size());
+    for(DoubleDBIDListIter e = expected.iter(), a = actual.iter(); e.valid(); e.advance(), a.advance()) {
+      assertEquals("Distances do not agree.", e.doubleValue(), a.doubleValue(), 1e-15);
+    }
+  }
+}
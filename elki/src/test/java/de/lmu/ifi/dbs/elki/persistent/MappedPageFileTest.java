@@ -0,0 +1,155 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the memory-mapped page file.
+ *
+ * @author Erich Schubert
+ */
+public class MappedPageFileTest extends AbstractIndexStructureTest {
+  @Test
+  public void testRStarTree() throws IOException {
+    testExactEuclidean(rstar(false), RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    testExactCosine(rstar(true), RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+    testConcurrentQueries(rstar(false), RStarTreeKNNQuery.class);
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    File f = tempFile();
+    MappedPageFile<TestPage> file = new MappedPageFile<>(100, f.getPath(), TestPage.class, false);
+    assertFalse("New file", file.initialize(new DefaultPageHeader(100)));
+    // Use enough pages to span multiple segments.
+    final int n = (1 << 26) / 100 + 10;
+    for(int i = 0; i < n; i++) {
+      assertEquals("Page id", i, file.writePage(new TestPage(i)));
+    }
+    file.deletePage(5);
+    assertEquals("Page", n - 1, file.readPage(n - 1).data[2]);
+    file.close();
+    assertEquals("File size", (n + 1) * 100L, f.length());
+
+    file = new MappedPageFile<>(100, f.getPath(), TestPage.class, true);
+    assertTrue("Existing file", file.initialize(new DefaultPageHeader(100)));
+    assertEquals("Next page", n, file.getNextPageID());
+    assertNull("Deleted page", file.readPage(5));
+    for(int i : new int[] { 0, 4, 6, n / 2, n - 1 }) {
+      TestPage page = file.readPage(i);
+      assertEquals("Page id", i, page.getPageID());
+      assertArrayEquals("Page data", new int[] { i, -i, i }, page.data);
+    }
+    file.close();
+  }
+
+  /**
+   * Build an R*-tree factory with a mapped page file.
+   *
+   * @param readahead Read-ahead flag
+   * @return Factory
+   */
+  private static RStarTreeFactory<?> rstar(boolean readahead) throws IOException {
+    return new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class) //
+        .with(PersistentPageFileFactory.Parameterizer.FILE_ID, tempFile()) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .with(MappedPageFileFactory.Parameterizer.READAHEAD_ID, readahead) //
+        .build();
+  }
+
+  /**
+   * Get a temporary file name, that does not yet exist.
+   *
+   * @return File
+   */
+  private static File tempFile() throws IOException {
+    File f = File.createTempFile("elki-pagefile", ".bin");
+    f.delete();
+    f.deleteOnExit();
+    return f;
+  }
+
+  /**
+   * Page class for testing.
+   *
+   * @author Erich Schubert
+   */
+  public static class TestPage extends AbstractExternalizablePage implements ExternalizablePage {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Payload.
+     */
+    int[] data;
+
+    /**
+     * Empty constructor for deserialization.
+     */
+    public TestPage() {
+      super();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param i Value
+     */
+    public TestPage(int i) {
+      super();
+      data = new int[] { i, -i, i };
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeObject(data);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      data = (int[]) in.readObject();
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * This file is part of ELKI:
+ * Environment for Developing KDD-Applications Supported by Index-Structures
+ *
+ * Copyright (C) 2017
+ * ELKI Development Team
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.persistent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.utilities.ELKIBuilder;
+
+/**
+ * Unit test for the 2Q page cache.
+ *
+ * @author Erich Schubert
+ */
+public class TwoQueuePageCacheTest extends AbstractIndexStructureTest {
+  @Test
+  public void testRStarTree() {
+    for(boolean pin : new boolean[] { false, true }) {
+      testExactEuclidean(rstar(pin), RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+      testConcurrentQueries(rstar(pin), RStarTreeKNNQuery.class);
+    }
+  }
+
+  @Test
+  public void testScanResistance() {
+    CountingPageFile backing = new CountingPageFile();
+    TwoQueuePageCache<TestPage> cache = new TwoQueuePageCache<>(1000, 1, false, backing);
+    cache.initialize(new DefaultPageHeader(100)); // 10 pages
+    for(int i = 0; i < 1000; i++) {
+      backing.writePage(new TestPage());
+    }
+    final int[] hot = { 0, 1, 2 };
+    readAll(cache, hot);
+    readAll(cache, range(100, 110)); // Evicts the hot pages once.
+    readAll(cache, hot); // Second reference: now frequently used.
+    assertEquals("Backing reads", 16, backing.reads);
+    readAll(cache, range(200, 1000)); // Long scan.
+    readAll(cache, hot);
+    assertEquals("Backing reads", 816, backing.reads);
+    // The same page object must be returned on a cache hit.
+    assertSame("Cached page", cache.readPage(1), cache.readPage(1));
+  }
+
+  @Test
+  public void testWriteBack() {
+    CountingPageFile backing = new CountingPageFile();
+    TwoQueuePageCache<TestPage> cache = new TwoQueuePageCache<>(500, 2, false, backing);
+    cache.initialize(new DefaultPageHeader(100)); // 5 pages
+    for(int i = 0; i < 20; i++) {
+      assertEquals("Page id", i, cache.writePage(new TestPage()));
+    }
+    assertEquals("Evicted pages written", 15, backing.writes);
+    cache.deletePage(3);
+    cache.flush();
+    assertEquals("All pages written", 20, backing.writes);
+    assertNull("Deleted page", cache.readPage(3));
+    readAll(cache, new int[] { 0, 1, 2, 4, 19 });
+  }
+
+  /**
+   * Read a sequence of pages.
+   *
+   * @param cache Cache
+   * @param ids Page ids
+   */
+  private static void readAll(PageFile<TestPage> cache, int[] ids) {
+    for(int id : ids) {
+      assertEquals("Page id", id, cache.readPage(id).getPageID());
+    }
+  }
+
+  /**
+   * Make a range of page ids.
+   *
+   * @param start First id
+   * @param end Last id (exclusive)
+   * @return Page ids
+   */
+  private static int[] range(int start, int end) {
+    int[] ids = new int[end - start];
+    for(int i = 0; i < ids.length; i++) {
+      ids[i] = start + i;
+    }
+    return ids;
+  }
+
+  /**
+   * Build an R*-tree factory with a small 2Q cache.
+   *
+   * @param pin Pin directory pages
+   * @return Factory
+   */
+  private static RStarTreeFactory<?> rstar(boolean pin) {
+    return new ELKIBuilder<>(RStarTreeFactory.class) //
+        .with(PagedIndexFactory.Parameterizer.PAGEFILE_ID, TwoQueuePageCacheFactory.class) //
+        .with(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MemoryPageFileFactory.class) //
+        .with(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 3000) //
+        .with(TwoQueuePageCacheFactory.Parameterizer.STRIPES_ID, 4) //
+        .with(TwoQueuePageCacheFactory.Parameterizer.PIN_DIRECTORY_ID, pin) //
+        .with(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300) //
+        .build();
+  }
+
+  /**
+   * Backing page file counting accesses.
+   *
+   * @author Erich Schubert
+   */
+  private static class CountingPageFile extends MemoryPageFile<TestPage> {
+    /**
+     * Access counters.
+     */
+    int reads, writes;
+
+    /**
+     * Constructor.
+     */
+    public CountingPageFile() {
+      super(100);
+    }
+
+    @Override
+    public TestPage readPage(int pageID) {
+      reads++;
+      return super.readPage(pageID);
+    }
+
+    @Override
+    protected void writePage(int pageID, TestPage page) {
+      writes++;
+      super.writePage(pageID, page);
+    }
+  }
+
+  /**
+   * Page class for testing.
+   *
+   * @author Erich Schubert
+   */
+  private static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+  }
+}